@@ -37,6 +37,100 @@ public class EngineProperties {
     /** Default number of milliseconds the exporter will wait after RECORDS_YIELD are exported */
     public static int DEFAULT_MILLIS_YIELD = 100;
 
+    /** How query executor workers are obtained : thread (default), pool or virtual */
+    public static final String QUERY_EXECUTION_PROPERTY = "nextreports.query.execution";
+
+    /** Number of threads in the query executor pool (used when QUERY_EXECUTION is pool) */
+    public static final String QUERY_POOL_SIZE_PROPERTY = "nextreports.query.pool.size";
+
+    /** A new thread is created for every query */
+    public static final String QUERY_EXECUTION_THREAD = "thread";
+
+    /** Queries run on a shared bounded thread pool */
+    public static final String QUERY_EXECUTION_POOL = "pool";
+
+    /** Queries run on virtual threads (JDK 21+) */
+    public static final String QUERY_EXECUTION_VIRTUAL = "virtual";
+
+    /** Default number of threads in the query executor pool */
+    public static int DEFAULT_QUERY_POOL_SIZE = 16;
+
+    /** Number of parsed queries kept in cache (0 disables the cache) */
+    public static final String QUERY_CACHE_SIZE_PROPERTY = "nextreports.query.cache.size";
+
+    /** Default number of parsed queries kept in cache */
+    public static int DEFAULT_QUERY_CACHE_SIZE = 256;
+
+    /** Directory for result snapshot files */
+    public static final String SNAPSHOT_DIRECTORY_PROPERTY = "nextreports.snapshot.dir";
+
+    /** Maximum size of all snapshot files in megabytes (0 means no limit) */
+    public static final String SNAPSHOT_MAX_SIZE_PROPERTY = "nextreports.snapshot.max.size";
+
+    /** Time to live of a snapshot file in minutes (0 means forever) */
+    public static final String SNAPSHOT_TTL_PROPERTY = "nextreports.snapshot.ttl";
+
+    /** Default maximum size of all snapshot files in megabytes */
+    public static int DEFAULT_SNAPSHOT_MAX_SIZE = 1024;
+
+    /** Default time to live of a snapshot file in minutes */
+    public static int DEFAULT_SNAPSHOT_TTL = 60;
+
+    /** If true, SUM and AVERAGE functions compute BigDecimal values exactly (result is a BigDecimal) */
+    public static final String EXACT_DECIMAL_FUNCTIONS_PROPERTY = "nextreports.function.exact.decimal";
+
+    /** Number of master rows for which a detail subreport query is run at once (0 disables batching).
+     * A subreport is batched only if its query uses a single master column parameter, once, as
+     * "column = ${param}" and it selects a column with the same name as the parameter. */
+    public static final String SUBREPORT_BATCH_SIZE_PROPERTY = "nextreports.subreport.batch.size";
+
+    /** Maximum number of master rows for which a detail subreport query is run at once */
+    public static int MAX_SUBREPORT_BATCH_SIZE = 1000;
+
+    /** Number of rendered subreports and chart images kept by an export (0 disables the cache).
+     * Every entry holds a whole rendered subreport, so the size must be chosen for the memory available */
+    public static final String SUBREPORT_CACHE_SIZE_PROPERTY = "nextreports.subreport.cache.size";
+
+    /** Default number of rendered subreports and chart images kept by an export (cache is disabled) */
+    public static int DEFAULT_SUBREPORT_CACHE_SIZE = 0;
+
+    /** Number of threads which render chart and barcode images (0 renders them on the export thread) */
+    public static final String RENDER_THREADS_PROPERTY = "nextreports.render.threads";
+
+    /** Default number of threads which render chart and barcode images */
+    public static final int DEFAULT_RENDER_THREADS = 4;
+
+    /** Number of rows an XLSX export keeps in memory; older rows are written to temporary files
+     * (0 keeps the whole workbook in memory) */
+    public static final String XLSX_ROW_WINDOW_PROPERTY = "nextreports.xlsx.row.window";
+
+    /** Write XLSX texts as inline strings instead of shared strings (only when rows are streamed) */
+    public static final String XLSX_INLINE_STRINGS_PROPERTY = "nextreports.xlsx.inline.strings";
+
+    /** XLS exports share cell styles with the same properties, from a pool bounded by the Excel 97 style limit */
+    public static final String XLS_LARGE_DATA_PROPERTY = "nextreports.xls.large.data";
+
+    /** CSV and TSV exports follow RFC 4180 : fields are not trimmed, they are quoted only if they contain a separator,
+     * a quote or a line break and lines end with CRLF */
+    public static final String CSV_RFC4180_PROPERTY = "nextreports.csv.rfc4180";
+
+    /** Field separator for CSV exports (a single character, \t for tab) */
+    public static final String CSV_SEPARATOR_PROPERTY = "nextreports.csv.separator";
+
+    /** Quote character for CSV exports */
+    public static final String CSV_QUOTE_PROPERTY = "nextreports.csv.quote";
+
+    /** Line ending for CSV and TSV exports : crlf, lf or cr */
+    public static final String CSV_LINE_ENDING_PROPERTY = "nextreports.csv.line.ending";
+
+    /** CSV and TSV exports write numbers and dates without a pattern in a locale independent form
+     * (plain numbers without grouping, yyyy-MM-dd dates) */
+    public static final String CSV_RAW_VALUES_PROPERTY = "nextreports.csv.raw.values";
+
+    /** Maximum number of cells a PDF export keeps in memory before they are written to the document; subreport
+     * cells count with the cells of their tables (0 writes every 15000 rows) */
+    public static final String PDF_FRAGMENT_CELLS_PROPERTY = "nextreports.pdf.fragment.cells";
+
     /** Get priority for running next reports queries and exporters
      *
      * @return priority for running next reports queries and exporters
@@ -87,4 +181,295 @@ public class EngineProperties {
         }
         return millis;
     }
+
+    /** Get the query execution type
+     *
+     * @return query execution type : QUERY_EXECUTION_THREAD, QUERY_EXECUTION_POOL or QUERY_EXECUTION_VIRTUAL
+     */
+    public static String getQueryExecution() {
+        String s = System.getProperty(QUERY_EXECUTION_PROPERTY);
+        if (QUERY_EXECUTION_POOL.equalsIgnoreCase(s)) {
+            return QUERY_EXECUTION_POOL;
+        } else if (QUERY_EXECUTION_VIRTUAL.equalsIgnoreCase(s)) {
+            return QUERY_EXECUTION_VIRTUAL;
+        }
+        return QUERY_EXECUTION_THREAD;
+    }
+
+    /** Get number of threads in the query executor pool
+     *
+     * @return number of threads in the query executor pool
+     */
+    public static int getQueryPoolSize() {
+        String s = System.getProperty(QUERY_POOL_SIZE_PROPERTY);
+        int size = DEFAULT_QUERY_POOL_SIZE;
+        if (s != null) {
+            try {
+                size = Integer.parseInt(s);
+            } catch (NumberFormatException ex) {
+                // size remains DEFAULT_QUERY_POOL_SIZE
+            }
+        }
+        if (size <= 0) {
+            size = DEFAULT_QUERY_POOL_SIZE;
+        }
+        return size;
+    }
+
+    /** Get number of parsed queries kept in cache
+     *
+     * @return number of parsed queries kept in cache, 0 if cache is disabled
+     */
+    public static int getQueryCacheSize() {
+        String s = System.getProperty(QUERY_CACHE_SIZE_PROPERTY);
+        int size = DEFAULT_QUERY_CACHE_SIZE;
+        if (s != null) {
+            try {
+                size = Integer.parseInt(s);
+            } catch (NumberFormatException ex) {
+                // size remains DEFAULT_QUERY_CACHE_SIZE
+            }
+        }
+        if (size < 0) {
+            size = 0;
+        }
+        return size;
+    }
+
+    /** Get directory for result snapshot files
+     *
+     * @return directory for result snapshot files
+     */
+    public static String getSnapshotDirectory() {
+        String s = System.getProperty(SNAPSHOT_DIRECTORY_PROPERTY);
+        if (s == null) {
+            s = System.getProperty("java.io.tmpdir") + java.io.File.separator + "nextreports-snapshots";
+        }
+        return s;
+    }
+
+    /** Get maximum size of all snapshot files
+     *
+     * @return maximum size of all snapshot files in bytes, 0 if there is no limit
+     */
+    public static long getSnapshotMaxSize() {
+        String s = System.getProperty(SNAPSHOT_MAX_SIZE_PROPERTY);
+        long size = DEFAULT_SNAPSHOT_MAX_SIZE;
+        if (s != null) {
+            try {
+                size = Long.parseLong(s);
+            } catch (NumberFormatException ex) {
+                // size remains DEFAULT_SNAPSHOT_MAX_SIZE
+            }
+        }
+        if (size < 0) {
+            size = 0;
+        }
+        return size * 1024 * 1024;
+    }
+
+    /** Get time to live of a snapshot file
+     *
+     * @return time to live of a snapshot file in milliseconds, 0 if snapshot does not expire
+     */
+    public static long getSnapshotTimeToLive() {
+        String s = System.getProperty(SNAPSHOT_TTL_PROPERTY);
+        long ttl = DEFAULT_SNAPSHOT_TTL;
+        if (s != null) {
+            try {
+                ttl = Long.parseLong(s);
+            } catch (NumberFormatException ex) {
+                // ttl remains DEFAULT_SNAPSHOT_TTL
+            }
+        }
+        if (ttl < 0) {
+            ttl = 0;
+        }
+        return ttl * 60 * 1000;
+    }
+
+    /** Test if SUM and AVERAGE functions compute BigDecimal values exactly
+     *
+     * @return true if BigDecimal values are computed exactly, false if they are computed as double (default)
+     */
+    public static boolean isExactDecimalFunctions() {
+        return Boolean.parseBoolean(System.getProperty(EXACT_DECIMAL_FUNCTIONS_PROPERTY));
+    }
+
+    /** Get number of master rows for which a detail subreport query is run at once
+     *
+     * @return number of master rows for a subreport query, 0 if subreports are not batched (default)
+     */
+    public static int getSubreportBatchSize() {
+        String s = System.getProperty(SUBREPORT_BATCH_SIZE_PROPERTY);
+        int size = 0;
+        if (s != null) {
+            try {
+                size = Integer.parseInt(s);
+            } catch (NumberFormatException ex) {
+                // subreports are not batched
+            }
+        }
+        if (size < 0) {
+            size = 0;
+        }
+        return Math.min(size, MAX_SUBREPORT_BATCH_SIZE);
+    }
+
+    /** Get number of rendered subreports and chart images kept by an export
+     *
+     * @return number of rendered subreports and chart images kept, 0 if cache is disabled
+     */
+    public static int getSubreportCacheSize() {
+        String s = System.getProperty(SUBREPORT_CACHE_SIZE_PROPERTY);
+        int size = DEFAULT_SUBREPORT_CACHE_SIZE;
+        if (s != null) {
+            try {
+                size = Integer.parseInt(s);
+            } catch (NumberFormatException ex) {
+                // size remains DEFAULT_SUBREPORT_CACHE_SIZE
+            }
+        }
+        if (size < 0) {
+            size = 0;
+        }
+        return size;
+    }
+
+    /** Get number of threads which render chart and barcode images
+     *
+     * @return number of render threads, 0 if images are rendered on the export thread
+     */
+    public static int getRenderThreads() {
+        String s = System.getProperty(RENDER_THREADS_PROPERTY);
+        int threads = DEFAULT_RENDER_THREADS;
+        if (s != null) {
+            try {
+                threads = Integer.parseInt(s);
+            } catch (NumberFormatException ex) {
+                // threads remains DEFAULT_RENDER_THREADS
+            }
+        }
+        if (threads < 0) {
+            threads = 0;
+        }
+        return threads;
+    }
+
+    /** Get number of rows an XLSX export keeps in memory
+     *
+     * @return number of rows kept in memory, 0 if the whole workbook is kept in memory (default)
+     */
+    public static int getXlsxRowWindow() {
+        String s = System.getProperty(XLSX_ROW_WINDOW_PROPERTY);
+        int rows = 0;
+        if (s != null) {
+            try {
+                rows = Integer.parseInt(s);
+            } catch (NumberFormatException ex) {
+                // rows are not streamed
+            }
+        }
+        if (rows < 0) {
+            rows = 0;
+        }
+        return rows;
+    }
+
+    /** Test if streamed XLSX texts are written as inline strings
+     *
+     * @return true for inline strings, false for shared strings (default)
+     */
+    public static boolean isXlsxInlineStrings() {
+        return Boolean.parseBoolean(System.getProperty(XLSX_INLINE_STRINGS_PROPERTY));
+    }
+
+    /** Test if XLS exports use the large data mode (cell styles are pooled by their properties)
+     *
+     * @return true for large data mode, false otherwise (default)
+     */
+    public static boolean isXlsLargeData() {
+        return Boolean.parseBoolean(System.getProperty(XLS_LARGE_DATA_PROPERTY));
+    }
+
+    /** Test if CSV and TSV exports follow RFC 4180
+     *
+     * @return true for RFC 4180 mode, false otherwise (default)
+     */
+    public static boolean isCsvRfc4180() {
+        return Boolean.parseBoolean(System.getProperty(CSV_RFC4180_PROPERTY));
+    }
+
+    /** Get field separator for CSV exports
+     *
+     * @param defaultSeparator separator used if property is not set
+     * @return field separator
+     */
+    public static char getCsvSeparator(char defaultSeparator) {
+        String s = System.getProperty(CSV_SEPARATOR_PROPERTY);
+        if ((s == null) || (s.length() == 0)) {
+            return defaultSeparator;
+        }
+        if ("\\t".equals(s)) {
+            return '\t';
+        }
+        return s.charAt(0);
+    }
+
+    /** Get quote character for CSV exports
+     *
+     * @param defaultQuote quote character used if property is not set
+     * @return quote character
+     */
+    public static char getCsvQuote(char defaultQuote) {
+        String s = System.getProperty(CSV_QUOTE_PROPERTY);
+        if ((s == null) || (s.length() == 0)) {
+            return defaultQuote;
+        }
+        return s.charAt(0);
+    }
+
+    /** Get line ending for CSV and TSV exports
+     *
+     * @return line ending, null if property is not set or it has an unknown value
+     */
+    public static String getCsvLineEnding() {
+        String s = System.getProperty(CSV_LINE_ENDING_PROPERTY);
+        if ("crlf".equalsIgnoreCase(s)) {
+            return "\r\n";
+        } else if ("lf".equalsIgnoreCase(s)) {
+            return "\n";
+        } else if ("cr".equalsIgnoreCase(s)) {
+            return "\r";
+        }
+        return null;
+    }
+
+    /** Test if CSV and TSV exports write numbers and dates without a pattern in a locale independent form
+     *
+     * @return true for raw values, false for locale formatted values (default)
+     */
+    public static boolean isCsvRawValues() {
+        return Boolean.parseBoolean(System.getProperty(CSV_RAW_VALUES_PROPERTY));
+    }
+
+    /** Get maximum number of cells a PDF export keeps in memory
+     *
+     * @return maximum number of cells, 0 if the document is written every 15000 rows (default)
+     */
+    public static int getPdfFragmentCells() {
+        String s = System.getProperty(PDF_FRAGMENT_CELLS_PROPERTY);
+        int cells = 0;
+        if (s != null) {
+            try {
+                cells = Integer.parseInt(s);
+            } catch (NumberFormatException ex) {
+                // document is written every 15000 rows
+            }
+        }
+        if (cells < 0) {
+            cells = 0;
+        }
+        return cells;
+    }
 }
@@ -25,7 +25,10 @@ import java.util.Map;
 import ro.nextreports.engine.exporter.Alert;
 import ro.nextreports.engine.exporter.event.ExporterEventListener;
 import ro.nextreports.engine.exporter.exception.NoDataFoundException;
+import ro.nextreports.engine.queryexec.ConnectionProvider;
 import ro.nextreports.engine.queryexec.QueryResult;
+import ro.nextreports.engine.queryexec.SnapshotStore;
+import ro.nextreports.engine.queryexec.StatementCache;
 
 /** Utilities class to run a report using a fluent syntax
  * 
@@ -152,6 +155,128 @@ public class FluentReportRunner {
         return this;
     }
 
+    /** Set streaming mode : query result is read forward only with a driver specific fetch size,
+     * so memory stays flat for big exports (reports with subreports, charts or dependent parameters are not streamed)
+     *
+     * @param streaming true means the query result will be streamed
+     * @return FluentReportRunner object with streaming property set
+     */
+    public FluentReportRunner streaming(boolean streaming) {
+        reportRunner.setStreaming(streaming);
+        return this;
+    }
+
+    /** Set the fetch size used in streaming mode
+     *
+     * @param fetchSize number of rows fetched from database at a time
+     * @return FluentReportRunner object with fetch size set
+     */
+    public FluentReportRunner withFetchSize(int fetchSize) {
+        reportRunner.setFetchSize(fetchSize);
+        return this;
+    }
+
+    /** Compress the output while the report is exported
+     *
+     * @param compression CompressedOutputStream.GZIP or CompressedOutputStream.ZIP
+     * @param level compression level from 0 to 9, -1 for default level
+     * @return FluentReportRunner object with compression set
+     */
+    public FluentReportRunner compress(String compression, int level) {
+        reportRunner.setCompression(compression);
+        reportRunner.setCompressionLevel(level);
+        return this;
+    }
+
+    /** Compute the count on connections taken from a provider, concurrently with the report query
+     *
+     * @param provider provider of connections used for count
+     * @return FluentReportRunner object with count connection provider set
+     */
+    public FluentReportRunner computeCountWith(ConnectionProvider provider) {
+        reportRunner.setCount(true);
+        reportRunner.setCountConnectionProvider(provider);
+        return this;
+    }
+
+    /** Set estimate count : row count is estimated by the database planner
+     *
+     * @param estimate true means row count is estimated
+     * @return FluentReportRunner object with estimate count property set
+     */
+    public FluentReportRunner estimateCount(boolean estimate) {
+        reportRunner.setEstimateCount(estimate);
+        return this;
+    }
+
+    /** Compute simple header functions with an aggregate query run before the report query
+     * (header values may not match the rows if data changes between the two queries)
+     *
+     * @param headerFunctionQuery true means header functions are computed by the database
+     * @return FluentReportRunner object with header function query property set
+     */
+    public FluentReportRunner headerFunctionQuery(boolean headerFunctionQuery) {
+        reportRunner.setHeaderFunctionQuery(headerFunctionQuery);
+        return this;
+    }
+
+    /** Reuse the prepared statement of the report query from a cache
+     * (call StatementCache.close(Connection) before the connection is closed)
+     *
+     * @param statementCache prepared statement cache
+     * @return FluentReportRunner object with statement cache set
+     */
+    public FluentReportRunner withStatementCache(StatementCache statementCache) {
+        reportRunner.setStatementCache(statementCache);
+        return this;
+    }
+
+    /** Read rows in background while the exporter processes previous rows (off by default,
+     * ignored for reports with subreports, charts or dependent parameters)
+     *
+     * @param rows maximum number of rows read in advance (0 for no prefetch)
+     * @return FluentReportRunner object with prefetch size set
+     */
+    public FluentReportRunner prefetch(int rows) {
+        reportRunner.setPrefetchSize(rows);
+        return this;
+    }
+
+    /** Keep the rows of the run in a snapshot, and read them from snapshot in next runs with the same key
+     *
+     * @param store snapshot store
+     * @param key snapshot key (null to create it from report name, sql and parameter values)
+     * @return FluentReportRunner object with snapshot set
+     */
+    public FluentReportRunner snapshot(SnapshotStore store, String key) {
+        reportRunner.setSnapshotStore(store);
+        reportRunner.setSnapshotKey(key);
+        return this;
+    }
+
+    /** Export only a page of rows, using native row limiting of the database
+     *
+     * @param page page number, starting with 0
+     * @param pageSize number of rows in a page (0 for all rows)
+     * @return FluentReportRunner object with page set
+     */
+    public FluentReportRunner page(int page, int pageSize) {
+        reportRunner.setPage(page, pageSize);
+        return this;
+    }
+
+    /** Export only a page of rows ordered by a unique column, after the last value from previous page
+     *
+     * @param column unique result column
+     * @param lastValue value of column in the last row of previous page (null for first page)
+     * @param pageSize number of rows in a page
+     * @return FluentReportRunner object with keyset page set
+     */
+    public FluentReportRunner pageAfter(String column, Object lastValue, int pageSize) {
+        reportRunner.setKeysetPage(column, lastValue, pageSize);
+        return this;
+    }
+
     /** Register a listener
      *
      * @param listener exporter event listener
@@ -181,6 +306,16 @@ public class FluentReportRunner {
     public void run(OutputStream stream) throws ReportRunnerException, NoDataFoundException {
 		reportRunner.run(stream);
 	}
+
+    /** Export the current report to more output formats with a single pass over the result
+     *
+     * @param streams output stream for every format
+     * @throws ReportRunnerException if FluentReportRunner object is not correctly configured
+     * @throws NoDataFoundException if no data is found
+     */
+    public void run(Map<String, OutputStream> streams) throws ReportRunnerException, NoDataFoundException {
+		reportRunner.run(streams);
+	}
     
     /** Execute query
 	 *  This method is useful in case you are not interested about report layout, 
@@ -17,13 +17,22 @@
 package ro.nextreports.engine;
 
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.OutputStream;
 import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.zip.Deflater;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 
 import ro.nextreports.engine.exporter.AlarmExporter;
 import ro.nextreports.engine.exporter.Alert;
@@ -31,6 +40,9 @@ import ro.nextreports.engine.exporter.CsvExporter;
 import ro.nextreports.engine.exporter.DisplayExporter;
 import ro.nextreports.engine.exporter.DocxExporter;
 import ro.nextreports.engine.exporter.ExporterBean;
+import ro.nextreports.engine.exporter.ExpressionCache;
+import ro.nextreports.engine.exporter.HeaderFunctionQuery;
+import ro.nextreports.engine.exporter.SubreportCache;
 import ro.nextreports.engine.exporter.HtmlExporter;
 import ro.nextreports.engine.exporter.IndicatorExporter;
 import ro.nextreports.engine.exporter.JSONFullExporter;
@@ -39,23 +51,30 @@ import ro.nextreports.engine.exporter.PdfExporter;
 import ro.nextreports.engine.exporter.ReportTableExporter;
 import ro.nextreports.engine.exporter.ResultExporter;
 import ro.nextreports.engine.exporter.RtfExporter;
+import ro.nextreports.engine.exporter.TeeExporter;
 import ro.nextreports.engine.exporter.TsvExporter;
 import ro.nextreports.engine.exporter.TxtExporter;
 import ro.nextreports.engine.exporter.XlsExporter;
 import ro.nextreports.engine.exporter.XlsxExporter;
 import ro.nextreports.engine.exporter.XmlExporter;
+import ro.nextreports.engine.exporter.event.ExporterEvent;
 import ro.nextreports.engine.exporter.event.ExporterEventListener;
+import ro.nextreports.engine.exporter.event.ExporterObject;
 import ro.nextreports.engine.exporter.exception.NoDataFoundException;
 import ro.nextreports.engine.exporter.util.AlarmData;
+import ro.nextreports.engine.exporter.util.CompressedOutputStream;
 import ro.nextreports.engine.exporter.util.DisplayData;
 import ro.nextreports.engine.exporter.util.IndicatorData;
 import ro.nextreports.engine.exporter.util.ParametersBean;
 import ro.nextreports.engine.exporter.util.TableData;
 import ro.nextreports.engine.querybuilder.sql.dialect.Dialect;
+import ro.nextreports.engine.queryexec.ConnectionProvider;
 import ro.nextreports.engine.queryexec.Query;
 import ro.nextreports.engine.queryexec.QueryExecutor;
 import ro.nextreports.engine.queryexec.QueryParameter;
 import ro.nextreports.engine.queryexec.QueryResult;
+import ro.nextreports.engine.queryexec.SnapshotStore;
+import ro.nextreports.engine.queryexec.StatementCache;
 import ro.nextreports.engine.util.DialectUtil;
 import ro.nextreports.engine.util.QueryUtil;
 import ro.nextreports.engine.util.ReportUtil;
@@ -111,6 +130,8 @@ public class ReportRunner implements Runner {
 	public static final String[] FORMATS = { PDF_FORMAT, EXCEL_FORMAT, EXCEL_XLSX_FORMAT, HTML_FORMAT, DOCX_FORMAT,
 			RTF_FORMAT, CSV_FORMAT, TSV_FORMAT, TXT_FORMAT, XML_FORMAT, JSON_SIMPLE_FORMAT, JSON_FULL_FORMAT };
 
+	private static Log LOG = LogFactory.getLog(ReportRunner.class);
+
 	private Connection connection;
 	private Dialect dialect;
 	private Report report;
@@ -124,6 +145,28 @@ public class ReportRunner implements Runner {
 	private String chartImagePath;
 	private List<Alert> alerts;
 	private boolean csv = false;
+	// forward only result set streamed with fetchSize rows at a time
+	private boolean streaming = false;
+	private int fetchSize = QueryExecutor.DEFAULT_FETCH_SIZE;
+	// count computed on a second connection or estimated by the database
+	private ConnectionProvider countConnectionProvider;
+	private boolean estimateCount = false;
+	// header functions computed by an aggregate query before the report query (see HeaderFunctionQuery)
+	private boolean headerFunctionQuery = false;
+	// optional cache of prepared statements
+	private StatementCache statementCache;
+	// optional cache of rendered subreports shared by many runs
+	private SubreportCache subreportCache;
+	// number of rows read in background while the exporter works (0 means no prefetch)
+	private int prefetchSize = 0;
+	// rows of a run are kept in a snapshot file and reused by next runs with the same key
+	private SnapshotStore snapshotStore;
+	private String snapshotKey;
+	// page of rows (pageSize 0 means all rows)
+	private int pageOffset = 0;
+	private int pageSize = 0;
+	private String keysetColumn;
+	private Object keysetValue;
 
 	// to write excel in a existing template, in a specific sheet (other sheets
 	// may contain calculations on data sheet)
@@ -135,6 +178,11 @@ public class ReportRunner implements Runner {
 
 	private String language;
 
+	// output compression : CompressedOutputStream.GZIP, CompressedOutputStream.ZIP or null
+	private String compression;
+	private int compressionLevel = Deflater.DEFAULT_COMPRESSION;
+	private int compressionBufferSize = CompressedOutputStream.DEFAULT_BUFFER_SIZE;
+
 	/**
 	 * Get database connection
 	 *
@@ -284,6 +332,260 @@ public class ReportRunner implements Runner {
 		this.count = count;
 	}
 
+	/**
+	 * See if query result is streamed
+	 *
+	 * @return true if query result is streamed, false otherwise
+	 */
+	public boolean isStreaming() {
+		return streaming;
+	}
+
+	/**
+	 * Set streaming mode : the query result is a forward only result set, read with a
+	 * driver specific fetch size, so memory does not grow with the number of rows. Useful for
+	 * big CSV / XLSX exports.
+	 * 
+	 * Reports with functions in header or group header bands are also streamed : rows read to compute
+	 * header functions are spooled to a temporary file which is used by the export (simple header
+	 * functions can be computed by the database instead, see setHeaderFunctionQuery).
+	 * 
+	 * Reports with subreports, charts or dependent parameters are not streamed, because some drivers
+	 * (MySQL) cannot execute other statements on the connection while a streamed result is read.
+	 *
+	 * @param streaming
+	 *            true for streaming mode
+	 */
+	public void setStreaming(boolean streaming) {
+		this.streaming = streaming;
+	}
+
+	/**
+	 * Get fetch size used in streaming mode
+	 *
+	 * @return fetch size used in streaming mode
+	 */
+	public int getFetchSize() {
+		return fetchSize;
+	}
+
+	/**
+	 * Set fetch size used in streaming mode
+	 *
+	 * @param fetchSize
+	 *            number of rows fetched from database at a time
+	 */
+	public void setFetchSize(int fetchSize) {
+		this.fetchSize = fetchSize;
+	}
+
+	/**
+	 * Get the provider of connections used to compute the row count
+	 *
+	 * @return provider of connections used to compute the row count
+	 */
+	public ConnectionProvider getCountConnectionProvider() {
+		return countConnectionProvider;
+	}
+
+	/**
+	 * Set a provider of connections used to compute the row count concurrently with the report
+	 * query. If count is true, the export starts without waiting for the count.
+	 *
+	 * @param countConnectionProvider
+	 *            provider of connections used to compute the row count
+	 */
+	public void setCountConnectionProvider(ConnectionProvider countConnectionProvider) {
+		this.countConnectionProvider = countConnectionProvider;
+	}
+
+	/**
+	 * See if row count is estimated
+	 *
+	 * @return true if row count is estimated
+	 */
+	public boolean isEstimateCount() {
+		return estimateCount;
+	}
+
+	/**
+	 * Set estimate count : if count is true, the row count is the number of rows estimated
+	 * by the database planner (for databases which can do it)
+	 *
+	 * @param estimateCount
+	 *            true to estimate row count
+	 */
+	public void setEstimateCount(boolean estimateCount) {
+		this.estimateCount = estimateCount;
+	}
+
+	/**
+	 * See if header functions are computed by the database
+	 *
+	 * @return true if header functions are computed by the database
+	 */
+	public boolean isHeaderFunctionQuery() {
+		return headerFunctionQuery;
+	}
+
+	/**
+	 * Set header function query : simple functions from header band are computed by the database
+	 * with an aggregate query run before the report query, so rows are read only once (see
+	 * HeaderFunctionQuery). The two queries are separate statements : if data is changed between
+	 * them, header values may not match the printed rows (unless the connection uses a transaction
+	 * isolation which gives the same data to both statements). By default rows are read twice
+	 * and header values are computed from the printed rows.
+	 *
+	 * @param headerFunctionQuery
+	 *            true to compute header functions with an aggregate query
+	 */
+	public void setHeaderFunctionQuery(boolean headerFunctionQuery) {
+		this.headerFunctionQuery = headerFunctionQuery;
+	}
+
+	/**
+	 * Get the prepared statement cache
+	 *
+	 * @return prepared statement cache
+	 */
+	public StatementCache getStatementCache() {
+		return statementCache;
+	}
+
+	/**
+	 * Set a prepared statement cache : reports run many times on the same connection
+	 * reuse the statement of the report query. Cached statements are not closed with the run :
+	 * call StatementCache.close(Connection) before the connection is closed.
+	 *
+	 * @param statementCache
+	 *            prepared statement cache
+	 */
+	public void setStatementCache(StatementCache statementCache) {
+		this.statementCache = statementCache;
+	}
+
+	/**
+	 * Get the cache of rendered subreports and chart images shared by many runs
+	 *
+	 * @return cache of rendered subreports, null if every run has its own cache
+	 */
+	public SubreportCache getSubreportCache() {
+		return subreportCache;
+	}
+
+	/**
+	 * Set a cache of rendered subreports and chart images shared by many runs. Subreports are
+	 * cached by parameter values, so the cache must be shared only by runs over the same data.
+	 * If it is not set, every run has its own cache, sized by nextreports.subreport.cache.size
+	 * system property (disabled by default).
+	 *
+	 * @param subreportCache
+	 *            cache of rendered subreports
+	 */
+	public void setSubreportCache(SubreportCache subreportCache) {
+		this.subreportCache = subreportCache;
+	}
+
+	/**
+	 * Get the number of rows read in background
+	 *
+	 * @return number of rows read in background, 0 if there is no prefetch
+	 */
+	public int getPrefetchSize() {
+		return prefetchSize;
+	}
+
+	/**
+	 * Set the number of rows read in background : a fetch thread reads rows from database while
+	 * the exporter processes previous rows. Prefetch is off by default.
+	 * 
+	 * Rows of reports with subreports, charts or dependent parameters are not read in background,
+	 * because their statements are executed on the same connection while rows are read.
+	 *
+	 * @param prefetchSize
+	 *            number of rows read in background, 0 for no prefetch
+	 */
+	public void setPrefetchSize(int prefetchSize) {
+		this.prefetchSize = prefetchSize;
+	}
+
+	/**
+	 * Get the snapshot store
+	 *
+	 * @return snapshot store, null if snapshots are not used
+	 */
+	public SnapshotStore getSnapshotStore() {
+		return snapshotStore;
+	}
+
+	/**
+	 * Set a snapshot store : rows read by a run are written to a snapshot file, and a next run
+	 * with the same snapshot key (for example to export in another format) reads the rows from
+	 * that file instead of executing the query.
+	 *
+	 * @param snapshotStore
+	 *            snapshot store, null to not use snapshots
+	 */
+	public void setSnapshotStore(SnapshotStore snapshotStore) {
+		this.snapshotStore = snapshotStore;
+	}
+
+	/**
+	 * Get the snapshot key
+	 *
+	 * @return snapshot key
+	 */
+	public String getSnapshotKey() {
+		return snapshotKey;
+	}
+
+	/**
+	 * Set the snapshot key. If it is not set, the key is made from database url and user, report name,
+	 * report sql and parameter values.
+	 *
+	 * @param snapshotKey
+	 *            snapshot key
+	 */
+	public void setSnapshotKey(String snapshotKey) {
+		this.snapshotKey = snapshotKey;
+	}
+
+	/**
+	 * Export only a page of rows, for example a page of TABLE data shown in a grid. The report sql is
+	 * rewritten with the native row limiting of the database (see Dialect.getLimitQuery), so the rows
+	 * after the page are never produced by the server.
+	 *
+	 * @param page
+	 *            page number, starting with 0
+	 * @param pageSize
+	 *            number of rows in a page, 0 for all rows
+	 */
+	public void setPage(int page, int pageSize) {
+		this.pageOffset = page * pageSize;
+		this.pageSize = pageSize;
+		this.keysetColumn = null;
+		this.keysetValue = null;
+	}
+
+	/**
+	 * Export only a page of rows ordered by a unique column, starting after the last value of that
+	 * column from the previous page (keyset pagination). Unlike setPage, the rows of previous pages
+	 * are not read by the database, so any page is fetched in the same time.
+	 *
+	 * @param column
+	 *            unique result column
+	 * @param lastValue
+	 *            value of column in the last row of previous page, null for first page
+	 * @param pageSize
+	 *            number of rows in a page
+	 */
+	public void setKeysetPage(String column, Object lastValue, int pageSize) {
+		this.pageOffset = 0;
+		this.pageSize = pageSize;
+		this.keysetColumn = column;
+		this.keysetValue = lastValue;
+	}
+
 	/**
 	 * Set a list of alert object for report of type alarm
 	 * 
@@ -314,7 +616,7 @@ public class ReportRunner implements Runner {
 	 *             if report has no data
 	 */
 	public boolean run() throws ReportRunnerException, NoDataFoundException {
-		return run(null);
+		return run((OutputStream) null);
 	}
 
 	/**
@@ -351,15 +653,59 @@ public class ReportRunner implements Runner {
 			}
 		}
 
+		String key = null;
+		if (snapshotStore != null) {
+			key = createSnapshotKey(sql);
+			QueryResult snapshot = snapshotStore.open(key);
+			if (snapshot != null) {
+				LOG.info("Report '" + report.getBaseName() + "' rows are read from snapshot.");
+				return snapshot;
+			}
+		}
+
 		QueryResult queryResult = null;
 		try {
 			Query query = getQuery(sql);
 			QueryExecutor executor = new QueryExecutor(query, parameters, parameterValues, connection, count, true,
 					csv);
-			executor.setMaxRows(0);
+			if (pageSize > 0) {
+				executor.setPage(pageOffset, pageSize);
+			} else {
+				executor.setMaxRows(0);
+			}
+			if (keysetColumn != null) {
+				executor.setKeyset(keysetColumn, keysetValue);
+			}
 			executor.setTimeout(queryTimeout);
+			executor.setCountConnectionProvider(countConnectionProvider);
+			executor.setEstimateCount(estimateCount);
+			executor.setStatementCache(statementCache);
+			if (streaming) {
+				if (ReportUtil.foundStatementsInExport(report)) {
+					LOG.warn("Report '" + report.getBaseName() + "' has subreports, charts or dependent parameters " +
+							"which use the connection while rows are read : it is not streamed.");
+				} else {
+					executor.setStreaming(true);
+					executor.setFetchSize(fetchSize);
+				}
+			}
 
 			queryResult = executor.execute();
+			if (prefetchSize > 0) {
+				if (ReportUtil.foundStatementsInExport(report)) {
+					LOG.warn("Report '" + report.getBaseName() + "' has subreports, charts or dependent parameters " +
+							"which use the connection while rows are read : rows are not read in background.");
+				} else {
+					queryResult.startPrefetch(prefetchSize);
+				}
+			}
+			if (snapshotStore != null) {
+				try {
+					queryResult.recordSnapshot(snapshotStore.create(key));
+				} catch (Exception ex) {
+					LOG.error("Cannot create snapshot for report '" + report.getBaseName() + "' : " + ex.getMessage(), ex);
+				}
+			}
 
 			return queryResult;
 		} catch (Exception e) {
@@ -410,10 +756,10 @@ public class ReportRunner implements Runner {
 		}
 
 		QueryResult queryResult = null;
+		CompressedOutputStream compressed = null;
 		try {
 
-			queryResult = executeQuery();
-
+			checkConnectionAndReport();
 			String sql = getSql();
 			ParametersBean bean = new ParametersBean(getQuery(sql), getReportParameters(), parameterValues);
 
@@ -421,25 +767,192 @@ public class ReportRunner implements Runner {
 
 			boolean isProcedure = QueryUtil.isProcedureCall(sql);
 
-			ExporterBean eb = new ExporterBean(connection, queryTimeout, queryResult, stream, convertedLayout, bean,
+			// computed before the report query is executed (a streamed result must be the only one on connection)
+			Map<String, Object> templatesValues = getHeaderFunctionValues(convertedLayout, sql);
+
+			queryResult = executeQuery();
+
+			OutputStream out = stream;
+			if ((stream != null) && (compression != null)) {
+				compressed = createCompressedStream(stream, format);
+				out = compressed;
+			}
+
+			ExporterBean eb = new ExporterBean(connection, queryTimeout, queryResult, out, convertedLayout, bean,
 					report.getBaseName(), false, alerts, isProcedure);
 			if (language != null) {
 				eb.setLanguage(language);
 			}
+			if (subreportCache != null) {
+				eb.setSubreportCache(subreportCache);
+			}
+			eb.setTemplatesValues(templatesValues);
 			createExporter(eb);
 
-			return exporter.export();
+			boolean finished = exporter.export();
+			if (compressed != null) {
+				finishCompression(Arrays.asList(compressed));
+			}
+			return finished;
 		} catch (NoDataFoundException e) {
 			throw e;
 		} catch (Exception e) {
 			throw new ReportRunnerException(e);
 		} finally {
+			if (compressed != null) {
+				compressed.abort();
+			}
 			if (queryResult != null) {
 				queryResult.close();
 			}
 		}
 	}
 
+	/**
+	 * Export the current report to more output formats with a single query
+	 * execution and a single pass over the result. Bands, groups, functions and
+	 * expressions are computed once for all formats.
+	 *
+	 * @param streams
+	 *            output stream for every format (a format from FORMATS)
+	 * @throws ReportRunnerException
+	 *             if ReportRunner object is not correctly configured
+	 * @return true if export process finished, or false if export process was
+	 *         stopped
+	 *
+	 * @throws NoDataFoundException
+	 *             if report has no data
+	 */
+	public boolean run(Map<String, OutputStream> streams) throws ReportRunnerException, NoDataFoundException {
+
+		if ((streams == null) || streams.isEmpty()) {
+			throw new ReportRunnerException("No output streams!");
+		}
+
+		for (Map.Entry<String, OutputStream> entry : streams.entrySet()) {
+			String f = entry.getKey();
+			if (TABLE_FORMAT.equals(f) || ALARM_FORMAT.equals(f) || INDICATOR_FORMAT.equals(f)
+					|| DISPLAY_FORMAT.equals(f) || !formatAllowed(f)) {
+				throw new ReportRunnerException("Unsupported format : " + f + " !");
+			}
+			if (entry.getValue() == null) {
+				throw new ReportRunnerException("OutputStream for " + f + " cannot be null!");
+			}
+		}
+
+		QueryResult queryResult = null;
+		List<CompressedOutputStream> compressedStreams = new ArrayList<CompressedOutputStream>();
+		try {
+
+			checkConnectionAndReport();
+			String sql = getSql();
+			ParametersBean bean = new ParametersBean(getQuery(sql), getReportParameters(), parameterValues);
+
+			ReportLayout convertedLayout = ReportUtil.getDynamicReportLayout(connection, report.getLayout(), bean);
+
+			boolean isProcedure = QueryUtil.isProcedureCall(sql);
+
+			// computed before the report query is executed (a streamed result must be the only one on connection)
+			Map<String, Object> templatesValues = getHeaderFunctionValues(convertedLayout, sql);
+
+			queryResult = executeQuery();
+
+			ExpressionCache expressionCache = new ExpressionCache();
+			SubreportCache runSubreportCache = (subreportCache != null) ? subreportCache : new SubreportCache();
+			List<ResultExporter> exporters = new ArrayList<ResultExporter>();
+			for (Map.Entry<String, OutputStream> entry : streams.entrySet()) {
+				OutputStream out = entry.getValue();
+				if (compression != null) {
+					CompressedOutputStream compressed = createCompressedStream(out, entry.getKey());
+					compressedStreams.add(compressed);
+					out = compressed;
+				}
+				ExporterBean eb = new ExporterBean(connection, queryTimeout, queryResult, out,
+						convertedLayout, bean, report.getBaseName(), false, alerts, isProcedure);
+				eb.setExpressionCache(expressionCache);
+				eb.setSubreportCache(runSubreportCache);
+				eb.setTemplatesValues(templatesValues);
+				exporters.add(createExporter(entry.getKey(), eb));
+			}
+
+			if (exporters.size() == 1) {
+				exporter = exporters.get(0);
+			} else {
+				// tee exporter writes nothing itself
+				ExporterBean eb = new ExporterBean(connection, queryTimeout, queryResult, new ByteArrayOutputStream(),
+						convertedLayout, bean, report.getBaseName(), false, alerts, isProcedure);
+				eb.setLanguage(language);
+				eb.setExpressionCache(expressionCache);
+				eb.setSubreportCache(runSubreportCache);
+				eb.setTemplatesValues(templatesValues);
+				exporter = new TeeExporter(eb, exporters);
+				initExporter(exporter);
+			}
+
+			boolean finished = exporter.export();
+			if (!compressedStreams.isEmpty()) {
+				finishCompression(compressedStreams);
+			}
+			return finished;
+		} catch (NoDataFoundException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new ReportRunnerException(e);
+		} finally {
+			for (CompressedOutputStream compressed : compressedStreams) {
+				compressed.abort();
+			}
+			if (queryResult != null) {
+				queryResult.close();
+			}
+		}
+	}
+
+	private CompressedOutputStream createCompressedStream(OutputStream stream, String format) throws IOException {
+		String entryName = report.getBaseName() + "." + getFileExtension(format);
+		return new CompressedOutputStream(stream, compression, entryName, compressionLevel, compressionBufferSize);
+	}
+
+	// close compressed streams (exporters which do not close their output leave them open)
+	// and notify listeners about the number of written bytes
+	private void finishCompression(List<CompressedOutputStream> compressedStreams) throws IOException {
+		long uncompressedBytes = 0;
+		long compressedBytes = 0;
+		for (CompressedOutputStream compressed : compressedStreams) {
+			compressed.close();
+			uncompressedBytes += compressed.getUncompressedBytes();
+			compressedBytes += compressed.getCompressedBytes();
+		}
+		ExporterObject object = exporter.getExporterObject();
+		object.setUncompressedBytes(uncompressedBytes);
+		object.setCompressedBytes(compressedBytes);
+		ExporterEvent event = new ExporterEvent(object);
+		for (ExporterEventListener listener : listenerList) {
+			listener.notify(event);
+		}
+	}
+
+	private static String getFileExtension(String format) {
+		if (EXCEL_FORMAT.equals(format)) {
+			return "xls";
+		} else if (EXCEL_XLSX_FORMAT.equals(format)) {
+			return "xlsx";
+		} else if (JSON_SIMPLE_FORMAT.equals(format) || JSON_FULL_FORMAT.equals(format)) {
+			return "json";
+		} else {
+			return format.toLowerCase();
+		}
+	}
+
+	private void checkConnectionAndReport() throws ReportRunnerException {
+		if (connection == null) {
+			throw new ReportRunnerException("Connection is null!");
+		}
+		if (report == null) {
+			throw new ReportRunnerException("Report is null!");
+		}
+	}
+
 	private String getSql() throws ReportRunnerException {
 		String sql = report.getSql();
 		if (sql == null) {
@@ -454,6 +967,51 @@ public class ReportRunner implements Runner {
 		}
 	}
 
+	// header functions computed by the database, so the export reads the rows only once
+	// (not for a page of rows, rows read from snapshot or a procedure result)
+	private Map<String, Object> getHeaderFunctionValues(ReportLayout layout, String sql) {
+		if (!headerFunctionQuery || csv || (pageSize > 0) || (snapshotStore != null) || QueryUtil.isProcedureCall(sql)) {
+			return null;
+		}
+		return HeaderFunctionQuery.getTemplatesValues(layout, sql, getReportParameters(), parameterValues,
+				connection, queryTimeout);
+	}
+
+	private String createSnapshotKey(String sql) throws ReportRunnerException {
+		if (snapshotKey != null) {
+			return snapshotKey;
+		}
+		StringBuilder sb = new StringBuilder();
+		// the same report run on other database or by other user (with other rights) has other rows
+		try {
+			DatabaseMetaData dmd = connection.getMetaData();
+			sb.append(dmd.getURL()).append('\n').append(dmd.getUserName()).append('\n');
+		} catch (SQLException e) {
+			throw new ReportRunnerException("Cannot create snapshot key : " + e.getMessage(), e);
+		}
+		sb.append(report.getBaseName()).append('\n').append(sql);
+		if (pageSize > 0) {
+			sb.append('\n').append(pageOffset).append(',').append(pageSize);
+			if (keysetColumn != null) {
+				sb.append(',').append(keysetColumn).append('>').append(keysetValue);
+			}
+		}
+		if (parameterValues != null) {
+			List<String> names = new ArrayList<String>(parameterValues.keySet());
+			Collections.sort(names);
+			for (String name : names) {
+				Object value = parameterValues.get(name);
+				sb.append('\n').append(name).append('=');
+				if (value instanceof Object[]) {
+					sb.append(Arrays.deepToString((Object[]) value));
+				} else {
+					sb.append(value);
+				}
+			}
+		}
+		return sb.toString();
+	}
+
 	private Query getQuery(String sql) {
 		return new Query(sql);
 	}
@@ -485,6 +1043,11 @@ public class ReportRunner implements Runner {
 	}
 
 	private void createExporter(ExporterBean bean) {
+		exporter = createExporter(format, bean);
+	}
+
+	private ResultExporter createExporter(String format, ExporterBean bean) {
+		ResultExporter exporter;
 		bean.setLanguage(language);
 		if (TABLE_FORMAT.equals(format)) {
 			bean.setConnection(null);
@@ -532,6 +1095,11 @@ public class ReportRunner implements Runner {
 		} else {
 			exporter = new HtmlExporter(bean);
 		}
+		initExporter(exporter);
+		return exporter;
+	}
+
+	private void initExporter(ResultExporter exporter) {
 		exporter.setDocumentTitle(report.getBaseName());
 		for (ExporterEventListener listener : listenerList) {
 			exporter.addExporterEventListener(listener);
@@ -691,4 +1259,63 @@ public class ReportRunner implements Runner {
 		this.tableRawData = tableRawData;
 	}
 
+	/**
+	 * Get output compression
+	 *
+	 * @return CompressedOutputStream.GZIP, CompressedOutputStream.ZIP or null if output is not compressed
+	 */
+	public String getCompression() {
+		return compression;
+	}
+
+	/**
+	 * Compress the output stream while the report is exported, in GZIP format or in a ZIP file with a single
+	 * entry (named after the report and the output format). Compression runs on a separate thread, so it
+	 * overlaps the export. Intended for text formats (CSV, TSV, TXT, XML, HTML, JSON).
+	 *
+	 * Listeners receive the number of uncompressed and compressed bytes in every exporter event, and in a
+	 * last event sent after the compressed output is finished.
+	 *
+	 * @param compression
+	 *            CompressedOutputStream.GZIP, CompressedOutputStream.ZIP or null for no compression
+	 */
+	public void setCompression(String compression) {
+		if ((compression != null) && !CompressedOutputStream.GZIP.equals(compression)
+				&& !CompressedOutputStream.ZIP.equals(compression)) {
+			throw new IllegalArgumentException("Unsupported compression : " + compression + " !");
+		}
+		this.compression = compression;
+	}
+
+	public int getCompressionLevel() {
+		return compressionLevel;
+	}
+
+	/**
+	 * Set output compression level
+	 *
+	 * @param compressionLevel
+	 *            level from 0 (no compression) to 9 (best compression), -1 for default level
+	 */
+	public void setCompressionLevel(int compressionLevel) {
+		if ((compressionLevel < Deflater.DEFAULT_COMPRESSION) || (compressionLevel > Deflater.BEST_COMPRESSION)) {
+			throw new IllegalArgumentException("Invalid compression level : " + compressionLevel + " !");
+		}
+		this.compressionLevel = compressionLevel;
+	}
+
+	public int getCompressionBufferSize() {
+		return compressionBufferSize;
+	}
+
+	/**
+	 * Set size of buffers passed by the exporter to the compression thread
+	 *
+	 * @param compressionBufferSize
+	 *            buffer size in bytes
+	 */
+	public void setCompressionBufferSize(int compressionBufferSize) {
+		this.compressionBufferSize = compressionBufferSize;
+	}
+
 }
@@ -33,6 +33,7 @@ import ro.nextreports.engine.exporter.util.AlarmData;
 import ro.nextreports.engine.exporter.util.IndicatorData;
 import ro.nextreports.engine.exporter.util.TableData;
 import ro.nextreports.engine.querybuilder.sql.dialect.Dialect;
+import ro.nextreports.engine.queryexec.MemoryQueryResult;
 import ro.nextreports.engine.queryexec.Query;
 import ro.nextreports.engine.queryexec.QueryExecutor;
 import ro.nextreports.engine.queryexec.QueryParameter;
@@ -313,6 +314,107 @@ public class ChartRunner implements Runner {
 			throw new ReportRunnerException("Chart is null!");
 		}
 
+		String sql = getChartSql();
+		
+		try {
+			setDynamicColumns();
+		} catch (Exception e1) {
+			throw new ReportRunnerException(e1);
+		}
+
+		Map<String, QueryParameter> parameters = getChartParameters();
+		checkSql(sql);
+
+		QueryExecutor executor =  null;
+		try {
+			Query query = new Query(sql);
+			executor = new QueryExecutor(query, parameters, parameterValues, connection, true, true, csv);
+			executor.setMaxRows(0);
+			executor.setTimeout(queryTimeout);
+
+			QueryResult queryResult = executor.execute();
+
+			createExporter(query, parameters, parameterValues, queryResult, stream);
+            return exporter.export();
+
+		} catch (NoDataFoundException e) {
+			throw e;
+        } catch (InterruptedException e) {
+            throw e;
+        } catch (Exception e) {
+            e.printStackTrace();
+            throw new ReportRunnerException(e);
+		} finally {
+			resetStaticColumnsAfterRun();
+        	if (executor != null) {
+        		executor.close();
+        	}        	
+        }
+	}
+	
+	/**
+	 * Execute the chart query and read all its rows on the current thread. The returned task renders
+	 * the image (IMAGE_FORMAT) from these rows without the connection, so it can run on another thread.
+	 * Image name must be set before (see setImageName). Charts with dynamic columns (y column query)
+	 * cannot be prepared, because their columns are set on the chart object only while it is run.
+	 * 
+	 * @return task which writes the chart image
+	 * @throws ReportRunnerException if ChartRunner object is not correctly configured
+	 * @throws NoDataFoundException if chart has no data
+	 * @throws InterruptedException if process was interrupted
+	 */
+	public Runnable prepareImage() throws ReportRunnerException, NoDataFoundException, InterruptedException {
+		if (connection == null) {
+			throw new ReportRunnerException("Connection is null!");
+		}
+		if (chart == null) {
+			throw new ReportRunnerException("Chart is null!");
+		}
+		if (chart.getYColumnQuery() != null) {
+			throw new ReportRunnerException("Chart with dynamic columns cannot be prepared!");
+		}
+		String sql = getChartSql();
+		Map<String, QueryParameter> parameters = getChartParameters();
+		checkSql(sql);
+
+		QueryExecutor executor = null;
+		try {
+			executor = new QueryExecutor(new Query(sql), parameters, parameterValues, connection, true, true, csv);
+			executor.setMaxRows(0);
+			executor.setTimeout(queryTimeout);
+			QueryResult queryResult = MemoryQueryResult.read(executor.execute());
+			if ((queryResult.getColumnCount() <= 0) || (queryResult.getRowCount() == 0)) {
+				throw new NoDataFoundException();
+			}
+			final JFreeChartExporter imageExporter = new JFreeChartExporter(new HashMap<String, Object>(
+					parameterValues), queryResult, chart, (imagePath == null) ? "." : imagePath, imageName,
+					imageWidth, imageHeight, language);
+			// failure is thrown, so the image can be marked as not generated
+			return new Runnable() {
+				public void run() {
+					try {
+						imageExporter.export();
+					} catch (RuntimeException e) {
+						throw e;
+					} catch (Exception e) {
+						throw new RuntimeException(e);
+					}
+				}
+			};
+		} catch (NoDataFoundException e) {
+			throw e;
+		} catch (InterruptedException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new ReportRunnerException(e);
+		} finally {
+			if (executor != null) {
+				executor.close();
+			}
+		}
+	}
+
+	private String getChartSql() throws ReportRunnerException {
 		Report report = chart.getReport();
 		String sql = report.getSql();
 		if (sql == null) {
@@ -323,22 +425,22 @@ public class ChartRunner implements Runner {
 		if (sql == null) {
 			throw new ReportRunnerException("Report sql expression not found");
 		}
-		
-		try {
-			setDynamicColumns();
-		} catch (Exception e1) {
-			throw new ReportRunnerException(e1);
-		}
+		return sql;
+	}
 
-		// retrieves the report parameters
+	// retrieves the report parameters
+	private Map<String, QueryParameter> getChartParameters() {
 		Map<String, QueryParameter> parameters = new HashMap<String, QueryParameter>();
-		List<QueryParameter> parameterList = report.getParameters();
+		List<QueryParameter> parameterList = chart.getReport().getParameters();
 		if (parameterList != null) {
 			for (QueryParameter param : parameterList) {
 				parameters.put(param.getName(), param);
 			}
 		}
+		return parameters;
+	}
 
+	private void checkSql(String sql) throws ReportRunnerException {
 		if (QueryUtil.restrictQueryExecution(sql)) {
 			throw new ReportRunnerException(
 					"You are not allowed to execute queries that modify the database!");
@@ -356,32 +458,6 @@ public class ChartRunner implements Runner {
 						"Invalid procedure call! Must be of form 'call (${P1}, ?)'");
 			}
 		}
-
-		QueryExecutor executor =  null;
-		try {
-			Query query = new Query(sql);
-			executor = new QueryExecutor(query, parameters, parameterValues, connection, true, true, csv);
-			executor.setMaxRows(0);
-			executor.setTimeout(queryTimeout);
-
-			QueryResult queryResult = executor.execute();
-
-			createExporter(query, parameters, parameterValues, queryResult, stream);
-            return exporter.export();
-
-		} catch (NoDataFoundException e) {
-			throw e;
-        } catch (InterruptedException e) {
-            throw e;
-        } catch (Exception e) {
-            e.printStackTrace();
-            throw new ReportRunnerException(e);
-		} finally {
-			resetStaticColumnsAfterRun();
-        	if (executor != null) {
-        		executor.close();
-        	}        	
-        }
 	}
 	
     private void createExporter(Query query, Map<String, QueryParameter> parameters,
@@ -23,7 +23,6 @@ import java.awt.geom.GeneralPath;
 import java.io.File;
 import java.io.IOException;
 import java.io.Serializable;
-import java.sql.SQLException;
 import java.text.DecimalFormat;
 import java.text.FieldPosition;
 import java.util.HashMap;
@@ -605,8 +604,8 @@ public class JFreeChartExporter implements ChartExporter {
 	private JFreeChart addLineChartOverBar(JFreeChart jfreechart, Object[] lineCharts, String lineLegend) throws QueryException {
 		// first we read data for bar series, so we have to go back at the start of the result set
 		try {
-			result.getResultSet().beforeFirst();
-		} catch (SQLException e) {
+			result.beforeFirst();
+		} catch (QueryException e) {
 			// TODO Auto-generated catch block
 			e.printStackTrace();
 		}
@@ -1131,7 +1130,7 @@ public class JFreeChartExporter implements ChartExporter {
                 boolean equals = FunctionUtil.parameterEquals(xValue, newXValue);                
                 if (equals) {
                     for (int i = 0; i < chartsNo; i++) {
-                        functions[i].compute(objects[i]);
+                        FunctionUtil.compute(functions[i], objects[i]);
                     }
                 } else {
                     for (int i = 0; i < chartsNo; i++) {
@@ -1139,7 +1138,7 @@ public class JFreeChartExporter implements ChartExporter {
                         add = true;
                         computedValues[i] = (Number) functions[i].getComputedValue();
                         functions[i].reset();
-                        functions[i].compute(objects[i]);
+                        FunctionUtil.compute(functions[i], objects[i]);
                     }
                 }
             }
@@ -337,14 +337,14 @@ public class JsonHTML5Exporter implements ChartExporter {
                 boolean equals = FunctionUtil.parameterEquals(xValue, newXValue);
                 if (equals) {
                     for (int i = 0; i < chartsNo; i++) {
-                        functions[i].compute(objects[i]);
+                        FunctionUtil.compute(functions[i], objects[i]);
                     }
                 } else {
                     for (int i = 0; i < chartsNo; i++) {
                         add = true;
                         computedValues[i] = (Number) functions[i].getComputedValue();
                         functions[i].reset();
-                        functions[i].compute(objects[i]);
+                        FunctionUtil.compute(functions[i], objects[i]);
                     }
                 }
             }
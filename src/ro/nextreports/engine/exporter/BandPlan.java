@@ -0,0 +1,112 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ro.nextreports.engine.exporter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import ro.nextreports.engine.ReportLayout;
+import ro.nextreports.engine.band.Band;
+import ro.nextreports.engine.band.BandElement;
+import ro.nextreports.engine.band.ColumnBandElement;
+import ro.nextreports.engine.band.ExpressionBandElement;
+import ro.nextreports.engine.band.FunctionBandElement;
+import ro.nextreports.engine.band.ImageBandElement;
+import ro.nextreports.engine.band.ParameterBandElement;
+import ro.nextreports.engine.band.RowElement;
+import ro.nextreports.engine.band.VariableBandElement;
+
+/**
+ * Everything about a band that does not change while exporting rows : grid rows, row elements,
+ * cells which are not ignored by the exporter, spans, hide expressions and the values of static cells.
+ * A plan is built once for every band of an export.
+ */
+class BandPlan {
+
+	final Band band;
+	final boolean pageHeaderFooter;
+	final int cols;
+	final Row[] rows;
+
+	static class Row {
+		int gridRow;
+		RowElement rowElement;
+		// all elements of the row (also ignored ones) are used to decide if entire row is hidden
+		BandElement[] elements;
+		boolean hasHideExpression;
+		boolean hideExpressionForEmptyData;
+		Cell[] cells;
+	}
+
+	static class Cell {
+		int column;
+		BandElement element;
+		int rowSpan = 1;
+		int colSpan = 1;
+		boolean isImage;
+		// value does not depend on current row
+		boolean isStatic;
+		Object staticValue;
+	}
+
+	BandPlan(ReportLayout layout, Band band, Set<CellElement> ignored) {
+		this.band = band;
+		this.pageHeaderFooter = ReportLayout.PAGE_HEADER_BAND_NAME.equals(band.getName())
+				|| ReportLayout.PAGE_FOOTER_BAND_NAME.equals(band.getName());
+		this.cols = band.getColumnCount();
+		int rowCount = band.getRowCount();
+		this.rows = new Row[rowCount];
+		List<Cell> cells = new ArrayList<Cell>();
+		for (int i = 0; i < rowCount; i++) {
+			Row row = new Row();
+			row.gridRow = layout.getGridRow(band.getName(), i);
+			row.elements = new BandElement[cols];
+			cells.clear();
+			for (int j = 0; j < cols; j++) {
+				BandElement bandElement = band.getElementAt(i, j);
+				row.elements[j] = bandElement;
+				if ((bandElement != null) && (bandElement.getHideWhenExpression() != null)) {
+					row.hasHideExpression = true;
+				}
+				if (ignored.contains(new CellElement(i, j))) {
+					continue;
+				}
+				Cell cell = new Cell();
+				cell.column = j;
+				cell.element = bandElement;
+				if (bandElement != null) {
+					cell.rowSpan = bandElement.getRowSpan();
+					cell.colSpan = bandElement.getColSpan();
+				}
+				cell.isImage = bandElement instanceof ImageBandElement;
+				cell.isStatic = isStatic(bandElement);
+				cells.add(cell);
+			}
+			row.cells = cells.toArray(new Cell[cells.size()]);
+			rows[i] = row;
+		}
+	}
+
+	// elements which are rendered with their text
+	private static boolean isStatic(BandElement bandElement) {
+		return !(bandElement instanceof ColumnBandElement) && !(bandElement instanceof ExpressionBandElement)
+				&& !(bandElement instanceof FunctionBandElement) && !(bandElement instanceof ImageBandElement)
+				&& !(bandElement instanceof VariableBandElement) && !(bandElement instanceof ParameterBandElement);
+	}
+
+}
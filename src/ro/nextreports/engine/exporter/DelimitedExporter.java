@@ -0,0 +1,235 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ro.nextreports.engine.exporter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UnsupportedEncodingException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import ro.nextreports.engine.EngineProperties;
+import ro.nextreports.engine.Report;
+import ro.nextreports.engine.band.Band;
+import ro.nextreports.engine.band.BandElement;
+import ro.nextreports.engine.band.Hyperlink;
+import ro.nextreports.engine.band.HyperlinkBandElement;
+import ro.nextreports.engine.band.ReportBandElement;
+import ro.nextreports.engine.exporter.util.DelimitedWriter;
+import ro.nextreports.engine.queryexec.QueryException;
+import ro.nextreports.engine.util.StringUtil;
+
+/**
+ * Base class for delimited text exporters (csv, tsv)
+ */
+public abstract class DelimitedExporter extends ResultExporter {
+
+    private static Log LOG = LogFactory.getLog(DelimitedExporter.class);
+
+    private DelimitedWriter writer;
+    private char separator;
+    private char quote;
+
+    // numbers and dates without a pattern are written in a locale independent form
+    private boolean rawValues;
+    private SimpleDateFormat dateFormat;
+    private SimpleDateFormat timeFormat;
+    private SimpleDateFormat timestampFormat;
+
+    protected DelimitedExporter(ExporterBean bean, char separator, char quote) {
+        super(bean);
+        this.separator = separator;
+        this.quote = quote;
+    }
+
+    /**
+     * Create the exporter for a subreport, with the same format as this exporter
+     *
+     * @param bean subreport exporter bean
+     * @return subreport exporter
+     */
+    protected abstract DelimitedExporter createSubreportExporter(ExporterBean bean);
+
+    protected void initExport() throws QueryException {
+        OutputStream out;
+        if (bean.isSubreport()) {
+            subreportStream = new ByteArrayOutputStream();
+            out = subreportStream;
+        } else {
+            out = getOut();
+        }
+        try {
+            writer = new DelimitedWriter(new OutputStreamWriter(out, "UTF-8"), separator, quote);
+        } catch (UnsupportedEncodingException e) {
+            throw new QueryException(e);
+        }
+        boolean rfc4180 = EngineProperties.isCsvRfc4180();
+        writer.setRfc4180(rfc4180);
+        String lineEnding = EngineProperties.getCsvLineEnding();
+        if (lineEnding != null) {
+            writer.setLineEnding(lineEnding);
+        } else if (rfc4180) {
+            writer.setLineEnding(DelimitedWriter.CRLF);
+        }
+        rawValues = EngineProperties.isCsvRawValues();
+    }
+
+    protected void finishExport() {
+        if (writer.checkError()) {
+            LOG.error("Error writing " + (bean.isSubreport() ? "subreport " : "") + "delimited text output.");
+        }
+        if (!bean.isSubreport()) {
+            writer.close();
+        }
+    }
+
+    protected void close() {
+        if (!bean.isSubreport()) {
+            writer.close();
+        }
+    }
+
+    protected void flush() {
+        if (resultSetRow % FLUSH_ROWS == 0) {
+            flushNow();
+        }
+    }
+
+    protected void flushNow() {
+        writer.flush();
+    }
+
+    protected Set<CellElement> getIgnoredCells(Band band) {
+        return new HashSet<CellElement>();
+    }
+
+    protected void exportCell(String bandName, BandElement bandElement, Object value, int gridRow,
+                              int row, int column, int cols, int rowSpan, int colSpan, boolean isImage) {
+        if (bandElement instanceof HyperlinkBandElement) {
+            Hyperlink hyperlink = ((HyperlinkBandElement)bandElement).getHyperlink();
+            value = hyperlink.getText();
+        } else if (bandElement instanceof ReportBandElement)  {
+            Report report = ((ReportBandElement)bandElement).getReport();
+            Object cacheKey = getSubreportCacheKey(report);
+            String cached = (String) getCachedSubreport(cacheKey);
+            if (cached != null) {
+            	value = cached;
+            } else {
+	            ExporterBean eb = null;
+	            try {
+	            	eb = getSubreportExporterBean(report);
+	                DelimitedExporter subExporter = createSubreportExporter(eb);
+	                subExporter.export();
+	                value = subExporter.getSubreportData();
+	                putCachedSubreport(cacheKey, value);
+				} catch (Exception e) {
+					e.printStackTrace();
+				} finally {
+					if ((eb != null) && (eb.getResult() != null)) {
+						eb.getResult().close();
+					}
+				}
+            }
+        }
+        writer.writeField(getValueAsString(bandElement, value));
+        if (column == cols - 1) {
+            writer.endRecord();
+        }
+    }
+
+    protected void afterRowExport(){
+    }
+
+    protected String getNullElement() {
+        return null;
+    }
+
+    private String getValueAsString(BandElement bandElement, Object value) {
+        if (value instanceof String) {
+            return (String) value;
+        }
+        String pattern = getPattern(bandElement);
+        if (rawValues && (pattern == null)) {
+            String raw = getRawValue(value);
+            if (raw != null) {
+                return raw;
+            }
+        }
+        return StringUtil.getValueAsString(value, pattern, getReportLanguage());
+    }
+
+    private String getRawValue(Object value) {
+        if (value instanceof BigDecimal) {
+            return ((BigDecimal) value).toPlainString();
+        } else if ((value instanceof Integer) || (value instanceof Long) || (value instanceof Short)
+                || (value instanceof Byte) || (value instanceof BigInteger)) {
+            return value.toString();
+        } else if ((value instanceof Double) || (value instanceof Float)) {
+            double d = ((Number) value).doubleValue();
+            if (Double.isNaN(d) || Double.isInfinite(d)) {
+                return null;
+            }
+            return new BigDecimal(value.toString()).toPlainString();
+        // Time and Timestamp extend Date
+        } else if (value instanceof Time) {
+            if (timeFormat == null) {
+                timeFormat = new SimpleDateFormat("HH:mm:ss");
+            }
+            return timeFormat.format((Date) value);
+        } else if (value instanceof Timestamp) {
+            if (timestampFormat == null) {
+                timestampFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+            }
+            return timestampFormat.format((Date) value);
+        } else if (value instanceof Date) {
+            if (dateFormat == null) {
+                dateFormat = new SimpleDateFormat("yyyy-MM-dd");
+            }
+            return dateFormat.format((Date) value);
+        }
+        return null;
+    }
+
+    private String getSubreportData() {
+    	try {
+    		writer.flush();
+			String data = subreportStream.toString("UTF-8");
+			// the subreport is a single field, so its last line ending is not kept
+			String lineEnding = writer.getLineEnding();
+			if (data.endsWith(lineEnding)) {
+				data = data.substring(0, data.length() - lineEnding.length());
+			}
+			return data;
+		} catch (UnsupportedEncodingException e) {
+			e.printStackTrace();
+			return "";
+		} finally {
+			writer.close();
+		}
+    }
+
+}
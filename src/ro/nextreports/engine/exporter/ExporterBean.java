@@ -19,6 +19,7 @@ package ro.nextreports.engine.exporter;
 import java.io.OutputStream;
 import java.sql.Connection;
 import java.util.List;
+import java.util.Map;
 
 import ro.nextreports.engine.ReportLayout;
 import ro.nextreports.engine.exporter.util.ParametersBean;
@@ -41,6 +42,10 @@ public class ExporterBean {
 	// should we put raw data inside table (and use renderer to show formatted data)  or we should put formatted data
 	private boolean reportTableExporterRawData;
 	private String imageChartPath;
+	private ExpressionCache expressionCache;
+	private SubreportCache subreportCache;
+	// values of header functions computed before export (see HeaderFunctionQuery)
+	private Map<String, Object> templatesValues;
 	
 	public ExporterBean(Connection con, int queryTimeout, QueryResult result,
 			OutputStream out, ReportLayout reportLayout, ParametersBean pBean,
@@ -173,6 +178,36 @@ public class ExporterBean {
 		this.imageChartPath = imageChartPath;
 	}
 
+	public ExpressionCache getExpressionCache() {
+		if (expressionCache == null) {
+			expressionCache = new ExpressionCache();
+		}
+		return expressionCache;
+	}
+
+	public void setExpressionCache(ExpressionCache expressionCache) {
+		this.expressionCache = expressionCache;
+	}
+
+	public SubreportCache getSubreportCache() {
+		if (subreportCache == null) {
+			subreportCache = new SubreportCache();
+		}
+		return subreportCache;
+	}
+
+	public void setSubreportCache(SubreportCache subreportCache) {
+		this.subreportCache = subreportCache;
+	}
+
+	public Map<String, Object> getTemplatesValues() {
+		return templatesValues;
+	}
+
+	public void setTemplatesValues(Map<String, Object> templatesValues) {
+		this.templatesValues = templatesValues;
+	}
+
 	@Override
 	public String toString() {
 		return "ExporterBean [con=" + con + ", queryTimeout=" + queryTimeout
@@ -0,0 +1,82 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ro.nextreports.engine.exporter;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.jexl2.Expression;
+import org.apache.commons.jexl2.JexlEngine;
+
+import ro.nextreports.engine.band.FunctionBandElement;
+import ro.nextreports.engine.util.ReportUtil;
+
+/**
+ * Compiled JEXL expressions of a report.
+ * 
+ * An expression is parsed only once, even if it is evaluated for every row. The cache is kept
+ * in ExporterBean and it is shared by the report exporter and its subreport exporters.
+ */
+public class ExpressionCache {
+
+	private JexlEngine jexl = new JexlEngine();
+	private Map<String, Expression> expressions = new ConcurrentHashMap<String, Expression>();
+	// functions ($F_function_column) found in an expression
+	private Map<String, List<FunctionBandElement>> functions = new ConcurrentHashMap<String, List<FunctionBandElement>>();
+
+	/**
+	 * Get compiled expression
+	 * 
+	 * @param text expression text
+	 * @return compiled expression
+	 * @throws org.apache.commons.jexl2.JexlException if expression cannot be parsed
+	 */
+	public Expression getExpression(String text) {
+		Expression expression = expressions.get(text);
+		if (expression == null) {
+			expression = jexl.createExpression(text);
+			expressions.put(text, expression);
+		}
+		return expression;
+	}
+
+	/**
+	 * Get functions used inside an expression
+	 * 
+	 * @param text expression text
+	 * @return list of functions
+	 */
+	public List<FunctionBandElement> getFunctions(String text) {
+		List<FunctionBandElement> list = functions.get(text);
+		if (list == null) {
+			list = ReportUtil.getFunctionsFromExpression(text);
+			functions.put(text, list);
+		}
+		return list;
+	}
+
+	public int size() {
+		return expressions.size();
+	}
+
+	public void clear() {
+		expressions.clear();
+		functions.clear();
+	}
+
+}
@@ -0,0 +1,251 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ro.nextreports.engine.exporter;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import ro.nextreports.engine.ReportLayout;
+import ro.nextreports.engine.band.Band;
+import ro.nextreports.engine.band.BandElement;
+import ro.nextreports.engine.band.ColumnBandElement;
+import ro.nextreports.engine.band.ExpressionBandElement;
+import ro.nextreports.engine.band.FunctionBandElement;
+import ro.nextreports.engine.exporter.util.function.AbstractGFunction;
+import ro.nextreports.engine.exporter.util.function.FunctionFactory;
+import ro.nextreports.engine.exporter.util.function.FunctionUtil;
+import ro.nextreports.engine.exporter.util.function.GFunction;
+import ro.nextreports.engine.queryexec.Query;
+import ro.nextreports.engine.queryexec.QueryExecutor;
+import ro.nextreports.engine.queryexec.QueryParameter;
+import ro.nextreports.engine.queryexec.QueryResult;
+import ro.nextreports.engine.util.ReportUtil;
+
+/**
+ * Functions from report header band computed by the database with an aggregate query over the
+ * report query, before the export. Without them, the export reads all rows in a first crossing
+ * (to compute footer functions) and then reads them again from a spool file.
+ * 
+ * The aggregate query and the report query are separate statements : rows inserted, updated or deleted
+ * between them make header values which do not match the printed rows, unless both statements see
+ * the same data (for example a serializable or snapshot transaction on the connection). That is why
+ * it is used only when it is asked for (see ReportRunner.setHeaderFunctionQuery) : a first crossing
+ * reads the rows twice, but header values are always computed from the printed rows.
+ * 
+ * Only SUM, COUNT, MIN, MAX and AVERAGE of columns printed once in detail band (and not in group bands)
+ * are computed, so the values are the same as footer functions (null values are computed as zero).
+ * Reports with functions in group header bands are not supported.
+ */
+public class HeaderFunctionQuery {
+
+	private static Log LOG = LogFactory.getLog(HeaderFunctionQuery.class);
+
+	private static final List<String> FUNCTIONS = Arrays.asList(AbstractGFunction.SUM, AbstractGFunction.COUNT,
+			AbstractGFunction.MIN, AbstractGFunction.MAX, AbstractGFunction.AVERAGE);
+
+	private HeaderFunctionQuery() {
+	}
+
+	/**
+	 * Compute values of header functions
+	 * 
+	 * @param layout report layout
+	 * @param sql report query
+	 * @param parameters parameters definitions
+	 * @param parameterValues parameters values
+	 * @param connection database connection
+	 * @param timeout query timeout in seconds
+	 * @return values for header function templates (see ExporterBean.setTemplatesValues) or null if they
+	 *         cannot be computed by the database
+	 */
+	public static Map<String, Object> getTemplatesValues(ReportLayout layout, String sql,
+			Map<String, QueryParameter> parameters, Map<String, Object> parameterValues, Connection connection,
+			int timeout) {
+		if (!ReportUtil.foundFunctionInHeader(layout) || ReportUtil.foundFunctionInAnyGroupHeader(layout)) {
+			return null;
+		}
+		Map<String, FunctionBandElement> functions = getHeaderFunctions(layout);
+		if (functions == null) {
+			return null;
+		}
+
+		// for every function its result columns (AVERAGE is computed from sum and count)
+		StringBuilder select = new StringBuilder("SELECT ");
+		int columns = 0;
+		for (FunctionBandElement fbe : functions.values()) {
+			String value = "COALESCE(A." + fbe.getColumn() + ", 0)";
+			String function = fbe.getFunction();
+			if (columns > 0) {
+				select.append(", ");
+			}
+			if (AbstractGFunction.COUNT.equals(function)) {
+				select.append("COUNT(*) F").append(columns++);
+			} else if (AbstractGFunction.AVERAGE.equals(function)) {
+				select.append("SUM(").append(value).append(") F").append(columns++);
+				select.append(", COUNT(*) F").append(columns++);
+			} else {
+				select.append(function).append("(").append(value).append(") F").append(columns++);
+			}
+		}
+		select.append(" FROM (").append(sql).append(") A");
+
+		QueryExecutor executor = null;
+		try {
+			// parameters map is changed by QueryExecutor (ignored parameters)
+			executor = new QueryExecutor(new Query(select.toString()),
+					new HashMap<String, QueryParameter>(parameters), new HashMap<String, Object>(parameterValues),
+					connection, false, false, false);
+			executor.setMaxRows(0);
+			executor.setTimeout(timeout);
+			QueryResult result = executor.execute();
+			try {
+				if (!result.hasNext()) {
+					return null;
+				}
+				Map<String, Object> values = new LinkedHashMap<String, Object>();
+				int column = 0;
+				for (Map.Entry<String, FunctionBandElement> entry : functions.entrySet()) {
+					String function = entry.getValue().getFunction();
+					Object value;
+					if (AbstractGFunction.COUNT.equals(function)) {
+						value = getCount(result.nextValue(column++));
+					} else if (AbstractGFunction.AVERAGE.equals(function)) {
+						Object sum = getValue(AbstractGFunction.SUM, result.nextValue(column++));
+						value = getAverage(sum, getCount(result.nextValue(column++)));
+					} else {
+						value = getValue(function, result.nextValue(column++));
+					}
+					values.put(entry.getKey(), value);
+				}
+				return values;
+			} finally {
+				result.close();
+			}
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			return null;
+		} catch (Exception ex) {
+			LOG.warn("Header functions cannot be computed by the database, rows are read twice by export : " +
+					ex.getMessage());
+			return null;
+		} finally {
+			if (executor != null) {
+				executor.closeCursors();
+			}
+		}
+	}
+
+	// header functions by their template keys (see ResultExporter.getFunctionTemplate)
+	// or null if a function cannot be computed by the database
+	private static Map<String, FunctionBandElement> getHeaderFunctions(ReportLayout layout) {
+		List<FunctionBandElement> list = new ArrayList<FunctionBandElement>();
+		Band header = layout.getHeaderBand();
+		for (int i = 0, size = header.getRowCount(); i < size; i++) {
+			for (BandElement be : header.getRow(i)) {
+				if (be instanceof FunctionBandElement) {
+					list.add((FunctionBandElement) be);
+				} else if ((be instanceof ExpressionBandElement)
+						&& ((ExpressionBandElement) be).getExpression().contains("$F")) {
+					list.addAll(ReportUtil.getFunctionsFromExpression(((ExpressionBandElement) be).getExpression()));
+				}
+			}
+		}
+		Map<String, FunctionBandElement> functions = new LinkedHashMap<String, FunctionBandElement>();
+		for (FunctionBandElement fbe : list) {
+			if (fbe.isExpression() || !FUNCTIONS.contains(fbe.getFunction()) || !isColumnName(fbe.getColumn())) {
+				return null;
+			}
+			// footer functions are computed for every value of the column printed in detail band
+			// or group bands : value must be printed once for every row
+			if ((countColumn(layout.getDetailBand(), fbe.getColumn()) != 1)
+					|| (countColumn(layout.getGroupHeaderBands(), fbe.getColumn()) > 0)
+					|| (countColumn(layout.getGroupFooterBands(), fbe.getColumn()) > 0)) {
+				return null;
+			}
+			functions.put("F_" + fbe.getFunction() + "_" + fbe.getColumn(), fbe);
+		}
+		return functions.isEmpty() ? null : functions;
+	}
+
+	private static int countColumn(List<Band> bands, String column) {
+		int count = 0;
+		for (Band band : bands) {
+			count += countColumn(band, column);
+		}
+		return count;
+	}
+
+	private static int countColumn(Band band, String column) {
+		int count = 0;
+		for (int i = 0, size = band.getRowCount(); i < size; i++) {
+			for (BandElement be : band.getRow(i)) {
+				if ((be instanceof ColumnBandElement) && column.equals(((ColumnBandElement) be).getColumn())) {
+					count++;
+				}
+			}
+		}
+		return count;
+	}
+
+	// column is used without quotes in aggregate query
+	private static boolean isColumnName(String column) {
+		if ((column == null) || column.isEmpty() || !Character.isLetter(column.charAt(0))) {
+			return false;
+		}
+		for (int i = 1; i < column.length(); i++) {
+			char c = column.charAt(i);
+			if (!Character.isLetterOrDigit(c) && (c != '_')) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	// value with the same type as the value computed by the function for all rows
+	private static Object getValue(String function, Object value) {
+		GFunction f = FunctionFactory.getFunction(function);
+		FunctionUtil.compute(f, value);
+		return f.getComputedValue();
+	}
+
+	// same type as CountFunction value
+	private static Double getCount(Object value) {
+		return Double.valueOf((value == null) ? 0 : ((Number) value).doubleValue());
+	}
+
+	// same as AverageFunction value
+	private static Object getAverage(Object sum, Double count) {
+		if (count.doubleValue() == 0) {
+			return Double.valueOf(0);
+		}
+		if (sum instanceof BigDecimal) {
+			return ((BigDecimal) sum).divide(BigDecimal.valueOf(count.longValue()), MathContext.DECIMAL128);
+		}
+		return (Double) sum / count;
+	}
+
+}
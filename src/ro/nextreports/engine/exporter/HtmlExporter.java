@@ -18,6 +18,8 @@ package ro.nextreports.engine.exporter;
 
 import java.io.PrintStream;
 import java.io.UnsupportedEncodingException;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Map;
 import java.util.List;
 import java.util.Set;
@@ -47,6 +49,9 @@ import ro.nextreports.engine.util.StringUtil;
 public class HtmlExporter extends ResultExporter {
 
     private PrintStream stream;       
+    // band element -> (cell style -> css code)
+    private Map<BandElement, Map<Map<String, Object>, String>> cssCodes = 
+    		new IdentityHashMap<BandElement, Map<Map<String, Object>, String>>();
 
     public HtmlExporter(ExporterBean bean) {
         super(bean);
@@ -226,19 +231,27 @@ public class HtmlExporter extends ResultExporter {
                     append(hyperlink.getText()).append("</a>");
         } else if (bandElement instanceof ReportBandElement)  {
             Report report = ((ReportBandElement)bandElement).getReport(); 
-            ExporterBean eb = null;
-            try {            	
-            	eb = getSubreportExporterBean(report);
-                HtmlExporter subExporter = new HtmlExporter(eb);
-                subExporter.export();
-                sb.append(subExporter.getSubreportTable());                          
-			} catch (Exception e) {				
-				e.printStackTrace();
-			} finally {
-				if ((eb != null) && (eb.getResult() != null)) {
-					eb.getResult().close();
+            Object cacheKey = getSubreportCacheKey(report);
+            String subreportTable = (String) getCachedSubreport(cacheKey);
+            if (subreportTable == null) {
+	            ExporterBean eb = null;
+	            try {            	
+	            	eb = getSubreportExporterBean(report);
+	                HtmlExporter subExporter = new HtmlExporter(eb);
+	                subExporter.export();
+	                subreportTable = subExporter.getSubreportTable();
+	                putCachedSubreport(cacheKey, subreportTable);
+				} catch (Exception e) {				
+					e.printStackTrace();
+				} finally {
+					if ((eb != null) && (eb.getResult() != null)) {
+						eb.getResult().close();
+					}
 				}
-			}
+            }
+            if (subreportTable != null) {
+            	sb.append(subreportTable);
+            }
         } else if (bandElement instanceof ImageColumnBandElement){
         	
     		String v = StringUtil.getValueAsString(value, null);
@@ -275,10 +288,24 @@ public class HtmlExporter extends ResultExporter {
         
         // to see a background image all cells must not have any background!
         if (bean.getReportLayout().getBackgroundImage() != null) {
+        	// styles are immutable
+        	style = new HashMap<String, Object>(style);
         	style.remove(StyleFormatConstants.BACKGROUND_COLOR);
+        	return HtmlUtil.getCssCode(be, style);
         }	
         
-        return HtmlUtil.getCssCode(be, style);
+        // styles are interned : css code of a band element is computed once for every style variant
+        Map<Map<String, Object>, String> codes = cssCodes.get(be);
+        if (codes == null) {
+        	codes = new IdentityHashMap<Map<String, Object>, String>();
+        	cssCodes.put(be, codes);
+        }
+        String css = codes.get(style);
+        if (css == null) {
+        	css = HtmlUtil.getCssCode(be, style);
+        	codes.put(style, css);
+        }
+        return css;
     }
 
 
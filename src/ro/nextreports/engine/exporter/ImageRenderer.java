@@ -0,0 +1,177 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ro.nextreports.engine.exporter;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import ro.nextreports.engine.EngineProperties;
+
+/**
+ * Shared bounded pool of daemon threads which render chart and barcode images while rows are exported.
+ * 
+ * The image name is chosen before the job is submitted, so it can be used right away; code which
+ * reads the image file waits for its job first (see await) and must not use the image if its job failed. When all threads are busy and the queue
+ * is full, the export thread renders the image itself. The number of threads is set with the
+ * nextreports.render.threads system property (0 renders images on the export thread).
+ */
+final class ImageRenderer {
+
+	private static Log LOG = LogFactory.getLog(ImageRenderer.class);
+
+	private static final int threads = EngineProperties.getRenderThreads();
+
+	private static ThreadPoolExecutor pool;
+
+	// image name -> job which writes the image file
+	private static final ConcurrentMap<String, Future<?>> pending = new ConcurrentHashMap<String, Future<?>>();
+
+	// names of images whose jobs failed, until they are released
+	private static final Set<String> failed = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+	private ImageRenderer() {
+	}
+
+	static boolean isEnabled() {
+		return threads > 0;
+	}
+
+	/**
+	 * Get the number of images which can be rendered at the same time
+	 * 
+	 * @return number of render threads
+	 */
+	static int getThreads() {
+		return threads;
+	}
+
+	/**
+	 * Render an image on the pool
+	 * 
+	 * @param image image name
+	 * @param job job which writes the image file
+	 */
+	static void submit(final String image, Runnable job) {
+		if (!isEnabled()) {
+			job.run();
+			return;
+		}
+		FutureTask<Object> task = new FutureTask<Object>(job, null) {
+			protected void done() {
+				// failure is recorded before the job is removed, so it is seen by await
+				if (!isCancelled()) {
+					try {
+						get();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					} catch (ExecutionException e) {
+						failed.add(image);
+					}
+				} else {
+					failed.add(image);
+				}
+				pending.remove(image, this);
+			}
+		};
+		pending.put(image, task);
+		getPool().execute(task);
+	}
+
+	/**
+	 * Test if an image is rendered now or waits to be rendered
+	 * 
+	 * @param image image name
+	 * @return true if image file is not written yet
+	 */
+	static boolean isPending(String image) {
+		return (image != null) && pending.containsKey(image);
+	}
+
+	/**
+	 * Wait until the image file is written
+	 * 
+	 * @param image image name
+	 * @return false if the job which writes the image file failed
+	 */
+	static boolean await(String image) {
+		if (image == null) {
+			return true;
+		}
+		Future<?> task = pending.get(image);
+		if (task == null) {
+			return !failed.contains(image);
+		}
+		try {
+			task.get();
+			return true;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		} catch (CancellationException e) {
+			return false;
+		} catch (ExecutionException e) {
+			LOG.error("Cannot render image '" + image + "' : " + e.getMessage(), e);
+			return false;
+		}
+	}
+
+	/**
+	 * Forget an image which was rendered on the pool, after the export does not use it anymore
+	 * 
+	 * @param image image name
+	 */
+	static void release(String image) {
+		failed.remove(image);
+	}
+
+	private static synchronized ThreadPoolExecutor getPool() {
+		if (pool == null) {
+			pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+					new ArrayBlockingQueue<Runnable>(threads * 4), new RenderThreadFactory(),
+					new ThreadPoolExecutor.CallerRunsPolicy());
+			pool.allowCoreThreadTimeOut(true);
+		}
+		return pool;
+	}
+
+	private static class RenderThreadFactory implements ThreadFactory {
+
+		private final AtomicInteger index = new AtomicInteger(1);
+
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, ImageRenderer.class.getSimpleName() + "-" + index.getAndIncrement());
+			thread.setDaemon(true);
+			return thread;
+		}
+
+	}
+
+}
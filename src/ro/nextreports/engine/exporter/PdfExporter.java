@@ -32,6 +32,9 @@ import com.itextpdf.text.pdf.PdfWriter;
 import com.itextpdf.text.pdf.PdfPTable;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Set;
 import java.util.Map;
@@ -39,6 +42,7 @@ import java.awt.*;
 import java.io.IOException;
 import java.io.StringReader;
 
+import ro.nextreports.engine.EngineProperties;
 import ro.nextreports.engine.ReleaseInfoAdapter;
 import ro.nextreports.engine.Report;
 import ro.nextreports.engine.ReportLayout;
@@ -151,7 +155,11 @@ public class PdfExporter extends ResultExporter {
 
     protected void flush() {
 		if (!bean.isSubreport()) {
-			if (resultSetRow % fragmentsize == fragmentsize - 1) {
+			if (fragmentCells > 0) {
+				if (tableCells >= fragmentCells) {
+					flushNow();
+				}
+			} else if (resultSetRow % fragmentsize == fragmentsize - 1) {
 				flushNow();
 			}
 		}
@@ -163,6 +171,7 @@ public class PdfExporter extends ResultExporter {
 				document.add(table);
 				table.deleteBodyRows();
 				table.setSkipFirstHeader(true);
+				tableCells = 0;
 			} catch (DocumentException e) {
 				e.printStackTrace();
 			}
@@ -181,11 +190,25 @@ public class PdfExporter extends ResultExporter {
 			} else if (ReportLayout.PAGE_FOOTER_BAND_NAME.equals(bandName)) {
 				footer.addCell(renderPdfCell(bandElement, value, gridRow, rowSpan, colSpan, isImage, column));
 			} else {
-				table.addCell(renderPdfCell(bandElement, value, gridRow, rowSpan, colSpan, isImage, column));
+				addCell(renderPdfCell(bandElement, value, gridRow, rowSpan, colSpan, isImage, column));
 			}
 		} else {
-			table.addCell(renderPdfCell(bandElement, value, gridRow, rowSpan, colSpan, isImage, column));
+			addCell(renderPdfCell(bandElement, value, gridRow, rowSpan, colSpan, isImage, column));
 		}
+    }
+
+    private void addCell(PdfPCell cell) {
+    	table.addCell(cell);
+    	tableCells += getCellCount(cell);
+    }
+
+    // a cell with a subreport holds all the cells of the subreport table
+    private static long getCellCount(PdfPCell cell) {
+    	PdfPTable innerTable = cell.getTable();
+    	if (innerTable == null) {
+    		return 1;
+    	}
+    	return 1 + (long) innerTable.size() * innerTable.getNumberOfColumns();
     }       
 
     protected void afterRowExport() {
@@ -221,6 +244,10 @@ public class PdfExporter extends ResultExporter {
     private String fontName = FontFactory.TIMES;
 
     private int fragmentsize = 15000;
+    // if greater than 0, table is written to the document when it holds this number of cells, instead of
+    // every fragmentsize rows, so memory does not depend on the number of columns or on subreport sizes
+    private final int fragmentCells = EngineProperties.getPdfFragmentCells();
+    private long tableCells;
     private Document document;
     private PdfPTable table;
     private PdfPTable header;
@@ -230,17 +257,26 @@ public class PdfExporter extends ResultExporter {
     
     private static final int MINIMUM_HEIGHT = 12;
 
+    // fonts are shared by all pdf exports, so fonts (and embedded base fonts) are created only once;
+    // a cached font is never changed; least recently used fonts are removed when the cache is full
+    private static final int MAX_CACHED_FONTS = 1024;
+    private static final Map<List<Object>, Font> fonts = Collections.synchronizedMap(
+    		new LinkedHashMap<List<Object>, Font>(16, 0.75f, true) {
+    			protected boolean removeEldestEntry(Map.Entry<List<Object>, Font> eldest) {
+    				return size() > MAX_CACHED_FONTS;
+    			}
+    		});
+
     private PdfPCell renderPdfCell(BandElement bandElement, Object value, int gridRow, int rowSpan, int colSpan, boolean image, int column) {
         Map<String, Object> style = buildCellStyleMap(bandElement, value, gridRow, column, colSpan);               
 
-        FontFactoryImp fact = new FontFactoryImp();
         com.itextpdf.text.Font fnt;
         if (bandElement != null) {
             fontName = (String)style.get(StyleFormatConstants.FONT_NAME_KEY);
             int size = ((Float)style.get(StyleFormatConstants.FONT_SIZE )).intValue();            
-            fnt = getFont(size);
+            fnt = getFont(size, style);
         } else {
-            fnt = getFont(10);
+            fnt = getFont(10, style);
         }
         
         PdfPCell cell;
@@ -265,21 +301,32 @@ public class PdfExporter extends ResultExporter {
             cell = new PdfPCell(ph);
         } else if (bandElement instanceof ReportBandElement)  {
             Report report = ((ReportBandElement)bandElement).getReport();  
-            ExporterBean eb = null;
-            try {            	
-            	eb = getSubreportExporterBean(report);
-                PdfExporter subExporter = new PdfExporter(eb);
-                subExporter.export();
-                PdfPTable innerTable = subExporter.getTable();               
-                cell = new PdfPCell(innerTable);	                
-			} catch (Exception e) {
-				cell = new PdfPCell();
-				e.printStackTrace();
-			} finally {
-				if ((eb != null) && (eb.getResult() != null)) {
-					eb.getResult().close();
+            Object cacheKey = getSubreportCacheKey(report);
+            PdfPTable cachedTable = (PdfPTable) getCachedSubreport(cacheKey);
+            if (cachedTable != null) {
+            	// a table is laid out by the cell which contains it, so every cell gets a copy
+            	cell = new PdfPCell(new PdfPTable(cachedTable));
+            } else {
+	            ExporterBean eb = null;
+	            try {            	
+	            	eb = getSubreportExporterBean(report);
+	                PdfExporter subExporter = new PdfExporter(eb);
+	                subExporter.export();
+	                PdfPTable innerTable = subExporter.getTable();
+	                // in memory bounded mode big subreport tables are not kept in cache
+	                if ((cacheKey != null) && ((fragmentCells == 0) || (subExporter.tableCells < fragmentCells))) {
+	                	putCachedSubreport(cacheKey, new PdfPTable(innerTable));
+	                }
+	                cell = new PdfPCell(innerTable);
+				} catch (Exception e) {
+					cell = new PdfPCell();
+					e.printStackTrace();
+				} finally {
+					if ((eb != null) && (eb.getResult() != null)) {
+						eb.getResult().close();
+					}
 				}
-			}
+            }
         } else if ( (bandElement instanceof VariableBandElement) && 
         		    (VariableFactory.getVariable(((VariableBandElement) bandElement).getVariable()) instanceof TotalPageNoVariable) )  {
         	try {
@@ -357,8 +404,6 @@ public class PdfExporter extends ResultExporter {
 
         if (style != null) {
         	
-        	updateFont(style, fnt);
-        	
             if (style.containsKey(StyleFormatConstants.BACKGROUND_COLOR)) {
                 Color val = (Color) style.get(StyleFormatConstants.BACKGROUND_COLOR);
                 cell.setBackgroundColor(new BaseColor(val));
@@ -478,6 +523,20 @@ public class PdfExporter extends ResultExporter {
         }
     }
 
+    // font with style properties
+    private Font getFont(int size, Map<String, Object> style) {
+    	List<Object> key = Arrays.<Object>asList(fontName, encoding, embeddedFont, size,
+    			style.get(StyleFormatConstants.FONT_FAMILY_KEY), style.get(StyleFormatConstants.FONT_SIZE),
+    			style.get(StyleFormatConstants.FONT_COLOR), style.get(StyleFormatConstants.FONT_STYLE_KEY));
+    	Font fnt = fonts.get(key);
+    	if (fnt == null) {
+    		fnt = getFont(size);
+    		updateFont(style, fnt);
+    		fonts.put(key, fnt);
+    	}
+    	return fnt;
+    }
+
     private Font getFont(int size) {        
         if (encoding == null) {
             return FontFactory.getFont(fontName, size);
@@ -552,8 +611,7 @@ public class PdfExporter extends ResultExporter {
 				
 				fontName = (String) style.get(StyleFormatConstants.FONT_NAME_KEY);
 				int size = ((Float) style.get(StyleFormatConstants.FONT_SIZE)).intValue();
-				Font fnt = getFont(size);
-				updateFont(style, fnt);
+				Font fnt = getFont(size, style);
 								
 				ColumnText.showTextAligned(total, Element.ALIGN_LEFT, new Phrase(String.valueOf(totalPageNo), fnt), 0, 1, 0);
 			} 			
@@ -649,6 +707,7 @@ public class PdfExporter extends ResultExporter {
 				document.add(table);
 				document.newPage();
 				table.deleteBodyRows();
+				tableCells = 0;
 			} catch (Exception e) {
 				e.printStackTrace();
 			}
@@ -28,8 +28,8 @@ import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
 import java.io.IOException;
 import java.io.Serializable;
-import java.sql.SQLException;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.LinkedHashMap;
 import java.util.Locale;
 import java.util.Map;
@@ -38,6 +38,8 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.UUID;
+import java.util.Arrays;
 import java.util.Comparator;
 
 import javax.swing.SwingConstants;
@@ -54,11 +56,9 @@ import com.itextpdf.text.pdf.BarcodeInter25;
 import com.itextpdf.text.pdf.BarcodePDF417;
 import com.itextpdf.text.pdf.BarcodeQRCode;
 
-import org.apache.commons.jexl2.JexlEngine;
 import org.apache.commons.jexl2.Expression;
 import org.apache.commons.jexl2.JexlException;
 import org.apache.commons.jexl2.JexlContext;
-import org.apache.commons.jexl2.MapContext;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
@@ -97,6 +97,8 @@ import ro.nextreports.engine.exporter.event.ExporterEvent;
 import ro.nextreports.engine.exporter.event.ExporterEventListener;
 import ro.nextreports.engine.exporter.event.ExporterObject;
 import ro.nextreports.engine.exporter.exception.NoDataFoundException;
+import ro.nextreports.engine.exporter.util.CellStyle;
+import ro.nextreports.engine.exporter.util.CompressedOutputStream;
 import ro.nextreports.engine.exporter.util.StyleFormatConstants;
 import ro.nextreports.engine.exporter.util.function.FunctionFactory;
 import ro.nextreports.engine.exporter.util.function.FunctionUtil;
@@ -173,6 +175,8 @@ public abstract class ResultExporter {
     protected int newRowCount = 1;    
     protected int exporterRow = 0;
     protected int pageRow = 0;
+    // last page row of the exporter that shares its state with this one
+    private int sharedPageRow = 0;
     protected int headerRow = 0;
     protected int pageNo = 0;
     protected int totalPageNo = 0;    
@@ -193,13 +197,17 @@ public abstract class ResultExporter {
     //     number of rows for G1 band is kept in reportGroupRow
     protected int reportGroupRow = 1;
     
-    // we can have more than one barcode inside a report, their images must have unique names for HTML exporter
-    private int barcodeIndex = 1;
+    // chart and barcode images submitted to ImageRenderer by this exporter
+    private List<String> renderedImages = new ArrayList<String>();
+    // images of next detail rows submitted before their rows are exported (chart or barcode key -> image)
+    private Map<Object, String> submittedImages = new HashMap<Object, String>();
     
     private int NO_VALUES = 30;
 
     private Object[] previousRow;
     private List<ExpressionBean> expressions;
+    // expression variable names ($C_...) for every result column, computed once
+    private String[] columnVariables;
 
     protected EventListenerList listenerList = new EventListenerList();
     private ExporterObject exporterObject = new ExporterObject(0, 0);
@@ -211,13 +219,19 @@ public abstract class ResultExporter {
     private String currentBandName;     
     
     private Map<Integer, RowElement> rowMap = null;
+    // band name -> rendering plan
+    private Map<String, BandPlan> bandPlans = new HashMap<String, BandPlan>();
+    // band element -> style without formatting conditions
+    private Map<BandElement, CellStyle> elementStyles = new IdentityHashMap<BandElement, CellStyle>();
+    // subreport -> rows read for many master rows (null value if subreport cannot be batched)
+    private Map<Report, SubreportBatch> subreportBatches = new IdentityHashMap<Report, SubreportBatch>();
 
     // matrix with true values only if formatting conditions are met for a layout grid cell
     protected boolean[][] modifiedStyle;
 
     private static Log LOG = LogFactory.getLog(ResultExporter.class);
     
-    private JexlEngine jexl = new JexlEngine();    
+    private ExpressionContext expressionContext = new ExpressionContext();
         
     private String imageChartPath;    
     
@@ -271,12 +285,23 @@ public abstract class ResultExporter {
 		
         testForData();        
         
-		if (needsFirstCrossing() && !(this instanceof FirstCrossingExporter)) {			
-			FirstCrossingExporter fe = new FirstCrossingExporter(bean);
-			fe.export();
-			// get template values from FirstCrossing
-			templatesValues = fe.getTemplatesValues();
-			groupTemplateKeys = fe.getGroupTemplateKeys();			
+		if (needsFirstCrossing() && !(this instanceof FirstCrossingExporter)) {
+			if (bean.getTemplatesValues() != null) {
+				// header functions were computed by the database (see HeaderFunctionQuery),
+				// rows are read only by the export
+				templatesValues = new LinkedHashMap<String, Object>(bean.getTemplatesValues());
+			} else {
+				// rows read by first crossing are spooled and the export reads them from the spool file,
+				// so the result set is read only once and it does not have to be scrollable
+				if (bean.getResult() != null) {
+					bean.getResult().spool();
+				}
+				FirstCrossingExporter fe = new FirstCrossingExporter(bean);
+				fe.export();
+				// get template values from FirstCrossing
+				templatesValues = fe.getTemplatesValues();
+				groupTemplateKeys = fe.getGroupTemplateKeys();
+			}
 		} 
 
         initExport();
@@ -287,24 +312,44 @@ public abstract class ResultExporter {
         }
         printFooterBand();
 
+        // images rendered on other threads must be written before the output is finished
+        for (String image : renderedImages) {
+        	ImageRenderer.await(image);
+        }
+
         finishExport();
+
+        for (String image : renderedImages) {
+        	ImageRenderer.release(image);
+        }
+        renderedImages.clear();
         
         if ((bean.getResult() != null) && (!(this instanceof FirstCrossingExporter)) )  {
         	bean.getResult().close();
         }       
         
-        if (this instanceof FirstCrossingExporter) {
-        	// after FirstCrossing go to the beginning of the result set
-        	try {
-				bean.getResult().getResultSet().beforeFirst();
-			} catch (SQLException ex) {
-				LOG.error(ex.getMessage(), ex);
-			}
+        if ((this instanceof FirstCrossingExporter) && (bean.getResult() != null)) {
+        	// after FirstCrossing go to the beginning of the result
+        	// (if rows cannot be read again, export fails instead of printing only the header)
+        	QueryResult result = bean.getResult().rewind();
+        	if (result != bean.getResult()) {
+        		// rows are read from spool file, database resources can be released
+        		bean.getResult().close();
+        		bean.setResult(result);
+        	}
         }               
 
         return true;
     }
 
+    /** Get the object sent to listeners in exporter events
+     *
+     * @return exporter object with last exported record
+     */
+    public ExporterObject getExporterObject() {
+        return exporterObject;
+    }
+
     public OutputStream getOut() {
         return bean.getOut();
     }
@@ -327,6 +372,10 @@ public abstract class ResultExporter {
 
     public void setStopExport(boolean stopExport) {
         this.stopExport = stopExport;
+        // release the exporter if it waits for rows read in background
+        if (stopExport && (bean.getResult() != null)) {
+        	bean.getResult().stopPrefetch();
+        }
     }
 
     public Map<Long, Map<String, Object>> getStyleMap() {
@@ -351,11 +400,20 @@ public abstract class ResultExporter {
     
     
     protected Map<String, Object> buildCellStyleMap(BandElement bandElement) {
-        Map<String, Object> format = new HashMap<String, Object>();                     
-                
         if (bandElement == null) {
-            return format;
+            return CellStyle.EMPTY;
+        }
+        // properties of a band element do not change during export
+        CellStyle style = elementStyles.get(bandElement);
+        if (style == null) {
+        	style = CellStyle.valueOf(buildElementStyleMap(bandElement));
+        	elementStyles.put(bandElement, style);
         }
+        return style;
+    }
+    
+    private Map<String, Object> buildElementStyleMap(BandElement bandElement) {
+        Map<String, Object> format = new HashMap<String, Object>();                     
 
         buildCellFont(format, bandElement.getFont());
         format.put(StyleFormatConstants.FONT_COLOR, bandElement.getForeground());
@@ -398,13 +456,12 @@ public abstract class ResultExporter {
     }
 
     protected Map<String, Object> buildCellStyleMap(BandElement bandElement, Object value, int gridRow, int gridColumn, int colSpan, boolean overwriteCellRenderCond) {
-        Map<String, Object> format = new HashMap<String, Object>();                     
-                
         if (bandElement == null) {
-            return format;
+            return CellStyle.EMPTY;
         }
 
-        format = buildCellStyleMap(bandElement);
+        CellStyle style = (CellStyle) buildCellStyleMap(bandElement);
+        Map<String, Object> format = null;
                 
         // overwrite with row render conditions
         RowElement rowEl = getRowElement(getReportLayout(), gridRow);        
@@ -412,6 +469,7 @@ public abstract class ResultExporter {
 			RowFormattingConditions rfc = rowEl.getFormattingConditions();
 			if ((rfc != null) && (rfc.getConditions().size() > 0)) {
 				try {
+					format = style.toMap();
 					Serializable rowEval = (Serializable) evaluateExpression("", rfc.getExpressionText(), currentBandName, null, null);										
 					RowFormattingConditions renderConditions = rowEl.getFormattingConditions();
 					putFormattingConditions(format, renderConditions, gridRow, gridColumn, rowEval, colSpan, true);
@@ -426,6 +484,9 @@ public abstract class ResultExporter {
 		if (overwriteCellRenderCond) {
 			FormattingConditions renderConditions = bandElement.getFormattingConditions();
 			if (renderConditions != null) {
+				if (format == null) {
+					format = style.toMap();
+				}
 				String cellExpressionText = renderConditions.getCellExpressionText();
 				if (cellExpressionText == null) {
 					putFormattingConditions(format, renderConditions, gridRow, gridColumn, (Serializable) value, colSpan, false);
@@ -442,7 +503,11 @@ public abstract class ResultExporter {
 			}
 		}
 
-        return format;
+        // formatting conditions produce interned variants of the element style
+        if (format == null) {
+        	return style;
+        }
+        return CellStyle.valueOf(format);
     }
     
     private void putFormattingConditions(Map<String, Object> format, FormattingConditions renderConditions, int gridRow, int gridColumn, 
@@ -650,10 +715,6 @@ public abstract class ResultExporter {
         return width;
     }
 
-    private boolean findIgnoredCellElement(Set<CellElement> ignored, int i, int j) {
-        return ignored.contains(new CellElement(i, j));
-    }
-
     private void createGroupCache() {
         List<ReportGroup> groups = bean.getReportLayout().getGroups();
         if (groups == null) {
@@ -765,7 +826,7 @@ public abstract class ResultExporter {
         }
     }
 
-    private String getStringValue(VariableBandElement bandElement, String bandName) {
+    String getStringValue(VariableBandElement bandElement, String bandName) {
         String pattern = getPattern(bandElement);
         Variable var = VariableFactory.getVariable(bandElement.getVariable());       
         Object value = getValue(var, bandName);
@@ -887,6 +948,12 @@ public abstract class ResultExporter {
 
             exporterObject.setRecord(resultSetRow);
             exporterObject.setRecordCount(bean.getResult().getRowCount());
+            exporterObject.setRecordCountEstimated(bean.getResult().isRowCountEstimated());
+            if (getOut() instanceof CompressedOutputStream) {
+            	CompressedOutputStream compressed = (CompressedOutputStream) getOut();
+            	exporterObject.setUncompressedBytes(compressed.getUncompressedBytes());
+            	exporterObject.setCompressedBytes(compressed.getCompressedBytes());
+            }
             fireExporterEvent(new ExporterEvent(exporterObject));
 
             afterRowExport();            
@@ -899,6 +966,13 @@ public abstract class ResultExporter {
             }                               
         }
         
+        // stopped while waiting for rows read in background
+        if (isStopExport()) {
+        	close();
+        	setStopExport(false);
+        	return false;
+        }
+        
         if (isEmpty) {
         	if (!bean.getReportLayout().isShowEmptyData()) {
         		throw new NoDataFoundException();
@@ -937,7 +1011,7 @@ public abstract class ResultExporter {
             } else {
                 value = getResult().nextValue(column);
             }            
-            fc.getFunction().compute(value);
+            FunctionUtil.compute(fc.getFunction(), value);
         }
         if (gc.headerHasRows()) {
             printHeaderGroupBand(gc);
@@ -1000,7 +1074,7 @@ public abstract class ResultExporter {
                     } else {
                         nv = getResult().nextValue(fc.getFunctionColumn());
                     }
-                    fc.getFunction().compute(nv);                    
+                    FunctionUtil.compute(fc.getFunction(), nv);                    
                 }
 
                 // increment group row for the current group
@@ -1028,7 +1102,17 @@ public abstract class ResultExporter {
     }
 
     protected void printHeaderBand() throws QueryException {
+        // exporters which start a new page inside another band (header on every page) print the header
+        // in the middle of that band, so its state must be kept
+        String bandName = currentBandName;
+        boolean detail = isDetail;
+        boolean bandNewRow = newRow;
+        int bandNewRowCount = newRowCount;
         printBand(null, getReportLayout().getHeaderBand(), false);
+        currentBandName = bandName;
+        isDetail = detail;
+        newRow = bandNewRow;
+        newRowCount = bandNewRowCount;
     }
 
     private void printFooterBand() throws QueryException {
@@ -1086,13 +1170,9 @@ public abstract class ResultExporter {
         Band band;
         List<FunctionCache> fCache = null;
         isDetail = false;
-        boolean isPageHeaderFooter = false;
         if (gc == null) {
             if (staticBand != null) {
                 band = staticBand;
-                if (ReportLayout.PAGE_HEADER_BAND_NAME.equals(band.getName()) || ReportLayout.PAGE_FOOTER_BAND_NAME.equals(band.getName())) {                	
-                	isPageHeaderFooter = true;
-                }
             } else {
                 isDetail = true;
                 band = getReportLayout().getDetailBand();
@@ -1107,34 +1187,25 @@ public abstract class ResultExporter {
         }
         currentBandName = band.getName();        
 
-        int rows = band.getRowCount();
-        int cols = band.getColumnCount();
-        Set<CellElement> ignored = getIgnoredCells(band);        
+        BandPlan plan = getBandPlan(band);
+        int cols = plan.cols;
         int lastRow = -1;        
-        for (int i = 0; i < rows; i++) {
+        for (int i = 0; i < plan.rows.length; i++) {
+        	BandPlan.Row planRow = plan.rows[i];
         	
             // hide when expression
             // a hidden cell is considered to be rendered with null value (but value is taken
             // into account in functions)
             // if all cells from a row are hidden , we consider the entire row hidden (hideAll)
             // and no cell from that row is rendered
-            boolean[] hide = new boolean[cols];
+            boolean[] hide = null;
             boolean hideAll = false;
-            int count = 0;
-            boolean rowWithHideExpression = false;
-            boolean hideExpressionForEmptyData = false;
-            for (int j = 0; j < cols; j++) {
-                BandElement bandElement = band.getElementAt(i, j);
-                if ((bandElement != null) && (bandElement.getHideWhenExpression() != null)) {
-                   rowWithHideExpression = true;
-                   if (hideExpressionForEmptyData(bandElement.getHideWhenExpression())) {
-                	   hideExpressionForEmptyData = true; 
-                   }
-                }
-            }
-            if (rowWithHideExpression) {
+            // first crossing renders nothing, so hide expressions are not evaluated there
+            if (planRow.hasHideExpression && !(this instanceof FirstCrossingExporter)) {
+            	hide = new boolean[cols];
+            	int count = 0;
                 for (int j = 0; j < cols; j++) {
-                    BandElement bandElement = band.getElementAt(i, j);
+                    BandElement bandElement = planRow.elements[j];
                     if ((bandElement != null) && (bandElement.getHideWhenExpression() != null)) {
                         String expression = bandElement.getHideWhenExpression();
                         Boolean result = (Boolean) evaluateExpression("", expression, currentBandName, null, gc);
@@ -1152,16 +1223,13 @@ public abstract class ResultExporter {
                 }
             }
             
-            if (printRowsForEmptyData && !hideExpressionForEmptyData) {
+            if (printRowsForEmptyData && !planRow.hideExpressionForEmptyData) {
             	continue;
             }
             
-            for (int j = 0; j < cols; j++) {
-                
-                if (findIgnoredCellElement(ignored, i, j)) {
-                    //System.out.println("*** header ignored i="+i + "  j="+j);                	
-                    continue;
-                }                                
+            int gridRow = planRow.gridRow;
+            for (BandPlan.Cell cell : planRow.cells) {
+            	int j = cell.column;
                 
                 // newRow is computed relative to cells that are renedered through exportCell
                 // ignored cells are not taken into account
@@ -1171,13 +1239,12 @@ public abstract class ResultExporter {
                     newRow = false;                    
                 }
                 
-                BandElement bandElement = band.getElementAt(i, j);      
+                BandElement bandElement = cell.element;      
                 if (bandElement != null) {
-                	newRowCount = Math.max(newRowCount, bandElement.getRowSpan());
+                	newRowCount = Math.max(newRowCount, cell.rowSpan);
                 }
                 if (newRow) {                       	
-                	int gridRow = getReportLayout().getGridRow(band.getName(), i);
-                	RowElement re = getRowElement(getReportLayout(), gridRow);
+                	RowElement re = planRow.rowElement;
                 	// if new page is put for the first row in the layout, we should not create a new page                	
                 	if (re.isStartOnNewPage() && !start ) {
                 		if (!startNewPage) {
@@ -1233,24 +1300,20 @@ public abstract class ResultExporter {
                 	}
                 }
                 
-                Object value = getBandElementValue(fCache, gc, staticBand, hasFunction, usePrevious, bandElement);
+                Object value;
+                if (cell.isStatic) {
+                	value = cell.staticValue;
+                } else {
+                	value = getBandElementValue(fCache, gc, staticBand, hasFunction, usePrevious, bandElement);
+                }
 
                 // hide when expression
-                if (!hideAll && hide[j]) {
+                if (!hideAll && (hide != null) && hide[j]) {
                     value = null;
                 }
 
-                int rowSpan = 1, colSpan = 1;
-                if (bandElement != null) {
-                    rowSpan = bandElement.getRowSpan();
-                    colSpan = bandElement.getColSpan();
-                }
-
-                int gridRow = getReportLayout().getGridRow(band.getName(), i);
-                boolean isImage = bandElement instanceof ImageBandElement;
-                
                 if (!hideAll) {
-                    exportCell(band.getName(), bandElement, value, gridRow, i, j, cols, rowSpan, colSpan, isImage);                    
+                    exportCell(band.getName(), bandElement, value, gridRow, i, j, cols, cell.rowSpan, cell.colSpan, cell.isImage);                    
                 }
                 lastRow = i;
                 
@@ -1261,7 +1324,7 @@ public abstract class ResultExporter {
                 }
             }
             // page header and page footer do not count for row computation
-            if (!isPageHeaderFooter) {
+            if (!plan.pageHeaderFooter) {
             	exporterRow++;
             	if (!hideAll) {
             		if (ReportLayout.HEADER_BAND_NAME.equals(band.getName())) {
@@ -1275,6 +1338,29 @@ public abstract class ResultExporter {
         }        
     }
     
+    // plans are built once per export, the first time a band is printed
+    private BandPlan getBandPlan(Band band) {
+    	BandPlan plan = bandPlans.get(band.getName());
+    	if ((plan == null) || (plan.band != band)) {
+    		plan = new BandPlan(getReportLayout(), band, getIgnoredCells(band));
+    		for (BandPlan.Row row : plan.rows) {
+    			row.rowElement = getRowElement(getReportLayout(), row.gridRow);
+    			for (BandElement bandElement : row.elements) {
+    				if ((bandElement != null) && hideExpressionForEmptyData(bandElement.getHideWhenExpression())) {
+    					row.hideExpressionForEmptyData = true;
+    				}
+    			}
+    			for (BandPlan.Cell cell : row.cells) {
+    				if (cell.isStatic) {
+    					cell.staticValue = getStringValue(cell.element, null);
+    				}
+    			}
+    		}
+    		bandPlans.put(band.getName(), plan);
+    	}
+    	return plan;
+    }
+    
     private Object getBandElementValue(List<FunctionCache> fCache, GroupCache gc, Band staticBand, 
     		boolean hasFunction, boolean usePrevious, BandElement bandElement) throws QueryException {
     	
@@ -1296,7 +1382,7 @@ public abstract class ResultExporter {
                 // here compute the footer functions
                 for (FunctionCache fc : footerFunctionCache) {
                     if (!fc.isExpression() && fc.getFunctionColumn().equals(column)) {
-                        fc.getFunction().compute(value);
+                        FunctionUtil.compute(fc.getFunction(), value);
                     }
                 }
 
@@ -1323,7 +1409,7 @@ public abstract class ResultExporter {
                 // here compute the footer functions
                 for (FunctionCache fc : footerFunctionCache) {
                     if (fc.isExpression() && fc.getFunctionColumn().equals( ((ExpressionBandElement) bandElement).getExpressionName() )) {
-                        fc.getFunction().compute(value);
+                        FunctionUtil.compute(fc.getFunction(), value);
                     }
                 }
                 // overwrite repeated value
@@ -1354,9 +1440,10 @@ public abstract class ResultExporter {
 									templatesValues.put(getFunctionTemplate(gc, fbe, true), value);
 								}
 							} else {
-								value = getFunctionTemplate(gc, fbe, false);								
-								if (templatesValues.containsKey(value)) {
-									value = templatesValues.get(value);									
+								// values computed by the database contain only header functions
+								String template = getFunctionTemplate(gc, fbe, false);
+								if (templatesValues.containsKey(template)) {
+									value = templatesValues.get(template);
 								}
 							}
 						}
@@ -1391,7 +1478,9 @@ public abstract class ResultExporter {
             	} 
             }
         } else if (bandElement instanceof ImageBandElement) {
-        	if (bandElement instanceof ChartBandElement) {
+        	if (this instanceof FirstCrossingExporter) {
+        		// images are not needed to compute header functions
+        	} else if (bandElement instanceof ChartBandElement) {
         		// generate chart image
         		generateChartImage((ChartBandElement)bandElement);
         	} else if (bandElement instanceof BarcodeBandElement) {
@@ -1441,66 +1530,21 @@ public abstract class ResultExporter {
 
     private Object evaluateExpression(String expressionName, String expression, String bandName, String pattern, GroupCache gc) throws QueryException {    	    	
         Object value = null;        
-        Expression e = jexl.createExpression(expression);
-        // create context with all variables, parameters and columns
-        // make sure to replace spaces in column names (as in designer expression evaluator)
-        JexlContext checkContext = new MapContext();            
-        for (Variable var : VariableFactory.getVariables()) {
-        	if (((this instanceof RtfExporter) || (this instanceof XlsExporter) || (this instanceof XlsxExporter)) && Variable.PAGE_NO_VARIABLE.equals(var.getName())) {
-        		// RtfPageNumber must be added in RtfExporter -> let the variable as it is
-        		checkContext.set("$V_" + var.getName(), "$V_" + var.getName());
-        	} else if ( (this instanceof PdfExporter) && Variable.TOTAL_PAGE_NO_VARIABLE.equals(var.getName()) ) {
-        		// compute total page no inside PdfExporter
-        		checkContext.set("$V_" + var.getName(), "$V_" + var.getName());        		
-        	} else {	
-        		checkContext.set("$V_" + var.getName(), getValue(var, bandName));
-        	}	
-        }
-        for (String paramName : bean.getParametersBean().getParamValues().keySet()) {
-        	Object obj = bean.getParametersBean().getParamValues().get(paramName);
-        	if (obj instanceof IdName) {
-        		obj = ((IdName)obj).toString();
-        	}
-            checkContext.set("$P_" + paramName, obj);
-        }
-        // expresions outside detail or group bands do not contain columns              
-        if (expression.contains("$C") ) {        	
-            for (int k = 0, size = getResult().getColumnCount(); k < size; k++) {
-                String columnName = getResult().getColumnName(k);
-                String col = columnName.replaceAll("\\s", SPACE_REPLACEMENT);
-                checkContext.set("$C_" + col, getResult().nextValue(columnName));
-            }
-        }
-        
-        // ony expressions in footers or headers can contain functions
-        if (expression.contains("$F")) {        	
-        	for (String f : bean.getReportLayout().getFunctions()) {        		
-        		FunctionCache fc = findFunctionCache(f, bandName);
-        		Double fv = new Double(0);
-        		if (fc != null) {        			        		
-        			fv = (Double)fc.getFunction().getComputedValue();
-        		}        		
-        		checkContext.set("$F_" + f,fv);
-        	}			
-        	// expressions in headers
-	        if (needsFirstCrossing()  && !(this instanceof FirstCrossingExporter)) {   
-	        	for (FunctionBandElement fbe : ReportUtil.getFunctionsFromExpression(expression)) {	        		
-		    		value = getFunctionTemplate(gc, fbe, false);
-		    		String template = (String)value;		    		
-		    		if (templatesValues.containsKey(value)) {            			
-		    			value = templatesValues.get(value);            			
-		    		}
-		    		checkContext.set("$F_" + fbe.getFunction()+"_" + fbe.getColumn(),value);
-	        	}
-	    	} 
-        }
+        Expression e = bean.getExpressionCache().getExpression(expression);
+        // variables, parameters, columns and functions are read only when the expression asks for them
+        expressionContext.init(expression, bandName, gc);
         try {
-            value = e.evaluate(checkContext);
+            value = e.evaluate(expressionContext);
             if (value instanceof String) {
             	I18nLanguage lang = I18nUtil.getLanguageByName(bean.getReportLayout(), bean.getLanguage());
             	value = StringUtil.getI18nString((String)value, lang);
             }
+        } catch (ContextValueException ex) {
+        	throw ex.getQueryException();
         } catch (JexlException ex) {
+        	if (ex.getCause() instanceof ContextValueException) {
+        		throw ((ContextValueException) ex.getCause()).getQueryException();
+        	}
             ex.printStackTrace();
             LOG.error(ex.getMessage(), ex);
         }                    
@@ -1508,6 +1552,188 @@ public abstract class ResultExporter {
         return value;
     }
     
+    // context for expression evaluation
+    // make sure to replace spaces in column names (as in designer expression evaluator)
+    private class ExpressionContext implements JexlContext {
+    	
+    	private Map<String, Variable> variables;
+    	private Map<String, Integer> columnIndexes;
+    	private Set<String> functions;
+    	private Boolean firstCrossing;
+    	// variables set by the expression itself
+    	private Map<String, Object> locals = new HashMap<String, Object>();
+    	private String expression;
+    	private String bandName;
+    	private GroupCache gc;
+    	
+    	private void init(String expression, String bandName, GroupCache gc) {
+    		this.expression = expression;
+    		this.bandName = bandName;
+    		this.gc = gc;
+    		if (!locals.isEmpty()) {
+    			locals.clear();
+    		}
+    	}
+
+		public Object get(String name) {
+			if (locals.containsKey(name)) {
+				return locals.get(name);
+			}
+			if (name.startsWith("$C_")) {
+				Integer index = getColumnIndexes().get(name);
+				if (index == null) {
+					return null;
+				}
+				try {
+					return getResult().nextValue(index);
+				} catch (QueryException e) {
+					throw new ContextValueException(e);
+				}
+			} else if (name.startsWith("$P_")) {
+				Object obj = bean.getParametersBean().getParamValues().get(name.substring(3));
+				if (obj instanceof IdName) {
+					obj = ((IdName) obj).toString();
+				}
+				return obj;
+			} else if (name.startsWith("$V_")) {
+				Variable var = getVariables().get(name);
+				if (var == null) {
+					return null;
+				}
+				if (((ResultExporter.this instanceof RtfExporter) || (ResultExporter.this instanceof XlsExporter) || (ResultExporter.this instanceof XlsxExporter)) && Variable.PAGE_NO_VARIABLE.equals(var.getName())) {
+					// RtfPageNumber must be added in RtfExporter -> let the variable as it is
+					return name;
+				} else if ((ResultExporter.this instanceof PdfExporter) && Variable.TOTAL_PAGE_NO_VARIABLE.equals(var.getName())) {
+					// compute total page no inside PdfExporter
+					return name;
+				}
+				return getValue(var, bandName);
+			} else if (name.startsWith("$F_")) {
+				// ony expressions in footers or headers can contain functions
+				// expressions in headers
+				if (isFirstCrossingNeeded() && !(ResultExporter.this instanceof FirstCrossingExporter)) {
+					for (FunctionBandElement fbe : bean.getExpressionCache().getFunctions(expression)) {
+						if (name.equals("$F_" + fbe.getFunction() + "_" + fbe.getColumn())) {
+							try {
+								Object value = getFunctionTemplate(gc, fbe, false);
+								if (templatesValues.containsKey(value)) {
+									value = templatesValues.get(value);
+								}
+								return value;
+							} catch (QueryException e) {
+								throw new ContextValueException(e);
+							}
+						}
+					}
+				}
+				String f = name.substring(3);
+				if (!getFunctions().contains(f)) {
+					return null;
+				}
+				FunctionCache fc = findFunctionCache(f, bandName);
+				Object fv = new Double(0);
+				if (fc != null) {
+					fv = fc.getFunction().getComputedValue();
+				}
+				return fv;
+			}
+			return null;
+		}
+
+		public void set(String name, Object value) {
+			locals.put(name, value);
+		}
+
+		public boolean has(String name) {
+			if (locals.containsKey(name)) {
+				return true;
+			}
+			if (name.startsWith("$C_")) {
+				return getColumnIndexes().containsKey(name);
+			} else if (name.startsWith("$P_")) {
+				return bean.getParametersBean().getParamValues().containsKey(name.substring(3));
+			} else if (name.startsWith("$V_")) {
+				return getVariables().containsKey(name);
+			} else if (name.startsWith("$F_")) {
+				return getFunctions().contains(name.substring(3)) ||
+					(isFirstCrossingNeeded() && !(ResultExporter.this instanceof FirstCrossingExporter));
+			}
+			return false;
+		}
+		
+		private Map<String, Variable> getVariables() {
+			if (variables == null) {
+				variables = new HashMap<String, Variable>();
+				for (Variable var : VariableFactory.getVariables()) {
+					variables.put("$V_" + var.getName(), var);
+				}
+			}
+			return variables;
+		}
+		
+		private Map<String, Integer> getColumnIndexes() {
+			if (columnIndexes == null) {
+				columnIndexes = new HashMap<String, Integer>();
+				String[] columnVariables = getColumnVariables();
+				for (int k = 0; k < columnVariables.length; k++) {
+					if (columnVariables[k] != null) {
+						columnIndexes.put(columnVariables[k], k);
+					}
+				}
+			}
+			return columnIndexes;
+		}
+		
+		private Set<String> getFunctions() {
+			if (functions == null) {
+				functions = bean.getReportLayout().getFunctions();
+			}
+			return functions;
+		}
+		
+		private boolean isFirstCrossingNeeded() {
+			if (firstCrossing == null) {
+				firstCrossing = needsFirstCrossing();
+			}
+			return firstCrossing;
+		}
+    }
+    
+    // a column or function value cannot be read while evaluating an expression
+    private static class ContextValueException extends RuntimeException {
+    	
+    	private static final long serialVersionUID = 4034277949857268375L;
+    	
+    	private QueryException queryException;
+    	
+    	private ContextValueException(QueryException queryException) {
+    		super(queryException);
+    		this.queryException = queryException;
+    	}
+    	
+    	private QueryException getQueryException() {
+    		return queryException;
+    	}
+    }
+    
+    // null for a column with the same name as a previous column
+    private String[] getColumnVariables() {
+    	if (columnVariables == null) {
+    		int size = getResult().getColumnCount();
+    		String[] variables = new String[size];
+    		Set<String> names = new HashSet<String>();
+    		for (int k = 0; k < size; k++) {
+    			String columnName = getResult().getColumnName(k);
+    			String col = columnName.replaceAll("\\s", SPACE_REPLACEMENT);
+    			if (names.add(col)) {
+    				variables[k] = "$C_" + col;
+    			}
+    		}
+    		columnVariables = variables;
+    	}
+    	return columnVariables;
+    }
+
     private FunctionCache findFunctionCache(String fexp, String bandName) {
     	if (bandName.startsWith(ReportLayout.GROUP_FOOTER_BAND_NAME_PREFIX)) {    		
     		for (GroupCache gc : groupCache) {
@@ -1595,8 +1821,14 @@ public abstract class ResultExporter {
         }
     }
 
+    // an image whose job failed on the render pool is not generated
+    private String awaitImage(String image) {
+    	return ImageRenderer.await(image) ? image : "not_generated";
+    }
+
     protected byte[] getImage(String image) throws IOException {
         //System.out.println("%%% LOAD IMAGE="+image);
+        image = awaitImage(image);
         InputStream is = getClass().getResourceAsStream("/" + image);
         if (is == null) {
         	LOG.error("Image '" + image + "' not found in classpath.");
@@ -1616,6 +1848,7 @@ public abstract class ResultExporter {
     }
 
     protected int[] getRealImageSize(String image) {
+        image = awaitImage(image);
         InputStream is = getClass().getResourceAsStream("/" + image);
         int[] result = new int[2];
         try {
@@ -1644,6 +1877,7 @@ public abstract class ResultExporter {
     }
 
     protected byte[] getScaledImage(String image, int width, int height) throws IOException {
+        image = awaitImage(image);
         InputStream is = getClass().getResourceAsStream("/" + image);
         if (is == null) {
             throw new IOException("Image '" + image + "' not found.");
@@ -1712,6 +1946,37 @@ public abstract class ResultExporter {
     protected void printRawRecord() throws QueryException {
     }
 
+    // takes the position inside the report from the exporter that evaluates the bands
+    // (used by TeeExporter before every call to a delegate exporter)
+    void shareState(ResultExporter source) {
+    	// after first crossing the source may read the rows from a rewound result
+    	if (bean.getResult() != source.getResult()) {
+    		bean.setResult(source.getResult());
+    	}
+    	isDetail = source.isDetail;
+    	groupCache = source.groupCache;
+    	footerFunctionCache = source.footerFunctionCache;
+    	newRowCount = source.newRowCount;
+    	exporterRow = source.exporterRow;
+    	// page row is kept by every exporter because it may be changed by the format
+    	// (new sheet, rows added by subreports); only the rows printed since last call are added
+    	if (source.pageRow < sharedPageRow) {
+    		pageRow = source.pageRow;
+    	} else {
+    		pageRow += source.pageRow - sharedPageRow;
+    	}
+    	sharedPageRow = source.pageRow;
+    	headerRow = source.headerRow;
+    	resultSetRow = source.resultSetRow;
+    	reportGroupRow = source.reportGroupRow;
+    	isEmpty = source.isEmpty;
+    	previousRow = source.previousRow;
+    	currentBandName = source.currentBandName;
+    	templatesValues = source.templatesValues;
+    	groupTemplateKeys = source.groupTemplateKeys;
+    	groupValues = source.groupValues;
+    }
+
     private void createNewPage() {
         pageRow = 0;
         headerRow = 0;
@@ -1744,14 +2009,23 @@ public abstract class ResultExporter {
         return bean.getReportLayout().getBand(ReportLayout.FOOTER_BAND_NAME).getRowCount();
     }
     
-    protected int getRowsCount() {
-    	int recordRows = getResult().getRowCount();
-    	if (recordRows == -1) {
-    		throw new UnsupportedOperationException("Must use true value for computeCount inside QueryExecutor in order to get rows count!");
+    // true if gridRow of the band being printed is the last row printed by this exporter :
+    // the last footer row, or the last detail row of the last record if there is no footer
+    // (the record count is not needed, the next record is read in advance)
+    protected boolean isLastRow(int gridRow) {
+    	int footerRows = getFooterRows();
+    	if (footerRows > 0) {
+    		return ReportLayout.FOOTER_BAND_NAME.equals(currentBandName) && (gridRow == footerRows - 1);
+    	}
+    	if (!ReportLayout.DETAIL_BAND_NAME.equals(currentBandName) || (gridRow != getDetailRows() - 1)) {
+    		return false;
+    	}
+    	try {
+    		return getResult().lookAhead(1).isEmpty();
+    	} catch (QueryException e) {
+    		LOG.error(e.getMessage(), e);
+    		return false;
     	}
-    	return getHeaderRows() + 
-    		   getDetailRows() * recordRows +
-    		   getFooterRows();	
     }
 
     private ExpressionBandElement getExpressionBandElement(String name) {
@@ -1831,13 +2105,7 @@ public abstract class ResultExporter {
     	if (bean.getConnection() == null) {
     		return;
     	}
-    	String image = null;
     	Chart chart = bandElement.getChart();
-    	ChartRunner runner = new ChartRunner();
-        runner.setFormat(ChartRunner.IMAGE_FORMAT);
-        runner.setChart(chart);
-        runner.setConnection(bean.getConnection());
-        runner.setQueryTimeout(bean.getQueryTimeout());
         // put subreport parameters
      	bean.getParametersBean().addSubreportParameters(chart.getReport().getParameters());
      	
@@ -1856,38 +2124,143 @@ public abstract class ResultExporter {
 			}
 		}
      	
-        runner.setParameterValues(bean.getParametersBean().getParamValues()); 
-        String localPath = imageChartPath;
-        if (localPath == null) {
-        	localPath = bean.getImageChartPath();
-        }        
-        runner.setImagePath(localPath);  
-        I18nLanguage lang = I18nUtil.getLanguageByName(bean.getReportLayout(), bean.getLanguage());
-        if (lang != null) {
-        	runner.setLanguage(lang.getName());
-        }
-        int width = (bandElement.getWidth() == null) ? 0 : bandElement.getWidth();
-        int height = (bandElement.getHeight() == null) ? 0 : bandElement.getHeight();
-        runner.setImageWidth(width);
-        runner.setImageHeight(height);
-        try {                        
-            runner.run();
-            image = runner.getChartImageName();
-            bandElement.setImage(image);
-        } catch (Exception e) {
+        Map<String, Object> values = bean.getParametersBean().getParamValues();
+        ChartRunner runner = createChartRunner(bandElement, values);
+        
+        // same chart with same parameter values was generated before (or it is rendered now)
+        Object cacheKey = getChartCacheKey(bandElement, values);
+        String cachedImage = (String) getCachedSubreport(cacheKey);
+        if ((cachedImage != null) && (ImageRenderer.isPending(cachedImage) || 
+        		new File(getChartImagePath() + File.separator + cachedImage).exists())) {
+        	bandElement.setImage(cachedImage);
+        	return;
+        }
+        
+        String image;
+        if (ImageRenderer.isEnabled() && (chart.getYColumnQuery() == null)) {
+        	// query is executed now (or it was executed for a previous row), image is rendered on another thread
+        	Object key = createChartKey(bandElement, values);
+        	if (submittedImages.containsKey(key)) {
+        		image = submittedImages.remove(key);
+        	} else {
+        		image = submitChartImage(runner);
+        	}
+        	if (isDetail) {
+        		submitNextChartImages(bandElement);
+        	}
+        } else {
+        	try {
+        		runner.run();
+        		image = runner.getChartImageName();
+        	} catch (Exception e) {
+        		image = null;
+        		e.printStackTrace();
+        	}
+        }
+        if (image == null) {
         	// if there is an exception we must reset image name (not generated) on band element
         	// otherwise the last one generated will be used, which is false!
         	bandElement.setImage("not_generated");
-            e.printStackTrace();            
-        }   
+        } else {
+        	bandElement.setImage(image);
+        	putCachedSubreport(cacheKey, image);
+        }
+    }
+    
+    private ChartRunner createChartRunner(ChartBandElement bandElement, Map<String, Object> values) {
+    	ChartRunner runner = new ChartRunner();
+        runner.setFormat(ChartRunner.IMAGE_FORMAT);
+        runner.setChart(bandElement.getChart());
+        runner.setConnection(bean.getConnection());
+        runner.setQueryTimeout(bean.getQueryTimeout());
+        runner.setParameterValues(values); 
+        runner.setImagePath(getChartImagePath());  
+        runner.setLanguage(getChartLanguage());
+        runner.setImageWidth((bandElement.getWidth() == null) ? 0 : bandElement.getWidth());
+        runner.setImageHeight((bandElement.getHeight() == null) ? 0 : bandElement.getHeight());
+        return runner;
+    }
+    
+    private String getChartImagePath() {
+    	String localPath = imageChartPath;
+        if (localPath == null) {
+        	localPath = bean.getImageChartPath();
+        }        
+        return (localPath == null) ? "." : localPath;
+    }
+    
+    private String getChartLanguage() {
+    	I18nLanguage lang = I18nUtil.getLanguageByName(bean.getReportLayout(), bean.getLanguage());
+    	return (lang == null) ? null : lang.getName();
+    }
+    
+    // key of a chart image for the given parameter values, null if images are not cached
+    private Object getChartCacheKey(ChartBandElement bandElement, Map<String, Object> values) {
+    	if (!bean.getSubreportCache().isEnabled()) {
+    		return null;
+    	}
+    	return createChartKey(bandElement, values);
+    }
+    
+    private Object createChartKey(ChartBandElement bandElement, Map<String, Object> values) {
+    	Chart chart = bandElement.getChart();
+    	return SubreportCache.createKey(getSubreportParameterValues(chart.getReport().getParameters(), values),
+    			ChartBandElement.class.getName(), chart.getName(), ReportUtil.getSql(chart.getReport()),
+    			getChartImagePath(), bandElement.getWidth(), bandElement.getHeight(), getChartLanguage());
+    }
+    
+    // execute chart query and render the image on the render pool ; null if chart has no data or query fails
+    private String submitChartImage(ChartRunner runner) {
+    	String image = "chart_" + UUID.randomUUID() + ".jpg";
+    	runner.setImageName(image);
+    	try {
+    		ImageRenderer.submit(image, runner.prepareImage());
+    		renderedImages.add(image);
+    		return image;
+    	} catch (NoDataFoundException e) {
+    		return null;
+    	} catch (InterruptedException e) {
+    		Thread.currentThread().interrupt();
+    		return null;
+    	} catch (Exception e) {
+    		e.printStackTrace();
+    		return null;
+    	}
+    }
+    
+    // charts of next detail rows are submitted now, so their images are rendered while this row is exported
+    // (images are taken from submitted images when their rows are exported)
+    private void submitNextChartImages(ChartBandElement bandElement) {
+    	List<Object[]> rows = lookAhead();
+    	for (Object[] row : rows) {
+    		Map<String, Object> values = new HashMap<String, Object>(bean.getParametersBean().getParamValues());
+    		for (QueryParameter qp : bean.getParametersBean().getSubreportParams().values()) {
+    			int index = getResult().findColumn(qp.getName());
+    			if (index != -1) {
+    				values.put(qp.getName(), row[index]);
+    			}
+    		}
+    		Object key = createChartKey(bandElement, values);
+    		if (!submittedImages.containsKey(key) && !bean.getSubreportCache().containsKey(getChartCacheKey(bandElement, values))) {
+    			submittedImages.put(key, submitChartImage(createChartRunner(bandElement, values)));
+    		}
+    	}
+    }
+    
+    // next rows of the result, which can be rendered now by the other render threads
+    private List<Object[]> lookAhead() {
+    	try {
+    		return getResult().lookAhead(ImageRenderer.getThreads());
+    	} catch (QueryException e) {
+    		LOG.error(e.getMessage(), e);
+    		return new ArrayList<Object[]>();
+    	}
     }
     
     private void generateBarcodeImage(BarcodeBandElement bandElement) {    	
     	if (bean.getConnection() == null) {
     		return;
     	}    	    	
-    	int width = (bandElement.getWidth() == null) ? 1 : bandElement.getWidth();
-		int height = (bandElement.getHeight() == null) ? 1 : bandElement.getHeight();
         String value = bandElement.getValue();
         if (bandElement.isColumn()) {
         	try {
@@ -1896,18 +2269,68 @@ public abstract class ResultExporter {
 				e.printStackTrace();
 			}
         }
+        // image may be submitted when a previous row was exported
+        String imageName = submittedImages.remove(getBarcodeKey(bandElement, value));
+        if (imageName == null) {
+        	imageName = submitBarcodeImage(bandElement, value);
+        }
+        if (isDetail && bandElement.isColumn() && ImageRenderer.isEnabled()) {
+        	submitNextBarcodeImages(bandElement);
+        }
+        bandElement.setImage(imageName);
+    }
+    
+    // image name is taken now, the image is drawn and written on the render pool
+    private String submitBarcodeImage(BarcodeBandElement bandElement, final String code) {
+    	final int width = (bandElement.getWidth() == null) ? 1 : bandElement.getWidth();
+    	final int height = (bandElement.getHeight() == null) ? 1 : bandElement.getHeight();
+    	final String imageName = getBarcodeName(bandElement, "png");
+    	final int type = bandElement.getBarcodeType();
+    	ImageRenderer.submit(imageName, new Runnable() {
+    		public void run() {
+    			saveBarcode(imageName, toBufferedImage(createBarcodeImage(type, code, width, height)), "png");
+    		}
+    	});
+    	if (ImageRenderer.isEnabled()) {
+    		renderedImages.add(imageName);
+    	}
+    	return imageName;
+    }
+    
+    // barcodes of next detail rows are submitted now, so their images are drawn while this row is exported
+    private void submitNextBarcodeImages(BarcodeBandElement bandElement) {
+    	int index = getResult().findColumn(bandElement.getValue());
+    	if (index == -1) {
+    		return;
+    	}
+    	for (Object[] row : lookAhead()) {
+    		String code = String.valueOf(row[index]);
+    		Object key = getBarcodeKey(bandElement, code);
+    		if (!submittedImages.containsKey(key)) {
+    			submittedImages.put(key, submitBarcodeImage(bandElement, code));
+    		}
+    	}
+    }
+    
+    // barcodes with the same key have the same image
+    private Object getBarcodeKey(BarcodeBandElement bandElement, String code) {
+    	return Arrays.asList(BarcodeBandElement.class.getName(), bandElement.getBarcodeType(),
+    			bandElement.getWidth(), bandElement.getHeight(), code);
+    }
+    
+    private static Image createBarcodeImage(int barcodeType, String value, int width, int height) {
         Image image = null;       
-		if (BarcodeBandElement.isEANFamily(bandElement.getBarcodeType())) {
+		if (BarcodeBandElement.isEANFamily(barcodeType)) {
 			BarcodeEAN codeEAN = new BarcodeEAN();
-			codeEAN.setCodeType(bandElement.getBarcodeType());
+			codeEAN.setCodeType(barcodeType);
 			codeEAN.setCode(value);			
 			image = codeEAN.createAwtImage(Color.BLACK, Color.WHITE);
 		} else {
-			if (bandElement.getBarcodeType() == BarcodeBandElement.PDF417) {
+			if (barcodeType == BarcodeBandElement.PDF417) {
 				BarcodePDF417 barcode417 = new BarcodePDF417();
 				barcode417.setText(value);				
 				image = barcode417.createAwtImage(Color.BLACK, Color.WHITE);
-			} else if (bandElement.getBarcodeType() == BarcodeBandElement.DATAMATRIX) {
+			} else if (barcodeType == BarcodeBandElement.DATAMATRIX) {
 				BarcodeDatamatrix datamatrix = new BarcodeDatamatrix();					
 				try {
 					datamatrix.generate(value);
@@ -1915,33 +2338,32 @@ public abstract class ResultExporter {
 					e.printStackTrace();
 				}				
 				image = datamatrix.createAwtImage(Color.BLACK, Color.WHITE);
-			} else if (bandElement.getBarcodeType() == BarcodeBandElement.QRCODE) {				
+			} else if (barcodeType == BarcodeBandElement.QRCODE) {				
 				BarcodeQRCode qrcode = new BarcodeQRCode(value, width, height, null);				
 				image = qrcode.createAwtImage(Color.BLACK, Color.WHITE);
 			} else {
 				Barcode barcode = null;
-				if (bandElement.getBarcodeType() == BarcodeBandElement.CODE128) {
+				if (barcodeType == BarcodeBandElement.CODE128) {
 					barcode = new Barcode128();					
-				} else if (bandElement.getBarcodeType() == BarcodeBandElement.CODE128_RAW) {
+				} else if (barcodeType == BarcodeBandElement.CODE128_RAW) {
 					barcode = new Barcode128();
-					barcode.setCodeType(bandElement.getBarcodeType());
-				} else if (bandElement.getBarcodeType() == BarcodeBandElement.INTER25) {
+					barcode.setCodeType(barcodeType);
+				} else if (barcodeType == BarcodeBandElement.INTER25) {
 					barcode = new BarcodeInter25();
-				} else if (bandElement.getBarcodeType() == BarcodeBandElement.CODE39) {
+				} else if (barcodeType == BarcodeBandElement.CODE39) {
 					barcode = new Barcode39();
-				} else if (bandElement.getBarcodeType() == BarcodeBandElement.CODE39EXT) {
+				} else if (barcodeType == BarcodeBandElement.CODE39EXT) {
 					barcode = new Barcode39();
 					barcode.setStartStopText(false);
 					barcode.setExtended(true);
-				} else if (bandElement.getBarcodeType() == BarcodeBandElement.CODABAR) {
+				} else if (barcodeType == BarcodeBandElement.CODABAR) {
 					barcode = new BarcodeCodabar();
 				}
 				barcode.setCode(value);				
 				image = barcode.createAwtImage(Color.BLACK, Color.WHITE);
 			}
 		}
-        String imageName = saveBarcode(bandElement, toBufferedImage(image), "png"); 
-        bandElement.setImage(imageName);
+		return image;
     }
     
     private BufferedImage toBufferedImage(Image src) {
@@ -1958,16 +2380,18 @@ public abstract class ResultExporter {
         return dest;
     }
     
-    private String saveBarcode(BarcodeBandElement bandElement, BufferedImage image, String ext) {    	
-        String fileName = "barcode_" + bandElement.getBarcodeType() + "_" + barcodeIndex + "." + ext;
-        barcodeIndex++;
+    // images of all exports are written in the same folder (and rendered by the same pool), so names must be unique
+    private String getBarcodeName(BarcodeBandElement bandElement, String ext) {
+        return "barcode_" + bandElement.getBarcodeType() + "_" + UUID.randomUUID() + "." + ext;
+    }
+    
+    private void saveBarcode(String fileName, BufferedImage image, String ext) {    	
         File file = new File(imageChartPath + File.separator + fileName);
         try {
             ImageIO.write(image, ext, file);  // ignore returned boolean
         } catch(IOException e) {
         	e.printStackTrace();            
         }
-        return fileName;
     }
     
     
@@ -2024,6 +2448,30 @@ public abstract class ResultExporter {
 	protected ExporterBean getSubreportExporterBean(Report subreport, boolean rowCount) throws Exception {				
 		String sql = ReportUtil.getSql(subreport);
 		Query query = new Query(sql);
+		putSubreportParameters(subreport);
+		
+		QueryResult batchResult = getSubreportBatchResult(subreport, sql);
+		if (batchResult != null) {
+			return createSubreportExporterBean(subreport, batchResult, false);
+		}
+		
+		QueryExecutor executor = null;
+		try {
+			executor = new QueryExecutor(query, bean.getParametersBean().getParams(), bean.getParametersBean()
+					.getParamValues(), bean.getConnection(), rowCount);
+			executor.setMaxRows(0);
+			executor.setTimeout(bean.getQueryTimeout());
+			QueryResult queryResult = executor.execute();
+			return createSubreportExporterBean(subreport, queryResult, QueryUtil.isProcedureCall(sql));
+		} finally {
+			if (executor != null) {
+				executor.closeCursors();
+			}
+		}
+		
+	}
+	
+	private void putSubreportParameters(Report subreport) {
 		// put subreport parameters
 		bean.getParametersBean().addSubreportParameters(subreport.getParameters());
 		// for reports inside ForReportBandElement we must overwrite parameter values
@@ -2044,25 +2492,90 @@ public abstract class ResultExporter {
     			// if fails a new chance will be given in printBand method
     		}
     	}
-		QueryExecutor executor = null;
-		try {
-			executor = new QueryExecutor(query, bean.getParametersBean().getParams(), bean.getParametersBean()
-					.getParamValues(), bean.getConnection(), rowCount);
-			executor.setMaxRows(0);
-			executor.setTimeout(bean.getQueryTimeout());
-			QueryResult queryResult = executor.execute();
-			boolean isProcedure = QueryUtil.isProcedureCall(sql);
-			ExporterBean eb = new ExporterBean(bean.getConnection(), bean.getQueryTimeout(), queryResult, bean.getOut(),
-					subreport.getLayout(), bean.getParametersBean(), subreport.getBaseName(), false, isProcedure);
-			eb.setImageChartPath(imageChartPath);
-			eb.setSubreport(true);
-			return eb;
-		} finally {
-			if (executor != null) {
-				executor.closeCursors();
+	}
+	
+	/**
+	 * Get the key of a rendered subreport for current parameter values
+	 * 
+	 * @param subreport subreport
+	 * @return cache key, null if rendered subreports are not cached
+	 */
+	protected Object getSubreportCacheKey(Report subreport) {
+		if (!bean.getSubreportCache().isEnabled()) {
+			return null;
+		}
+		putSubreportParameters(subreport);
+		return SubreportCache.createKey(getSubreportParameterValues(subreport.getParameters()),
+				getClass().getName(), subreport.getName(), ReportUtil.getSql(subreport), bean.getLanguage());
+	}
+	
+	// values of report parameters and of the given subreport parameters (not of other subreports)
+	private Map<String, Object> getSubreportParameterValues(List<QueryParameter> subreportParameters) {
+		return getSubreportParameterValues(subreportParameters, bean.getParametersBean().getParamValues());
+	}
+	
+	private Map<String, Object> getSubreportParameterValues(List<QueryParameter> subreportParameters,
+			Map<String, Object> paramValues) {
+		Set<String> names = new HashSet<String>();
+		for (QueryParameter qp : subreportParameters) {
+			names.add(qp.getName());
+		}
+		Map<String, Object> values = new HashMap<String, Object>();
+		for (QueryParameter qp : bean.getParametersBean().getParams().values()) {
+			if (!qp.isSubreportParameter() || names.contains(qp.getName())) {
+				values.put(qp.getName(), paramValues.get(qp.getName()));
 			}
 		}
-		
+		return values;
+	}
+	
+	/**
+	 * Get a rendered subreport (text, table ...) exported before with the same parameter values
+	 * 
+	 * @param key cache key (see getSubreportCacheKey)
+	 * @return rendered subreport or null
+	 */
+	protected Object getCachedSubreport(Object key) {
+		return (key == null) ? null : bean.getSubreportCache().get(key);
+	}
+	
+	protected void putCachedSubreport(Object key, Object subreport) {
+		if (key != null) {
+			bean.getSubreportCache().put(key, subreport);
+		}
+	}
+	
+	private ExporterBean createSubreportExporterBean(Report subreport, QueryResult queryResult, boolean isProcedure) {
+		ExporterBean eb = new ExporterBean(bean.getConnection(), bean.getQueryTimeout(), queryResult, bean.getOut(),
+				subreport.getLayout(), bean.getParametersBean(), subreport.getBaseName(), false, isProcedure);
+		eb.setImageChartPath(imageChartPath);
+		eb.setExpressionCache(bean.getExpressionCache());
+		eb.setSubreportCache(bean.getSubreportCache());
+		eb.setSubreport(true);
+		return eb;
+	}
+	
+	// rows of a detail subreport read together with the rows for next master rows
+	// (see EngineProperties.SUBREPORT_BATCH_SIZE_PROPERTY) ; null if subreport query must be run
+	private QueryResult getSubreportBatchResult(Report subreport, String sql) {
+		int batchSize = EngineProperties.getSubreportBatchSize();
+		if ((batchSize < 2) || !isDetail || (getResult() == null)) {
+			return null;
+		}
+		Map<String, Object> generatedValues = subreport.getGeneratedParamValues();
+		if ((generatedValues != null) && !generatedValues.isEmpty()) {
+			return null;
+		}
+		SubreportBatch batch = subreportBatches.get(subreport);
+		if ((batch == null) && !subreportBatches.containsKey(subreport)) {
+			batch = SubreportBatch.create(sql, bean.getParametersBean().getParams(), getResult());
+			subreportBatches.put(subreport, batch);
+		}
+		if (batch == null) {
+			return null;
+		}
+		return batch.getResult(getResult(), bean.getParametersBean().getParams(), bean.getParametersBean()
+				.getParamValues(), bean.getConnection(), bean.getQueryTimeout(), batchSize);
 	}
 	
 	private VariableBandElement getTotalPageNoVbe(ReportLayout layout) {
@@ -0,0 +1,343 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ro.nextreports.engine.exporter;
+
+import java.math.BigDecimal;
+import java.sql.Blob;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.sql.rowset.serial.SerialBlob;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import ro.nextreports.engine.queryexec.MemoryQueryResult;
+import ro.nextreports.engine.queryexec.Query;
+import ro.nextreports.engine.queryexec.QueryException;
+import ro.nextreports.engine.queryexec.QueryExecutor;
+import ro.nextreports.engine.queryexec.QueryParameter;
+import ro.nextreports.engine.queryexec.QueryResult;
+import ro.nextreports.engine.util.QueryUtil;
+
+/**
+ * Rows of a detail subreport read for many master rows with a single query. The parameter which
+ * takes its value from a master column is used as "IN (values from next master rows)" instead of
+ * "column = value", the column is added to the select list (with KEY_COLUMN alias) and the rows are
+ * partitioned in memory by its value. Only the partitions of the current window of master rows are kept.
+ * 
+ * Rows are partitioned with java equality, so only numeric and date master columns are used : strings
+ * which are equal for the database (padded CHAR values, case insensitive collations) are not equal in java.
+ * If the batch still returns rows which do not match any master value, the batch is not used anymore
+ * and the subreport query is run for every master row.
+ */
+class SubreportBatch {
+
+	private static Log LOG = LogFactory.getLog(SubreportBatch.class);
+
+	// queries where a filter on the parameter cannot be replaced by IN
+	private static final Pattern UNSUPPORTED = Pattern.compile(
+			"\\b(limit|top|rownum|fetch|offset|union|intersect|except|minus)\\b", Pattern.CASE_INSENSITIVE);
+	// rows computed from more rows (they would be computed from rows of all master values)
+	private static final Pattern AGGREGATE = Pattern.compile(
+			"\\b(count|sum|avg|min|max|over)\\s*\\(", Pattern.CASE_INSENSITIVE);
+	// the filter must be true for all rows : a top level OR could select rows with other values
+	private static final Pattern UNSUPPORTED_TOP_LEVEL = Pattern.compile(
+			"\\b(group\\s+by|having|or)\\b", Pattern.CASE_INSENSITIVE);
+	private static final Pattern SELECT = Pattern.compile("^\\s*select\\s+(distinct\\s+)?", Pattern.CASE_INSENSITIVE);
+	// column (optionally qualified and quoted) compared with the parameter
+	private static final String COLUMN = "(?:[a-z_][\\w$]*|\"[^\"]+\")(?:\\.(?:[a-z_][\\w$]*|\"[^\"]+\"))*";
+
+	// alias of the column compared with the parameter, added as first column of the batch query
+	static final String KEY_COLUMN = "NEXTREPORTS_BATCH_KEY";
+
+	private final String sql;
+	private final String paramName;
+	private final int masterColumn;
+	private boolean disabled;
+
+	private String[] labels;
+	private String[] classNames;
+	private int[] types;
+	private long executeTime;
+	// subreport rows for every master value from current window
+	private Map<Object, List<Object[]>> partitions = Collections.emptyMap();
+
+	private SubreportBatch(String sql, String paramName, int masterColumn) {
+		this.sql = sql;
+		this.paramName = paramName;
+		this.masterColumn = masterColumn;
+	}
+
+	/**
+	 * Create a batch for a subreport query
+	 * 
+	 * @param sql subreport query
+	 * @param parameters parameters definitions
+	 * @param master master result
+	 * @return batch or null if the subreport query cannot be run for many master rows
+	 */
+	static SubreportBatch create(String sql, Map<String, QueryParameter> parameters, QueryResult master) {
+		if (QueryUtil.isProcedureCall(sql) || UNSUPPORTED.matcher(sql).find()) {
+			return null;
+		}
+		String paramName = null;
+		int occurrences = 0;
+		for (String name : new Query(sql).getParameterNames()) {
+			if (master.findColumn(name) == -1) {
+				continue;
+			}
+			if ((paramName != null) && !paramName.equals(name)) {
+				// more than one parameter from master row
+				return null;
+			}
+			paramName = name;
+			occurrences++;
+		}
+		if ((paramName == null) || (occurrences != 1) || !isKeyType(master.getColumnType(master.findColumn(paramName)))) {
+			return null;
+		}
+		QueryParameter param = parameters.get(paramName);
+		if ((param == null) || param.isIgnore() || QueryParameter.MULTIPLE_SELECTION.equals(param.getSelection())) {
+			return null;
+		}
+		if (AGGREGATE.matcher(sql).find()) {
+			return null;
+		}
+		String topLevel = getTopLevel(sql);
+		Matcher select = SELECT.matcher(topLevel);
+		if (!select.find() || UNSUPPORTED_TOP_LEVEL.matcher(topLevel).find()) {
+			return null;
+		}
+		if (topLevel.startsWith("*", select.end())) {
+			// key column cannot be added before an unqualified *
+			return null;
+		}
+		// "where column = ${param}" or "and column = ${param}" outside parentheses
+		Matcher matcher = Pattern.compile("\\b(?:where|and)\\s+(" + COLUMN + ")\\s*(=\\s*\\$\\{" + Pattern.quote(paramName) + "\\})",
+				Pattern.CASE_INSENSITIVE).matcher(topLevel);
+		if (!matcher.find()) {
+			return null;
+		}
+		String column = sql.substring(matcher.start(1), matcher.end(1));
+		String batchSql = sql.substring(0, select.end()) + column + " AS " + KEY_COLUMN + ", " +
+				sql.substring(select.end(), matcher.start(2)) + "IN ${" + paramName + "}" + sql.substring(matcher.end(2));
+		return new SubreportBatch(batchSql, paramName, master.findColumn(paramName));
+	}
+
+	// values which are equal for the database are equal keys (see getKey)
+	private static boolean isKeyType(int type) {
+		switch (type) {
+			case Types.TINYINT:
+			case Types.SMALLINT:
+			case Types.INTEGER:
+			case Types.BIGINT:
+			case Types.DECIMAL:
+			case Types.NUMERIC:
+			case Types.DATE:
+			case Types.TIMESTAMP:
+				return true;
+			default:
+				return false;
+		}
+	}
+
+	// query with the same length where literals and text inside parentheses are replaced by spaces
+	private static String getTopLevel(String sql) {
+		char[] chars = sql.toCharArray();
+		int depth = 0;
+		boolean literal = false;
+		for (int i = 0; i < chars.length; i++) {
+			char c = chars[i];
+			if (literal) {
+				literal = (c != '\'');
+			} else if (c == '\'') {
+				literal = true;
+			} else if (c == '(') {
+				depth++;
+			} else if (c == ')') {
+				depth--;
+			} else if (depth == 0) {
+				continue;
+			}
+			chars[i] = ' ';
+		}
+		return new String(chars);
+	}
+
+	/**
+	 * Get subreport rows for the current master row. If they were not read, the subreport query is
+	 * run for the current master row and the next batchSize - 1 rows.
+	 * 
+	 * @return subreport result or null if the batch cannot be used (subreport must be run alone)
+	 */
+	QueryResult getResult(QueryResult master, Map<String, QueryParameter> parameters, Map<String, Object> values,
+			Connection connection, int timeout, int batchSize) {
+		if (disabled) {
+			return null;
+		}
+		try {
+			Object value = master.nextValue(masterColumn);
+			List<Object[]> rows = Collections.emptyList();
+			if (value != null) {
+				Object key = getKey(value);
+				if (!partitions.containsKey(key)) {
+					read(master, value, parameters, values, connection, timeout, batchSize);
+				}
+				if (disabled) {
+					return null;
+				}
+				rows = partitions.get(key);
+			}
+			return new MemoryQueryResult(labels, classNames, types, rows, executeTime);
+		} catch (QueryException ex) {
+			LOG.warn("Subreport query cannot be run for many rows : " + ex.getMessage(), ex);
+			disabled = true;
+			return null;
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			return null;
+		}
+	}
+
+	private void read(QueryResult master, Object value, Map<String, QueryParameter> parameters,
+			Map<String, Object> values, Connection connection, int timeout, int batchSize)
+			throws QueryException, InterruptedException {
+		Map<Object, Object> keys = new LinkedHashMap<Object, Object>();
+		keys.put(getKey(value), value);
+		for (Object[] row : master.lookAhead(batchSize - 1)) {
+			Object v = row[masterColumn];
+			if (v != null) {
+				Object key = getKey(v);
+				if (!keys.containsKey(key)) {
+					keys.put(key, v);
+				}
+			}
+		}
+
+		// parameters map is changed by QueryExecutor (ignored parameters)
+		Map<String, QueryParameter> batchParameters = new HashMap<String, QueryParameter>(parameters);
+		QueryParameter param = parameters.get(paramName);
+		QueryParameter batchParam = new QueryParameter(paramName, param.getValueClassName());
+		batchParam.setSelection(QueryParameter.MULTIPLE_SELECTION);
+		batchParameters.put(paramName, batchParam);
+		Map<String, Object> batchValues = new HashMap<String, Object>(values);
+		batchValues.put(paramName, keys.values().toArray());
+
+		Map<Object, List<Object[]>> batchPartitions = new HashMap<Object, List<Object[]>>();
+		for (Object key : keys.keySet()) {
+			batchPartitions.put(key, new ArrayList<Object[]>());
+		}
+		int unmatchedRows = 0;
+		QueryExecutor executor = null;
+		try {
+			executor = new QueryExecutor(new Query(sql), batchParameters, batchValues, connection, false);
+			executor.setMaxRows(0);
+			executor.setTimeout(timeout);
+			QueryResult result = executor.execute();
+			try {
+				// first column is the key (KEY_COLUMN), it is not a subreport column
+				int columns = result.getColumnCount() - 1;
+				labels = new String[columns];
+				classNames = new String[columns];
+				types = new int[columns];
+				for (int i = 0; i < columns; i++) {
+					labels[i] = result.getColumnName(i + 1);
+					classNames[i] = result.getColumnClassName(i + 1);
+					types[i] = result.getColumnType(i + 1);
+				}
+				executeTime = result.getExecuteTime();
+				while (result.hasNext()) {
+					Object key = result.nextValue(0);
+					List<Object[]> rows = (key == null) ? null : batchPartitions.get(getKey(key));
+					if (rows != null) {
+						Object[] row = new Object[columns];
+						for (int i = 0; i < columns; i++) {
+							row[i] = readValue(result, i + 1);
+						}
+						rows.add(row);
+					} else {
+						unmatchedRows++;
+					}
+				}
+			} finally {
+				result.close();
+			}
+		} finally {
+			if (executor != null) {
+				executor.closeCursors();
+			}
+		}
+		if (unmatchedRows > 0) {
+			// database compares the values in another way, partitions may miss rows
+			LOG.info("Subreport rows do not match master values (" + unmatchedRows + " rows) : query is run for every row.");
+			disabled = true;
+			return;
+		}
+		partitions = batchPartitions;
+	}
+
+	// blobs are read after the result is closed
+	private Object readValue(QueryResult result, int column) throws QueryException {
+		Object value = result.nextValue(column);
+		if (value instanceof Blob) {
+			try {
+				value = new SerialBlob((Blob) value);
+			} catch (SQLException e) {
+				throw new QueryException(e);
+			}
+		}
+		return value;
+	}
+
+	// master and subreport values are equal for the database even if they have different java types
+	private static Object getKey(Object value) {
+		if (value instanceof BigDecimal) {
+			return decimalKey((BigDecimal) value);
+		}
+		if ((value instanceof Integer) || (value instanceof Long) || (value instanceof Short)
+				|| (value instanceof Byte)) {
+			return decimalKey(BigDecimal.valueOf(((Number) value).longValue()));
+		}
+		if ((value instanceof Double) || (value instanceof Float)) {
+			double d = ((Number) value).doubleValue();
+			if (Double.isNaN(d) || Double.isInfinite(d)) {
+				return value;
+			}
+			return decimalKey(BigDecimal.valueOf(d));
+		}
+		if (value instanceof java.util.Date) {
+			return Long.valueOf(((java.util.Date) value).getTime());
+		}
+		return value;
+	}
+
+	// zero is not stripped by stripTrailingZeros on older jdks
+	private static BigDecimal decimalKey(BigDecimal value) {
+		return (value.signum() == 0) ? BigDecimal.ZERO : value.stripTrailingZeros();
+	}
+
+}
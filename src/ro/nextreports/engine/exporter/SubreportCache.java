@@ -0,0 +1,150 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ro.nextreports.engine.exporter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import ro.nextreports.engine.EngineProperties;
+
+/**
+ * Rendered subreports and detail chart images of a report, keyed by subreport and parameter values.
+ * 
+ * A subreport shown for many master rows with the same parameter values is exported only once.
+ * The cache is kept in ExporterBean and it is shared by the report exporter and its subreport
+ * exporters. The same cache can be set on many runs (see ReportRunner.setSubreportCache) if data
+ * does not change between them. Least recently used entries are removed when the cache is full.
+ * 
+ * The cache is bounded by number of entries and an entry holds a whole rendered subreport, so it is
+ * disabled by default (see EngineProperties.SUBREPORT_CACHE_SIZE_PROPERTY).
+ */
+public class SubreportCache {
+
+	private final int maxSize;
+	private final Map<Object, Object> entries;
+
+	private long hits;
+	private long misses;
+
+	/**
+	 * Create a cache with the size set by nextreports.subreport.cache.size system property
+	 * (disabled if the property is not set)
+	 */
+	public SubreportCache() {
+		this(EngineProperties.getSubreportCacheSize());
+	}
+
+	/**
+	 * Create a cache
+	 * 
+	 * @param maxSize maximum number of entries (0 disables the cache)
+	 */
+	@SuppressWarnings("serial")
+	public SubreportCache(final int maxSize) {
+		this.maxSize = maxSize;
+		entries = Collections.synchronizedMap(new LinkedHashMap<Object, Object>(16, 0.75f, true) {
+			protected boolean removeEldestEntry(Map.Entry<Object, Object> eldest) {
+				return size() > maxSize;
+			}
+		});
+	}
+
+	/**
+	 * Create a key
+	 * 
+	 * @param values values of the parameters used by the subreport (or chart)
+	 * @param parts other values which identify the rendered subreport (exporter, sql, size ...)
+	 * @return cache key
+	 */
+	public static Object createKey(Map<String, Object> values, Object... parts) {
+		List<Object> key = new ArrayList<Object>(Arrays.asList(parts));
+		for (Map.Entry<String, Object> entry : new TreeMap<String, Object>(values).entrySet()) {
+			Object value = entry.getValue();
+			key.add(entry.getKey());
+			// multiple selection values
+			key.add((value instanceof Object[]) ? Arrays.asList((Object[]) value) : value);
+		}
+		return key;
+	}
+
+	public boolean isEnabled() {
+		return maxSize > 0;
+	}
+
+	/**
+	 * Get a rendered subreport
+	 * 
+	 * @param key key (see createKey)
+	 * @return rendered subreport or null if it is not in cache
+	 */
+	public Object get(Object key) {
+		if (!isEnabled() || (key == null)) {
+			return null;
+		}
+		Object value = entries.get(key);
+		synchronized (this) {
+			if (value == null) {
+				misses++;
+			} else {
+				hits++;
+			}
+		}
+		return value;
+	}
+
+	/**
+	 * Test if a rendered subreport is in cache (hits and misses are not counted)
+	 * 
+	 * @param key key (see createKey)
+	 * @return true if rendered subreport is in cache
+	 */
+	public boolean containsKey(Object key) {
+		return isEnabled() && (key != null) && entries.containsKey(key);
+	}
+
+	public void put(Object key, Object value) {
+		if (isEnabled() && (key != null) && (value != null)) {
+			entries.put(key, value);
+		}
+	}
+
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	public int size() {
+		return entries.size();
+	}
+
+	public void clear() {
+		entries.clear();
+		synchronized (this) {
+			hits = 0;
+			misses = 0;
+		}
+	}
+
+}
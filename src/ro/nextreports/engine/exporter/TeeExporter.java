@@ -0,0 +1,245 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ro.nextreports.engine.exporter;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import ro.nextreports.engine.band.Band;
+import ro.nextreports.engine.band.BandElement;
+import ro.nextreports.engine.band.ExpressionBandElement;
+import ro.nextreports.engine.band.VariableBandElement;
+import ro.nextreports.engine.queryexec.QueryException;
+import ro.nextreports.engine.exporter.util.variable.Variable;
+
+/**
+ * Exporter which writes more formats in a single pass over the result.
+ * 
+ * Bands, groups, functions and expressions are evaluated only once by this exporter and every
+ * cell is sent to all the delegate exporters. Delegates must be created with beans that share
+ * the same result, report layout and parameters bean, every one with its own output stream.
+ * 
+ * Values of page variables are computed by every delegate because page numbers depend on the format.
+ */
+public class TeeExporter extends ResultExporter {
+
+	// marks a missing value; every delegate replaces it with its own null element
+	private static final String NULL_ELEMENT = new String("");
+
+	private static final String PAGE_NO = "$V_" + Variable.PAGE_NO_VARIABLE;
+	private static final String TOTAL_PAGE_NO = "$V_" + Variable.TOTAL_PAGE_NO_VARIABLE;
+
+	private static Log LOG = LogFactory.getLog(TeeExporter.class);
+
+	private List<Target> targets = new ArrayList<Target>();
+
+	public TeeExporter(ExporterBean bean, List<ResultExporter> exporters) {
+		super(bean);
+		for (ResultExporter exporter : exporters) {
+			targets.add(new Target(exporter));
+		}
+	}
+
+	public List<ResultExporter> getExporters() {
+		List<ResultExporter> exporters = new ArrayList<ResultExporter>();
+		for (Target target : targets) {
+			exporters.add(target.exporter);
+		}
+		return exporters;
+	}
+
+	@Override
+	public void setImageChartPath(String imageChartPath) {
+		super.setImageChartPath(imageChartPath);
+		for (Target target : targets) {
+			target.exporter.setImageChartPath(imageChartPath);
+		}
+	}
+
+	@Override
+	public void setDocumentTitle(String title) {
+		super.setDocumentTitle(title);
+		for (Target target : targets) {
+			target.exporter.setDocumentTitle(title);
+		}
+	}
+
+	@Override
+	protected void initExport() throws QueryException {
+		for (Target target : targets) {
+			target.exporter.shareState(this);
+			target.exporter.initExport();
+		}
+	}
+
+	@Override
+	protected void finishExport() {
+		for (Target target : targets) {
+			target.exporter.shareState(this);
+			target.exporter.finishExport();
+		}
+	}
+
+	@Override
+	protected void close() {
+		for (Target target : targets) {
+			target.exporter.close();
+		}
+	}
+
+	@Override
+	protected void flush() {
+		for (Target target : targets) {
+			target.exporter.shareState(this);
+			target.exporter.flush();
+		}
+	}
+
+	@Override
+	protected void flushNow() {
+		for (Target target : targets) {
+			target.exporter.shareState(this);
+			target.exporter.flushNow();
+		}
+	}
+
+	@Override
+	protected void afterRowExport() {
+		for (Target target : targets) {
+			target.exporter.shareState(this);
+			target.exporter.afterRowExport();
+		}
+	}
+
+	@Override
+	protected void newPage() {
+		for (Target target : targets) {
+			target.exporter.shareState(this);
+			// a new page starts from the first row for every delegate
+			target.exporter.pageRow = pageRow;
+			target.exporter.newPage();
+		}
+	}
+
+	@Override
+	protected void printRawRecord() throws QueryException {
+		for (Target target : targets) {
+			target.exporter.shareState(this);
+			target.exporter.printRawRecord();
+		}
+	}
+
+	@Override
+	protected String getNullElement() {
+		return NULL_ELEMENT;
+	}
+
+	// a cell is ignored only if all the delegates ignore it
+	@Override
+	protected Set<CellElement> getIgnoredCells(Band band) {
+		Set<CellElement> result = null;
+		for (Target target : targets) {
+			Set<CellElement> ignored = target.getIgnoredCells(band);
+			if (result == null) {
+				result = new HashSet<CellElement>(ignored);
+			} else {
+				result.retainAll(ignored);
+			}
+		}
+		if (result == null) {
+			result = new HashSet<CellElement>();
+		}
+		return result;
+	}
+
+	@Override
+	protected void exportCell(String bandName, BandElement bandElement, Object value, int gridRow, int row,
+			int column, int cols, int rowSpan, int colSpan, boolean isImage) {
+		for (Target target : targets) {
+			// newRow is relative to the first cell of a row that is rendered by the delegate
+			if (newRow) {
+				target.newRow = true;
+			}
+			if (target.getIgnoredCells(bandName).contains(new CellElement(row, column))) {
+				continue;
+			}
+			ResultExporter exporter = target.exporter;
+			exporter.shareState(this);
+			exporter.newRow = target.newRow;
+			target.newRow = false;
+			exporter.exportCell(bandName, bandElement, getValue(exporter, bandName, bandElement, value), gridRow,
+					row, column, cols, rowSpan, colSpan, isImage);
+		}
+	}
+
+	private Object getValue(ResultExporter exporter, String bandName, BandElement bandElement, Object value) {
+		if (value == NULL_ELEMENT) {
+			return exporter.getNullElement();
+		}
+		if (value == null) {
+			return null;
+		}
+		if (bandElement instanceof VariableBandElement) {
+			return exporter.getStringValue((VariableBandElement) bandElement, bandName);
+		}
+		if (bandElement instanceof ExpressionBandElement) {
+			ExpressionBandElement ebe = (ExpressionBandElement) bandElement;
+			String expression = ebe.getExpression();
+			if ((expression != null) && (expression.contains(PAGE_NO) || expression.contains(TOTAL_PAGE_NO))) {
+				try {
+					return exporter.evaluateExpression(ebe, bandName, null);
+				} catch (QueryException ex) {
+					LOG.error(ex.getMessage(), ex);
+				}
+			}
+		}
+		return value;
+	}
+
+	private static class Target {
+
+		private ResultExporter exporter;
+		private boolean newRow;
+		private Map<String, Set<CellElement>> ignoredCells = new HashMap<String, Set<CellElement>>();
+
+		private Target(ResultExporter exporter) {
+			this.exporter = exporter;
+		}
+
+		private Set<CellElement> getIgnoredCells(Band band) {
+			Set<CellElement> ignored = ignoredCells.get(band.getName());
+			if (ignored == null) {
+				ignored = exporter.getIgnoredCells(band);
+				ignoredCells.put(band.getName(), ignored);
+			}
+			return ignored;
+		}
+
+		private Set<CellElement> getIgnoredCells(String bandName) {
+			Set<CellElement> ignored = ignoredCells.get(bandName);
+			return (ignored == null) ? new HashSet<CellElement>() : ignored;
+		}
+	}
+
+}
@@ -83,19 +83,26 @@ public class TxtExporter extends ResultExporter {
             value = hyperlink.getText();
         } else if (bandElement instanceof ReportBandElement)  {
             Report report = ((ReportBandElement)bandElement).getReport(); 
-            ExporterBean eb = null;
-            try {            	
-            	eb = getSubreportExporterBean(report);
-                TxtExporter subExporter = new TxtExporter(eb);
-                subExporter.export();
-                value = subExporter.getSubreportData();                          
-			} catch (Exception e) {				
-				e.printStackTrace();
-			} finally {
-				if ((eb != null) && (eb.getResult() != null)) {
-					eb.getResult().close();
+            Object cacheKey = getSubreportCacheKey(report);
+            String cached = (String) getCachedSubreport(cacheKey);
+            if (cached != null) {
+            	value = cached;
+            } else {
+	            ExporterBean eb = null;
+	            try {            	
+	            	eb = getSubreportExporterBean(report);
+	                TxtExporter subExporter = new TxtExporter(eb);
+	                subExporter.export();
+	                value = subExporter.getSubreportData();
+	                putCachedSubreport(cacheKey, value);
+				} catch (Exception e) {				
+					e.printStackTrace();
+				} finally {
+					if ((eb != null) && (eb.getResult() != null)) {
+						eb.getResult().close();
+					}
 				}
-			}
+            }
         }    
         put(stream, StringUtil.getValueAsString(value, getPattern(bandElement), getReportLanguage()), column, colSpan, bandElement);
         if (column == cols - 1) {
@@ -25,6 +25,7 @@ import java.io.FileOutputStream;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Set;
@@ -61,6 +62,7 @@ import org.apache.poi.ss.usermodel.Header;
 import org.apache.poi.ss.usermodel.PrintSetup;
 import org.apache.poi.ss.util.CellRangeAddress;
 
+import ro.nextreports.engine.EngineProperties;
 import ro.nextreports.engine.ReleaseInfoAdapter;
 import ro.nextreports.engine.Report;
 import ro.nextreports.engine.ReportLayout;
@@ -77,6 +79,7 @@ import ro.nextreports.engine.band.ReportBandElement;
 import ro.nextreports.engine.band.VariableBandElement;
 import ro.nextreports.engine.exporter.util.ExcelColorSupport;
 import ro.nextreports.engine.exporter.util.StyleFormatConstants;
+import ro.nextreports.engine.exporter.util.XlsStylePool;
 import ro.nextreports.engine.exporter.util.XlsUtil;
 import ro.nextreports.engine.exporter.util.variable.PageNoVariable;
 import ro.nextreports.engine.exporter.util.variable.Variable;
@@ -128,6 +131,13 @@ public class XlsExporter extends ResultExporter {
     	} else {
     		wb = new HSSFWorkbook();
     	}
+    	if (!bean.isSubreport() && EngineProperties.isXlsLargeData()) {
+    		// styles are built in a separate workbook and only distinct styles are added to the report workbook
+    		styleWb = new HSSFWorkbook();
+    		blankStyle = styleWb.createCellStyle();
+    		workStyle = styleWb.createCellStyle();
+    		stylePool = new XlsStylePool(wb);
+    	}
     }
 
     protected void finishExport() {    	
@@ -223,20 +233,16 @@ public class XlsExporter extends ResultExporter {
     		renderCellToHeaderFooter(footerS, bandName, bandElement, value, gridRow, row, column, cols, rowSpan, colSpan, isImage);
 		} else {
 
-			int sheetRow = pageRow % fragmentsize;
 			if (column == 0) {
-				if (sheetRow == 0) {
-					if (page > 1) {
-						// wb.write(out);
-					}
-
-					if ((page == 1) || (pageRow > 0)) {
-						newPage();
-						pageRow = 0;
-					}
+				// subreports may add more rows, so the sheet is full when fragment size is reached or exceeded
+				if ((page == 1) || (pageRow >= fragmentsize)) {
+					// pageRow is reset before newPage, which may print the header rows at the top of the new sheet
+					pageRow = 0;
+					newPage();
 				}
-				xlsRow = xlsSheet.createRow(sheetRow);
+				xlsRow = xlsSheet.createRow(pageRow);
 			}
+			int sheetRow = pageRow;
 			if (bean.getReportLayout().isUseSize()) {
 				int width = (int) (bean.getReportLayout().getColumnsWidth().get(column) * POINTS_FOR_PIXEL);
 				// System.out.println("row="+row+ "  col="+column +
@@ -267,6 +273,15 @@ public class XlsExporter extends ResultExporter {
     private StringBuilder headerS = new StringBuilder();
     private StringBuilder footerS = new StringBuilder();
     private HSSFCellStyle subreportCellStyle;
+    private static final int SUBREPORT_LEFT = 1;
+    private static final int SUBREPORT_RIGHT = 2;
+    private static final int SUBREPORT_TOP = 4;
+    private static final int SUBREPORT_BOTTOM = 8;
+    // large data mode
+    private XlsStylePool stylePool;
+    private HSSFWorkbook styleWb;
+    private HSSFCellStyle blankStyle;
+    private HSSFCellStyle workStyle;
         
     // reuse fonts and styles
     // there is a maximum number of unique fonts in a workbook (512)
@@ -280,9 +295,39 @@ public class XlsExporter extends ResultExporter {
     private Map<Integer, HSSFFont> condFonts = new HashMap<Integer, HSSFFont>();
     
     private Border border;
+    
+    // cell styles are interned, so the workbook style of a band element can be found by identity
+    // without hashing or reapplying the style properties for every cell
+    private Map<BandElement, Map<Map<String, Object>, CachedStyle>> elementStyles = 
+    		new IdentityHashMap<BandElement, Map<Map<String, Object>, CachedStyle>>();
+    
+    private static class CachedStyle {
+    	private final HSSFCellStyle cellStyle;
+    	private final Border border;
+    	
+    	private CachedStyle(HSSFCellStyle cellStyle, Border border) {
+    		this.cellStyle = cellStyle;
+    		this.border = border;
+    	}
+    }
 
     private HSSFCellStyle buildBandElementStyle(BandElement bandElement, Object value, int gridRow, int gridColumn, int colSpan) {
         Map<String, Object> style = buildCellStyleMap(bandElement, value, gridRow, gridColumn, colSpan);
+        // subreport cell style depends on cell position
+        Map<Map<String, Object>, CachedStyle> cachedStyles = null;
+        if ((subreportCellStyle == null) && (stylePool == null)) {
+        	cachedStyles = elementStyles.get(bandElement);
+        	if (cachedStyles == null) {
+        		cachedStyles = new IdentityHashMap<Map<String, Object>, CachedStyle>();
+        		elementStyles.put(bandElement, cachedStyles);
+        	}
+        	CachedStyle cached = cachedStyles.get(style);
+        	if (cached != null) {
+        		modifiedStyle[gridRow][gridColumn] = false;
+        		border = cached.border;
+        		return cached.cellStyle;
+        	}
+        }
         HSSFCellStyle cellStyle = null;
         HSSFFont cellFont = null;
         int fontKey = -1;
@@ -299,17 +344,21 @@ public class XlsExporter extends ResultExporter {
         		cellFont = condFonts.get(fontKey);        		
         	}            
             if (cellFont == null) {
-            	cellFont = wb.createFont();
+            	cellFont = getStyleWorkbook().createFont();
             	cacheFont = true;
             }	
             
             styleKey = getStyleKey(style, bandElement);
-            if (styleKey != -1) {
+            if ((styleKey != -1) && (subreportCellStyle != null)) {
+            	// cached subreport styles are shared only by cells with the same borders
+            	styleKey = 31 * styleKey + getSubreportBorders(gridRow, gridColumn, colSpan);
+            }
+            if ((styleKey != -1) && (stylePool == null)) {
             	cellStyle = condStyles.get(styleKey);
             }
             if (cellStyle == null) {
-            	cellStyle = wb.createCellStyle();
-            	cacheStyle = true;
+            	cellStyle = createCellStyle();
+            	cacheStyle = (stylePool == null);
             }
             modifiedStyle[gridRow][gridColumn] = false;
         } else {            
@@ -318,17 +367,17 @@ public class XlsExporter extends ResultExporter {
         		cellFont = fonts.get(fontKey);        		
         	}
         	if ((cellFont == null) && (bandElement != null)) {        		
-            	cellFont = wb.createFont();            	
+            	cellFont = getStyleWorkbook().createFont();            	
             	cacheAllFont = true;
             }	
         	
         	styleKey = getStyleKey(style, bandElement);
-            if (styleKey != -1) {
+            if ((styleKey != -1) && (stylePool == null)) {
             	cellStyle = styles.get(styleKey);
             }
             if (cellStyle == null) {
-            	cellStyle = wb.createCellStyle();
-            	cacheAllStyle = true;
+            	cellStyle = createCellStyle();
+            	cacheAllStyle = (stylePool == null);
             }        	        	
         }
 
@@ -487,7 +536,7 @@ public class XlsExporter extends ResultExporter {
 
         if (style.containsKey(StyleFormatConstants.PATTERN)) {
             String pattern = (String) style.get(StyleFormatConstants.PATTERN);
-            HSSFDataFormat format = wb.createDataFormat();
+            HSSFDataFormat format = getStyleWorkbook().createDataFormat();
             cellStyle.setDataFormat(format.getFormat(pattern));
         } else {
         	cellStyle.setDataFormat((short)0);
@@ -502,6 +551,9 @@ public class XlsExporter extends ResultExporter {
         if (cacheStyle && (styleKey != -1)) {
         	condStyles.put(styleKey, cellStyle);
         }
+        if (cachedStyles != null) {
+        	cachedStyles.put(style, new CachedStyle(cellStyle, border));
+        }
         if (cacheAllStyle && (styleKey != -1)) {
         	styles.put(styleKey, cellStyle);
         }
@@ -509,24 +561,60 @@ public class XlsExporter extends ResultExporter {
         return cellStyle;
     }
     
+    // workbook where fonts, formats and styles are built
+    private HSSFWorkbook getStyleWorkbook() {
+    	return (stylePool == null) ? wb : styleWb;
+    }
+    
+    // in large data mode the style is built again for every cell, in a work style which is not used by cells
+    private HSSFCellStyle createCellStyle() {
+    	if (stylePool == null) {
+    		return wb.createCellStyle();
+    	}
+    	workStyle.cloneStyleFrom(blankStyle);
+    	return workStyle;
+    }
+    
+    private HSSFCellStyle getPooledStyle(HSSFCellStyle cellStyle) {
+    	return (stylePool == null) ? cellStyle : stylePool.getStyle(cellStyle, styleWb);
+    }
+    
+    // subreport cell borders (SUBREPORT_LEFT, SUBREPORT_RIGHT, SUBREPORT_TOP, SUBREPORT_BOTTOM flags)
+    // taken from the ReportBandElement border, depending on cell position
+    private int getSubreportBorders(int gridRow, int gridColumn, int colSpan) {
+    	int borders = 0;
+    	if (gridColumn == 0) {
+    		borders |= SUBREPORT_LEFT;
+    	} else if (gridColumn+colSpan-1 == bean.getReportLayout().getColumnCount()-1) {
+    		borders |= SUBREPORT_RIGHT;
+    	}
+    	if (pageRow == 0) {
+    		borders |= SUBREPORT_TOP;
+    	} else if (isLastRow(gridRow)) {
+    		borders |= SUBREPORT_BOTTOM;
+    	}
+    	return borders;
+    }
+    
     // If a border style is set on a ReportBandElement we must apply it to all subreport cells
     private HSSFCellStyle updateSubreportBandElementStyle(HSSFCellStyle cellStyle, BandElement bandElement, Object value, int gridRow, int gridColumn, int colSpan) {
     	if (subreportCellStyle == null) {
     		return cellStyle;
     	}
-    	    	    	    	
-    	if (gridColumn == 0) {    		
+    	
+    	int borders = getSubreportBorders(gridRow, gridColumn, colSpan);
+    	if ((borders & SUBREPORT_LEFT) != 0) {    		
     		cellStyle.setBorderLeft(subreportCellStyle.getBorderLeft());    	
     		cellStyle.setLeftBorderColor(subreportCellStyle.getLeftBorderColor());    	
-    	} else if (gridColumn+colSpan-1 == bean.getReportLayout().getColumnCount()-1) {    		
+    	} else if ((borders & SUBREPORT_RIGHT) != 0) {    		
     		cellStyle.setBorderRight(subreportCellStyle.getBorderRight());
     		cellStyle.setRightBorderColor(subreportCellStyle.getRightBorderColor());
     	}     	    	
     	
-    	if (pageRow == 0) {    		    		
+    	if ((borders & SUBREPORT_TOP) != 0) {    		    		
     		cellStyle.setBorderTop(subreportCellStyle.getBorderTop());  
     		cellStyle.setTopBorderColor(subreportCellStyle.getTopBorderColor());  
-    	} else if ( (pageRow+1) == getRowsCount()) {    	    		
+    	} else if ((borders & SUBREPORT_BOTTOM) != 0) {
     		cellStyle.setBorderBottom(subreportCellStyle.getBorderBottom());    	
     		cellStyle.setBottomBorderColor(subreportCellStyle.getBottomBorderColor());
     	}    	
@@ -583,7 +671,7 @@ public class XlsExporter extends ResultExporter {
             }
 
             if (cellStyle != null) {
-                c.setCellStyle(cellStyle);
+                c.setCellStyle(getPooledStyle(cellStyle));
             }
 
         } else {
@@ -620,7 +708,8 @@ public class XlsExporter extends ResultExporter {
                         	}
                         }  
                     }
-                    int cols = XlsUtil.copyToSheet(xlsSheet, sheetRow, sheetColumn, subreportSheet);   
+                    int cols = (stylePool == null) ? XlsUtil.copyToSheet(xlsSheet, sheetRow, sheetColumn, subreportSheet) :
+                    	XlsUtil.copyToSheet(xlsSheet, sheetRow, sheetColumn, subreportSheet, stylePool);   
                     addRegions(xlsSheet, subExporter.getSubreportRegions(), wb);
                     if (ReportLayout.HEADER_BAND_NAME.equals(bandName)) {
                     	prevSubreportFirstRow = gridRow;
@@ -699,7 +788,7 @@ public class XlsExporter extends ResultExporter {
                     		} else {
                     			pattern = StringUtil.getI18nString(pattern, getReportLanguage());
                     		}
-                    		cellStyle.setDataFormat(wb.createDataFormat().getFormat(pattern));
+                    		cellStyle.setDataFormat(getStyleWorkbook().createDataFormat().getFormat(pattern));
                     	}
                     	c.setCellValue(date);
                     } else {                    	
@@ -718,7 +807,7 @@ public class XlsExporter extends ResultExporter {
 								}
 								c.setCellValue(text);
 								cellStyle.setWrapText(true);
-								xlsRow.setHeightInPoints(lines * (cellStyle.getFont(wb).getFontHeightInPoints() + 3));
+								xlsRow.setHeightInPoints(lines * (cellStyle.getFont(getStyleWorkbook()).getFontHeightInPoints() + 3));
 							} else {
 								c.setCellValue(new HSSFRichTextString(text));
 							}
@@ -735,7 +824,7 @@ public class XlsExporter extends ResultExporter {
             		cellStyle.setRotation(bandElement.getTextRotation());
             	}            	
             	if (!(bandElement instanceof ReportBandElement)) {
-            		c.setCellStyle(cellStyle);
+            		c.setCellStyle(getPooledStyle(cellStyle));
             	}
             }
 			
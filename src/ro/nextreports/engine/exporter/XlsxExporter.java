@@ -5,6 +5,7 @@ import java.io.InputStream;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Set;
@@ -38,6 +39,7 @@ import org.apache.poi.xssf.usermodel.XSSFRow;
 import org.apache.poi.xssf.usermodel.XSSFSheet;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 
+import ro.nextreports.engine.EngineProperties;
 import ro.nextreports.engine.ReleaseInfoAdapter;
 import ro.nextreports.engine.Report;
 import ro.nextreports.engine.ReportLayout;
@@ -54,6 +56,7 @@ import ro.nextreports.engine.band.ReportBandElement;
 import ro.nextreports.engine.band.VariableBandElement;
 import ro.nextreports.engine.exporter.util.ExcelColorSupport;
 import ro.nextreports.engine.exporter.util.StyleFormatConstants;
+import ro.nextreports.engine.exporter.util.XlsxStreamingWriter;
 import ro.nextreports.engine.exporter.util.XlsxUtil;
 import ro.nextreports.engine.exporter.util.variable.PageNoVariable;
 import ro.nextreports.engine.exporter.util.variable.Variable;
@@ -104,6 +107,12 @@ public class XlsxExporter extends ResultExporter {
     	} else {
     		wb = new XSSFWorkbook();
     	}
+    	// rows out of the row window are written to temporary files, so memory does not grow with row count
+    	if (!bean.isSubreport() && (EngineProperties.getXlsxRowWindow() > 0)) {
+    		rowWindow = EngineProperties.getXlsxRowWindow();
+    		inlineStrings = EngineProperties.isXlsxInlineStrings();
+    		streamingWriter = new XlsxStreamingWriter(inlineStrings);
+    	}
     }
 
     protected void finishExport() {    	
@@ -121,11 +130,16 @@ public class XlsxExporter extends ResultExporter {
 			addRegions(xlsSheet, regions, wb);
 			try {
 				createSummaryInformation(bean.getFileName());
-				wb.write(getOut());
+				if (streamingWriter == null) {
+					wb.write(getOut());
+				} else {
+					streamingWriter.write(wb, getOut());
+				}
 				getOut().flush();
 			} catch (IOException e) {
 				e.printStackTrace();
 			} finally {
+				disposeStreamingWriter();
 				try {
 					getOut().close();
 				} catch (IOException e) {
@@ -152,6 +166,7 @@ public class XlsxExporter extends ResultExporter {
 	}
 
 	protected void close() {
+		disposeStreamingWriter();
 		if (!bean.isSubreport()) {
 			try {
 				getOut().close();
@@ -162,9 +177,39 @@ public class XlsxExporter extends ResultExporter {
 	}
 
     protected void flush() {
+    	if (streamingWriter == null) {
+    		return;
+    	}
+    	// rows are written in chunks of rowWindow rows, the last rowWindow rows stay in memory
+    	// (merged regions, images and subreports may still change them)
+    	if ((xlsRow != null) && (xlsRow.getRowNum() - spooledRowNum > 2 * rowWindow)) {
+    		spooledRowNum = xlsRow.getRowNum() - rowWindow;
+    		try {
+    			streamingWriter.flushRows(xlsSheet, spooledRowNum);
+    		} catch (IOException e) {
+    			LOG.error(e.getMessage(), e);
+    		}
+    	}
+    	if (resultSetRow % FLUSH_ROWS == 0) {
+    		flushNow();
+    	}
     }
 
     protected void flushNow() {
+    	if (streamingWriter != null) {
+    		try {
+    			streamingWriter.flush();
+    		} catch (IOException e) {
+    			LOG.error(e.getMessage(), e);
+    		}
+    	}
+    }
+    
+    private void disposeStreamingWriter() {
+    	if (streamingWriter != null) {
+    		streamingWriter.dispose();
+    		streamingWriter = null;
+    	}
     }
 
 
@@ -225,6 +270,14 @@ public class XlsxExporter extends ResultExporter {
     private StringBuilder headerS = new StringBuilder();
     private StringBuilder footerS = new StringBuilder();
     private XSSFCellStyle subreportCellStyle;
+    private static final int SUBREPORT_LEFT = 1;
+    private static final int SUBREPORT_RIGHT = 2;
+    private static final int SUBREPORT_TOP = 4;
+    private static final int SUBREPORT_BOTTOM = 8;
+    private XlsxStreamingWriter streamingWriter;
+    private int rowWindow;
+    private int spooledRowNum = -1;
+    private boolean inlineStrings;
             
     // reuse fonts and styles
     // there is a maximum number of unique fonts in a workbook (512)
@@ -239,9 +292,39 @@ public class XlsxExporter extends ResultExporter {
     private Map<Integer, XSSFFont> condFonts = new HashMap<Integer, XSSFFont>();
     
     private Border border;
+    
+    // cell styles are interned, so the workbook style of a band element can be found by identity
+    // without hashing or reapplying the style properties for every cell
+    private Map<BandElement, Map<Map<String, Object>, CachedStyle>> elementStyles = 
+    		new IdentityHashMap<BandElement, Map<Map<String, Object>, CachedStyle>>();
+    
+    private static class CachedStyle {
+    	private final XSSFCellStyle cellStyle;
+    	private final Border border;
+    	
+    	private CachedStyle(XSSFCellStyle cellStyle, Border border) {
+    		this.cellStyle = cellStyle;
+    		this.border = border;
+    	}
+    }
 
     private XSSFCellStyle buildBandElementStyle(BandElement bandElement, Object value, int gridRow, int gridColumn, int colSpan) {
         Map<String, Object> style = buildCellStyleMap(bandElement, value, gridRow, gridColumn, colSpan);
+        // subreport cell style depends on cell position
+        Map<Map<String, Object>, CachedStyle> cachedStyles = null;
+        if (subreportCellStyle == null) {
+        	cachedStyles = elementStyles.get(bandElement);
+        	if (cachedStyles == null) {
+        		cachedStyles = new IdentityHashMap<Map<String, Object>, CachedStyle>();
+        		elementStyles.put(bandElement, cachedStyles);
+        	}
+        	CachedStyle cached = cachedStyles.get(style);
+        	if (cached != null) {
+        		modifiedStyle[gridRow][gridColumn] = false;
+        		border = cached.border;
+        		return cached.cellStyle;
+        	}
+        }
         XSSFCellStyle cellStyle = null;
         XSSFFont cellFont = null;
         int fontKey = -1;
@@ -262,6 +345,10 @@ public class XlsxExporter extends ResultExporter {
             	cacheFont = true;
             }	
             styleKey = getStyleKey(style, bandElement);
+            if ((styleKey != -1) && (subreportCellStyle != null)) {
+            	// cached subreport styles are shared only by cells with the same borders
+            	styleKey = 31 * styleKey + getSubreportBorders(gridRow, gridColumn, colSpan);
+            }
             if (styleKey != -1) {
             	cellStyle = condStyles.get(styleKey);
             }
@@ -459,6 +546,9 @@ public class XlsxExporter extends ResultExporter {
         if (cacheStyle && (styleKey != -1)) {
         	condStyles.put(styleKey, cellStyle);
         }
+        if (cachedStyles != null) {
+        	cachedStyles.put(style, new CachedStyle(cellStyle, border));
+        }
         if (cacheAllStyle && (styleKey != -1)) {
         	styles.put(styleKey, cellStyle);        	
         }
@@ -466,24 +556,42 @@ public class XlsxExporter extends ResultExporter {
         return cellStyle;
     }
     
+    // subreport cell borders (SUBREPORT_LEFT, SUBREPORT_RIGHT, SUBREPORT_TOP, SUBREPORT_BOTTOM flags)
+    // taken from the ReportBandElement border, depending on cell position
+    private int getSubreportBorders(int gridRow, int gridColumn, int colSpan) {
+    	int borders = 0;
+    	if (gridColumn == 0) {
+    		borders |= SUBREPORT_LEFT;
+    	} else if (gridColumn+colSpan-1 == bean.getReportLayout().getColumnCount()-1) {
+    		borders |= SUBREPORT_RIGHT;
+    	}
+    	if (pageRow == 0) {
+    		borders |= SUBREPORT_TOP;
+    	} else if (isLastRow(gridRow)) {
+    		borders |= SUBREPORT_BOTTOM;
+    	}
+    	return borders;
+    }
+    
     // If a border style is set on a ReportBandElement we must apply it to all subreport cells
     private XSSFCellStyle updateSubreportBandElementStyle(XSSFCellStyle cellStyle, BandElement bandElement, Object value, int gridRow, int gridColumn, int colSpan) {
     	if (subreportCellStyle == null) {
     		return cellStyle;
     	}
-    	    	    	    	
-    	if (gridColumn == 0) {    		
+    	
+    	int borders = getSubreportBorders(gridRow, gridColumn, colSpan);
+    	if ((borders & SUBREPORT_LEFT) != 0) {    		
     		cellStyle.setBorderLeft(subreportCellStyle.getBorderLeft());    	
     		cellStyle.setLeftBorderColor(subreportCellStyle.getLeftBorderColor());    	
-    	} else if (gridColumn+colSpan-1 == bean.getReportLayout().getColumnCount()-1) {    		
+    	} else if ((borders & SUBREPORT_RIGHT) != 0) {    		
     		cellStyle.setBorderRight(subreportCellStyle.getBorderRight());
     		cellStyle.setRightBorderColor(subreportCellStyle.getRightBorderColor());
     	}     	    	
     	
-    	if (pageRow == 0) {    		    		
+    	if ((borders & SUBREPORT_TOP) != 0) {    		    		
     		cellStyle.setBorderTop(subreportCellStyle.getBorderTop());  
     		cellStyle.setTopBorderColor(subreportCellStyle.getTopBorderColor());  
-    	} else if ( (pageRow+1) == getRowsCount()) {    	    		
+    	} else if ((borders & SUBREPORT_BOTTOM) != 0) {
     		cellStyle.setBorderBottom(subreportCellStyle.getBorderBottom());    	
     		cellStyle.setBottomBorderColor(subreportCellStyle.getBottomBorderColor());
     	}    	
@@ -510,7 +618,7 @@ public class XlsxExporter extends ResultExporter {
         if (image) {        	        	
             if ((value == null) || "".equals(value)) {
                 c.setCellType(XSSFCell.CELL_TYPE_STRING);
-                c.setCellValue(wb.getCreationHelper().createRichTextString(IMAGE_NOT_FOUND));
+                setCellText(c, IMAGE_NOT_FOUND);
             } else {
                 try {
                     ImageBandElement ibe = (ImageBandElement)bandElement;
@@ -540,7 +648,7 @@ public class XlsxExporter extends ResultExporter {
                     anchor.setAnchorType(2);
                 } catch (Exception ex) {
                     c.setCellType(XSSFCell.CELL_TYPE_STRING);
-                    c.setCellValue(wb.getCreationHelper().createRichTextString(IMAGE_NOT_LOADED));
+                    setCellText(c, IMAGE_NOT_LOADED);
                 }
             }
 
@@ -554,8 +662,8 @@ public class XlsxExporter extends ResultExporter {
                 XSSFHyperlink link = wb.getCreationHelper().createHyperlink(XSSFHyperlink.LINK_URL);
                 link.setAddress(hyp.getUrl());
                 c.setHyperlink(link);
-                c.setCellValue(wb.getCreationHelper().createRichTextString(hyp.getText()));
                 c.setCellType(XSSFCell.CELL_TYPE_STRING);
+                setCellText(c, hyp.getText());
             } else if (bandElement instanceof ReportBandElement)  {
                 Report report = ((ReportBandElement)bandElement).getReport(); 
                 ExporterBean eb = null;
@@ -602,7 +710,7 @@ public class XlsxExporter extends ResultExporter {
             		String v = StringUtil.getValueAsString(value, null);
             		if(StringUtil.BLOB.equals(v)) {
             			c.setCellType(XSSFCell.CELL_TYPE_STRING);
-                        c.setCellValue(wb.getCreationHelper().createRichTextString(StringUtil.BLOB));            			
+                        setCellText(c, StringUtil.BLOB);            			
             		} else {
     	        		byte[] imageD = StringUtil.decodeImage(v);
     	        		byte[] imageBytes = getImage(imageD, icbe.getWidth(), icbe.getHeight());
@@ -628,7 +736,7 @@ public class XlsxExporter extends ResultExporter {
     			} catch (Exception e) {		
     				e.printStackTrace();
     				c.setCellType(XSSFCell.CELL_TYPE_STRING);
-                    c.setCellValue(wb.getCreationHelper().createRichTextString(IMAGE_NOT_LOADED));
+                    setCellText(c, IMAGE_NOT_LOADED);
     			}
             	
                 
@@ -636,7 +744,7 @@ public class XlsxExporter extends ResultExporter {
             	            	            	
                 if (value == null) {
                     c.setCellType(XSSFCell.CELL_TYPE_STRING);
-                    c.setCellValue(wb.getCreationHelper().createRichTextString(""));
+                    setCellText(c, "");
                 } else if (value instanceof Number) {
                     c.setCellType(XSSFCell.CELL_TYPE_NUMERIC);
                     c.setCellValue(((Number) value).doubleValue());
@@ -678,14 +786,14 @@ public class XlsxExporter extends ResultExporter {
 								} else {
 									text = text.replaceAll("(\n)|(\r)|(\\\\n)", crLf);
 								}
-								c.setCellValue(text);
+								setCellText(c, text);
 								cellStyle.setWrapText(true);
 								xlsRow.setHeightInPoints(lines * (cellStyle.getFont().getFontHeightInPoints() + 3));
 							} else {
-								c.setCellValue(wb.getCreationHelper().createRichTextString(text));
+								setCellText(c, text);
 							}
 						} else {
-							c.setCellValue(wb.getCreationHelper().createRichTextString(text));
+							setCellText(c, text);
 						}        	
                     	
                     }                    
@@ -714,6 +822,16 @@ public class XlsxExporter extends ResultExporter {
         }
     }
     
+    private void setCellText(XSSFCell c, String text) {
+    	if (inlineStrings) {
+    		// text is not kept in shared strings table
+    		XlsxStreamingWriter.setInlineString(c);
+    		c.setCellValue(text);
+    	} else {
+    		c.setCellValue(wb.getCreationHelper().createRichTextString(text));
+    	}
+    }
+    
     private int countLines(String text) {
     	Matcher m = Pattern.compile("(\n)|(\r)|(\r\n)|(\\\\n)").matcher(text);
     	int lines = 1;
@@ -832,6 +950,15 @@ public class XlsxExporter extends ResultExporter {
 
 	protected void newPage() {
 		addRegions(xlsSheet, regions, wb);
+		if ((streamingWriter != null) && (xlsSheet != null) && !hasTemplate()) {
+			// previous sheet is complete
+			try {
+				streamingWriter.flushRows(xlsSheet);
+			} catch (IOException e) {
+				LOG.error(e.getMessage(), e);
+			}
+			spooledRowNum = -1;
+		}
 		if (hasTemplate()) {
 			xlsSheet = wb.getSheetAt(bean.getReportLayout().getTemplateSheet()-1);  
 		} else {
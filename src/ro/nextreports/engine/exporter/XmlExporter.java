@@ -236,19 +236,24 @@ public class XmlExporter extends ResultExporter {
             result = hyperlink.getUrl();
         } else if (bandElement instanceof ReportBandElement)  {
             Report report = ((ReportBandElement)bandElement).getReport(); 
-            ExporterBean eb = null;
-            try {            	
-            	eb = getSubreportExporterBean(report);
-                XmlExporter subExporter = new XmlExporter(eb);
-                subExporter.export();
-                result = subExporter.getSubreportData();                          
-			} catch (Exception e) {				
-				e.printStackTrace();
-			} finally {
-				if ((eb != null) && (eb.getResult() != null)) {
-					eb.getResult().close();
+            Object cacheKey = getSubreportCacheKey(report);
+            result = (String) getCachedSubreport(cacheKey);
+            if (result == null) {
+	            ExporterBean eb = null;
+	            try {            	
+	            	eb = getSubreportExporterBean(report);
+	                XmlExporter subExporter = new XmlExporter(eb);
+	                subExporter.export();
+	                result = subExporter.getSubreportData();
+	                putCachedSubreport(cacheKey, result);
+				} catch (Exception e) {				
+					e.printStackTrace();
+				} finally {
+					if ((eb != null) && (eb.getResult() != null)) {
+						eb.getResult().close();
+					}
 				}
-			}    
+            }
         } else {
             result = StringUtil.getValueAsString(value, null, getReportLanguage());
             if (result == null) {
@@ -28,6 +28,9 @@ public class ExporterObject implements Serializable {
 
     private int row;
     private int rowCount;
+    private boolean rowCountEstimated;
+    private long uncompressedBytes;
+    private long compressedBytes;
 
     public ExporterObject(int row, int rowCount) {
         this.row = row;
@@ -49,4 +52,31 @@ public class ExporterObject implements Serializable {
     public void setRecordCount(int rowCount) {
         this.rowCount = rowCount;
     }
+
+    // record count is an estimation made by database planner
+    public boolean isRecordCountEstimated() {
+        return rowCountEstimated;
+    }
+
+    public void setRecordCountEstimated(boolean rowCountEstimated) {
+        this.rowCountEstimated = rowCountEstimated;
+    }
+
+    // bytes written by the exporter when output is compressed (0 otherwise)
+    public long getUncompressedBytes() {
+        return uncompressedBytes;
+    }
+
+    public void setUncompressedBytes(long uncompressedBytes) {
+        this.uncompressedBytes = uncompressedBytes;
+    }
+
+    // compressed bytes written to the output so far when output is compressed (0 otherwise)
+    public long getCompressedBytes() {
+        return compressedBytes;
+    }
+
+    public void setCompressedBytes(long compressedBytes) {
+        this.compressedBytes = compressedBytes;
+    }
 }
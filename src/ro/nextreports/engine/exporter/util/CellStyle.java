@@ -0,0 +1,121 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ro.nextreports.engine.exporter.util;
+
+import java.lang.ref.WeakReference;
+import java.util.AbstractMap;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+/**
+ * Immutable set of cell style properties (keys from {@link StyleFormatConstants}).
+ * 
+ * Instances are interned : equal styles are represented by the same object, so exporters
+ * can cache their native styles (fonts, cell styles) by identity instead of hashing the
+ * properties of every cell. Interned styles are weakly referenced and released when no
+ * exporter uses them anymore.
+ */
+public final class CellStyle extends AbstractMap<String, Object> {
+
+	// must be initialized before EMPTY
+	private static final Map<CellStyle, WeakReference<CellStyle>> pool = new WeakHashMap<CellStyle, WeakReference<CellStyle>>();
+
+	public static final CellStyle EMPTY = valueOf(new HashMap<String, Object>());
+
+	private final Map<String, Object> properties;
+	private final int hashCode;
+
+	private CellStyle(Map<String, Object> properties) {
+		this.properties = Collections.unmodifiableMap(new HashMap<String, Object>(properties));
+		this.hashCode = this.properties.hashCode();
+	}
+
+	/**
+	 * Get the interned style with the given properties
+	 * 
+	 * @param properties style properties
+	 * @return interned style
+	 */
+	public static CellStyle valueOf(Map<String, Object> properties) {
+		if (properties instanceof CellStyle) {
+			return intern((CellStyle) properties);
+		}
+		return intern(new CellStyle(properties));
+	}
+
+	private static CellStyle intern(CellStyle style) {
+		synchronized (pool) {
+			WeakReference<CellStyle> ref = pool.get(style);
+			CellStyle interned = (ref == null) ? null : ref.get();
+			if (interned == null) {
+				pool.put(style, new WeakReference<CellStyle>(style));
+				interned = style;
+			}
+			return interned;
+		}
+	}
+
+	/**
+	 * Get a mutable copy of the properties, used to derive a new style
+	 * 
+	 * @return mutable properties map
+	 */
+	public Map<String, Object> toMap() {
+		return new HashMap<String, Object>(properties);
+	}
+
+	@Override
+	public Object get(Object key) {
+		return properties.get(key);
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return properties.containsKey(key);
+	}
+
+	@Override
+	public int size() {
+		return properties.size();
+	}
+
+	@Override
+	public Set<Entry<String, Object>> entrySet() {
+		return properties.entrySet();
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) {
+			return true;
+		}
+		if (o instanceof CellStyle) {
+			CellStyle that = (CellStyle) o;
+			return (hashCode == that.hashCode) && properties.equals(that.properties);
+		}
+		return super.equals(o);
+	}
+
+	@Override
+	public int hashCode() {
+		return hashCode;
+	}
+
+}
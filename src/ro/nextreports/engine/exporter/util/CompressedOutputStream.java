@@ -0,0 +1,306 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ro.nextreports.engine.exporter.util;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Output stream which compresses the exported report in GZIP format or in a ZIP file with a single entry.
+ *
+ * Bytes written by the exporter are collected in buffers which are compressed on a separate thread,
+ * so compression overlaps the export. {@link #flush()} only hands the collected bytes to the
+ * compression thread; {@link #close()} waits for all of them to be compressed, finishes the compressed
+ * format and closes the underlying stream.
+ */
+public class CompressedOutputStream extends OutputStream {
+
+	/** GZIP compression */
+	public static final String GZIP = "GZIP";
+
+	/** ZIP compression, with a single entry */
+	public static final String ZIP = "ZIP";
+
+	public static final int DEFAULT_BUFFER_SIZE = 65536;
+
+	// number of buffers : one filled by the exporter, the others wait to be compressed or are compressed
+	private static final int PIPELINE_BUFFERS = 4;
+
+	private final CountingOutputStream counter;
+	private final DeflaterOutputStream deflater;
+
+	private final BlockingQueue<Chunk> free = new ArrayBlockingQueue<Chunk>(PIPELINE_BUFFERS);
+	private final BlockingQueue<Chunk> full = new ArrayBlockingQueue<Chunk>(PIPELINE_BUFFERS);
+	private final Thread thread;
+
+	private Chunk current;
+	private long uncompressedBytes;
+	private volatile IOException error;
+	private volatile boolean aborted;
+	private boolean closed;
+
+	// marks the end of the bytes to compress
+	private static final Chunk END = new Chunk(0);
+
+	/**
+	 * Create a compressed output stream
+	 *
+	 * @param out underlying output stream
+	 * @param type compression type : GZIP or ZIP
+	 * @param entryName name of the ZIP entry (not used for GZIP)
+	 * @param level compression level from 0 to 9, -1 for default level
+	 * @param bufferSize size of buffers passed to compression thread
+	 * @throws IOException if GZIP header or ZIP entry cannot be written
+	 */
+	public CompressedOutputStream(OutputStream out, String type, String entryName, int level, int bufferSize)
+			throws IOException {
+		if (bufferSize <= 0) {
+			bufferSize = DEFAULT_BUFFER_SIZE;
+		}
+		counter = new CountingOutputStream(out);
+		if (ZIP.equals(type)) {
+			ZipOutputStream zip = new ZipOutputStream(counter);
+			zip.setLevel(level);
+			zip.putNextEntry(new ZipEntry(entryName));
+			deflater = zip;
+		} else if (GZIP.equals(type)) {
+			deflater = new LevelGZIPOutputStream(counter, bufferSize, level);
+		} else {
+			throw new IllegalArgumentException("Unsupported compression : " + type);
+		}
+
+		for (int i = 0; i < PIPELINE_BUFFERS; i++) {
+			free.add(new Chunk(bufferSize));
+		}
+		current = free.poll();
+
+		thread = new Thread(new Compressor(), "nextreports-compression");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	public void write(int b) throws IOException {
+		ensureOpen();
+		current.data[current.length++] = (byte) b;
+		uncompressedBytes++;
+		if (current.length == current.data.length) {
+			handOff();
+		}
+	}
+
+	public void write(byte[] b, int off, int len) throws IOException {
+		ensureOpen();
+		uncompressedBytes += len;
+		while (len > 0) {
+			int n = Math.min(len, current.data.length - current.length);
+			System.arraycopy(b, off, current.data, current.length, n);
+			current.length += n;
+			off += n;
+			len -= n;
+			if (current.length == current.data.length) {
+				handOff();
+			}
+		}
+	}
+
+	/**
+	 * Hand the collected bytes to the compression thread. Compressed bytes are not flushed to the
+	 * underlying stream, because a sync flush would hurt compression.
+	 */
+	public void flush() throws IOException {
+		ensureOpen();
+		if (current.length > 0) {
+			handOff();
+		}
+	}
+
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		try {
+			if (current.length > 0) {
+				handOff();
+			}
+			put(END);
+			join();
+			checkError();
+			deflater.close();
+		} finally {
+			closed = true;
+			if (thread.isAlive()) {
+				// an error occurred before all buffers were handed off
+				aborted = true;
+				thread.interrupt();
+			}
+		}
+	}
+
+	/**
+	 * Stop compression without finishing the compressed format, for example when the export failed.
+	 * The underlying stream is not closed. Does nothing if the stream is already closed.
+	 */
+	public void abort() {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		aborted = true;
+		thread.interrupt();
+		try {
+			join();
+		} catch (InterruptedIOException e) {
+			// compression thread is a daemon and it stops on its own
+		}
+	}
+
+	/**
+	 * Get number of bytes written by the exporter
+	 *
+	 * @return number of uncompressed bytes
+	 */
+	public long getUncompressedBytes() {
+		return uncompressedBytes;
+	}
+
+	/**
+	 * Get number of compressed bytes written to the underlying stream so far. The final value
+	 * is known after the stream is closed.
+	 *
+	 * @return number of compressed bytes
+	 */
+	public long getCompressedBytes() {
+		return counter.getCount();
+	}
+
+	private void ensureOpen() throws IOException {
+		if (closed) {
+			throw new IOException("Stream closed");
+		}
+	}
+
+	private void checkError() throws IOException {
+		if (error != null) {
+			throw error;
+		}
+	}
+
+	private void handOff() throws IOException {
+		checkError();
+		put(current);
+		try {
+			current = free.take();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for compression");
+		}
+	}
+
+	private void put(Chunk chunk) throws IOException {
+		try {
+			full.put(chunk);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for compression");
+		}
+	}
+
+	private void join() throws InterruptedIOException {
+		try {
+			thread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for compression");
+		}
+	}
+
+	private class Compressor implements Runnable {
+
+		public void run() {
+			try {
+				while (!aborted) {
+					Chunk chunk = full.take();
+					if (chunk == END) {
+						break;
+					}
+					// after an error, buffers are only given back, so the exporter is never blocked
+					if (error == null) {
+						try {
+							deflater.write(chunk.data, 0, chunk.length);
+						} catch (IOException e) {
+							error = e;
+						}
+					}
+					chunk.length = 0;
+					free.put(chunk);
+				}
+			} catch (InterruptedException e) {
+				// aborted
+			}
+		}
+	}
+
+	private static class Chunk {
+
+		private byte[] data;
+		private int length;
+
+		private Chunk(int size) {
+			data = new byte[size];
+		}
+	}
+
+	private static class LevelGZIPOutputStream extends GZIPOutputStream {
+
+		private LevelGZIPOutputStream(OutputStream out, int size, int level) throws IOException {
+			super(out, size);
+			def.setLevel(level);
+		}
+	}
+
+	private static class CountingOutputStream extends FilterOutputStream {
+
+		private volatile long count;
+
+		private CountingOutputStream(OutputStream out) {
+			super(out);
+		}
+
+		public void write(int b) throws IOException {
+			out.write(b);
+			count++;
+		}
+
+		public void write(byte[] b, int off, int len) throws IOException {
+			out.write(b, off, len);
+			count += len;
+		}
+
+		private long getCount() {
+			return count;
+		}
+	}
+
+}
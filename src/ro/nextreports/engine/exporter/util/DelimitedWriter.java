@@ -0,0 +1,235 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ro.nextreports.engine.exporter.util;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Buffered writer for delimited text files (csv, tsv).
+ * Every field is scanned only once to find out if it must be quoted.
+ *
+ * Like a PrintStream, this writer never throws an IOException; use {@link #checkError()} to
+ * test if an error occurred.
+ */
+public class DelimitedWriter {
+
+	/** Windows line ending (also used by RFC 4180) */
+	public static final String CRLF = "\r\n";
+
+	/** Line ending written by the old csv and tsv exporters */
+	public static final String LEGACY_LINE_ENDING = " " + CRLF;
+
+	private static final int BUFFER_SIZE = 8192;
+
+	private Writer writer;
+	private char separator;
+	private char quote;
+	private String lineEnding = LEGACY_LINE_ENDING;
+	private boolean rfc4180;
+
+	private char[] buffer = new char[BUFFER_SIZE];
+	private int count;
+
+	// true if a field was written to the current line, so a separator must be written before the next one
+	private boolean wasPreviousField;
+	private boolean error;
+
+	/**
+	 * Create a delimited writer
+	 *
+	 * @param writer writer to write to
+	 * @param separator field separator
+	 * @param quote quote character used to enclose fields
+	 */
+	public DelimitedWriter(Writer writer, char separator, char quote) {
+		this.writer = writer;
+		this.separator = separator;
+		this.quote = quote;
+	}
+
+	public char getSeparator() {
+		return separator;
+	}
+
+	public void setSeparator(char separator) {
+		this.separator = separator;
+	}
+
+	public char getQuote() {
+		return quote;
+	}
+
+	public void setQuote(char quote) {
+		this.quote = quote;
+	}
+
+	public String getLineEnding() {
+		return lineEnding;
+	}
+
+	public void setLineEnding(String lineEnding) {
+		this.lineEnding = lineEnding;
+	}
+
+	public boolean isRfc4180() {
+		return rfc4180;
+	}
+
+	/**
+	 * Set RFC 4180 mode : fields are not trimmed and they are quoted only if they contain a separator,
+	 * a quote or a line break.
+	 * Otherwise (default) fields are trimmed and they are quoted also if they contain a space.
+	 *
+	 * @param rfc4180 true for RFC 4180 mode
+	 */
+	public void setRfc4180(boolean rfc4180) {
+		this.rfc4180 = rfc4180;
+	}
+
+	/**
+	 * Write a field, preceded by a separator if it is not the first field on the line.
+	 *
+	 * @param s field value; null is written as an empty field
+	 */
+	public void writeField(String s) {
+		if (wasPreviousField) {
+			write(separator);
+		}
+		wasPreviousField = true;
+		if (s == null) {
+			return;
+		}
+
+		int start = 0;
+		int end = s.length();
+		if (!rfc4180) {
+			// same as String.trim, without creating a new string
+			while ((start < end) && (s.charAt(start) <= ' ')) {
+				start++;
+			}
+			while ((start < end) && (s.charAt(end - 1) <= ' ')) {
+				end--;
+			}
+		}
+
+		boolean hasQuote = false;
+		boolean needsQuote = false;
+		for (int i = start; i < end; i++) {
+			char c = s.charAt(i);
+			if (c == quote) {
+				hasQuote = true;
+				break;
+			} else if ((c == separator) || (rfc4180 ? ((c == '\r') || (c == '\n')) : (c == ' '))) {
+				needsQuote = true;
+			}
+		}
+
+		if (hasQuote) {
+			// surrounding quotes and internal quotes doubled
+			write(quote);
+			for (int i = start; i < end; i++) {
+				char c = s.charAt(i);
+				if (c == quote) {
+					write(quote);
+				}
+				write(c);
+			}
+			write(quote);
+		} else if (needsQuote) {
+			write(quote);
+			write(s, start, end);
+			write(quote);
+		} else {
+			write(s, start, end);
+		}
+	}
+
+	/**
+	 * Write the line ending to mark the end of a record
+	 */
+	public void endRecord() {
+		write(lineEnding, 0, lineEnding.length());
+		wasPreviousField = false;
+	}
+
+	public void flush() {
+		flushBuffer();
+		try {
+			writer.flush();
+		} catch (IOException e) {
+			error = true;
+		}
+	}
+
+	public void close() {
+		flushBuffer();
+		try {
+			writer.close();
+		} catch (IOException e) {
+			error = true;
+		}
+	}
+
+	/**
+	 * Flush the writer and test if an error occurred
+	 *
+	 * @return true if an IOException was thrown by the underlying writer
+	 */
+	public boolean checkError() {
+		if (writer != null) {
+			flush();
+		}
+		return error;
+	}
+
+	private void write(char c) {
+		if (count == buffer.length) {
+			flushBuffer();
+		}
+		buffer[count++] = c;
+	}
+
+	private void write(String s, int start, int end) {
+		int len = end - start;
+		if (len > buffer.length - count) {
+			flushBuffer();
+			if (len > buffer.length) {
+				try {
+					writer.write(s, start, len);
+				} catch (IOException e) {
+					error = true;
+				}
+				return;
+			}
+		}
+		s.getChars(start, end, buffer, count);
+		count += len;
+	}
+
+	private void flushBuffer() {
+		if (count > 0) {
+			try {
+				writer.write(buffer, 0, count);
+			} catch (IOException e) {
+				error = true;
+			}
+			count = 0;
+		}
+	}
+
+}
@@ -0,0 +1,152 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ro.nextreports.engine.exporter.util;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.poi.hssf.usermodel.HSSFCellStyle;
+import org.apache.poi.hssf.usermodel.HSSFFont;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+
+/**
+ * Bounded pool of the cell styles of a HSSF workbook. Styles are interned by their properties, so
+ * cells with the same look share one workbook style, no matter which band element, formatting
+ * condition or subreport built it.
+ * 
+ * Excel 97 files can hold at most 4000 cell styles. When the pool is full, a pooled style with the same
+ * data format (or the default cell style) is used.
+ */
+public class XlsStylePool {
+
+	private static Log LOG = LogFactory.getLog(XlsStylePool.class);
+
+	/** Maximum number of cell styles in a workbook (some of the 4000 allowed are built-in styles) */
+	public static final int MAX_STYLES = 3900;
+
+	// index of default cell style
+	private static final short DEFAULT_STYLE_INDEX = 15;
+
+	private HSSFWorkbook wb;
+	private int maxSize;
+	private Map<List<Object>, HSSFCellStyle> styles = new HashMap<List<Object>, HSSFCellStyle>();
+	// first pooled style for every data format, used when pool is full
+	private Map<String, HSSFCellStyle> formatStyles = new HashMap<String, HSSFCellStyle>();
+
+	public XlsStylePool(HSSFWorkbook wb) {
+		this.wb = wb;
+		this.maxSize = Math.max(0, MAX_STYLES - wb.getNumCellStyles());
+	}
+
+	/**
+	 * Get the pooled style with the same properties as a style
+	 * 
+	 * @param style style (it is not changed and it is not used by cells)
+	 * @param styleWorkbook workbook of the style (pool workbook or another workbook)
+	 * @return pooled style of the pool workbook
+	 */
+	public HSSFCellStyle getStyle(HSSFCellStyle style, HSSFWorkbook styleWorkbook) {
+		HSSFFont font = style.getFont(styleWorkbook);
+		String format = style.getDataFormatString(styleWorkbook);
+		List<Object> key = Arrays.<Object>asList(style.getAlignment(), style.getVerticalAlignment(),
+				style.getWrapText(), style.getRotation(), style.getIndention(), 
+				style.getBorderLeft(), style.getBorderRight(), style.getBorderTop(), style.getBorderBottom(),
+				style.getLeftBorderColor(), style.getRightBorderColor(), style.getTopBorderColor(), style.getBottomBorderColor(),
+				style.getFillPattern(), style.getFillForegroundColor(), style.getFillBackgroundColor(),
+				style.getHidden(), style.getLocked(), format,
+				font.getFontName(), font.getFontHeight(), font.getColor(), font.getBoldweight(), font.getItalic(),
+				font.getUnderline(), font.getStrikeout(), font.getTypeOffset());
+		HSSFCellStyle pooled = styles.get(key);
+		if (pooled != null) {
+			return pooled;
+		}
+		if (styles.size() >= maxSize) {
+			if (styles.size() == maxSize) {
+				LOG.warn("Maximum number of cell styles (" + maxSize + ") reached. Cells with new styles will use existing styles.");
+				// warn only once
+				maxSize--;
+			}
+			pooled = formatStyles.get(format);
+			return (pooled == null) ? wb.getCellStyleAt(DEFAULT_STYLE_INDEX) : pooled;
+		}
+
+		pooled = wb.createCellStyle();
+		if (styleWorkbook == wb) {
+			pooled.cloneStyleFrom(style);
+		} else {
+			// cloneStyleFrom would create a new font for every style
+			copyStyle(style, font, format, pooled);
+		}
+		styles.put(key, pooled);
+		if (!formatStyles.containsKey(format)) {
+			formatStyles.put(format, pooled);
+		}
+		return pooled;
+	}
+
+	/**
+	 * Get the number of pooled styles
+	 * 
+	 * @return number of pooled styles
+	 */
+	public int size() {
+		return styles.size();
+	}
+
+	private void copyStyle(HSSFCellStyle style, HSSFFont font, String format, HSSFCellStyle pooled) {
+		pooled.setAlignment(style.getAlignment());
+		pooled.setVerticalAlignment(style.getVerticalAlignment());
+		pooled.setWrapText(style.getWrapText());
+		pooled.setRotation(style.getRotation());
+		pooled.setIndention(style.getIndention());
+		pooled.setBorderLeft(style.getBorderLeft());
+		pooled.setBorderRight(style.getBorderRight());
+		pooled.setBorderTop(style.getBorderTop());
+		pooled.setBorderBottom(style.getBorderBottom());
+		pooled.setLeftBorderColor(style.getLeftBorderColor());
+		pooled.setRightBorderColor(style.getRightBorderColor());
+		pooled.setTopBorderColor(style.getTopBorderColor());
+		pooled.setBottomBorderColor(style.getBottomBorderColor());
+		pooled.setFillPattern(style.getFillPattern());
+		pooled.setFillForegroundColor(style.getFillForegroundColor());
+		pooled.setFillBackgroundColor(style.getFillBackgroundColor());
+		pooled.setHidden(style.getHidden());
+		pooled.setLocked(style.getLocked());
+		pooled.setDataFormat(wb.createDataFormat().getFormat(format));
+
+		HSSFFont pooledFont = wb.findFont(font.getBoldweight(), font.getColor(), font.getFontHeight(),
+				font.getFontName(), font.getItalic(), font.getStrikeout(), font.getTypeOffset(), font.getUnderline());
+		if (pooledFont == null) {
+			pooledFont = wb.createFont();
+			pooledFont.setBoldweight(font.getBoldweight());
+			pooledFont.setColor(font.getColor());
+			pooledFont.setFontHeight(font.getFontHeight());
+			pooledFont.setFontName(font.getFontName());
+			pooledFont.setItalic(font.getItalic());
+			pooledFont.setStrikeout(font.getStrikeout());
+			pooledFont.setTypeOffset(font.getTypeOffset());
+			pooledFont.setUnderline(font.getUnderline());
+			pooledFont.setCharSet(font.getCharSet());
+		}
+		pooled.setFont(pooledFont);
+	}
+
+}
@@ -59,8 +59,27 @@ public final class XlsUtil {
 	 * @return column number
 	 */
 	public static int copyToSheet(HSSFSheet parentSheet, int parentSheetRow, int parentSheetColumn, HSSFSheet sheet, boolean copyStyle) {
-		int maxColumnNum = 0;
 		Map<Integer, HSSFCellStyle> styleMap = (copyStyle) ? new HashMap<Integer, HSSFCellStyle>() : null;
+		return copyToSheet(parentSheet, parentSheetRow, parentSheetColumn, sheet, styleMap, null);
+	}
+
+	/**
+	 * Copy a sheet to another sheet at a specific (row, column) position, taking the styles from a style pool
+	 * 
+	 * @param parentSheet the sheet to copy into
+	 * @param parentSheetRow the row inside parentSheet where we start to copy
+	 * @param parentSheetColumn the column inside parentSheet where we start to copy
+	 * @param sheet the sheet that is copied
+	 * @param stylePool style pool of parentSheet workbook
+	 * @return column number
+	 */
+	public static int copyToSheet(HSSFSheet parentSheet, int parentSheetRow, int parentSheetColumn, HSSFSheet sheet, XlsStylePool stylePool) {
+		return copyToSheet(parentSheet, parentSheetRow, parentSheetColumn, sheet, null, stylePool);
+	}
+
+	private static int copyToSheet(HSSFSheet parentSheet, int parentSheetRow, int parentSheetColumn, HSSFSheet sheet, 
+			Map<Integer, HSSFCellStyle> styleMap, XlsStylePool stylePool) {
+		int maxColumnNum = 0;
 		for (int i = sheet.getFirstRowNum(); i <= sheet.getLastRowNum(); i++) {
 			HSSFRow srcRow = sheet.getRow(i);
 			HSSFRow destRow;
@@ -74,7 +93,7 @@ public final class XlsUtil {
 				}
 			}
 			if (srcRow != null) {
-				XlsUtil.copyRow(sheet, parentSheet, parentSheetRow, parentSheetColumn, srcRow, destRow, styleMap);
+				XlsUtil.copyRow(sheet, parentSheet, parentSheetRow, parentSheetColumn, srcRow, destRow, styleMap, stylePool);
 				if (srcRow.getLastCellNum() > maxColumnNum) {
 					maxColumnNum = srcRow.getLastCellNum();
 				}
@@ -101,6 +120,11 @@ public final class XlsUtil {
 	 */
 	public static void copyRow(HSSFSheet srcSheet, HSSFSheet destSheet, int parentSheetRow, int parentSheetColumn, HSSFRow srcRow, HSSFRow destRow,
 			Map<Integer, HSSFCellStyle> styleMap) {
+		copyRow(srcSheet, destSheet, parentSheetRow, parentSheetColumn, srcRow, destRow, styleMap, null);
+	}
+
+	private static void copyRow(HSSFSheet srcSheet, HSSFSheet destSheet, int parentSheetRow, int parentSheetColumn, HSSFRow srcRow, HSSFRow destRow,
+			Map<Integer, HSSFCellStyle> styleMap, XlsStylePool stylePool) {
 		// manage a list of merged zone in order to not insert two times a
 		// merged zone
 		Set<CellRangeAddressWrapper> mergedRegions = new TreeSet<CellRangeAddressWrapper>();
@@ -110,6 +134,9 @@ public final class XlsUtil {
 			HSSFCell oldCell = srcRow.getCell(j); // ancienne cell			
 			if (oldCell != null) {				
 				HSSFCell newCell = destRow.createCell(parentSheetColumn + j);				
+				if (stylePool != null) {
+					newCell.setCellStyle(stylePool.getStyle(oldCell.getCellStyle(), oldCell.getSheet().getWorkbook()));
+				}
 				copyCell(oldCell, newCell, styleMap);
 				
 				CellRangeAddress mergedRegion = getMergedRegion(srcSheet, srcRow.getRowNum(), (short) oldCell.getColumnIndex());
@@ -0,0 +1,410 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ro.nextreports.engine.exporter.util;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Enumeration;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.xssf.usermodel.XSSFCell;
+import org.apache.poi.xssf.usermodel.XSSFRow;
+import org.apache.poi.xssf.usermodel.XSSFSheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.openxmlformats.schemas.spreadsheetml.x2006.main.CTCell;
+import org.openxmlformats.schemas.spreadsheetml.x2006.main.CTCellFormula;
+import org.openxmlformats.schemas.spreadsheetml.x2006.main.CTRow;
+import org.openxmlformats.schemas.spreadsheetml.x2006.main.CTSheetData;
+import org.openxmlformats.schemas.spreadsheetml.x2006.main.STCellType;
+
+/**
+ * Keeps only a window of rows of an XSSF workbook in memory.
+ * 
+ * Rows which are not needed anymore are written as sheet xml into a temporary file and removed from
+ * the sheet. Everything else (styles, shared strings, merged regions, drawings, hyperlinks, header and
+ * footer, templates) stays in the XSSFWorkbook. When the workbook is written, the sheet data of every
+ * streamed sheet is replaced with the rows from its temporary file.
+ * 
+ * Text cells with inline string type (see setInlineString) are written as inline strings, so they are
+ * not kept in the shared strings table. XSSF writes them with a value instead of an inline string, so
+ * when inline strings are used the rows of every sheet are written by this class.
+ */
+public class XlsxStreamingWriter {
+
+	private static Log LOG = LogFactory.getLog(XlsxStreamingWriter.class);
+
+	private static final String SHEET_DATA = "sheetData";
+
+	private Map<XSSFSheet, SheetRows> sheets = new IdentityHashMap<XSSFSheet, SheetRows>();
+	private final boolean inlineStrings;
+
+	public XlsxStreamingWriter() {
+		this(false);
+	}
+
+	/**
+	 * Create a writer
+	 * 
+	 * @param inlineStrings true if cells can have inline string type (see setInlineString)
+	 */
+	public XlsxStreamingWriter(boolean inlineStrings) {
+		this.inlineStrings = inlineStrings;
+	}
+
+	/**
+	 * Mark a cell to keep its text as inline string
+	 * Must be called before the text is set
+	 * 
+	 * @param cell cell
+	 */
+	public static void setInlineString(XSSFCell cell) {
+		cell.getCTCell().setT(STCellType.INLINE_STR);
+	}
+
+	/**
+	 * Write to temporary file all the rows of a sheet till a row number and remove them from the sheet
+	 * 
+	 * @param sheet sheet
+	 * @param lastRowNum last row number to write
+	 * @throws IOException if rows cannot be written
+	 */
+	public void flushRows(XSSFSheet sheet, int lastRowNum) throws IOException {
+		SheetRows rows = sheets.get(sheet);
+		if (rows == null) {
+			rows = new SheetRows();
+			sheets.put(sheet, rows);
+		}
+		List<Row> written = new ArrayList<Row>();
+		for (Iterator<Row> it = sheet.rowIterator(); it.hasNext();) {
+			XSSFRow row = (XSSFRow) it.next();
+			if (row.getRowNum() > lastRowNum) {
+				break;
+			}
+			if (row.getRowNum() <= rows.lastRowNum) {
+				// row was created again after it was written (it should be in the row window)
+				LOG.warn("Row " + (row.getRowNum() + 1) + " of sheet '" + sheet.getSheetName() + "' was already written.");
+			} else {
+				writeRow(rows.getWriter(), row);
+				rows.lastRowNum = row.getRowNum();
+			}
+			written.add(row);
+		}
+		CTSheetData sheetData = sheet.getCTWorksheet().getSheetData();
+		for (Row row : written) {
+			CTRow ctRow = ((XSSFRow) row).getCTRow();
+			sheet.removeRow(row);
+			// xml row is not removed by XSSFSheet
+			for (int i = 0, size = sheetData.sizeOfRowArray(); i < size; i++) {
+				if (sheetData.getRowArray(i) == ctRow) {
+					sheetData.removeRow(i);
+					break;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Write to temporary file all the rows of a sheet and remove them from the sheet
+	 * 
+	 * @param sheet sheet
+	 * @throws IOException if rows cannot be written
+	 */
+	public void flushRows(XSSFSheet sheet) throws IOException {
+		flushRows(sheet, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Flush temporary files
+	 * 
+	 * @throws IOException if temporary files cannot be written
+	 */
+	public void flush() throws IOException {
+		for (SheetRows rows : sheets.values()) {
+			if (rows.writer != null) {
+				rows.writer.flush();
+			}
+		}
+	}
+
+	/**
+	 * Write the workbook with all the rows written to temporary files
+	 * 
+	 * @param wb workbook
+	 * @param out output stream (it is not closed)
+	 * @throws IOException if workbook cannot be written
+	 */
+	public void write(XSSFWorkbook wb, OutputStream out) throws IOException {
+		if (inlineStrings) {
+			// sheets with no flushed rows would be written by XSSF with invalid inline string cells
+			for (int i = 0, n = wb.getNumberOfSheets(); i < n; i++) {
+				flushRows(wb.getSheetAt(i));
+			}
+		}
+		Map<String, SheetRows> parts = new HashMap<String, SheetRows>();
+		for (Map.Entry<XSSFSheet, SheetRows> entry : sheets.entrySet()) {
+			flushRows(entry.getKey());
+			entry.getValue().close();
+			// zip entry name of the sheet
+			parts.put(entry.getKey().getPackagePart().getPartName().getName().substring(1), entry.getValue());
+		}
+
+		File file = File.createTempFile("nextreports-xlsx", ".zip");
+		try {
+			OutputStream fos = new BufferedOutputStream(new FileOutputStream(file));
+			try {
+				wb.write(fos);
+			} finally {
+				fos.close();
+			}
+			ZipFile zip = new ZipFile(file);
+			try {
+				ZipOutputStream zos = new ZipOutputStream(out);
+				Enumeration<? extends ZipEntry> entries = zip.entries();
+				while (entries.hasMoreElements()) {
+					ZipEntry entry = entries.nextElement();
+					zos.putNextEntry(new ZipEntry(entry.getName()));
+					InputStream is = zip.getInputStream(entry);
+					try {
+						SheetRows rows = parts.get(entry.getName());
+						if (rows == null) {
+							copy(is, zos);
+						} else {
+							writeSheet(is, rows, zos);
+						}
+					} finally {
+						is.close();
+					}
+					zos.closeEntry();
+				}
+				zos.finish();
+			} finally {
+				zip.close();
+			}
+		} finally {
+			if (!file.delete()) {
+				file.deleteOnExit();
+			}
+		}
+	}
+
+	/**
+	 * Delete all temporary files
+	 */
+	public void dispose() {
+		for (SheetRows rows : sheets.values()) {
+			try {
+				rows.close();
+			} catch (IOException e) {
+				LOG.error(e.getMessage(), e);
+			}
+			if ((rows.file != null) && !rows.file.delete()) {
+				rows.file.deleteOnExit();
+			}
+		}
+		sheets.clear();
+	}
+
+	// sheet xml written by XSSF has no rows, they are taken from temporary file
+	private void writeSheet(InputStream is, SheetRows rows, OutputStream out) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		copy(is, bytes);
+		String xml = bytes.toString("UTF-8");
+		int start = xml.indexOf("<" + SHEET_DATA);
+		if (start == -1) {
+			throw new IOException("Sheet data not found in sheet xml.");
+		}
+		int end = xml.indexOf('>', start) + 1;
+		if (xml.charAt(end - 2) != '/') {
+			String endTag = "</" + SHEET_DATA + ">";
+			end = xml.indexOf(endTag, end) + endTag.length();
+		}
+		out.write(xml.substring(0, start).getBytes("UTF-8"));
+		out.write(("<" + SHEET_DATA + ">").getBytes("UTF-8"));
+		if (rows.file != null) {
+			InputStream fis = new FileInputStream(rows.file);
+			try {
+				copy(fis, out);
+			} finally {
+				fis.close();
+			}
+		}
+		out.write(("</" + SHEET_DATA + ">").getBytes("UTF-8"));
+		out.write(xml.substring(end).getBytes("UTF-8"));
+	}
+
+	private void writeRow(Writer w, XSSFRow row) throws IOException {
+		CTRow ctRow = row.getCTRow();
+		w.write("<row r=\"");
+		w.write(String.valueOf(row.getRowNum() + 1));
+		w.write("\"");
+		if (ctRow.isSetS()) {
+			w.write(" s=\"" + ctRow.getS() + "\"");
+		}
+		if (ctRow.isSetCustomFormat() && ctRow.getCustomFormat()) {
+			w.write(" customFormat=\"1\"");
+		}
+		if (ctRow.isSetHt()) {
+			w.write(" ht=\"" + ctRow.getHt() + "\"");
+		}
+		if (ctRow.isSetHidden() && ctRow.getHidden()) {
+			w.write(" hidden=\"1\"");
+		}
+		if (ctRow.isSetCustomHeight() && ctRow.getCustomHeight()) {
+			w.write(" customHeight=\"1\"");
+		}
+		if (ctRow.isSetOutlineLevel()) {
+			w.write(" outlineLevel=\"" + ctRow.getOutlineLevel() + "\"");
+		}
+		if (ctRow.isSetCollapsed() && ctRow.getCollapsed()) {
+			w.write(" collapsed=\"1\"");
+		}
+		w.write(">");
+		for (Iterator<Cell> it = row.cellIterator(); it.hasNext();) {
+			writeCell(w, (XSSFCell) it.next());
+		}
+		w.write("</row>\n");
+	}
+
+	private void writeCell(Writer w, XSSFCell cell) throws IOException {
+		CTCell ctCell = cell.getCTCell();
+		w.write("<c r=\"");
+		w.write(new CellReference(cell.getRowIndex(), cell.getColumnIndex()).formatAsString());
+		w.write("\"");
+		if (ctCell.isSetS() && (ctCell.getS() > 0)) {
+			w.write(" s=\"" + ctCell.getS() + "\"");
+		}
+		STCellType.Enum type = ctCell.isSetT() ? ctCell.getT() : null;
+		if (STCellType.INLINE_STR.equals(type)) {
+			w.write(" t=\"inlineStr\"><is><t xml:space=\"preserve\">");
+			writeText(w, cell.getStringCellValue());
+			w.write("</t></is></c>");
+			return;
+		}
+		if ((type != null) && !STCellType.N.equals(type)) {
+			w.write(" t=\"" + type + "\"");
+		}
+		w.write(">");
+		if (ctCell.isSetF()) {
+			CTCellFormula f = ctCell.getF();
+			w.write("<f");
+			if (f.isSetT()) {
+				w.write(" t=\"" + f.getT() + "\"");
+			}
+			if (f.isSetRef()) {
+				w.write(" ref=\"" + f.getRef() + "\"");
+			}
+			if (f.isSetSi()) {
+				w.write(" si=\"" + f.getSi() + "\"");
+			}
+			w.write(">");
+			writeText(w, f.getStringValue());
+			w.write("</f>");
+		}
+		if (ctCell.isSetV()) {
+			w.write("<v>");
+			writeText(w, ctCell.getV());
+			w.write("</v>");
+		}
+		w.write("</c>");
+	}
+
+	private void writeText(Writer w, String text) throws IOException {
+		if (text == null) {
+			return;
+		}
+		for (int i = 0, n = text.length(); i < n; i++) {
+			char c = text.charAt(i);
+			switch (c) {
+				case '<':
+					w.write("&lt;");
+					break;
+				case '>':
+					w.write("&gt;");
+					break;
+				case '&':
+					w.write("&amp;");
+					break;
+				case '"':
+					w.write("&quot;");
+					break;
+				case '\t':
+				case '\n':
+				case '\r':
+					w.write(c);
+					break;
+				default:
+					// control characters are not allowed in xml
+					if (c >= 0x20) {
+						w.write(c);
+					}
+			}
+		}
+	}
+
+	private static void copy(InputStream is, OutputStream os) throws IOException {
+		byte[] buffer = new byte[8192];
+		int n;
+		while ((n = is.read(buffer)) != -1) {
+			os.write(buffer, 0, n);
+		}
+	}
+
+	private static class SheetRows {
+
+		private File file;
+		private Writer writer;
+		private int lastRowNum = -1;
+
+		private Writer getWriter() throws IOException {
+			if (writer == null) {
+				file = File.createTempFile("nextreports-xlsx", ".xml");
+				writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+			}
+			return writer;
+		}
+
+		private void close() throws IOException {
+			if (writer != null) {
+				writer.close();
+				writer = null;
+			}
+		}
+	}
+
+}
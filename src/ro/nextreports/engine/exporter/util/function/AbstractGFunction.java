@@ -30,7 +30,16 @@ public abstract class AbstractGFunction implements GFunction {
 	public static final String AVERAGE = "AVERAGE";
 	public static final String COUNT = "COUNT";
 	public static final String COUNT_DISTINCT = "COUNT DISTINCT";
+	public static final String COUNT_DISTINCT_APPROX = "COUNT DISTINCT (APPROX)";
 	public static final String SUM = "SUM";
+	public static final String VARIANCE = "VARIANCE";
+	public static final String STDDEV = "STDDEV";
+	public static final String MEDIAN = "MEDIAN";
+	// percentile functions are named P followed by percentile : P90, P95, P99
+	public static final String PERCENTILE_PREFIX = "P";
+	public static final String P90 = PERCENTILE_PREFIX + "90";
+	public static final String P95 = PERCENTILE_PREFIX + "95";
+	public static final String P99 = PERCENTILE_PREFIX + "99";
 
     protected Object computedValue = getNeutralElement();
 
@@ -0,0 +1,48 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ro.nextreports.engine.exporter.util.function;
+
+import java.math.BigDecimal;
+
+import ro.nextreports.engine.EngineProperties;
+
+/**
+ * Base class for primitive functions : the computed value is boxed only when it is read.
+ */
+public abstract class AbstractPrimitiveFunction extends AbstractGFunction implements PrimitiveFunction {
+
+	// BigDecimal values are accumulated exactly (monetary columns)
+	protected final boolean exactDecimal = EngineProperties.isExactDecimalFunctions();
+
+	public abstract Object getComputedValue();
+
+	public abstract void reset();
+
+	public Object compute(Object value) {
+		if (value instanceof BigDecimal) {
+			computeDecimal((BigDecimal) value);
+		} else {
+			computeDouble(getDouble(value));
+		}
+		return getComputedValue();
+	}
+
+	public void computeDecimal(BigDecimal value) {
+		computeDouble(value.doubleValue());
+	}
+
+}
@@ -16,15 +16,19 @@
  */
 package ro.nextreports.engine.exporter.util.function;
 
+import java.math.BigDecimal;
+import java.math.MathContext;
+
 /**
  * Created by IntelliJ IDEA.
  * User: mihai.panaitescu
  * Date: Nov 13, 2008
  * Time: 12:53:21 PM
  */
-public class AverageFunction extends AbstractGFunction {
+public class AverageFunction extends AbstractPrimitiveFunction {
 
-    private int count = 0;
+    private SumFunction sum = new SumFunction();
+    private long count = 0;
 
     public String getName() {
         return AVERAGE;
@@ -34,16 +38,29 @@ public class AverageFunction extends AbstractGFunction {
         return Double.valueOf(0);
     }
 
-    public Object compute(Object value) {
-        double valOne = getDouble(value);
-        double valTwo = getDouble(computedValue);        
-        computedValue = (valTwo * count + valOne) / (count + 1);
+    public void computeDouble(double value) {
+        sum.computeDouble(value);
+        count++;
+    }
+
+    public void computeDecimal(BigDecimal value) {
+        sum.computeDecimal(value);
         count++;
-        return computedValue;
+    }
+
+    public Object getComputedValue() {
+        if (count == 0) {
+            return getNeutralElement();
+        }
+        Object total = sum.getComputedValue();
+        if (total instanceof BigDecimal) {
+            return ((BigDecimal) total).divide(BigDecimal.valueOf(count), MathContext.DECIMAL128);
+        }
+        return (Double) total / count;
     }
 
     public void reset() {
-        super.reset();
+        sum.reset();
         count = 0;
     }
 }
@@ -0,0 +1,134 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ro.nextreports.engine.exporter.util.function;
+
+import java.util.Arrays;
+
+/**
+ * Approximate COUNT DISTINCT using a HyperLogLog sketch.
+ * 
+ * Memory is bounded (2^PRECISION one byte registers) regardless of the number of values,
+ * with a standard error of about 0.8%. Values are compared like in {@link CountDistinctFunction}.
+ */
+public class CountDistinctApproxFunction extends AbstractGFunction {
+
+	private static final int PRECISION = 14;
+	private static final int REGISTERS = 1 << PRECISION;
+	private static final double ALPHA = 0.7213 / (1 + 1.079 / REGISTERS);
+	// 2^-k
+	private static final double[] INVERSE_POWERS = new double[66];
+	static {
+		for (int i = 0; i < INVERSE_POWERS.length; i++) {
+			INVERSE_POWERS[i] = Math.pow(2, -i);
+		}
+	}
+
+	private byte[] registers = new byte[REGISTERS];
+	// sum of 2^-register and number of empty registers are kept up to date, so the estimate is cheap
+	private double sum = REGISTERS;
+	private int zeros = REGISTERS;
+	private long nulls;
+	private boolean empty = true;
+
+	public String getName() {
+		return COUNT_DISTINCT_APPROX;
+	}
+
+	public Object getNeutralElement() {
+		return null;
+	}
+
+	public Object compute(Object value) {
+		empty = false;
+		if (value == null) {
+			// null is not equal to any value, so every null is counted
+			nulls++;
+		} else {
+			long hash = hash(FunctionUtil.distinctKey(value));
+			int index = (int) (hash >>> (64 - PRECISION));
+			// position of the first 1 bit in the remaining bits
+			int rank = Long.numberOfLeadingZeros((hash << PRECISION) | (1L << (PRECISION - 1))) + 1;
+			int old = registers[index];
+			if (rank > old) {
+				registers[index] = (byte) rank;
+				sum += INVERSE_POWERS[rank] - INVERSE_POWERS[old];
+				if (old == 0) {
+					zeros--;
+				}
+			}
+		}
+		return getComputedValue();
+	}
+
+	public Object getComputedValue() {
+		if (empty) {
+			return null;
+		}
+		double estimate = ALPHA * REGISTERS * REGISTERS / sum;
+		// small range correction
+		if ((estimate <= 2.5 * REGISTERS) && (zeros > 0)) {
+			estimate = REGISTERS * Math.log((double) REGISTERS / zeros);
+		}
+		return Double.valueOf(Math.round(estimate) + nulls);
+	}
+
+	public void reset() {
+		super.reset();
+		Arrays.fill(registers, (byte) 0);
+		sum = REGISTERS;
+		zeros = REGISTERS;
+		nulls = 0;
+		empty = true;
+	}
+
+	// 64 bit hash of a distinct key
+	private static long hash(Object key) {
+		long h;
+		if (key instanceof Long) {
+			h = (Long) key;
+		} else if (key instanceof Integer) {
+			h = (Integer) key;
+		} else if (key instanceof Double) {
+			h = Double.doubleToLongBits((Double) key);
+		} else if (key instanceof String) {
+			String s = (String) key;
+			h = 1125899906842597L;
+			for (int i = 0; i < s.length(); i++) {
+				h = 31 * h + s.charAt(i);
+			}
+		} else if (key instanceof FunctionUtil.TypedKey) {
+			FunctionUtil.TypedKey typedKey = (FunctionUtil.TypedKey) key;
+			h = typedKey.value ^ (((long) typedKey.type.getName().hashCode()) << 32);
+		} else {
+			h = key.hashCode();
+		}
+		// different types with same representation
+		h ^= ((long) key.getClass().getName().hashCode()) << 32;
+		return mix(h);
+	}
+
+	// murmur3 finalizer
+	private static long mix(long h) {
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb53a8e34fe87L;
+		h ^= h >>> 33;
+		return h;
+	}
+
+}
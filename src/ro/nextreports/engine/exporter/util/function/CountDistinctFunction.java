@@ -16,8 +16,8 @@
  */
 package ro.nextreports.engine.exporter.util.function;
 
-import java.util.List;
-import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Set;
 
 /**
  * Created by IntelliJ IDEA.
@@ -27,7 +27,8 @@ import java.util.ArrayList;
  */
 public class CountDistinctFunction extends AbstractGFunction {
 
-    private List<Object> objects = new ArrayList<Object>();
+    // keys of distinct values (see FunctionUtil.distinctKey)
+    private Set<Object> keys = new HashSet<Object>();
 
     public String getName() {
         return COUNT_DISTINCT;
@@ -39,25 +40,16 @@ public class CountDistinctFunction extends AbstractGFunction {
 
     public Object compute(Object value) {
         double val = getDouble(computedValue);
-        if (!contains(value)) {
-            objects.add(value);
+        // null is not equal to any value (FunctionUtil.parameterEquals), so every null is counted
+        if ((value == null) || keys.add(FunctionUtil.distinctKey(value))) {
             computedValue = val + 1;
         } 
         return computedValue;
     }
 
-    private boolean contains(Object value) {
-        for (Object object : objects) {
-            if (FunctionUtil.parameterEquals(object, value)) {
-                return true;
-            }
-        }        
-        return false;
-    }
-
     public void reset() {
         super.reset();
-        objects.clear();
+        keys.clear();
     }
 
 
@@ -16,14 +16,18 @@
  */
 package ro.nextreports.engine.exporter.util.function;
 
+import java.math.BigDecimal;
+
 /**
  * Created by IntelliJ IDEA.
  * User: mihai.panaitescu
  * Date: Nov 13, 2008
  * Time: 12:01:35 PM
  */
-public class CountFunction extends AbstractGFunction {
+public class CountFunction extends AbstractPrimitiveFunction {
     
+    private long count;
+
     public String getName() {
         return COUNT;
     }    
@@ -32,9 +36,25 @@ public class CountFunction extends AbstractGFunction {
         return Double.valueOf(0);
     }
 
+    // any value is counted (not only numbers)
     public Object compute(Object value) {
-        double val = getDouble(computedValue);
-	    computedValue = val + 1;
-        return computedValue;
+        count++;
+        return getComputedValue();
+    }
+
+    public void computeDouble(double value) {
+        count++;
+    }
+
+    public void computeDecimal(BigDecimal value) {
+        count++;
+    }
+
+    public Object getComputedValue() {
+        return Double.valueOf(count);
+    }
+
+    public void reset() {
+        count = 0;
     }
 }
@@ -18,6 +18,7 @@ package ro.nextreports.engine.exporter.util.function;
 
 import java.util.List;
 import java.util.ArrayList;
+import java.util.regex.Pattern;
 
 /**
  * Created by IntelliJ IDEA.
@@ -27,6 +28,8 @@ import java.util.ArrayList;
  */
 public class FunctionFactory {
 
+    private static final Pattern PERCENTILE_PATTERN = Pattern.compile(AbstractGFunction.PERCENTILE_PREFIX + "\\d{1,2}", Pattern.CASE_INSENSITIVE);
+
     public static GFunction getFunction(String functionName) {
         if (AbstractGFunction.MIN.equalsIgnoreCase(functionName)) {
             return new MinFunction();
@@ -38,10 +41,20 @@ public class FunctionFactory {
             return new CountFunction();
         } else if (AbstractGFunction.COUNT_DISTINCT.equalsIgnoreCase(functionName)) {
             return new CountDistinctFunction();
+        } else if (AbstractGFunction.COUNT_DISTINCT_APPROX.equalsIgnoreCase(functionName)) {
+            return new CountDistinctApproxFunction();
         } else if (AbstractGFunction.SUM.equalsIgnoreCase(functionName)) {
             return new SumFunction();
         } else if (AbstractGFunction.NOOP.equalsIgnoreCase(functionName)) {
             return new NoopFunction();
+        } else if (AbstractGFunction.VARIANCE.equalsIgnoreCase(functionName)) {
+            return new VarianceFunction();
+        } else if (AbstractGFunction.STDDEV.equalsIgnoreCase(functionName)) {
+            return new StdDevFunction();
+        } else if (AbstractGFunction.MEDIAN.equalsIgnoreCase(functionName)) {
+            return new PercentileFunction(AbstractGFunction.MEDIAN, 50);
+        } else if ((functionName != null) && PERCENTILE_PATTERN.matcher(functionName).matches()) {
+            return new PercentileFunction(functionName.toUpperCase(), Integer.parseInt(functionName.substring(1)));
         }
 
         throw new IllegalArgumentException("Function '" + functionName + "' is not defined!");
@@ -62,6 +75,13 @@ public class FunctionFactory {
         names.add(AbstractGFunction.AVERAGE);
         names.add(AbstractGFunction.COUNT);
         names.add(AbstractGFunction.COUNT_DISTINCT);
+        names.add(AbstractGFunction.COUNT_DISTINCT_APPROX);
+        names.add(AbstractGFunction.VARIANCE);
+        names.add(AbstractGFunction.STDDEV);
+        names.add(AbstractGFunction.MEDIAN);
+        names.add(AbstractGFunction.P90);
+        names.add(AbstractGFunction.P95);
+        names.add(AbstractGFunction.P99);
         return names;
     }
 
@@ -77,12 +97,14 @@ public class FunctionFactory {
         List<GFunction> functions = new ArrayList<GFunction>();
         functions.add(getFunction(AbstractGFunction.COUNT));
         functions.add(getFunction(AbstractGFunction.COUNT_DISTINCT));
+        functions.add(getFunction(AbstractGFunction.COUNT_DISTINCT_APPROX));
         return functions;
     }
 
     public static boolean isCountFunction(String functionName) {
         return AbstractGFunction.COUNT.equals(functionName) ||
                AbstractGFunction.COUNT_DISTINCT.equals(functionName) ||
+               AbstractGFunction.COUNT_DISTINCT_APPROX.equals(functionName) ||
                AbstractGFunction.NOOP.equals(functionName); 
     }
 
@@ -103,6 +103,87 @@ public class FunctionUtil {
         return v1.equals(v2);
     }
 
+    /**
+     * Get a key for a value such that two non null values are equal by
+     * {@link #parameterEquals(Object, Object)} if and only if their keys are equal.
+     * Keys can be used in hash based collections.
+     *
+     * @param value non null value
+     * @return hash key for value
+     */
+    public static Object distinctKey(Object value) {
+        if ((value instanceof Integer) || (value instanceof Long)) {
+            return value;
+        }
+        if (value instanceof Double) {
+            // -0.0 == 0.0
+            return Double.valueOf(((Double) value).doubleValue() + 0.0);
+        }
+        if (value instanceof String) {
+            // same as equalsIgnoreCase on trimmed strings
+            String s = ((String) value).trim();
+            char[] chars = new char[s.length()];
+            for (int i = 0; i < chars.length; i++) {
+                chars[i] = Character.toLowerCase(Character.toUpperCase(s.charAt(i)));
+            }
+            return new String(chars);
+        }
+        if (value instanceof BigDecimal) {
+            return new TypedKey(BigDecimal.class, Double.doubleToLongBits(((BigDecimal) value).doubleValue() + 0.0));
+        }
+        if (value instanceof Date) {
+            return new TypedKey(Date.class, ((Date) value).getTime());
+        }
+        return value;
+    }
+
+    // key for values compared by a long representation
+    static final class TypedKey {
+
+        final Class<?> type;
+        final long value;
+
+        private TypedKey(Class<?> type, long value) {
+            this.type = type;
+            this.value = value;
+        }
+
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof TypedKey)) return false;
+            TypedKey that = (TypedKey) o;
+            return (value == that.value) && type.equals(that.type);
+        }
+
+        public int hashCode() {
+            return 31 * type.hashCode() + (int) (value ^ (value >>> 32));
+        }
+    }
+
+    /**
+     * Compute a value with a function. Numbers are passed as primitives to a
+     * {@link PrimitiveFunction}, so no value is allocated for every row.
+     *
+     * @param function function
+     * @param value value
+     */
+    public static void compute(GFunction function, Object value) {
+        if (function instanceof PrimitiveFunction) {
+            PrimitiveFunction pf = (PrimitiveFunction) function;
+            if (value == null) {
+                pf.computeDouble(0);
+                return;
+            } else if (value instanceof BigDecimal) {
+                pf.computeDecimal((BigDecimal) value);
+                return;
+            } else if (value instanceof Number) {
+                pf.computeDouble(((Number) value).doubleValue());
+                return;
+            }
+        }
+        function.compute(value);
+    }
+
     public static Object increase(Object val) {
 		if (val == null) {
 			return null;
@@ -22,7 +22,9 @@ package ro.nextreports.engine.exporter.util.function;
  * Date: Nov 13, 2008
  * Time: 11:53:49 AM
  */
-public class MaxFunction extends AbstractGFunction {
+public class MaxFunction extends AbstractPrimitiveFunction {
+
+    private double max = Double.MIN_VALUE;
 
     public String getName() {
         return MAX;
@@ -32,13 +34,17 @@ public class MaxFunction extends AbstractGFunction {
         return Double.valueOf(Double.MIN_VALUE);
     }
 
-    public Object compute(Object value) {
-        double valOne = getDouble(value);
-        double valTwo = getDouble(computedValue);
-        computedValue = valTwo;
-        if (valOne >= valTwo) {
-            computedValue = valOne;
+    public void computeDouble(double value) {
+        if (value >= max) {
+            max = value;
         }
-        return computedValue;
+    }
+
+    public Object getComputedValue() {
+        return max;
+    }
+
+    public void reset() {
+        max = Double.MIN_VALUE;
     }
 }
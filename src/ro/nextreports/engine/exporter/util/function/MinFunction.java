@@ -22,7 +22,9 @@ package ro.nextreports.engine.exporter.util.function;
  * Date: Nov 13, 2008
  * Time: 11:41:51 AM
  */
-public class MinFunction extends AbstractGFunction {
+public class MinFunction extends AbstractPrimitiveFunction {
+
+    private double min = Double.MAX_VALUE;
 
     public String getName() {
         return MIN;
@@ -32,13 +34,17 @@ public class MinFunction extends AbstractGFunction {
         return Double.valueOf(Double.MAX_VALUE);
     }
 
-    public Object compute(Object value) {
-        double valOne = getDouble(value);
-        double valTwo = getDouble(computedValue);
-        computedValue = valTwo;
-        if (valOne <= valTwo) {
-            computedValue = valOne;
+    public void computeDouble(double value) {
+        if (value <= min) {
+            min = value;
         }
-        return computedValue;
+    }
+
+    public Object getComputedValue() {
+        return min;
+    }
+
+    public void reset() {
+        min = Double.MAX_VALUE;
     }
 }
@@ -0,0 +1,134 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ro.nextreports.engine.exporter.util.function;
+
+import java.util.Arrays;
+
+/**
+ * Percentile of values (median is the 50th percentile).
+ * 
+ * Values are kept exactly while a group is small (at most EXACT_LIMIT values) and the
+ * percentile is interpolated between the closest ranks. For bigger groups values are
+ * summarized in a {@link TDigest} which uses bounded memory. The computed value is kept until
+ * new values are added, so values are sorted only once for all the cells which show it.
+ */
+public class PercentileFunction extends AbstractPrimitiveFunction {
+
+	public static final int EXACT_LIMIT = 10000;
+
+	private final String name;
+	private final double quantile;
+
+	private double[] values = new double[16];
+	private int count;
+	private TDigest digest;
+	// computed value, null if values were added after it was computed
+	private Double computed;
+
+	/**
+	 * @param name function name
+	 * @param percentile percentile between 0 and 100
+	 */
+	public PercentileFunction(String name, double percentile) {
+		if ((percentile < 0) || (percentile > 100)) {
+			throw new IllegalArgumentException("Function " + name + " : percentile '" + percentile + "' must be between 0 and 100!");
+		}
+		this.name = name;
+		this.quantile = percentile / 100;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public Object getNeutralElement() {
+		return Double.valueOf(0);
+	}
+
+	public void computeDouble(double value) {
+		computed = null;
+		if (digest != null) {
+			digest.add(value);
+			return;
+		}
+		if (count == EXACT_LIMIT) {
+			digest = new TDigest();
+			for (int i = 0; i < count; i++) {
+				digest.add(values[i]);
+			}
+			digest.add(value);
+			values = null;
+			return;
+		}
+		if (count == values.length) {
+			values = Arrays.copyOf(values, Math.min(count * 2, EXACT_LIMIT));
+		}
+		values[count++] = value;
+	}
+
+	/**
+	 * Merge values computed by another percentile function (for example by another group)
+	 * 
+	 * @param other other percentile function
+	 */
+	public void merge(PercentileFunction other) {
+		computed = null;
+		if (other.digest != null) {
+			if (digest == null) {
+				digest = new TDigest();
+				for (int i = 0; i < count; i++) {
+					digest.add(values[i]);
+				}
+				values = null;
+			}
+			digest.add(other.digest);
+		} else {
+			for (int i = 0; i < other.count; i++) {
+				computeDouble(other.values[i]);
+			}
+		}
+	}
+
+	public Object getComputedValue() {
+		if (computed != null) {
+			return computed;
+		}
+		if (digest != null) {
+			computed = digest.quantile(quantile);
+			return computed;
+		}
+		if (count == 0) {
+			return getNeutralElement();
+		}
+		// order of values is not needed, so they are sorted in place
+		Arrays.sort(values, 0, count);
+		// interpolation between closest ranks (like PERCENTILE_CONT)
+		double position = quantile * (count - 1);
+		int lower = (int) Math.floor(position);
+		int upper = (int) Math.ceil(position);
+		computed = values[lower] + (position - lower) * (values[upper] - values[lower]);
+		return computed;
+	}
+
+	public void reset() {
+		values = new double[16];
+		count = 0;
+		digest = null;
+		computed = null;
+	}
+
+}
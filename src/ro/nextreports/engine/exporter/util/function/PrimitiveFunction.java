@@ -0,0 +1,41 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ro.nextreports.engine.exporter.util.function;
+
+import java.math.BigDecimal;
+
+/**
+ * Function which keeps its state in primitives, so computing a value does not allocate.
+ * Values are fed with {@link FunctionUtil#compute(GFunction, Object)}.
+ */
+public interface PrimitiveFunction extends GFunction {
+
+	/**
+	 * Compute a numeric value (a null value is computed as 0)
+	 * 
+	 * @param value value
+	 */
+	public void computeDouble(double value);
+
+	/**
+	 * Compute a decimal value, exactly if function supports it
+	 * 
+	 * @param value value
+	 */
+	public void computeDecimal(BigDecimal value);
+
+}
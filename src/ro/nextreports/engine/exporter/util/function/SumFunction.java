@@ -16,13 +16,21 @@
  */
 package ro.nextreports.engine.exporter.util.function;
 
+import java.math.BigDecimal;
+
 /**
  * Created by IntelliJ IDEA.
  * User: mihai.panaitescu
  * Date: Nov 13, 2008
  * Time: 11:31:52 AM
  */
-public class SumFunction extends AbstractGFunction {
+public class SumFunction extends AbstractPrimitiveFunction {
+
+    // compensated (Neumaier) sum
+    private double sum;
+    private double compensation;
+    // exact sum of BigDecimal values
+    private BigDecimal decimalSum;
 
     public String getName() {
         return SUM;
@@ -32,10 +40,38 @@ public class SumFunction extends AbstractGFunction {
         return Double.valueOf(0);
     }
 
-    public Object compute(Object value) {
-        double valOne = getDouble(value);
-        double valTwo = getDouble(computedValue);
-        computedValue = valOne + valTwo;
-        return computedValue;
+    public void computeDouble(double value) {
+        double t = sum + value;
+        if (Math.abs(sum) >= Math.abs(value)) {
+            compensation += (sum - t) + value;
+        } else {
+            compensation += (value - t) + sum;
+        }
+        sum = t;
+    }
+
+    public void computeDecimal(BigDecimal value) {
+        if (exactDecimal) {
+            decimalSum = (decimalSum == null) ? value : decimalSum.add(value);
+        } else {
+            computeDouble(value.doubleValue());
+        }
+    }
+
+    public Object getComputedValue() {
+        double total = sum + compensation;
+        if (decimalSum == null) {
+            return total;
+        }
+        if (total == 0) {
+            return decimalSum;
+        }
+        return decimalSum.add(BigDecimal.valueOf(total));
+    }
+
+    public void reset() {
+        sum = 0;
+        compensation = 0;
+        decimalSum = null;
     }
 }
@@ -0,0 +1,199 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ro.nextreports.engine.exporter.util.function;
+
+/**
+ * Merging t-digest (Ted Dunning) : a mergeable summary of a distribution used to estimate
+ * quantiles with bounded memory. Accuracy is better near the tails (0 and 1 quantiles).
+ */
+class TDigest {
+
+	private static final double COMPRESSION = 100;
+
+	private final int maxCentroids = (int) (2 * Math.ceil(COMPRESSION)) + 10;
+	private double[] means = new double[maxCentroids];
+	private double[] weights = new double[maxCentroids];
+	private int centroids;
+
+	// values are buffered and merged into centroids in batches
+	private double[] bufferMeans = new double[5 * maxCentroids];
+	private double[] bufferWeights = new double[5 * maxCentroids];
+	private int buffered;
+
+	// centroids and buffered values merged in mean order
+	private double[] mergeMeans = new double[6 * maxCentroids];
+	private double[] mergeWeights = new double[6 * maxCentroids];
+
+	private double totalWeight;
+	private double min = Double.POSITIVE_INFINITY;
+	private double max = Double.NEGATIVE_INFINITY;
+
+	void add(double value) {
+		add(value, 1);
+	}
+
+	void add(TDigest other) {
+		other.compress();
+		for (int i = 0; i < other.centroids; i++) {
+			add(other.means[i], other.weights[i]);
+		}
+		min = Math.min(min, other.min);
+		max = Math.max(max, other.max);
+	}
+
+	private void add(double mean, double weight) {
+		if (buffered == bufferMeans.length) {
+			compress();
+		}
+		bufferMeans[buffered] = mean;
+		bufferWeights[buffered] = weight;
+		buffered++;
+		totalWeight += weight;
+		min = Math.min(min, mean);
+		max = Math.max(max, mean);
+	}
+
+	private void compress() {
+		if (buffered == 0) {
+			return;
+		}
+		// centroids are sorted, only buffered values must be sorted before they are merged
+		sort(bufferMeans, bufferWeights, 0, buffered - 1);
+		int n = centroids + buffered;
+		double[] allMeans = mergeMeans;
+		double[] allWeights = mergeWeights;
+		for (int i = 0, j = 0, k = 0; k < n; k++) {
+			if ((j == buffered) || ((i < centroids) && (means[i] <= bufferMeans[j]))) {
+				allMeans[k] = means[i];
+				allWeights[k] = weights[i++];
+			} else {
+				allMeans[k] = bufferMeans[j];
+				allWeights[k] = bufferWeights[j++];
+			}
+		}
+
+		int merged = 0;
+		double mean = allMeans[0];
+		double weight = allWeights[0];
+		double weightSoFar = 0;
+		for (int i = 1; i < n; i++) {
+			double q0 = weightSoFar / totalWeight;
+			double q2 = (weightSoFar + weight + allWeights[i]) / totalWeight;
+			if (k(q2) - k(q0) <= 1) {
+				weight += allWeights[i];
+				mean += (allMeans[i] - mean) * allWeights[i] / weight;
+			} else {
+				means[merged] = mean;
+				weights[merged] = weight;
+				merged++;
+				weightSoFar += weight;
+				mean = allMeans[i];
+				weight = allWeights[i];
+			}
+		}
+		means[merged] = mean;
+		weights[merged] = weight;
+		centroids = merged + 1;
+		buffered = 0;
+	}
+
+	// scale function k1 : centroids are smaller near the tails
+	private static double k(double q) {
+		return COMPRESSION / (2 * Math.PI) * Math.asin(2 * Math.min(1, Math.max(0, q)) - 1);
+	}
+
+	double quantile(double q) {
+		compress();
+		if (centroids == 0) {
+			return 0;
+		}
+		if (centroids == 1) {
+			return means[0];
+		}
+		double index = q * totalWeight;
+		// weight is considered to be centered on the centroid mean
+		if (index < weights[0] / 2) {
+			return min + (means[0] - min) * index / (weights[0] / 2);
+		}
+		double cumulative = weights[0] / 2;
+		for (int i = 0; i < centroids - 1; i++) {
+			double step = (weights[i] + weights[i + 1]) / 2;
+			if (cumulative + step >= index) {
+				return means[i] + (means[i + 1] - means[i]) * (index - cumulative) / step;
+			}
+			cumulative += step;
+		}
+		double last = weights[centroids - 1] / 2;
+		return means[centroids - 1] + (max - means[centroids - 1]) * Math.min(1, (index - cumulative) / last);
+	}
+
+	// sort means and their weights by mean between from and to (inclusive) : quicksort on
+	// primitive arrays, insertion sort for small ranges
+	private static void sort(double[] means, double[] weights, int from, int to) {
+		while (to - from > 16) {
+			int middle = (from + to) >>> 1;
+			double pivot = median(means[from], means[middle], means[to]);
+			int i = from;
+			int j = to;
+			while (i <= j) {
+				while (means[i] < pivot) {
+					i++;
+				}
+				while (means[j] > pivot) {
+					j--;
+				}
+				if (i <= j) {
+					swap(means, weights, i++, j--);
+				}
+			}
+			// recursion on the smaller part
+			if (j - from < to - i) {
+				sort(means, weights, from, j);
+				from = i;
+			} else {
+				sort(means, weights, i, to);
+				to = j;
+			}
+		}
+		for (int i = from + 1; i <= to; i++) {
+			double mean = means[i];
+			double weight = weights[i];
+			int j = i - 1;
+			while ((j >= from) && (means[j] > mean)) {
+				means[j + 1] = means[j];
+				weights[j + 1] = weights[j];
+				j--;
+			}
+			means[j + 1] = mean;
+			weights[j + 1] = weight;
+		}
+	}
+
+	private static double median(double a, double b, double c) {
+		return Math.max(Math.min(a, b), Math.min(Math.max(a, b), c));
+	}
+
+	private static void swap(double[] means, double[] weights, int i, int j) {
+		double mean = means[i];
+		means[i] = means[j];
+		means[j] = mean;
+		double weight = weights[i];
+		weights[i] = weights[j];
+		weights[j] = weight;
+	}
+
+}
@@ -0,0 +1,61 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ro.nextreports.engine.exporter.util.function;
+
+/**
+ * Sample variance computed in a single pass with Welford's algorithm.
+ */
+public class VarianceFunction extends AbstractPrimitiveFunction {
+
+	private long count;
+	private double mean;
+	// sum of squares of differences from the current mean
+	private double m2;
+
+	public String getName() {
+		return VARIANCE;
+	}
+
+	public Object getNeutralElement() {
+		return Double.valueOf(0);
+	}
+
+	public void computeDouble(double value) {
+		count++;
+		double delta = value - mean;
+		mean += delta / count;
+		m2 += delta * (value - mean);
+	}
+
+	protected double getVariance() {
+		if (count < 2) {
+			return 0;
+		}
+		return m2 / (count - 1);
+	}
+
+	public Object getComputedValue() {
+		return getVariance();
+	}
+
+	public void reset() {
+		count = 0;
+		mean = 0;
+		m2 = 0;
+	}
+
+}
@@ -18,6 +18,8 @@ package ro.nextreports.engine.querybuilder.sql.dialect;
 
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.sql.Types;
 import java.sql.Timestamp;
 import java.sql.Time;
@@ -26,6 +28,8 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -42,6 +46,15 @@ import org.apache.commons.logging.LogFactory;
 public abstract class AbstractDialect implements Dialect {
 	
 	protected static final Log LOG = LogFactory.getLog(AbstractDialect.class);
+	
+	private static final Pattern SELECT_PATTERN = Pattern.compile("^\\s*select(?=\\s)", Pattern.CASE_INSENSITIVE);
+	private static final Pattern SELECT_DISTINCT_PATTERN = Pattern.compile("^\\s*select(\\s+distinct)?(?=\\s)", Pattern.CASE_INSENSITIVE);
+	// query has already a row limit after SELECT
+	private static final Pattern ROW_LIMIT_PATTERN = Pattern.compile("^\\s+(top|first|skip)\\b", Pattern.CASE_INSENSITIVE);
+	private static final Pattern LIMIT_PATTERN = Pattern.compile("\\blimit\\b", Pattern.CASE_INSENSITIVE);
+	private static final Pattern FETCH_PATTERN = Pattern.compile("\\b(fetch|offset)\\b", Pattern.CASE_INSENSITIVE);
+	private static final Pattern ORDER_BY_PATTERN = Pattern.compile("\\border\\s+by\\b", Pattern.CASE_INSENSITIVE);
+	private static final Pattern SET_OPERATOR_PATTERN = Pattern.compile("\\b(union|intersect|except|minus)\\b", Pattern.CASE_INSENSITIVE);
 
     private List<ColumnTypeMatcher> columnTypeMatchers = new ArrayList<ColumnTypeMatcher>();
 //    private Map<String, Integer> jdbcTypes = new TreeMap<String, Integer>(String.CASE_INSENSITIVE_ORDER);
@@ -224,4 +237,115 @@ public abstract class AbstractDialect implements Dialect {
     public boolean needsHoldCursorsForPreparedStatement() {
     	return false;
     }
+    
+    public int getStreamingFetchSize(int fetchSize) {
+    	return fetchSize;
+    }
+    
+    public boolean needsAutoCommitOffForStreaming() {
+    	return false;
+    }
+    
+    public String getRowCountEstimateQuery(String sql) {
+    	return null;
+    }
+    
+    public int getRowCountEstimate(ResultSet rs) throws SQLException {
+    	return -1;
+    }
+    
+    public String getLimitQuery(String sql, int offset, int limit) {
+    	return null;
+    }
+    
+    // sql LIMIT limit OFFSET offset
+    // (query is not wrapped in a sub-select, because some databases do not accept duplicate column names there)
+    protected String getLimitOffsetQuery(String sql, int offset, int limit) {
+    	if (hasLastClause(sql, LIMIT_PATTERN)) {
+    		return null;
+    	}
+    	StringBuilder sb = new StringBuilder();
+    	sb.append(trimQuery(sql)).append(" LIMIT ").append(limit);
+    	if (offset > 0) {
+    		sb.append(" OFFSET ").append(offset);
+    	}
+    	return sb.toString();
+    }
+    
+    // sql OFFSET offset ROWS FETCH NEXT limit ROWS ONLY (SQL:2008)
+    protected String getOffsetFetchQuery(String sql, int offset, int limit) {
+    	if (hasLastClause(sql, FETCH_PATTERN)) {
+    		return null;
+    	}
+    	return trimQuery(sql) + " OFFSET " + offset + " ROWS FETCH NEXT " + limit + " ROWS ONLY";
+    }
+    
+    // inserts a clause after the first SELECT [DISTINCT] keyword (TOP n , FIRST n SKIP m)
+    // null if query does not start with SELECT (for example WITH) or if the first SELECT is only
+    // a part of the query (UNION, INTERSECT, EXCEPT)
+    protected String insertAfterSelect(String sql, String clause, boolean afterDistinct) {
+    	Matcher matcher = (afterDistinct ? SELECT_DISTINCT_PATTERN : SELECT_PATTERN).matcher(sql);
+    	if (!matcher.find() || ROW_LIMIT_PATTERN.matcher(sql.substring(matcher.end())).find()) {
+    		return null;
+    	}
+    	if (hasSetOperator(sql)) {
+    		return null;
+    	}
+    	return sql.substring(0, matcher.end()) + " " + clause + sql.substring(matcher.end());
+    }
+    
+    // query ends with an ORDER BY clause which is not inside a sub-select
+    protected boolean endsWithOrderBy(String sql) {
+    	return hasLastClause(sql, ORDER_BY_PATTERN);
+    }
+    
+    // query has a UNION, INTERSECT, EXCEPT or MINUS which is not inside parentheses
+    protected boolean hasSetOperator(String sql) {
+    	return SET_OPERATOR_PATTERN.matcher(getTopLevelQuery(sql)).find();
+    }
+    
+    // query where literals and text inside parentheses (sub-selects, function arguments) are replaced
+    // by spaces, so positions of top level keywords are the same as in the query
+    protected String getTopLevelQuery(String sql) {
+    	char[] chars = sql.toCharArray();
+    	char quote = 0;
+    	int depth = 0;
+    	for (int i = 0; i < chars.length; i++) {
+    		char c = chars[i];
+    		if (quote != 0) {
+    			if (c == quote) {
+    				quote = 0;
+    			}
+    		} else if ((c == '\'') || (c == '"')) {
+    			quote = c;
+    		} else if (c == '(') {
+    			depth++;
+    		} else if ((c == ')') && (depth > 0)) {
+    			depth--;
+    		} else if (depth == 0) {
+    			continue;
+    		}
+    		chars[i] = ' ';
+    	}
+    	return new String(chars);
+    }
+    
+    private boolean hasLastClause(String sql, Pattern pattern) {
+    	String query = trimQuery(sql);
+    	Matcher matcher = pattern.matcher(query);
+    	int last = -1;
+    	while (matcher.find()) {
+    		last = matcher.start();
+    	}
+    	return (last != -1) && (query.indexOf(')', last) == -1);
+    }
+    
+    // query without ending semicolons
+    protected String trimQuery(String sql) {
+    	String query = sql.trim();
+    	while (query.endsWith(";")) {
+    		query = query.substring(0, query.length() - 1).trim();
+    	}
+    	return query;
+    }
 }
@@ -76,4 +76,9 @@ public class DerbyDialect extends AbstractDialect {
         return "values(1)";
     }
 
+    // Derby 10.5+
+    public String getLimitQuery(String sql, int offset, int limit) {
+    	return getOffsetFetchQuery(sql, offset, limit);
+    }
+
 }
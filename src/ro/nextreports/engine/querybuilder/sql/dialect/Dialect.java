@@ -16,6 +16,9 @@
  */
 package ro.nextreports.engine.querybuilder.sql.dialect;
 
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
 /**
  * Represents a dialect of SQL implemented by a particular RDBMS.
  * 
@@ -84,4 +87,48 @@ public interface Dialect {
     // http://tech.groups.yahoo.com/group/firebird-support/message/107922
     public boolean needsHoldCursorsForPreparedStatement();
     
+    /**
+     * Get the fetch size to set on a forward only statement used to stream a big result
+     * 
+     * @param fetchSize fetch size requested by the user
+     * @return fetch size understood by the driver as 'stream rows'
+     */
+    public int getStreamingFetchSize(int fetchSize);
+    
+    /**
+     * Some drivers (PostgreSQL) use a server cursor and honor the fetch size only if auto commit
+     * is off, otherwise the entire result is loaded in memory
+     * 
+     * @return true if auto commit must be off while streaming a result
+     */
+    public boolean needsAutoCommitOffForStreaming();
+    
+    /**
+     * Get a query which asks the database planner for the number of rows returned by a sql
+     * 
+     * @param sql sql query
+     * @return estimate query or null if dialect cannot estimate
+     */
+    public String getRowCountEstimateQuery(String sql);
+    
+    /**
+     * Read the number of rows from the result of the estimate query
+     * 
+     * @param rs result of the estimate query (see getRowCountEstimateQuery)
+     * @return estimated number of rows or -1 if it cannot be read
+     * @throws SQLException if result cannot be read
+     */
+    public int getRowCountEstimate(ResultSet rs) throws SQLException;
+    
+    /**
+     * Rewrite a query to return only a page of rows using the native row limiting of the database,
+     * so rows are not produced by the server only to be dropped by the driver (Statement.setMaxRows)
+     * 
+     * @param sql sql query
+     * @param offset number of rows to skip
+     * @param limit maximum number of rows (greater than 0)
+     * @return limited query or null if dialect cannot limit rows for this query
+     */
+    public String getLimitQuery(String sql, int offset, int limit);
+    
 }
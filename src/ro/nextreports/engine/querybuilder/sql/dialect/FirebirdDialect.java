@@ -126,4 +126,14 @@ public class FirebirdDialect extends AbstractDialect {
         }
         return "\"" + keyword + "\"";
     }
+
+    // FIRST and SKIP must be before DISTINCT
+    public String getLimitQuery(String sql, int offset, int limit) {
+    	String clause = "FIRST " + limit;
+    	if (offset > 0) {
+    		clause = clause + " SKIP " + offset;
+    	}
+    	return insertAfterSelect(sql, clause, false);
+    }
+
 }
@@ -74,4 +74,8 @@ public class HSQLDBDialect extends AbstractDialect {
         return "SELECT 1";
     }
 
+    public String getLimitQuery(String sql, int offset, int limit) {
+    	return getLimitOffsetQuery(sql, offset, limit);
+    }
+
 }
@@ -129,4 +129,15 @@ public class MSSQLDialect extends AbstractDialect {
         return "[" + keyword + "]";
     }
 
+    // OFFSET / FETCH (SQL Server 2012) needs an ORDER BY clause
+    public String getLimitQuery(String sql, int offset, int limit) {
+    	if (offset == 0) {
+    		return insertAfterSelect(sql, "TOP " + limit, true);
+    	}
+    	if (endsWithOrderBy(sql)) {
+    		return getOffsetFetchQuery(sql, offset, limit);
+    	}
+    	return null;
+    }
+
 }
@@ -17,6 +17,8 @@
 package ro.nextreports.engine.querybuilder.sql.dialect;
 
 
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.sql.Types;
 
 import ro.nextreports.engine.util.ProcUtil;
@@ -119,6 +121,28 @@ public class MySQLDialect extends AbstractDialect {
         };
     }
 
+    // Connector/J streams rows one by one only for Integer.MIN_VALUE fetch size,
+    // any other value reads the entire result in memory
+    public int getStreamingFetchSize(int fetchSize) {
+    	return Integer.MIN_VALUE;
+    }
+    
+    public String getRowCountEstimateQuery(String sql) {
+    	return "EXPLAIN " + sql;
+    }
+    
+    // EXPLAIN returns a row for every table, with the examined rows in 'rows' column
+    public int getRowCountEstimate(ResultSet rs) throws SQLException {
+    	long max = -1;
+    	while (rs.next()) {
+    		long rows = rs.getLong("rows");
+    		if (!rs.wasNull() && (rows > max)) {
+    			max = rows;
+    		}
+    	}
+    	return (int) Math.min(max, Integer.MAX_VALUE);
+    }
+
     public String getEscapedKeyWord(String keyword) {
         if (keyword == null) {
             throw new IllegalArgumentException("Keyword cannot be null!");
@@ -126,4 +150,8 @@ public class MySQLDialect extends AbstractDialect {
         return "`" + keyword + "`";
     }
 
+    public String getLimitQuery(String sql, int offset, int limit) {
+    	return getLimitOffsetQuery(sql, offset, limit);
+    }
+
 }
@@ -18,6 +18,8 @@ package ro.nextreports.engine.querybuilder.sql.dialect;
 
 
 import java.sql.Types;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import ro.nextreports.engine.util.ProcUtil;
 
@@ -33,6 +35,13 @@ public class OracleDialect extends AbstractDialect {
     // where <database> is the database name in the tnsnames.ora file
     public static String ORACLE_CLIENT_PROPERTY = "oracle.net.tns_admin";
 
+    private static final Pattern SELECT_PATTERN = Pattern.compile("^\\s*select\\s", Pattern.CASE_INSENSITIVE);
+    private static final Pattern WHERE_PATTERN = Pattern.compile("\\bwhere\\b", Pattern.CASE_INSENSITIVE);
+    // clauses applied after ROWNUM
+    private static final Pattern NO_ROWNUM_PATTERN = Pattern.compile(
+    		"\\b(distinct|unique|group|having|order|connect|start|model|union|intersect|minus|fetch|offset|for|rownum)\\b",
+    		Pattern.CASE_INSENSITIVE);
+
 
     public OracleDialect() {
     	super();
@@ -131,4 +140,23 @@ public class OracleDialect extends AbstractDialect {
         return "\"" + keyword.toUpperCase() + "\"";
     }
 
+    // ROWNUM condition added to the WHERE clause of the query (a ROWNUM sub-select fails for duplicate
+    // column names and OFFSET / FETCH is known only by Oracle 12c); ROWNUM is assigned before rows
+    // are grouped or sorted, so other queries and offsets are limited with setMaxRows
+    public String getLimitQuery(String sql, int offset, int limit) {
+    	if (offset > 0) {
+    		return null;
+    	}
+    	String query = trimQuery(sql);
+    	String topLevel = getTopLevelQuery(query);
+    	if (!SELECT_PATTERN.matcher(topLevel).find() || NO_ROWNUM_PATTERN.matcher(topLevel).find()) {
+    		return null;
+    	}
+    	Matcher where = WHERE_PATTERN.matcher(topLevel);
+    	if (!where.find()) {
+    		return query + " WHERE ROWNUM <= " + limit;
+    	}
+    	return query.substring(0, where.end()) + " (" + query.substring(where.end()).trim() + ") AND ROWNUM <= " + limit;
+    }
+
 }
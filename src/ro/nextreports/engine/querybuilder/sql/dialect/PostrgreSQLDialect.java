@@ -17,7 +17,11 @@
 package ro.nextreports.engine.querybuilder.sql.dialect;
 
 
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.sql.Types;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 //
 // Created by IntelliJ IDEA.
 // User: mihai.panaitescu
@@ -34,6 +38,8 @@ import ro.nextreports.engine.util.ProcUtil;
 
 public class PostrgreSQLDialect extends AbstractDialect {
 
+	private static final Pattern ROWS_PATTERN = Pattern.compile("rows=(\\d+)");
+
     public PostrgreSQLDialect() {
         super();
         registerColumnType("boolean", Types.BIT);
@@ -146,4 +152,37 @@ public class PostrgreSQLDialect extends AbstractDialect {
         return "\"" + keyword + "\"";
     }
 
+    // PostgreSQL driver uses a cursor to fetch rows only with auto commit off
+    public boolean needsAutoCommitOffForStreaming() {
+    	return true;
+    }
+    
+    public String getRowCountEstimateQuery(String sql) {
+    	return "EXPLAIN " + sql;
+    }
+    
+    // first row of the plan : "... (cost=0.00..18.50 rows=850 width=68)"
+    public int getRowCountEstimate(ResultSet rs) throws SQLException {
+    	if (!rs.next()) {
+    		return -1;
+    	}
+    	String plan = rs.getString(1);
+    	if (plan == null) {
+    		return -1;
+    	}
+    	Matcher matcher = ROWS_PATTERN.matcher(plan);
+    	if (!matcher.find()) {
+    		return -1;
+    	}
+    	try {
+    		return (int) Math.min(Long.parseLong(matcher.group(1)), Integer.MAX_VALUE);
+    	} catch (NumberFormatException e) {
+    		return -1;
+    	}
+    }
+
+    public String getLimitQuery(String sql, int offset, int limit) {
+    	return getLimitOffsetQuery(sql, offset, limit);
+    }
+
 }
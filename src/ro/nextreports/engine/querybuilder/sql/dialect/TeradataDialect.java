@@ -68,4 +68,12 @@ public class TeradataDialect extends AbstractDialect {
 	public String getSqlChecker() {
 		return "select 1";
 	}
+
+	// TOP cannot be used with an offset
+	public String getLimitQuery(String sql, int offset, int limit) {
+		if (offset > 0) {
+			return null;
+		}
+		return insertAfterSelect(sql, "TOP " + limit, true);
+	}
 }
@@ -93,5 +93,8 @@ public class VerticaDialect extends AbstractDialect {
         return "select 1";
     }
 
-}
+    public String getLimitQuery(String sql, int offset, int limit) {
+    	return getLimitOffsetQuery(sql, offset, limit);
+    }
 
+}
@@ -0,0 +1,120 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ro.nextreports.engine.queryexec;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import ro.nextreports.engine.querybuilder.sql.dialect.ConnectionUtil;
+
+/**
+ * Count statement executed on a second connection, concurrently with the main query.
+ * The count is -1 until the statement finishes (or if it fails).
+ */
+class AsyncRowCount implements Runnable {
+
+	private static Log LOG = LogFactory.getLog(AsyncRowCount.class);
+
+	private final PreparedStatement statement;
+	private final Connection connection;
+	private final ConnectionProvider provider;
+
+	private int count = -1;
+	private boolean done;
+	private volatile boolean cancelled;
+
+	AsyncRowCount(PreparedStatement statement, Connection connection, ConnectionProvider provider) {
+		this.statement = statement;
+		this.connection = connection;
+		this.provider = provider;
+	}
+
+	public void run() {
+		int result = -1;
+		ResultSet rs = null;
+		try {
+			if (!cancelled) {
+				rs = statement.executeQuery();
+				if (rs.next()) {
+					result = rs.getInt(1);
+				}
+			}
+		} catch (SQLException e) {
+			if (!cancelled) {
+				LOG.info("Cannot execute count statement : " + e.getMessage());
+			}
+		} finally {
+			ConnectionUtil.closeResultSet(rs);
+			ConnectionUtil.closeStatement(statement);
+			provider.releaseConnection(connection);
+			synchronized (this) {
+				count = cancelled ? -1 : result;
+				done = true;
+				notifyAll();
+			}
+		}
+	}
+
+	synchronized boolean isDone() {
+		return done;
+	}
+
+	synchronized int getCount() {
+		return count;
+	}
+
+	/**
+	 * Wait for the count
+	 * 
+	 * @param millis maximum time to wait in milliseconds (0 means forever)
+	 * @return row count or -1 if count is not available yet
+	 * @throws InterruptedException if waiting thread is interrupted
+	 */
+	synchronized int await(long millis) throws InterruptedException {
+		long end = System.currentTimeMillis() + millis;
+		while (!done) {
+			if (millis == 0) {
+				wait();
+			} else {
+				long left = end - System.currentTimeMillis();
+				if (left <= 0) {
+					break;
+				}
+				wait(left);
+			}
+		}
+		return count;
+	}
+
+	void cancel() {
+		if (isDone()) {
+			return;
+		}
+		cancelled = true;
+		try {
+			statement.cancel();
+		} catch (SQLException e) {
+			LOG.warn(e);
+		}
+	}
+
+}
@@ -0,0 +1,45 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ro.nextreports.engine.queryexec;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * Supplies additional database connections, for example to compute the row count of a query
+ * on a second connection while the main query result is read.
+ * 
+ * Implementations are usually backed by a connection pool.
+ */
+public interface ConnectionProvider {
+
+	/**
+	 * Get a database connection
+	 * 
+	 * @return database connection
+	 * @throws SQLException if connection cannot be obtained
+	 */
+	public Connection getConnection() throws SQLException;
+
+	/**
+	 * Release a connection obtained with getConnection()
+	 * 
+	 * @param connection database connection
+	 */
+	public void releaseConnection(Connection connection);
+
+}
@@ -0,0 +1,151 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ro.nextreports.engine.queryexec;
+
+import java.sql.Blob;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.sql.rowset.serial.SerialBlob;
+
+/**
+ * Query result with all rows kept in memory (for example a part of a result read for many
+ * subreports at once). It can be scrolled.
+ */
+public class MemoryQueryResult extends QueryResult {
+
+	private final List<Object[]> rows;
+	private int row = -1;
+
+	public MemoryQueryResult(String[] columnLabels, String[] columnClassNames, int[] columnTypes, List<Object[]> rows,
+			long executeTime) {
+		super(columnLabels, columnClassNames, columnTypes, rows.size(), executeTime);
+		this.rows = rows;
+	}
+
+	/**
+	 * Read all rows of a result, so they can be used after the result is closed (or on another thread)
+	 * 
+	 * @param result result positioned before the first row
+	 * @return result with all rows in memory
+	 * @throws QueryException if rows cannot be read
+	 */
+	public static MemoryQueryResult read(QueryResult result) throws QueryException {
+		int columns = result.getColumnCount();
+		String[] labels = new String[columns];
+		String[] classNames = new String[columns];
+		int[] types = new int[columns];
+		for (int i = 0; i < columns; i++) {
+			labels[i] = result.getColumnName(i);
+			classNames[i] = result.getColumnClassName(i);
+			types[i] = result.getColumnType(i);
+		}
+		List<Object[]> rows = new ArrayList<Object[]>();
+		while (result.hasNext()) {
+			Object[] row = new Object[columns];
+			for (int i = 0; i < columns; i++) {
+				Object value = result.nextValue(i);
+				if (value instanceof Blob) {
+					try {
+						value = new SerialBlob((Blob) value);
+					} catch (SQLException e) {
+						throw new QueryException(e);
+					}
+				}
+				row[i] = value;
+			}
+			rows.add(row);
+		}
+		return new MemoryQueryResult(labels, classNames, types, rows, result.getExecuteTime());
+	}
+
+	public boolean hasNext() throws QueryException {
+		if (row < rows.size()) {
+			row++;
+		}
+		return row < rows.size();
+	}
+
+	public Object nextValue(int columnIndex) throws QueryException {
+		return getValue(row, columnIndex);
+	}
+
+	public Object nextValue(String columnName) throws QueryException {
+		int columnIndex = findColumn(columnName);
+		if (columnIndex == -1) {
+			throw new QueryException("Column not found : " + columnName);
+		}
+		return getValue(row, columnIndex);
+	}
+
+	public Object nextBlobValue(String columnName) throws QueryException {
+		return nextValue(columnName);
+	}
+
+	public Object getValueAt(int rowIndex, int columnIndex) throws QueryException {
+		return getValue(rowIndex, columnIndex);
+	}
+
+	public Object getValueAt(int rowIndex, String columnName) throws QueryException {
+		int columnIndex = findColumn(columnName);
+		if (columnIndex == -1) {
+			throw new QueryException("Column not found : " + columnName);
+		}
+		return getValue(rowIndex, columnIndex);
+	}
+
+	public void beforeFirst() throws QueryException {
+		row = -1;
+	}
+
+	public boolean isEmpty() {
+		return rows.isEmpty();
+	}
+
+	public List<Object[]> lookAhead(int count) throws QueryException {
+		int from = Math.min(row + 1, rows.size());
+		int to = (int) Math.min((long) from + count, rows.size());
+		return rows.subList(from, to);
+	}
+
+	// there is no result set
+	public ResultSet getResultSet() {
+		return null;
+	}
+
+	public void close() {
+	}
+
+	// rows can be read again without a spool
+	public void spool() throws QueryException {
+	}
+
+	public QueryResult rewind() throws QueryException {
+		beforeFirst();
+		return this;
+	}
+
+	private Object getValue(int rowIndex, int columnIndex) throws QueryException {
+		if ((rowIndex < 0) || (rowIndex >= rows.size())) {
+			throw new QueryException("Invalid row : " + rowIndex);
+		}
+		return rows.get(rowIndex)[columnIndex];
+	}
+
+}
@@ -0,0 +1,83 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ro.nextreports.engine.queryexec;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Execution strategy which runs all queries on a shared bounded pool of daemon threads.
+ * 
+ * The number of threads does not grow with the number of executed queries (subreports,
+ * charts, runtime parameter values); queries over the pool size wait in queue. 
+ * Idle threads are released after keepAliveSeconds.
+ */
+public class PooledExecutionStrategy implements QueryExecutionStrategy {
+
+	public static final int DEFAULT_KEEP_ALIVE_SECONDS = 60;
+
+	private final ThreadPoolExecutor pool;
+
+	public PooledExecutionStrategy(int poolSize) {
+		this(poolSize, DEFAULT_KEEP_ALIVE_SECONDS);
+	}
+
+	public PooledExecutionStrategy(int poolSize, int keepAliveSeconds) {
+		if (poolSize <= 0) {
+			throw new IllegalArgumentException("Pool size must be positive : " + poolSize);
+		}
+		pool = new ThreadPoolExecutor(poolSize, poolSize, keepAliveSeconds, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>(), new WorkerThreadFactory());
+		pool.allowCoreThreadTimeOut(true);
+	}
+
+	public void execute(Runnable task, String name) {
+		pool.execute(task);
+	}
+
+	public void shutdown() {
+		pool.shutdown();
+	}
+
+	public int getPoolSize() {
+		return pool.getMaximumPoolSize();
+	}
+
+	public int getActiveCount() {
+		return pool.getActiveCount();
+	}
+
+	public int getQueueSize() {
+		return pool.getQueue().size();
+	}
+
+	private static class WorkerThreadFactory implements ThreadFactory {
+
+		private final AtomicInteger index = new AtomicInteger(1);
+
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, QueryExecutor.class.getSimpleName() + "-" + index.getAndIncrement());
+			thread.setDaemon(true);
+			return thread;
+		}
+
+	}
+
+}
@@ -31,8 +31,13 @@ public class Query {
 
     private String text;
 
-    public Query(String text) {        
-        setText(removeComments(text));
+    public Query(String text) {
+        String cleanText = QueryCache.getText(text);
+        if (cleanText == null) {
+            cleanText = removeComments(text);
+            QueryCache.putText(text, cleanText);
+        }
+        setText(cleanText);
     }
 
     public QueryChunk[] getChunks() {
@@ -65,6 +70,12 @@ public class Query {
         }
 
         this.text = text;
+        QueryCache.ParsedQuery parsed = QueryCache.getParsedQuery(text);
+        if (parsed != null) {
+            chunks = parsed.getChunks();
+            parameterNames = parsed.getParameterNames();
+            return;
+        }
         chunks = new ArrayList<QueryChunk>();
         parameterNames = new ArrayList<String>();
 
@@ -115,6 +126,7 @@ public class Query {
         if (textChunk.length() > 0) {
             this.addTextChunk(textChunk.toString());
         }
+        QueryCache.putParsedQuery(text, chunks, parameterNames);
     }
 
     private void addTextChunk(String text) {
@@ -0,0 +1,181 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ro.nextreports.engine.queryexec;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import ro.nextreports.engine.EngineProperties;
+
+/**
+ * Cache for parsed queries and for the sql strings passed to prepared statements.
+ * Reports which are run many times with different parameter values do not parse their sql again.
+ * 
+ * Keys are the query text (for expanded sql also the number of values of every multiple
+ * selection parameter). Cache size is set with nextreports.query.cache.size system property
+ * (0 disables the cache).
+ */
+public final class QueryCache {
+
+	private static final int maxSize = EngineProperties.getQueryCacheSize();
+
+	// query text (with comments) -> query text without comments
+	private static final Map<String, String> texts = createMap();
+	// query text -> chunks
+	private static final Map<String, ParsedQuery> parsedQueries = createMap();
+	// query text + ignored parameters -> query text
+	private static final Map<String, String> ignoredTexts = createMap();
+	// query text + multiple selection sizes -> sql with '?'
+	private static final Map<String, ExpandedQuery> expandedQueries = createMap();
+
+	private static long hits;
+	private static long misses;
+
+	private QueryCache() {
+	}
+
+	public static boolean isEnabled() {
+		return maxSize > 0;
+	}
+
+	public static long getHits() {
+		synchronized (QueryCache.class) {
+			return hits;
+		}
+	}
+
+	public static long getMisses() {
+		synchronized (QueryCache.class) {
+			return misses;
+		}
+	}
+
+	public static void clear() {
+		texts.clear();
+		parsedQueries.clear();
+		ignoredTexts.clear();
+		expandedQueries.clear();
+		synchronized (QueryCache.class) {
+			hits = 0;
+			misses = 0;
+		}
+	}
+
+	static String getText(String text) {
+		return get(texts, text);
+	}
+
+	static void putText(String text, String cleanText) {
+		put(texts, text, cleanText);
+	}
+
+	static ParsedQuery getParsedQuery(String text) {
+		return get(parsedQueries, text);
+	}
+
+	static void putParsedQuery(String text, List<QueryChunk> chunks, List<String> parameterNames) {
+		put(parsedQueries, text, new ParsedQuery(chunks, parameterNames));
+	}
+
+	static String getIgnoredText(String key) {
+		return get(ignoredTexts, key);
+	}
+
+	static void putIgnoredText(String key, String text) {
+		put(ignoredTexts, key, text);
+	}
+
+	static ExpandedQuery getExpandedQuery(String key) {
+		return get(expandedQueries, key);
+	}
+
+	static void putExpandedQuery(String key, String sql, int outputParameterPosition) {
+		put(expandedQueries, key, new ExpandedQuery(sql, outputParameterPosition));
+	}
+
+	private static <V> V get(Map<String, V> map, String key) {
+		if (!isEnabled() || (key == null)) {
+			return null;
+		}
+		V value = map.get(key);
+		synchronized (QueryCache.class) {
+			if (value == null) {
+				misses++;
+			} else {
+				hits++;
+			}
+		}
+		return value;
+	}
+
+	private static <V> void put(Map<String, V> map, String key, V value) {
+		if (isEnabled() && (key != null)) {
+			map.put(key, value);
+		}
+	}
+
+	@SuppressWarnings("serial")
+	private static <V> Map<String, V> createMap() {
+		return Collections.synchronizedMap(new LinkedHashMap<String, V>(16, 0.75f, true) {
+			protected boolean removeEldestEntry(Map.Entry<String, V> eldest) {
+				return size() > maxSize;
+			}
+		});
+	}
+
+	static class ParsedQuery {
+
+		private final List<QueryChunk> chunks;
+		private final List<String> parameterNames;
+
+		ParsedQuery(List<QueryChunk> chunks, List<String> parameterNames) {
+			this.chunks = new ArrayList<QueryChunk>(chunks);
+			this.parameterNames = new ArrayList<String>(parameterNames);
+		}
+
+		List<QueryChunk> getChunks() {
+			return new ArrayList<QueryChunk>(chunks);
+		}
+
+		List<String> getParameterNames() {
+			return new ArrayList<String>(parameterNames);
+		}
+	}
+
+	static class ExpandedQuery {
+
+		private final String sql;
+		private final int outputParameterPosition;
+
+		ExpandedQuery(String sql, int outputParameterPosition) {
+			this.sql = sql;
+			this.outputParameterPosition = outputParameterPosition;
+		}
+
+		String getSql() {
+			return sql;
+		}
+
+		int getOutputParameterPosition() {
+			return outputParameterPosition;
+		}
+	}
+
+}
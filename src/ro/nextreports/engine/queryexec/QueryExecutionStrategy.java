@@ -0,0 +1,41 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ro.nextreports.engine.queryexec;
+
+/**
+ * Strategy used by a {@link QueryExecutor} to obtain the worker which runs the
+ * interruptible query.
+ * 
+ * Implementations must run the task asynchronously; the caller blocks until the
+ * query result is available or until the executor is stopped.
+ */
+public interface QueryExecutionStrategy {
+
+	/**
+	 * Run the query task asynchronously
+	 * 
+	 * @param task query task
+	 * @param name name used for the worker (thread name if the strategy creates threads)
+	 */
+	public void execute(Runnable task, String name);
+
+	/**
+	 * Release any resources (threads) held by this strategy
+	 */
+	public void shutdown();
+
+}
@@ -36,11 +36,13 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.regex.Pattern;
 import java.io.Serializable;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
+import ro.nextreports.engine.EngineProperties;
 import ro.nextreports.engine.querybuilder.IdNameRenderer;
 import ro.nextreports.engine.querybuilder.sql.dialect.CSVDialect;
 import ro.nextreports.engine.querybuilder.sql.dialect.ConnectionUtil;
@@ -61,12 +63,18 @@ import ro.nextreports.engine.util.QueryUtil;
  * to interrup the database query, which is similar to <code>Statement.executeQuery()</code>
  * method. The difference is that this method can be interrupted by another thread.
  *
+ * The worker which runs the query is obtained from a {@link QueryExecutionStrategy} : by default
+ * a new thread for every query, but a shared pool or virtual threads can be used instead 
+ * (see {@link #setDefaultExecutionStrategy(QueryExecutionStrategy)} and 
+ * {@link EngineProperties#QUERY_EXECUTION_PROPERTY}).
+ *
  * @author Decebal Suiu
  */
 public class QueryExecutor implements Runnable {
 
     public static final int DEFAULT_TIMEOUT = 20;
 	public static final int DEFAULT_MAX_ROWS = 100;
+	public static final int DEFAULT_FETCH_SIZE = 1000;
 
 	public static final String EQUAL = "=";
 	public static final String NOT_EQUAL = "<>";
@@ -83,6 +91,11 @@ public class QueryExecutor implements Runnable {
 	public static final String NOT = "NOT";
 
 	private static Log LOG = LogFactory.getLog(QueryExecutor.class);
+
+	// keyset column is written in the query
+	private static final Pattern IDENTIFIER_PATTERN = Pattern.compile("[A-Za-z_][A-Za-z0-9_$#]*|\"[^\"]+\"");
+	
+	private static volatile QueryExecutionStrategy defaultExecutionStrategy;
 	
 	private Query query;
 	private Map<String, QueryParameter> parameters = new HashMap<String, QueryParameter>();
@@ -93,7 +106,8 @@ public class QueryExecutor implements Runnable {
 	private int timeout = DEFAULT_TIMEOUT;
 	private int maxRows = DEFAULT_MAX_ROWS;
 
-	private Thread worker;
+	private QueryExecutionStrategy executionStrategy;
+	private final Worker worker;
 	private final InputWrapper inputWrapper;
 	private final ResultWrapper resultWrapper;
 	private volatile boolean cancelRequest;
@@ -102,6 +116,26 @@ public class QueryExecutor implements Runnable {
     private boolean computeCount = false;    
     private boolean check = true;
     private boolean isCsv = false;
+    // forward only result set with a streaming fetch size
+    private boolean streaming = false;
+    private int fetchSize = DEFAULT_FETCH_SIZE;
+    private boolean restoreAutoCommit = false;
+    // row count computed on a second connection, concurrently with the query
+    private ConnectionProvider countConnectionProvider;
+    private AsyncRowCount asyncRowCount;
+    // row count estimated by the database planner
+    private boolean estimateCount = false;
+    // optional cache for the query statement
+    private StatementCache statementCache;
+    private String statementKey;
+    // page of rows : rows to skip and the keyset (column and its last value from previous page)
+    private int offset = 0;
+    // query is rewritten to produce only the rows of the page (see setPage)
+    private boolean limitQuery = false;
+    private String keysetColumn;
+    private Object keysetValue;
+    // rows skipped by the driver when the dialect cannot use the offset
+    private int skipRows = 0;
 
     private Map<Integer, Object> statementParameters = new HashMap<Integer, Object>();
 	
@@ -128,8 +162,9 @@ public class QueryExecutor implements Runnable {
         inputWrapper = new InputWrapper();
 		resultWrapper = new ResultWrapper();
 
-		worker = new Thread(this, getClass().getSimpleName());        
-        worker.start();
+		// worker is started by execute()
+		executionStrategy = getDefaultExecutionStrategy();
+		worker = new Worker();
 	}
 	
 	public QueryExecutor(Query query, Map<String,QueryParameter> parameters,
@@ -158,13 +193,202 @@ public class QueryExecutor implements Runnable {
 		return maxRows;
 	}
 
+	/**
+	 * Set the maximum number of rows read from the result (the query is not changed, see setPage).
+	 * 
+	 * @param maxRows maximum number of rows (0 means no limit)
+	 */
 	public void setMaxRows(int maxRows) {
 		this.maxRows = maxRows;
 	}
 
+	/**
+	 * Select a page of rows. The query is rewritten with the native row limiting of the
+	 * database (see Dialect.getLimitQuery) so only the rows of the page are produced by the server.
+	 * 
+	 * @param offset number of rows to skip
+	 * @param maxRows number of rows in the page
+	 */
+	public void setPage(int offset, int maxRows) {
+		this.offset = offset;
+		this.maxRows = maxRows;
+		this.limitQuery = true;
+	}
+	
+	public int getOffset() {
+		return offset;
+	}
+
+	/**
+	 * Set the number of rows to skip. Rows are skipped while reading the result, unless a page is
+	 * selected with setPage and the dialect can use an offset.
+	 * 
+	 * @param offset number of rows to skip
+	 */
+	public void setOffset(int offset) {
+		this.offset = offset;
+	}
+	
+	public String getKeysetColumn() {
+		return keysetColumn;
+	}
+	
+	public Object getKeysetValue() {
+		return keysetValue;
+	}
+
+	/**
+	 * Read rows ordered by a unique column, starting after the last value from the previous page.
+	 * Unlike an offset, the database does not read the rows of previous pages.
+	 * 
+	 * @param column result column used as keyset (must be unique and not null), a simple or a quoted identifier
+	 * @param lastValue last value of column from previous page, null for first page
+	 */
+	public void setKeyset(String column, Object lastValue) {
+		if ((column == null) || !IDENTIFIER_PATTERN.matcher(column).matches()) {
+			throw new IllegalArgumentException("Invalid keyset column : " + column);
+		}
+		this.keysetColumn = column;
+		this.keysetValue = lastValue;
+	}
+
 	public List<String> getParameterNames() {
 		return parameterNames;
 	}
+	
+	public boolean isStreaming() {
+		return streaming;
+	}
+
+	/**
+	 * Use a TYPE_FORWARD_ONLY result set with a streaming fetch size, so rows are not cached
+	 * client side. A streaming result cannot be scrolled : the row count is computed only with
+	 * a count statement (never with rs.last()).
+	 * 
+	 * @param streaming true for a streaming result
+	 */
+	public void setStreaming(boolean streaming) {
+		this.streaming = streaming;
+	}
+
+	public int getFetchSize() {
+		return fetchSize;
+	}
+
+	/**
+	 * Set fetch size used for a streaming result. Dialect may change it (see Dialect.getStreamingFetchSize)
+	 * 
+	 * @param fetchSize fetch size
+	 */
+	public void setFetchSize(int fetchSize) {
+		this.fetchSize = fetchSize;
+	}
+	
+	public ConnectionProvider getCountConnectionProvider() {
+		return countConnectionProvider;
+	}
+
+	/**
+	 * If computeCount is true, the count statement is executed on a connection taken from this
+	 * provider, concurrently with the query. The query result is available immediately and its
+	 * row count is -1 until the count statement finishes.
+	 * 
+	 * @param countConnectionProvider provider for the count connection
+	 */
+	public void setCountConnectionProvider(ConnectionProvider countConnectionProvider) {
+		this.countConnectionProvider = countConnectionProvider;
+	}
+
+	public boolean isEstimateCount() {
+		return estimateCount;
+	}
+
+	/**
+	 * If computeCount is true, ask the database planner for an estimated row count instead of
+	 * executing a count statement (see Dialect.getRowCountEstimateQuery). If the dialect cannot
+	 * estimate, the count statement is used.
+	 * 
+	 * @param estimateCount true to estimate row count
+	 */
+	public void setEstimateCount(boolean estimateCount) {
+		this.estimateCount = estimateCount;
+	}
+	
+	public StatementCache getStatementCache() {
+		return statementCache;
+	}
+
+	/**
+	 * Take the query statement from a cache and give it back on close, instead of preparing
+	 * a new statement for every execution. Procedure calls are not cached.
+	 * 
+	 * @param statementCache statement cache
+	 */
+	public void setStatementCache(StatementCache statementCache) {
+		this.statementCache = statementCache;
+	}
+	
+	public QueryExecutionStrategy getExecutionStrategy() {
+		return executionStrategy;
+	}
+
+	/**
+	 * Set the execution strategy used by this executor. Must be called before execute().
+	 * 
+	 * @param executionStrategy execution strategy
+	 */
+	public void setExecutionStrategy(QueryExecutionStrategy executionStrategy) {
+		if (executionStrategy == null) {
+			throw new IllegalArgumentException("Execution strategy cannot be null");
+		}
+		this.executionStrategy = executionStrategy;
+	}
+	
+	/**
+	 * Get the execution strategy used by all new query executors.
+	 * If none was set, it is created from EngineProperties.QUERY_EXECUTION_PROPERTY. 
+	 * 
+	 * @return default execution strategy
+	 */
+	public static QueryExecutionStrategy getDefaultExecutionStrategy() {
+		QueryExecutionStrategy strategy = defaultExecutionStrategy;
+		if (strategy == null) {
+			synchronized (QueryExecutor.class) {
+				if (defaultExecutionStrategy == null) {
+					defaultExecutionStrategy = createExecutionStrategy();
+				}
+				strategy = defaultExecutionStrategy;
+			}
+		}
+		return strategy;
+	}
+
+	/**
+	 * Set the execution strategy used by all new query executors (reports, subreports, charts
+	 * and runtime parameter values). The previous default strategy is not shut down.
+	 * 
+	 * @param strategy execution strategy
+	 */
+	public static void setDefaultExecutionStrategy(QueryExecutionStrategy strategy) {
+		if (strategy == null) {
+			throw new IllegalArgumentException("Execution strategy cannot be null");
+		}
+		defaultExecutionStrategy = strategy;
+	}
+	
+	private static QueryExecutionStrategy createExecutionStrategy() {
+		String execution = EngineProperties.getQueryExecution();
+		if (EngineProperties.QUERY_EXECUTION_POOL.equals(execution)) {
+			return new PooledExecutionStrategy(EngineProperties.getQueryPoolSize());
+		} else if (EngineProperties.QUERY_EXECUTION_VIRTUAL.equals(execution)) {
+			if (!VirtualThreadExecutionStrategy.isSupported()) {
+				LOG.warn("Virtual threads are not supported by this JVM. Will use a thread for every query.");
+				return new ThreadExecutionStrategy();
+			}
+			return new VirtualThreadExecutionStrategy();
+		}
+		return new ThreadExecutionStrategy();
+	}
 
 	/**
 	 * Execute the query.
@@ -175,9 +399,35 @@ public class QueryExecutor implements Runnable {
 	public synchronized QueryResult execute() throws QueryException, InterruptedException {
 		// create query string
 		String queryString = createQueryString();
+		boolean isPaged = !QueryUtil.isProcedureCall(query.getText()) && !isCsv;
+		if (isPaged && (keysetColumn != null)) {
+			queryString = createKeysetQueryString(queryString);
+		}
+		skipRows = 0;
+		String pageQueryString = queryString;
+		if (isPaged && limitQuery && (maxRows > 0)) {
+			pageQueryString = createPageQueryString(queryString);
+		} else {
+			skipRows = offset;
+		}
+		
+		if (streaming) {
+			prepareConnectionForStreaming();
+		}
 
         PreparedStatement countPstmt = null;
-        if (computeCount) {
+        boolean estimated = false;
+        asyncRowCount = null;
+        boolean isProcedure = QueryUtil.isProcedureCall(query.getText());
+        if (computeCount && !isProcedure && !isCsv) {
+        	if (countConnectionProvider != null) {
+        		asyncRowCount = createAsyncRowCount(queryString);
+        	} else if (estimateCount) {
+        		countPstmt = createEstimateStatement(queryString);
+        		estimated = (countPstmt != null);
+        	}
+        }
+        if (computeCount && (asyncRowCount == null) && (countPstmt == null)) {
             try {
                 // count statement
                 String countQueryString = "SELECT COUNT(*) FROM (" + queryString + ") A";
@@ -186,20 +436,20 @@ public class QueryExecutor implements Runnable {
                 	countQueryString = getCsvCountQuery(queryString);
                 }
                 countPstmt = createStatement(countQueryString);
-                if (parameterNames.size() != 0) {
+                if ((parameterNames.size() != 0) || (keysetValue != null)) {
                     setParameterValues(countPstmt);
                 }
             } catch (QueryException ex) {
-                LOG.info("Cannot create count statement : " + ex.getMessage() + " .Will use rs.last()");
+                LOG.info("Cannot create count statement : " + ex.getMessage() + " .Row count will be -1");
                 countPstmt = null;
             }
         }
 
         // create statement
-		PreparedStatement pstmt = createStatement(queryString);
+		PreparedStatement pstmt = createStatement(pageQueryString, statementCache != null);
 
         // set parameter values
-		if (parameterNames.size() != 0) {
+		if ((parameterNames.size() != 0) || (keysetValue != null)) {
 			setParameterValues(pstmt);
 		}
         
@@ -215,10 +465,16 @@ public class QueryExecutor implements Runnable {
 		synchronized (inputWrapper) {
 			inputWrapper.statement = pstmt;
             inputWrapper.countStatement = countPstmt;
-            inputWrapper.query = queryString;
+            inputWrapper.estimate = estimated;
+            inputWrapper.query = pageQueryString;
 			inputWrapper.pending = true;
 			inputWrapper.notify();
 		}
+		
+		if (asyncRowCount != null) {
+			startAsyncRowCount();
+		}
+		worker.start();
 
 		synchronized (resultWrapper) {
 			try {
@@ -227,6 +483,10 @@ public class QueryExecutor implements Runnable {
 					resultWrapper.wait();
 				}
 				if (resultWrapper.exception != null) {
+					restoreAutoCommit();
+					if (asyncRowCount != null) {
+						asyncRowCount.cancel();
+					}
 					throw resultWrapper.exception;
 				}
 			} catch (InterruptedException e) {
@@ -236,6 +496,9 @@ public class QueryExecutor implements Runnable {
 				resultWrapper.serviced = false;
 			}
 
+			if ((offset > 0) && (resultWrapper.count != -1)) {
+				resultWrapper.count = Math.max(0, resultWrapper.count - offset);
+			}
 			if ((maxRows > 0) && (resultWrapper.count > maxRows)) {
 				resultWrapper.count = maxRows;
 			}
@@ -247,12 +510,32 @@ public class QueryExecutor implements Runnable {
 				inputWrapper.notify();
 			}
 
-			return new QueryResult(resultWrapper.resultSet, resultWrapper.count, resultWrapper.executeTime);
+			QueryResult result = new QueryResult(resultWrapper.resultSet, resultWrapper.count, resultWrapper.executeTime);
+			if (restoreAutoCommit) {
+				// auto commit is restored by the result, after its result set is closed
+				result.restoreAutoCommitOnClose(conn);
+				restoreAutoCommit = false;
+			}
+			result.setRowCountEstimated(resultWrapper.estimated);
+			result.setSkipRows(skipRows);
+			if (asyncRowCount != null) {
+				result.setAsyncRowCount(asyncRowCount, offset, maxRows);
+			}
+			if (statementKey != null) {
+				// statement is given back to cache when the result is closed
+				result.releaseStatementOnClose(statementCache, conn, statementKey, inputWrapper.statement);
+				statementKey = null;
+				inputWrapper.statement = null;
+			}
+			return result;
 		}
 	}
 
 	public void stop() {
 		closeRequest = true;
+		if (asyncRowCount != null) {
+			asyncRowCount.cancel();
+		}
 		if ((inputWrapper.countStatement != null) || (inputWrapper.statement != null)) {
 			cancel();
 		}
@@ -263,11 +546,67 @@ public class QueryExecutor implements Runnable {
             //nothing to do
         }
 	}
+	
+	// runs the query loop on the thread given by the execution strategy and keeps
+	// track of that thread so stop() can interrupt and join it like a dedicated thread
+	private class Worker implements Runnable {
+		
+		private Thread thread;
+		private boolean started;
+		private boolean finished;
+		
+		public void run() {
+			synchronized (this) {
+				thread = Thread.currentThread();
+			}
+			try {
+				QueryExecutor.this.run();
+			} finally {
+				synchronized (this) {
+					thread = null;
+					finished = true;
+					// do not leave the interrupt flag on a pooled thread
+					Thread.interrupted();
+					notifyAll();
+				}
+			}
+		}
+		
+		synchronized void start() {
+			if (started) {
+				return;
+			}
+			started = true;
+			try {
+				executionStrategy.execute(this, QueryExecutor.class.getSimpleName());
+			} catch (RuntimeException e) {
+				// strategy rejected the task (pool shut down) : fall back to a dedicated thread
+				LOG.error("Cannot execute query worker : " + e.getMessage() + " .Will use a new thread.", e);
+				new Thread(this, QueryExecutor.class.getSimpleName()).start();
+			}
+		}
+		
+		synchronized void interrupt() {
+			if (thread != null) {
+				thread.interrupt();
+			}
+		}
+		
+		synchronized void join() throws InterruptedException {
+			if (!started) {
+				return;
+			}
+			while (!finished) {
+				wait();
+			}
+		}
+	}
 
 	public void run() {
 		ResultSet resultSet = null;
 		SQLException sqlException = null;
 		int count = 0;
+		boolean estimated = false;
 		while (!closeRequest) {
 			long executeTime = 0;
 			synchronized(inputWrapper) {
@@ -308,46 +647,36 @@ public class QueryExecutor implements Runnable {
                         count = -1;
                     } else {                        
 
-                        // try to get the count with a "select *"
-                        // if that fails try to get the count with rs.last() (which is time & memory expensive)
+                        // try to get the count with a "select count(*)" or with a planner estimation
+                        // if that fails the count remains -1 : we never use rs.last() because it reads the entire 
+                        // result and the result set must be scrollable
                         // IMPORTANT : execute the count statement first (before the statement) ,otherwise there are
                         // drivers that will close the connection (Firebird), and an error of "result set is closed"
                         // will arise
                         count=-1;
-                        boolean useLast = false;
                         if (inputWrapper.countStatement != null) {
                         	ResultSet countResultSet = null;
                             try {
                                 countResultSet = inputWrapper.countStatement.executeQuery();
-                                countResultSet.next();
-                                count = countResultSet.getInt(1);                                
+                                if (inputWrapper.estimate) {
+                                	count = dialect.getRowCountEstimate(countResultSet);
+                                	estimated = true;
+                                } else {
+                                	countResultSet.next();
+                                	count = countResultSet.getInt(1);
+                                }
                             } catch (SQLException e) {
-                                LOG.info("Cannot execute count statement : " + e.getMessage() + " .Will use rs.last()");
-                                useLast = true;
+                                LOG.info("Cannot execute count statement : " + e.getMessage() + " .Row count will be -1");
+                                count = -1;
                             } finally {                            	
                             	ConnectionUtil.closeStatement(inputWrapper.countStatement);                            		
                             	ConnectionUtil.closeResultSet(countResultSet);
                             	inputWrapper.countStatement = null;
                             }
-                        } else {
-                            if (!cancelRequest) {
-                                useLast = true;
-                            }
                         }
                         
                         if (!cancelRequest) {
                             resultSet = inputWrapper.statement.executeQuery();
-                            
-                            if (useLast && !cancelRequest && computeCount) {
-                            	if ((dialect instanceof SQLiteDialect) ||(dialect instanceof CSVDialect)) {
-                            		// resultSet is forward only
-                            		count = -1;
-                            	} else {
-                            		resultSet.last();
-                            		count = resultSet.getRow();
-                            		resultSet.beforeFirst();
-                            	}
-                            }
                         }
                     }
 
@@ -371,6 +700,7 @@ public class QueryExecutor implements Runnable {
 			synchronized (resultWrapper) {
 				resultWrapper.resultSet = resultSet;
 				resultWrapper.count = count;
+				resultWrapper.estimated = estimated;
 				resultWrapper.exception = (sqlException == null) ? null : new QueryException(sqlException);
 				resultWrapper.serviced = true;
 				resultWrapper.executeTime = executeTime;
@@ -457,8 +787,12 @@ public class QueryExecutor implements Runnable {
 	}
 
     private PreparedStatement createStatement(String queryString) throws QueryException {
+    	return createStatement(queryString, false);
+    }
+    
+    private PreparedStatement createStatement(String queryString, boolean cache) throws QueryException {
 		// create the prepared statement
-		PreparedStatement pstmt;
+		PreparedStatement pstmt = null;
 		try {
 			
 			boolean hasScrollType = false;
@@ -468,28 +802,14 @@ public class QueryExecutor implements Runnable {
 				ex.printStackTrace();
                 LOG.error(ex.getMessage(), ex); 
 			}
-        	int resultSetType = hasScrollType ? ResultSet.TYPE_SCROLL_INSENSITIVE : ResultSet.TYPE_FORWARD_ONLY;
+        	int resultSetType = (hasScrollType && !streaming) ? ResultSet.TYPE_SCROLL_INSENSITIVE : ResultSet.TYPE_FORWARD_ONLY;
         	
-            if (QueryUtil.isProcedureCall(queryString)) {
-                pstmt = conn.prepareCall("{" + queryString + "}", resultSetType, ResultSet.CONCUR_READ_ONLY);
-            } else {            	
-            	if (isCsv) {            		
-            		pstmt = conn.prepareStatement(queryString);
-            	} else {
-            		boolean keepCursorsOverCommit = false;
-            		try {
-						Dialect dialect = DialectUtil.getDialect(conn);
-						keepCursorsOverCommit = dialect.needsHoldCursorsForPreparedStatement();
-					} catch (DialectException e) {
-						e.printStackTrace();
-		                LOG.error(e.getMessage(), e); 
-					}
-            		if (keepCursorsOverCommit) {
-            			pstmt = conn.prepareStatement(queryString, resultSetType, ResultSet.CONCUR_READ_ONLY, ResultSet.HOLD_CURSORS_OVER_COMMIT);
-            		} else {
-            			pstmt = conn.prepareStatement(queryString, resultSetType, ResultSet.CONCUR_READ_ONLY);
-            		}
-            	}
+            if (cache && !QueryUtil.isProcedureCall(queryString)) {
+            	statementKey = resultSetType + ":" + streaming + ":" + queryString;
+            	pstmt = statementCache.take(conn, statementKey);
+            }
+            if (pstmt == null) {
+            	pstmt = prepareStatement(queryString, resultSetType);
             }
             // ignore queryTimeout and maxRows (some drivers - derby - not implement
 			// these feature yet)
@@ -497,11 +817,14 @@ public class QueryExecutor implements Runnable {
 				// set timeout
 				pstmt.setQueryTimeout(timeout);
 
-				// set max rows
-				pstmt.setMaxRows(maxRows);
+				// set max rows (driver must also read the rows to skip)
+				pstmt.setMaxRows((maxRows > 0) ? maxRows + skipRows : 0);
 			} catch (SQLException e) {				
                 LOG.warn(e); 
             }
+			if (streaming) {
+				setStreamingFetchSize(pstmt);
+			}
 		} catch (SQLException e) {
 			throw new QueryException(e);
 		}
@@ -509,6 +832,143 @@ public class QueryExecutor implements Runnable {
 		return pstmt;
 	}
 
+	private PreparedStatement prepareStatement(String queryString, int resultSetType) throws SQLException {
+		PreparedStatement pstmt;
+        if (QueryUtil.isProcedureCall(queryString)) {
+            pstmt = conn.prepareCall("{" + queryString + "}", resultSetType, ResultSet.CONCUR_READ_ONLY);
+        } else {            	
+        	if (isCsv) {            		
+        		pstmt = conn.prepareStatement(queryString);
+        	} else {
+        		boolean keepCursorsOverCommit = false;
+        		try {
+					Dialect dialect = DialectUtil.getDialect(conn);
+					keepCursorsOverCommit = dialect.needsHoldCursorsForPreparedStatement();
+				} catch (DialectException e) {
+					e.printStackTrace();
+	                LOG.error(e.getMessage(), e); 
+				}
+        		if (keepCursorsOverCommit) {
+        			pstmt = conn.prepareStatement(queryString, resultSetType, ResultSet.CONCUR_READ_ONLY, ResultSet.HOLD_CURSORS_OVER_COMMIT);
+        		} else {
+        			pstmt = conn.prepareStatement(queryString, resultSetType, ResultSet.CONCUR_READ_ONLY);
+        		}
+        	}
+        }
+		return pstmt;
+	}
+
+	private AsyncRowCount createAsyncRowCount(String queryString) {
+		Connection countConn = null;
+		PreparedStatement countPstmt = null;
+		try {
+			countConn = countConnectionProvider.getConnection();
+			countPstmt = countConn.prepareStatement("SELECT COUNT(*) FROM (" + queryString + ") A");
+			try {
+				countPstmt.setQueryTimeout(timeout);
+			} catch (SQLException e) {
+				LOG.warn(e);
+			}
+			if ((parameterNames.size() != 0) || (keysetValue != null)) {
+				setParameterValues(countPstmt);
+			}
+			return new AsyncRowCount(countPstmt, countConn, countConnectionProvider);
+		} catch (Exception ex) {
+			LOG.info("Cannot create count statement on second connection : " + ex.getMessage());
+			ConnectionUtil.closeStatement(countPstmt);
+			if (countConn != null) {
+				countConnectionProvider.releaseConnection(countConn);
+			}
+			return null;
+		}
+	}
+	
+	private void startAsyncRowCount() {
+		try {
+			executionStrategy.execute(asyncRowCount, QueryExecutor.class.getSimpleName() + "-count");
+		} catch (RuntimeException e) {
+			LOG.error("Cannot execute count worker : " + e.getMessage(), e);
+			new Thread(asyncRowCount, QueryExecutor.class.getSimpleName() + "-count").start();
+		}
+	}
+	
+	private PreparedStatement createEstimateStatement(String queryString) {
+		try {
+			String estimateQueryString = DialectUtil.getDialect(conn).getRowCountEstimateQuery(queryString);
+			if (estimateQueryString == null) {
+				return null;
+			}
+			PreparedStatement estimatePstmt = createStatement(estimateQueryString);
+			if ((parameterNames.size() != 0) || (keysetValue != null)) {
+				setParameterValues(estimatePstmt);
+			}
+			return estimatePstmt;
+		} catch (Exception ex) {
+			LOG.info("Cannot create estimate count statement : " + ex.getMessage());
+			return null;
+		}
+	}
+
+	// rows after the last value of the keyset column from the previous page
+	private String createKeysetQueryString(String queryString) {
+		StringBuilder sb = new StringBuilder();
+		sb.append("SELECT * FROM (").append(queryString).append(") NR_KEYSET");
+		if (keysetValue != null) {
+			sb.append(" WHERE NR_KEYSET.").append(keysetColumn).append(" > ?");
+		}
+		sb.append(" ORDER BY NR_KEYSET.").append(keysetColumn);
+		return sb.toString();
+	}
+	
+	// query with native row limiting; if the dialect cannot skip the rows, they are skipped by the driver
+	private String createPageQueryString(String queryString) {
+		String pageQueryString = null;
+		try {
+			Dialect dialect = DialectUtil.getDialect(conn);
+			pageQueryString = dialect.getLimitQuery(queryString, offset, maxRows);
+			if ((pageQueryString == null) && (offset > 0)) {
+				pageQueryString = dialect.getLimitQuery(queryString, 0, offset + maxRows);
+				skipRows = offset;
+			}
+		} catch (Exception e) {
+			LOG.error("Cannot limit query rows : " + e.getMessage(), e);
+		}
+		if (pageQueryString == null) {
+			skipRows = offset;
+			return queryString;
+		}
+		return pageQueryString;
+	}
+
+	private void setStreamingFetchSize(PreparedStatement pstmt) {
+		int size = fetchSize;
+		try {
+			size = DialectUtil.getDialect(conn).getStreamingFetchSize(fetchSize);
+		} catch (Exception e) {
+			LOG.error(e.getMessage(), e);
+		}
+		try {
+			pstmt.setFetchSize(size);
+		} catch (SQLException e) {
+			// some drivers (csv, sqlite) do not support fetch size
+			LOG.warn(e);
+		}
+	}
+	
+	private void prepareConnectionForStreaming() throws QueryException {
+		try {
+			Dialect dialect = DialectUtil.getDialect(conn);
+			if (dialect.needsAutoCommitOffForStreaming() && conn.getAutoCommit()) {
+				conn.setAutoCommit(false);
+				restoreAutoCommit = true;
+			}
+		} catch (DialectException e) {
+			LOG.error(e.getMessage(), e);
+		} catch (SQLException e) {
+			throw new QueryException(e);
+		}
+	}
+
 	private void setParameterValues(PreparedStatement pstmt) throws QueryException {
 		try {
 			QueryParameter parameter = null;
@@ -565,12 +1025,30 @@ public class QueryExecutor implements Runnable {
                     setParameterValue(pstmt, parameter.getValueClass(), parameterValue, index);
 				}
 			}
+			// keyset value is the last parameter (see createKeysetQueryString)
+			if (keysetValue != null) {
+				setParameterValue(pstmt, Object.class, keysetValue, getStatementParameterCount());
+			}
 
         } catch (SQLException e) {
 			throw new QueryException("Error set parameter values for executing query", e);
 		}
 	}
 
+	// number of '?' used by query parameters (a multiple selection parameter has one for every value)
+	private int getStatementParameterCount() {
+		int count = 0;
+		for (String parameterName : parameterNames) {
+			QueryParameter parameter = parameters.get(parameterName);
+			if (QueryParameter.MULTIPLE_SELECTION.equals(parameter.getSelection())) {
+				count += ((Object[]) parameterValues.get(parameterName)).length;
+			} else {
+				count++;
+			}
+		}
+		return count;
+	}
+
     private void setOutParametersValues(PreparedStatement pstmt) throws SQLException, DialectException {
         Dialect dialect = DialectUtil.getDialect(conn);
         if (QueryUtil.isProcedureCall(query.getText())) {
@@ -823,6 +1301,17 @@ public class QueryExecutor implements Runnable {
 			// no query chunks
 			return "";
 		}
+		
+		// the sql depends only on query text and on the number of values for multiple selection parameters
+		String cacheKey = null;
+		if (QueryCache.isEnabled()) {
+			cacheKey = createQueryStringKey(chunks);
+			QueryCache.ExpandedQuery expanded = QueryCache.getExpandedQuery(cacheKey);
+			if (expanded != null) {
+				outputParameterPosition = expanded.getOutputParameterPosition();
+				return expanded.getSql();
+			}
+		}
 
 		StringBuffer sb = new StringBuffer();
         QueryChunk chunk = null;
@@ -863,9 +1352,28 @@ public class QueryExecutor implements Runnable {
 					break;
 				}
 			}
-		}        
+		}
+        if (cacheKey != null) {
+        	QueryCache.putExpandedQuery(cacheKey, sb.toString(), outputParameterPosition);
+        }
         return sb.toString();
 	}
+	
+	private String createQueryStringKey(QueryChunk[] chunks) {
+		StringBuilder key = new StringBuilder(query.getText());
+		if (!QueryUtil.isProcedureCall(query.getText())) {
+			for (QueryChunk chunk : chunks) {
+				if (chunk.getType() == QueryChunk.PARAMETER_TYPE) {
+					QueryParameter param = parameters.get(chunk.getText());
+					if ((param != null) && QueryParameter.MULTIPLE_SELECTION.equals(param.getSelection())) {
+						Object[] paramValue = (Object[]) parameterValues.get(chunk.getText());
+						key.append('\u0000').append(paramValue.length);
+					}
+				}
+			}
+		}
+		return key.toString();
+	}
 
 	private void cancel() {
 		cancelRequest = true;
@@ -913,6 +1421,13 @@ public class QueryExecutor implements Runnable {
 			return;
 		}
 
+		String cacheKey = query.getText() + '\u0000' + ignoredList;
+		String cachedSql = QueryCache.getIgnoredText(cacheKey);
+		if (cachedSql != null) {
+			query.setText(cachedSql);
+			return;
+		}
+
 		String sql = StringUtil.deleteExcededSpaces(query.getText());
 		//System.out.println("sql = " + sql);
 		// removed indexex
@@ -970,6 +1485,7 @@ public class QueryExecutor implements Runnable {
 
 		//System.out.println("newSQL = " + newSql.toString());
 
+		QueryCache.putIgnoredText(cacheKey, newSql.toString());
 		query.setText(newSql.toString());
 		//System.out.println("----------- end processIgnoreParameters");
 	}
@@ -1039,6 +1555,8 @@ public class QueryExecutor implements Runnable {
 
 		public PreparedStatement statement;
         public PreparedStatement countStatement;
+        // count statement is a planner estimation
+        public boolean estimate;
         public String query;
 		public boolean pending;
 
@@ -1049,6 +1567,7 @@ public class QueryExecutor implements Runnable {
 		public ResultSet resultSet;
 		public QueryException exception;
 		public int count;
+		public boolean estimated;
 		public boolean serviced;
 		public long executeTime;
 
@@ -1069,8 +1588,26 @@ public class QueryExecutor implements Runnable {
 	
 	public void close() {		
 		ConnectionUtil.closeResultSet(resultWrapper.resultSet);		
-		ConnectionUtil.closeStatement(inputWrapper.statement);
+		if (statementKey != null) {
+			statementCache.release(conn, statementKey, inputWrapper.statement);
+			statementKey = null;
+			inputWrapper.statement = null;
+		} else {
+			ConnectionUtil.closeStatement(inputWrapper.statement);
+		}
 		closeCursors();
+		restoreAutoCommit();
+	}
+	
+	private void restoreAutoCommit() {
+		if (restoreAutoCommit) {
+			try {
+				conn.setAutoCommit(true);
+			} catch (SQLException e) {
+				e.printStackTrace();
+			}
+			restoreAutoCommit = false;
+		}
 	}
 	
 	public void closeCursors() {
@@ -16,27 +16,83 @@
  */
 package ro.nextreports.engine.queryexec;
 
+import java.io.File;
+import java.io.IOException;
+import java.sql.Blob;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
+
+import javax.sql.rowset.serial.SerialBlob;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 
 /**
  * @author Decebal Suiu
  */
 public class QueryResult {
 
+	private static Log LOG = LogFactory.getLog(QueryResult.class);
+
     private ResultSet resultSet;
     private int numberOfRows;
     private int numberOfColumns;
     private long executeTime;
+    // connection which had auto commit turned off for a streaming result
+    private Connection autoCommitConnection;
+    // row count is a planner estimation
+    private boolean rowCountEstimated;
+    // row count computed concurrently on another connection
+    private AsyncRowCount asyncRowCount;
+    private int maxRows;
+    private int offset;
+    // rows skipped before the first row when the database cannot use an offset (see QueryExecutor.setOffset)
+    private int skipRows;
+    private boolean skipPending;
+    // statement taken from a cache
+    private StatementCache statementCache;
+    private Connection statementConnection;
+    private String statementKey;
+    private PreparedStatement statement;
 
     // cache
     private Map<Integer,String> columnNames;
     private Map<String, Integer> columnIndexes;
     private Map<Integer,String> columnClassNames;
     private Map<Integer, Integer> columnTypes;
+    // column label -> first column index with that label (as ResultSet.getObject(String) does)
+    private Map<String, Integer> labelIndexes;
+    private Map<String, Integer> labelIgnoreCaseIndexes;
+
+    // values of the current row, every column is read at most once from the result set
+    private static final Object NOT_READ = new Object();
+    private static final long PREFETCH_CLOSE_TIMEOUT = 10000;
+    private Object[] rowValues;
+    // rows read in background (optional)
+    private RowPrefetcher prefetcher;
+    // rows are also written to a snapshot file (optional)
+    private SnapshotWriter snapshotWriter;
+    // rows are copied to a temporary file when they must be read twice (see spool)
+    private SnapshotWriter spoolWriter;
+    private File spoolFile;
+    
+    // rows read in advance by lookAhead ; current row values are taken from aheadValues
+    // when the row was read in advance (or when the cursor was moved after it)
+    private LinkedList<Object[]> aheadRows;
+    private Object[] aheadValues;
+    private boolean aheadEnd;
+    private boolean onRow;
     
     public QueryResult(ResultSet rs, int count, long executeTime) throws QueryException {
         this.resultSet = rs;
@@ -45,37 +101,229 @@ public class QueryResult {
 
         initCache();
     }
+    
+    /**
+     * Constructor for results which are not read from a result set
+     * 
+     * @param columnLabels column labels
+     * @param columnClassNames column class names
+     * @param columnTypes column sql types
+     * @param count number of rows
+     * @param executeTime execution time in milliseconds
+     */
+    protected QueryResult(String[] columnLabels, String[] columnClassNames, int[] columnTypes, int count, long executeTime) {
+    	this.executeTime = executeTime;
+    	this.numberOfRows = count;
+    	initCache(columnLabels, columnClassNames, columnTypes);
+    }
 
     private void initCache() throws QueryException {
-        columnNames = new HashMap<Integer,String>();
-        columnIndexes = new HashMap<String, Integer>();
-        columnClassNames = new HashMap<Integer,String>();
-        columnTypes = new HashMap<Integer, Integer>();
-        
         try {
             ResultSetMetaData metadata = resultSet.getMetaData();
-            numberOfColumns = metadata.getColumnCount();
-            for (int i = 0; i < numberOfColumns; i++) {
-                columnNames.put(i, metadata.getColumnLabel(i + 1));
-                columnIndexes.put(metadata.getColumnLabel(i + 1), i);
-                columnClassNames.put(i, metadata.getColumnClassName(i + 1));
-                columnTypes.put(i, metadata.getColumnType(i + 1));
+            int n = metadata.getColumnCount();
+            String[] labels = new String[n];
+            String[] classNames = new String[n];
+            int[] types = new int[n];
+            for (int i = 0; i < n; i++) {
+            	labels[i] = metadata.getColumnLabel(i + 1);
+            	classNames[i] = metadata.getColumnClassName(i + 1);
+            	types[i] = metadata.getColumnType(i + 1);
             }
+            initCache(labels, classNames, types);
         } catch (SQLException e) {
             throw new QueryException(e);
         }
     }
     
+    private void initCache(String[] labels, String[] classNames, int[] types) {
+        columnNames = new HashMap<Integer,String>();
+        columnIndexes = new HashMap<String, Integer>();
+        columnClassNames = new HashMap<Integer,String>();
+        columnTypes = new HashMap<Integer, Integer>();
+        labelIndexes = new HashMap<String, Integer>();
+        labelIgnoreCaseIndexes = new TreeMap<String, Integer>(String.CASE_INSENSITIVE_ORDER);
+        
+        numberOfColumns = labels.length;
+        for (int i = 0; i < numberOfColumns; i++) {
+        	String label = labels[i];
+        	columnNames.put(i, label);
+        	columnIndexes.put(label, i);
+        	columnClassNames.put(i, classNames[i]);
+        	columnTypes.put(i, types[i]);
+        	if ((label != null) && !labelIndexes.containsKey(label)) {
+        		labelIndexes.put(label, i);
+        	}
+        	if ((label != null) && !labelIgnoreCaseIndexes.containsKey(label)) {
+        		labelIgnoreCaseIndexes.put(label, i);
+        	}
+        }
+        rowValues = new Object[numberOfColumns];
+        Arrays.fill(rowValues, NOT_READ);
+    }
+    
     public boolean hasNext() throws QueryException {
         if (resultSet == null) {
             return false;
         }
         
-        try {
-            return resultSet.next();
-        } catch (SQLException e) {
-            throw new QueryException(e);
+        boolean next;
+        aheadValues = null;
+        if ((aheadRows != null) && !aheadRows.isEmpty()) {
+        	aheadValues = aheadRows.removeFirst();
+        	next = true;
+        } else if (aheadEnd) {
+        	next = false;
+        } else if (prefetcher != null) {
+        	next = prefetcher.next();
+        } else {
+        	try {
+        		Arrays.fill(rowValues, NOT_READ);
+        		skip();
+        		next = resultSet.next();
+        	} catch (SQLException e) {
+        		throw new QueryException(e);
+        	}
+        }
+        onRow = next;
+        if ((snapshotWriter != null) || (spoolWriter != null)) {
+        	writeSnapshot(next);
+        }
+        return next;
+    }
+    
+    /**
+     * Read the next rows in advance, without moving from the current row. Next calls of hasNext
+     * return the rows read in advance before reading from the result set again.
+     * 
+     * @param rows maximum number of rows to read in advance
+     * @return values of the rows after the current row (less than rows if the result has no more rows)
+     * @throws QueryException if rows cannot be read
+     */
+    public List<Object[]> lookAhead(int rows) throws QueryException {
+    	if (resultSet == null) {
+    		return Collections.emptyList();
+    	}
+    	if (aheadRows == null) {
+    		aheadRows = new LinkedList<Object[]>();
+    	}
+    	if ((aheadRows.size() < rows) && !aheadEnd && onRow && (aheadValues == null)) {
+    		// current row is kept in memory before the cursor is moved
+    		aheadValues = readRow();
+    	}
+    	while ((aheadRows.size() < rows) && !aheadEnd) {
+    		boolean next;
+    		if (prefetcher != null) {
+    			next = prefetcher.next();
+    		} else {
+    			try {
+    				Arrays.fill(rowValues, NOT_READ);
+    				skip();
+    				next = resultSet.next();
+    			} catch (SQLException e) {
+    				throw new QueryException(e);
+    			}
+    		}
+    		if (next) {
+    			aheadRows.add(readRow());
+    		} else {
+    			aheadEnd = true;
+    		}
+    	}
+    	List<Object[]> result = new ArrayList<Object[]>(Math.min(rows, aheadRows.size()));
+    	for (Object[] row : aheadRows) {
+    		if (result.size() == rows) {
+    			break;
+    		}
+    		result.add(row);
+    	}
+    	return result;
+    }
+    
+    // values of the row under the cursor (blobs are copied because they are read after the cursor is moved)
+    private Object[] readRow() throws QueryException {
+    	Object[] row = new Object[numberOfColumns];
+    	for (int i = 0; i < numberOfColumns; i++) {
+    		Object value = (prefetcher != null) ? prefetcher.getValue(i) : rowValues[i];
+    		try {
+    			if (value == NOT_READ) {
+    				value = resultSet.getObject(i + 1);
+    			}
+    			if (value instanceof Blob) {
+    				value = new SerialBlob((Blob) value);
+    			}
+    		} catch (SQLException e) {
+    			throw new QueryException(e);
+    		}
+    		row[i] = value;
+    	}
+    	return row;
+    }
+    
+    private void writeSnapshot(boolean next) throws QueryException {
+    	Object[] row = null;
+    	if (next) {
+    		row = new Object[numberOfColumns];
+    		for (int i = 0; i < numberOfColumns; i++) {
+    			row[i] = nextValue(i);
+    		}
+    	}
+    	if ((snapshotWriter != null) && (!writeSnapshot(snapshotWriter, row) || !next)) {
+    		snapshotWriter = null;
+    	}
+    	if (spoolWriter != null) {
+    		if (!writeSnapshot(spoolWriter, row)) {
+    			spoolWriter = null;
+    		} else if (!next) {
+    			spoolFile = spoolWriter.getFile();
+    			spoolWriter = null;
+    		}
+    	}
+    }
+    
+    // write a row (or finish the snapshot if row is null) ; return false if snapshot was aborted
+    private boolean writeSnapshot(SnapshotWriter writer, Object[] row) {
+    	try {
+    		if (row != null) {
+    			writer.writeRow(row);
+    		} else {
+    			writer.finish();
+    		}
+    		return true;
+    	} catch (IOException e) {
+    		LOG.error("Cannot write snapshot : " + e.getMessage(), e);
+    		writer.abort();
+    		return false;
+    	}
+    }
+    
+    /**
+     * Move before the first row. The result set must be scrollable.
+     * 
+     * @throws QueryException if result cannot be scrolled
+     */
+    public void beforeFirst() throws QueryException {
+    	if (resultSet == null) {
+    		return;
+    	}
+    	if (prefetcher != null) {
+        	throw new QueryException("Cannot scroll a result read in background");
         }
+    	if (snapshotWriter != null) {
+    		// rows would be written twice
+    		snapshotWriter.abort();
+    		snapshotWriter = null;
+    	}
+    	aheadRows = null;
+    	aheadValues = null;
+    	aheadEnd = false;
+    	onRow = false;
+    	try {
+    		Arrays.fill(rowValues, NOT_READ);
+    		resultSet.beforeFirst();
+    		skipPending = (skipRows > 0);
+    	} catch (SQLException e) {
+    		throw new QueryException(e);
+    	}
     }
     
     public Object nextValue(String columnName) throws QueryException {
@@ -83,6 +331,13 @@ public class QueryResult {
             return null;
         }
         
+        int columnIndex = findColumn(columnName);
+        if (columnIndex != -1) {
+        	return nextValue(columnIndex);
+        }
+        if ((prefetcher != null) || (aheadValues != null)) {
+        	return null;
+        }
         try {
             return resultSet.getObject(columnName);
         } catch (SQLException e) {
@@ -90,10 +345,37 @@ public class QueryResult {
         }
     }
     
+    /**
+     * Find the index of a column like ResultSet.findColumn does (case insensitive label), but
+     * without asking the driver
+     * 
+     * @param columnName column label
+     * @return column index (0-based) or -1 if no column has that label
+     */
+    public int findColumn(String columnName) {
+    	Integer index = labelIndexes.get(columnName);
+    	if ((index == null) && (columnName != null)) {
+    		index = labelIgnoreCaseIndexes.get(columnName);
+    	}
+    	return (index == null) ? -1 : index;
+    }
+    
     public Object nextBlobValue(String columnName) throws QueryException {
         if (resultSet == null) {
             return null;
         }
+        if ((prefetcher != null) || (aheadValues != null)) {
+        	int columnIndex = findColumn(columnName);
+        	Object value = (columnIndex == -1) ? null : nextValue(columnIndex);
+        	if (value instanceof byte[]) {
+        		try {
+        			value = new SerialBlob((byte[]) value);
+        		} catch (SQLException e) {
+        			throw new QueryException(e);
+        		}
+        	}
+        	return value;
+        }
         
         try {
             return resultSet.getBlob(columnName);
@@ -107,11 +389,69 @@ public class QueryResult {
             return null;
         }
         
-        try {
-            return resultSet.getObject(columnIndex + 1);
-        } catch (SQLException e) {
-            throw new QueryException(e);
+        if (aheadValues != null) {
+        	return aheadValues[columnIndex];
+        }
+        if (prefetcher != null) {
+        	return prefetcher.getValue(columnIndex);
         }
+        Object value = rowValues[columnIndex];
+        if (value == NOT_READ) {
+        	try {
+        		value = resultSet.getObject(columnIndex + 1);
+        	} catch (SQLException e) {
+        		throw new QueryException(e);
+        	}
+        	rowValues[columnIndex] = value;
+        }
+        return value;
+    }
+    
+    /**
+     * Get the value of a numeric column from current row as double
+     * 
+     * @param columnIndex column index (0-based)
+     * @return column value, 0 if value is null (see isNull)
+     * @throws QueryException if value cannot be read or it is not a number
+     */
+    public double getDouble(int columnIndex) throws QueryException {
+    	Object value = nextValue(columnIndex);
+    	if (value == null) {
+    		return 0;
+    	}
+    	if (value instanceof Number) {
+    		return ((Number) value).doubleValue();
+    	}
+    	throw new QueryException("Column " + getColumnName(columnIndex) + " is not numeric : " + value.getClass().getName());
+    }
+    
+    /**
+     * Get the value of a numeric column from current row as long
+     * 
+     * @param columnIndex column index (0-based)
+     * @return column value, 0 if value is null (see isNull)
+     * @throws QueryException if value cannot be read or it is not a number
+     */
+    public long getLong(int columnIndex) throws QueryException {
+    	Object value = nextValue(columnIndex);
+    	if (value == null) {
+    		return 0;
+    	}
+    	if (value instanceof Number) {
+    		return ((Number) value).longValue();
+    	}
+    	throw new QueryException("Column " + getColumnName(columnIndex) + " is not numeric : " + value.getClass().getName());
+    }
+    
+    /**
+     * Test if the value of a column from current row is null
+     * 
+     * @param columnIndex column index (0-based)
+     * @return true if value is null
+     * @throws QueryException if value cannot be read
+     */
+    public boolean isNull(int columnIndex) throws QueryException {
+    	return nextValue(columnIndex) == null;
     }
     
     public ResultSet getResultSet() {
@@ -122,10 +462,71 @@ public class QueryResult {
         return numberOfColumns;
     }
     
+    /**
+     * Get the number of rows
+     * If the count is computed on another connection, -1 is returned until the count is available
+     * (see isRowCountPending)
+     * 
+     * @return number of rows, or -1 if count is not available
+     */
     public int getRowCount() {
+    	if ((asyncRowCount != null) && asyncRowCount.isDone()) {
+    		numberOfRows = maxRows(asyncRowCount.getCount());
+    		asyncRowCount = null;
+    	}
         return numberOfRows;
     }
     
+    /**
+     * Test if the number of rows is an estimation made by the database planner
+     * 
+     * @return true if row count is estimated
+     */
+    public boolean isRowCountEstimated() {
+    	return rowCountEstimated;
+    }
+    
+    /**
+     * Test if the number of rows is still computed on another connection
+     * 
+     * @return true if row count is not available yet
+     */
+    public boolean isRowCountPending() {
+    	return (asyncRowCount != null) && !asyncRowCount.isDone();
+    }
+    
+    /**
+     * Wait for the number of rows computed on another connection
+     * 
+     * @param millis maximum time to wait in milliseconds (0 means forever)
+     * @return number of rows, or -1 if count is not available
+     * @throws InterruptedException if waiting thread is interrupted
+     */
+    public int waitForRowCount(long millis) throws InterruptedException {
+    	if (asyncRowCount != null) {
+    		asyncRowCount.await(millis);
+    	}
+    	return getRowCount();
+    }
+    
+    private int maxRows(int count) {
+    	if ((offset > 0) && (count != -1)) {
+    		count = Math.max(0, count - offset);
+    	}
+    	if ((maxRows > 0) && (count > maxRows)) {
+    		return maxRows;
+    	}
+    	return count;
+    }
+    
+    private void skip() throws SQLException {
+    	if (skipPending) {
+    		skipPending = false;
+    		for (int i = 0; (i < skipRows) && resultSet.next(); i++) {
+    		}
+    	}
+    }
+    
     public String getColumnName(int columnIndex) {
         return columnNames.get(columnIndex);
     }
@@ -150,6 +551,9 @@ public class QueryResult {
         if (resultSet == null) {
             return null;
         }
+        if (prefetcher != null) {
+        	throw new QueryException("Cannot scroll a result read in background");
+        }
         
         try {
             int row = resultSet.getRow();
@@ -170,6 +574,9 @@ public class QueryResult {
         if (resultSet == null) {
             return null;
         }
+        if (prefetcher != null) {
+        	throw new QueryException("Cannot scroll a result read in background");
+        }
 
         try {
             int row = resultSet.getRow();
@@ -194,6 +601,22 @@ public class QueryResult {
     }
 
     public void close() {
+    	if (snapshotWriter != null) {
+    		// not all rows were read
+    		snapshotWriter.abort();
+    		snapshotWriter = null;
+    	}
+    	deleteSpool();
+    	if (asyncRowCount != null) {
+    		asyncRowCount.cancel();
+    	}
+    	if (prefetcher != null) {
+    		prefetcher.cancel();
+    		// result set cannot be closed while it is read by fetch thread
+    		if (!prefetcher.awaitFinished(PREFETCH_CLOSE_TIMEOUT)) {
+    			LOG.warn("Prefetch thread did not finish in " + PREFETCH_CLOSE_TIMEOUT + " ms. Result set is closed anyway.");
+    		}
+    	}
         if (resultSet != null) {
             try {
                 resultSet.close();
@@ -201,6 +624,178 @@ public class QueryResult {
                 e.printStackTrace();  
             }
         }
+        if (statementCache != null) {
+        	statementCache.release(statementConnection, statementKey, statement);
+        	statementCache = null;
+        	statement = null;
+        }
+        if (autoCommitConnection != null) {
+        	try {
+        		autoCommitConnection.commit();
+        		autoCommitConnection.setAutoCommit(true);
+        	} catch (SQLException e) {
+        		e.printStackTrace();
+        	}
+        	autoCommitConnection = null;
+        }
+    }
+    
+    void restoreAutoCommitOnClose(Connection connection) {
+    	this.autoCommitConnection = connection;
+    }
+    
+    void releaseStatementOnClose(StatementCache statementCache, Connection connection, String key,
+    		PreparedStatement statement) {
+    	this.statementCache = statementCache;
+    	this.statementConnection = connection;
+    	this.statementKey = key;
+    	this.statement = statement;
+    }
+    
+    /**
+     * Read rows in a background thread, so database fetch overlaps with the processing of previous rows.
+     * Must be called before the first hasNext. The result cannot be scrolled (getValueAt, beforeFirst)
+     * after prefetch is started.
+     * 
+     * @param capacity maximum number of rows read in advance
+     * @throws QueryException if prefetch cannot be started
+     */
+    public void startPrefetch(int capacity) throws QueryException {
+    	if ((resultSet == null) || (prefetcher != null)) {
+    		return;
+    	}
+    	try {
+    		skip();
+    		prefetcher = new RowPrefetcher(resultSet, capacity);
+    	} catch (SQLException e) {
+    		throw new QueryException(e);
+    	}
+    	prefetcher.start();
+    }
+    
+    /**
+     * Write all rows to a snapshot file while they are read. The snapshot is completed when
+     * hasNext returns false and it is discarded if the result is closed before.
+     * Must be called before the first hasNext.
+     * 
+     * @param snapshotWriter snapshot writer (see SnapshotStore.create)
+     * @throws QueryException if snapshot header cannot be written
+     */
+    public void recordSnapshot(SnapshotWriter snapshotWriter) throws QueryException {
+    	writeHeader(snapshotWriter);
+    	this.snapshotWriter = snapshotWriter;
+    }
+    
+    /**
+     * Copy all rows to a temporary file while they are read, so they can be read again with
+     * {@link #rewind()} without reading the result set twice (and without scrolling it).
+     * Must be called before the first hasNext.
+     * 
+     * @throws QueryException if spool file cannot be created
+     */
+    public void spool() throws QueryException {
+    	deleteSpool();
+    	SnapshotWriter writer;
+    	try {
+    		writer = SnapshotWriter.createTemporary();
+    	} catch (IOException e) {
+    		throw new QueryException("Cannot create spool file", e);
+    	}
+    	writeHeader(writer);
+    	spoolWriter = writer;
+    }
+    
+    /**
+     * Get a result positioned before the first row : the spooled rows if all rows were spooled
+     * (this result is not used anymore and it can be closed), otherwise this result moved with beforeFirst.
+     * 
+     * @return result positioned before the first row
+     * @throws QueryException if spooled rows cannot be read or result cannot be scrolled
+     */
+    public QueryResult rewind() throws QueryException {
+    	if (spoolFile != null) {
+    		try {
+    			SnapshotQueryResult result = SnapshotQueryResult.open(spoolFile);
+    			result.setDeleteOnClose(true);
+    			spoolFile = null;
+    			return result;
+    		} catch (IOException e) {
+    			LOG.error("Cannot read spool file : " + e.getMessage(), e);
+    			deleteSpool();
+    		}
+    	}
+    	deleteSpool();
+    	try {
+    		beforeFirst();
+    	} catch (QueryException e) {
+    		// a streamed result or a result read in background cannot be read again
+    		throw new QueryException("Rows were not spooled and result cannot be read again : " + e.getMessage(), e);
+    	}
+    	return this;
+    }
+    
+    private void deleteSpool() {
+    	if (spoolWriter != null) {
+    		spoolWriter.abort();
+    		spoolWriter = null;
+    	}
+    	if (spoolFile != null) {
+    		if (!spoolFile.delete()) {
+    			LOG.warn("Cannot delete " + spoolFile);
+    		}
+    		spoolFile = null;
+    	}
+    }
+    
+    private void writeHeader(SnapshotWriter snapshotWriter) throws QueryException {
+    	String[] labels = new String[numberOfColumns];
+    	String[] classNames = new String[numberOfColumns];
+    	int[] types = new int[numberOfColumns];
+    	for (int i = 0; i < numberOfColumns; i++) {
+    		labels[i] = getColumnName(i);
+    		classNames[i] = getColumnClassName(i);
+    		types[i] = getColumnType(i);
+    	}
+    	try {
+    		snapshotWriter.writeHeader(labels, classNames, types);
+    	} catch (IOException e) {
+    		snapshotWriter.abort();
+    		throw new QueryException("Cannot write snapshot", e);
+    	}
+    }
+    
+    /**
+     * Stop reading rows in background. Next hasNext returns false.
+     */
+    public void stopPrefetch() {
+    	if (prefetcher != null) {
+    		prefetcher.cancel();
+    	}
+    }
+    
+    /**
+     * Get prefetch metrics (queue occupancy, waits)
+     * 
+     * @return prefetcher or null if rows are not read in background
+     */
+    public RowPrefetcher getPrefetcher() {
+    	return prefetcher;
+    }
+    
+    void setRowCountEstimated(boolean rowCountEstimated) {
+    	this.rowCountEstimated = rowCountEstimated;
+    }
+    
+    void setAsyncRowCount(AsyncRowCount asyncRowCount, int offset, int maxRows) {
+    	this.asyncRowCount = asyncRowCount;
+    	this.offset = offset;
+    	this.maxRows = maxRows;
+    	this.numberOfRows = -1;
+    }
+    
+    void setSkipRows(int skipRows) {
+    	this.skipRows = skipRows;
+    	this.skipPending = (skipRows > 0);
     }
     
     /**
@@ -209,10 +804,24 @@ public class QueryResult {
      * @return true if QueryResult is empty, false otherwise
      */
 	public boolean isEmpty() {
+		if (prefetcher != null) {
+			try {
+				return prefetcher.isEmpty();
+			} catch (QueryException e) {
+				// first row cannot be read
+				throw new RuntimeException(e);
+			}
+		}
 		try {
 			if (!resultSet.isBeforeFirst()) {
 				return true;
 			}
+			if (skipPending) {
+				// look after the skipped rows
+				boolean empty = !resultSet.absolute(skipRows + 1);
+				resultSet.beforeFirst();
+				return empty;
+			}
 		} catch (SQLException e) {
 			// will fail for TYPE_FORWARD_ONLY result set
 			// we will test also in ResultExporter printContentBands() to throw or not NoDataFoundException
@@ -0,0 +1,337 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ro.nextreports.engine.queryexec;
+
+import java.sql.Blob;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sql.rowset.serial.SerialBlob;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Reads the rows of a result set in a background thread, so the database fetch overlaps with
+ * the export of previous rows.
+ * 
+ * Rows are copied in row buffers and put in a bounded queue. When the queue is full the fetch
+ * thread waits for the exporter (backpressure). Row buffers are reused after the exporter
+ * moves to the next row.
+ * 
+ * Queue occupancy metrics show which side is slower : a queue which is almost always full means
+ * the export is slower than the database, an empty one means the exporter waits for data.
+ * 
+ * A prefetcher keeps its thread until all rows are exported, so it does not run on the query
+ * execution strategy (a bounded pool would be held by exports and queries would wait for them) :
+ * prefetchers have their own daemon threads, reused by next exports.
+ */
+public class RowPrefetcher implements Runnable {
+
+	private static Log LOG = LogFactory.getLog(RowPrefetcher.class);
+
+	// marks the end of rows
+	private static final Object[] END = new Object[0];
+	// how long the fetch thread waits for space in queue before it tests for cancel
+	private static final long OFFER_TIMEOUT = 100;
+
+	private static final ExecutorService executor = Executors.newCachedThreadPool(new PrefetchThreadFactory());
+
+	private final ResultSet resultSet;
+	private final int columns;
+	private final boolean[] blobColumns;
+	private final int capacity;
+	private final BlockingQueue<Object[]> queue;
+	private final BlockingQueue<Object[]> pool;
+	private final CountDownLatch firstRow = new CountDownLatch(1);
+	private final CountDownLatch finished = new CountDownLatch(1);
+
+	private volatile boolean cancelled;
+	private volatile SQLException exception;
+
+	// consumer side
+	private Object[] current;
+	private boolean end;
+
+	// metrics
+	private volatile long fetchedRows;
+	private volatile int maxOccupancy;
+	private volatile long producerWaits;
+	private volatile long consumerWaits;
+	private long occupancySum;
+	private long consumedRows;
+
+	RowPrefetcher(ResultSet resultSet, int capacity) throws SQLException {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("capacity must be positive");
+		}
+		this.resultSet = resultSet;
+		this.capacity = capacity;
+		this.columns = resultSet.getMetaData().getColumnCount();
+		this.blobColumns = new boolean[columns];
+		for (int i = 0; i < columns; i++) {
+			int type = resultSet.getMetaData().getColumnType(i + 1);
+			blobColumns[i] = (type == Types.BLOB);
+		}
+		this.queue = new ArrayBlockingQueue<Object[]>(capacity);
+		this.pool = new ArrayBlockingQueue<Object[]>(capacity + 2);
+	}
+
+	// start to read rows in background
+	void start() {
+		executor.execute(this);
+	}
+
+	public void run() {
+		try {
+			while (!cancelled && resultSet.next()) {
+				Object[] row = pool.poll();
+				if (row == null) {
+					row = new Object[columns];
+				}
+				for (int i = 0; i < columns; i++) {
+					row[i] = readValue(i);
+				}
+				if (!queue.offer(row)) {
+					producerWaits++;
+					if (!put(row)) {
+						break;
+					}
+				}
+				fetchedRows++;
+				int occupancy = queue.size();
+				if (occupancy > maxOccupancy) {
+					maxOccupancy = occupancy;
+				}
+				firstRow.countDown();
+			}
+		} catch (SQLException e) {
+			if (!cancelled) {
+				exception = e;
+			}
+		} catch (InterruptedException e) {
+			cancelled = true;
+		} catch (RuntimeException e) {
+			LOG.error(e.getMessage(), e);
+			if (!cancelled) {
+				exception = new SQLException("Prefetch rows. See log for details");
+			}
+		} finally {
+			try {
+				if (cancelled) {
+					queue.clear();
+					queue.offer(END);
+				} else {
+					put(END);
+				}
+			} catch (InterruptedException e) {
+				queue.clear();
+				queue.offer(END);
+			}
+			firstRow.countDown();
+			finished.countDown();
+		}
+	}
+
+	// blob values may not be read after the result set moves to next row
+	private Object readValue(int column) throws SQLException {
+		if (blobColumns[column]) {
+			Blob blob = resultSet.getBlob(column + 1);
+			return (blob == null) ? null : new SerialBlob(blob);
+		}
+		return resultSet.getObject(column + 1);
+	}
+
+	private boolean put(Object[] row) throws InterruptedException {
+		while (!cancelled) {
+			if (queue.offer(row, OFFER_TIMEOUT, TimeUnit.MILLISECONDS)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Move to next row
+	 * 
+	 * @return true if there is a next row
+	 * @throws QueryException if rows cannot be read from result set
+	 */
+	boolean next() throws QueryException {
+		if (current != null) {
+			pool.offer(current);
+			current = null;
+		}
+		if (end || cancelled) {
+			return false;
+		}
+		occupancySum += queue.size();
+		Object[] row = queue.poll();
+		if (row == null) {
+			consumerWaits++;
+			try {
+				row = queue.take();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				cancel();
+				return false;
+			}
+		}
+		if ((row == END) || cancelled) {
+			end = true;
+			if (exception != null) {
+				throw new QueryException(exception);
+			}
+			return false;
+		}
+		consumedRows++;
+		current = row;
+		return true;
+	}
+
+	Object getValue(int columnIndex) {
+		return (current == null) ? null : current[columnIndex];
+	}
+
+	/**
+	 * Wait for the first row
+	 * 
+	 * @return true if result set has no rows
+	 * @throws QueryException if first row cannot be read
+	 */
+	boolean isEmpty() throws QueryException {
+		try {
+			firstRow.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+		if ((fetchedRows == 0) && (exception != null)) {
+			throw new QueryException(exception);
+		}
+		return fetchedRows == 0;
+	}
+
+	/**
+	 * Stop reading rows. A consumer waiting for a row is released.
+	 */
+	void cancel() {
+		cancelled = true;
+		queue.clear();
+		queue.offer(END);
+	}
+
+	/**
+	 * Wait for the fetch thread to finish
+	 * 
+	 * @param millis maximum time to wait in milliseconds
+	 * @return true if fetch thread finished
+	 */
+	boolean awaitFinished(long millis) {
+		try {
+			return finished.await(millis, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * Get the number of rows waiting in queue
+	 * 
+	 * @return number of rows waiting in queue
+	 */
+	public int getOccupancy() {
+		return queue.size();
+	}
+
+	public int getMaxOccupancy() {
+		return maxOccupancy;
+	}
+
+	/**
+	 * Get the average number of rows found in queue by the exporter
+	 * 
+	 * @return average queue occupancy
+	 */
+	public double getAverageOccupancy() {
+		return (consumedRows == 0) ? 0 : (double) occupancySum / consumedRows;
+	}
+
+	public long getFetchedRows() {
+		return fetchedRows;
+	}
+
+	/**
+	 * Get how many times the fetch thread waited because the queue was full
+	 * 
+	 * @return number of waits for the exporter
+	 */
+	public long getProducerWaits() {
+		return producerWaits;
+	}
+
+	/**
+	 * Get how many times the exporter waited because the queue was empty
+	 * 
+	 * @return number of waits for the database
+	 */
+	public long getConsumerWaits() {
+		return consumerWaits;
+	}
+
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	public String toString() {
+		return "RowPrefetcher{" +
+				"capacity=" + capacity +
+				", fetchedRows=" + fetchedRows +
+				", maxOccupancy=" + maxOccupancy +
+				", averageOccupancy=" + getAverageOccupancy() +
+				", producerWaits=" + producerWaits +
+				", consumerWaits=" + consumerWaits +
+				'}';
+	}
+
+	private static class PrefetchThreadFactory implements ThreadFactory {
+
+		private final AtomicInteger index = new AtomicInteger(1);
+
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, RowPrefetcher.class.getSimpleName() + "-" + index.getAndIncrement());
+			thread.setDaemon(true);
+			return thread;
+		}
+
+	}
+
+}
@@ -0,0 +1,247 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ro.nextreports.engine.queryexec;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.Blob;
+import java.sql.Clob;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.Date;
+
+import javax.sql.rowset.serial.SerialBlob;
+import javax.sql.rowset.serial.SerialClob;
+
+/**
+ * Binary format of snapshot files.
+ * 
+ * <pre>
+ * header : magic, version, column count, (label, class name, sql type) for every column
+ * blocks : row count, then for every column the values of all block rows (typed values)
+ * index  : block count, (offset, length, row count) for every block, total row count
+ * footer : index offset
+ * </pre>
+ * 
+ * Values of other classes are kept as strings (java serialization is never used, so reading a
+ * snapshot file cannot instantiate arbitrary classes).
+ */
+class SnapshotFormat {
+
+	static final int MAGIC = 0x4E52534E;
+	// version 2 : no serialized objects
+	static final short VERSION = 2;
+	static final int BLOCK_ROWS = 1024;
+
+	private static final byte NULL = 0;
+	private static final byte STRING = 1;
+	private static final byte INTEGER = 2;
+	private static final byte LONG = 3;
+	private static final byte DOUBLE = 4;
+	private static final byte FLOAT = 5;
+	private static final byte SHORT = 6;
+	private static final byte BYTE = 7;
+	private static final byte BOOLEAN = 8;
+	private static final byte BIG_DECIMAL = 9;
+	private static final byte BIG_INTEGER = 10;
+	private static final byte TIMESTAMP = 11;
+	private static final byte SQL_DATE = 12;
+	private static final byte TIME = 13;
+	private static final byte DATE = 14;
+	private static final byte BYTES = 15;
+	private static final byte BLOB = 16;
+	private static final byte CLOB = 17;
+
+	private SnapshotFormat() {
+	}
+
+	static void writeString(DataOutput out, String s) throws IOException {
+		if (s == null) {
+			out.writeInt(-1);
+			return;
+		}
+		byte[] bytes = s.getBytes("UTF-8");
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	static String readString(DataInput in) throws IOException {
+		int length = in.readInt();
+		if (length == -1) {
+			return null;
+		}
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return new String(bytes, "UTF-8");
+	}
+
+	static void writeValue(DataOutput out, Object value) throws IOException {
+		if (value == null) {
+			out.writeByte(NULL);
+		} else if (value instanceof String) {
+			out.writeByte(STRING);
+			writeString(out, (String) value);
+		} else if (value instanceof Integer) {
+			out.writeByte(INTEGER);
+			out.writeInt((Integer) value);
+		} else if (value instanceof Long) {
+			out.writeByte(LONG);
+			out.writeLong((Long) value);
+		} else if (value instanceof Double) {
+			out.writeByte(DOUBLE);
+			out.writeDouble((Double) value);
+		} else if (value instanceof Float) {
+			out.writeByte(FLOAT);
+			out.writeFloat((Float) value);
+		} else if (value instanceof Short) {
+			out.writeByte(SHORT);
+			out.writeShort((Short) value);
+		} else if (value instanceof Byte) {
+			out.writeByte(BYTE);
+			out.writeByte((Byte) value);
+		} else if (value instanceof Boolean) {
+			out.writeByte(BOOLEAN);
+			out.writeBoolean((Boolean) value);
+		} else if (value instanceof BigDecimal) {
+			out.writeByte(BIG_DECIMAL);
+			writeString(out, value.toString());
+		} else if (value instanceof BigInteger) {
+			out.writeByte(BIG_INTEGER);
+			writeString(out, value.toString());
+		} else if (value instanceof Timestamp) {
+			out.writeByte(TIMESTAMP);
+			out.writeLong(((Timestamp) value).getTime());
+			out.writeInt(((Timestamp) value).getNanos());
+		} else if (value instanceof java.sql.Date) {
+			out.writeByte(SQL_DATE);
+			out.writeLong(((Date) value).getTime());
+		} else if (value instanceof Time) {
+			out.writeByte(TIME);
+			out.writeLong(((Date) value).getTime());
+		} else if (value instanceof Date) {
+			out.writeByte(DATE);
+			out.writeLong(((Date) value).getTime());
+		} else if (value instanceof byte[]) {
+			out.writeByte(BYTES);
+			writeBytes(out, (byte[]) value);
+		} else if (value instanceof Blob) {
+			out.writeByte(BLOB);
+			try {
+				Blob blob = (Blob) value;
+				writeBytes(out, blob.getBytes(1, (int) blob.length()));
+			} catch (SQLException e) {
+				throw new IOException(e);
+			}
+		} else if (value instanceof Clob) {
+			out.writeByte(CLOB);
+			writeString(out, readClob((Clob) value));
+		} else {
+			out.writeByte(STRING);
+			writeString(out, value.toString());
+		}
+	}
+
+	static Object readValue(DataInput in) throws IOException {
+		byte type = in.readByte();
+		switch (type) {
+			case NULL:
+				return null;
+			case STRING:
+				return readString(in);
+			case INTEGER:
+				return in.readInt();
+			case LONG:
+				return in.readLong();
+			case DOUBLE:
+				return in.readDouble();
+			case FLOAT:
+				return in.readFloat();
+			case SHORT:
+				return in.readShort();
+			case BYTE:
+				return in.readByte();
+			case BOOLEAN:
+				return in.readBoolean();
+			case BIG_DECIMAL:
+				return new BigDecimal(readString(in));
+			case BIG_INTEGER:
+				return new BigInteger(readString(in));
+			case TIMESTAMP:
+				Timestamp timestamp = new Timestamp(in.readLong());
+				timestamp.setNanos(in.readInt());
+				return timestamp;
+			case SQL_DATE:
+				return new java.sql.Date(in.readLong());
+			case TIME:
+				return new Time(in.readLong());
+			case DATE:
+				return new Date(in.readLong());
+			case BYTES:
+				return readBytes(in);
+			case BLOB:
+				try {
+					return new SerialBlob(readBytes(in));
+				} catch (SQLException e) {
+					throw new IOException(e);
+				}
+			case CLOB:
+				try {
+					return new SerialClob(readString(in).toCharArray());
+				} catch (SQLException e) {
+					throw new IOException(e);
+				}
+			default:
+				throw new IOException("Invalid snapshot value type : " + type);
+		}
+	}
+
+	private static void writeBytes(DataOutput out, byte[] bytes) throws IOException {
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static byte[] readBytes(DataInput in) throws IOException {
+		byte[] bytes = new byte[in.readInt()];
+		in.readFully(bytes);
+		return bytes;
+	}
+
+	private static String readClob(Clob clob) throws IOException {
+		try {
+			Reader reader = clob.getCharacterStream();
+			try {
+				StringBuilder sb = new StringBuilder();
+				char[] buffer = new char[4096];
+				int n;
+				while ((n = reader.read(buffer)) != -1) {
+					sb.append(buffer, 0, n);
+				}
+				return sb.toString();
+			} finally {
+				reader.close();
+			}
+		} catch (SQLException e) {
+			throw new IOException(e);
+		}
+	}
+
+}
@@ -0,0 +1,266 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ro.nextreports.engine.queryexec;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Query result read from a snapshot file (see SnapshotStore). It does not use the database and
+ * it can be scrolled, so the same run can be exported in many formats.
+ */
+public class SnapshotQueryResult extends QueryResult {
+
+	private static Log LOG = LogFactory.getLog(SnapshotQueryResult.class);
+
+	private final File file;
+	private RandomAccessFile raf;
+	private final int columns;
+	private final int rows;
+	private final long[] blockOffsets;
+	private final int[] blockLengths;
+	private final int[] blockStarts;
+
+	// current block values (column oriented)
+	private int blockIndex = -1;
+	private Object[][] blockValues;
+	private int row = -1;
+	private boolean deleteOnClose;
+	// store which opened the snapshot
+	private SnapshotStore store;
+
+	private SnapshotQueryResult(File file, RandomAccessFile raf, String[] labels, String[] classNames, int[] types,
+			int rows, long[] blockOffsets, int[] blockLengths, int[] blockStarts) {
+		super(labels, classNames, types, rows, 0);
+		this.file = file;
+		this.raf = raf;
+		this.columns = labels.length;
+		this.rows = rows;
+		this.blockOffsets = blockOffsets;
+		this.blockLengths = blockLengths;
+		this.blockStarts = blockStarts;
+	}
+
+	static SnapshotQueryResult open(File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			if (raf.readInt() != SnapshotFormat.MAGIC) {
+				throw new IOException("Not a snapshot file : " + file);
+			}
+			if (raf.readShort() != SnapshotFormat.VERSION) {
+				throw new IOException("Unknown snapshot version : " + file);
+			}
+			int columns = raf.readInt();
+			String[] labels = new String[columns];
+			String[] classNames = new String[columns];
+			int[] types = new int[columns];
+			for (int i = 0; i < columns; i++) {
+				labels[i] = SnapshotFormat.readString(raf);
+				classNames[i] = SnapshotFormat.readString(raf);
+				types[i] = raf.readInt();
+			}
+
+			raf.seek(raf.length() - 8);
+			long indexOffset = raf.readLong();
+			raf.seek(indexOffset);
+			int blockCount = raf.readInt();
+			long[] blockOffsets = new long[blockCount];
+			int[] blockLengths = new int[blockCount];
+			int[] blockStarts = new int[blockCount];
+			int start = 0;
+			for (int i = 0; i < blockCount; i++) {
+				blockOffsets[i] = raf.readLong();
+				blockLengths[i] = raf.readInt();
+				blockStarts[i] = start;
+				start += raf.readInt();
+			}
+			long rows = raf.readLong();
+			if (rows > Integer.MAX_VALUE) {
+				throw new IOException("Too many rows in snapshot : " + rows);
+			}
+			return new SnapshotQueryResult(file, raf, labels, classNames, types, (int) rows, blockOffsets,
+					blockLengths, blockStarts);
+		} catch (IOException e) {
+			raf.close();
+			throw e;
+		}
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	public boolean hasNext() throws QueryException {
+		if (row < rows) {
+			row++;
+		}
+		return row < rows;
+	}
+
+	public Object nextValue(int columnIndex) throws QueryException {
+		return getValue(row, columnIndex);
+	}
+
+	public Object nextValue(String columnName) throws QueryException {
+		int columnIndex = findColumn(columnName);
+		if (columnIndex == -1) {
+			throw new QueryException("Column not found : " + columnName);
+		}
+		return getValue(row, columnIndex);
+	}
+
+	public Object nextBlobValue(String columnName) throws QueryException {
+		return nextValue(columnName);
+	}
+
+	public Object getValueAt(int rowIndex, int columnIndex) throws QueryException {
+		return getValue(rowIndex, columnIndex);
+	}
+
+	public Object getValueAt(int rowIndex, String columnName) throws QueryException {
+		int columnIndex = findColumn(columnName);
+		if (columnIndex == -1) {
+			throw new QueryException("Column not found : " + columnName);
+		}
+		return getValue(rowIndex, columnIndex);
+	}
+
+	public void beforeFirst() throws QueryException {
+		row = -1;
+	}
+
+	public boolean isEmpty() {
+		return rows == 0;
+	}
+
+	public List<Object[]> lookAhead(int count) throws QueryException {
+		int last = (int) Math.min((long) row + count, rows - 1);
+		List<Object[]> result = new ArrayList<Object[]>(Math.max(0, last - row));
+		for (int i = row + 1; i <= last; i++) {
+			Object[] values = new Object[columns];
+			for (int j = 0; j < columns; j++) {
+				values[j] = getValue(i, j);
+			}
+			result.add(values);
+		}
+		return result;
+	}
+
+	// there is no result set
+	public ResultSet getResultSet() {
+		return null;
+	}
+
+	public void close() {
+		if (raf != null) {
+			try {
+				raf.close();
+			} catch (IOException e) {
+				LOG.warn(e);
+			}
+			raf = null;
+		}
+		blockValues = null;
+		if (store != null) {
+			store.release(file);
+			store = null;
+		}
+		if (deleteOnClose && file.exists() && !file.delete()) {
+			LOG.warn("Cannot delete " + file);
+		}
+	}
+
+	void setStore(SnapshotStore store) {
+		this.store = store;
+	}
+
+	// temporary snapshot (spool) is deleted when it is not read anymore
+	void setDeleteOnClose(boolean deleteOnClose) {
+		this.deleteOnClose = deleteOnClose;
+	}
+
+	// rows can be read again without a spool
+	public void spool() throws QueryException {
+	}
+
+	public QueryResult rewind() throws QueryException {
+		beforeFirst();
+		return this;
+	}
+
+	private Object getValue(int rowIndex, int columnIndex) throws QueryException {
+		if ((rowIndex < 0) || (rowIndex >= rows)) {
+			throw new QueryException("Invalid row : " + rowIndex);
+		}
+		int index = findBlock(rowIndex);
+		if (index != blockIndex) {
+			readBlock(index);
+		}
+		return blockValues[columnIndex][rowIndex - blockStarts[index]];
+	}
+
+	private int findBlock(int rowIndex) {
+		if ((blockIndex != -1) && (rowIndex >= blockStarts[blockIndex])
+				&& ((blockIndex == blockStarts.length - 1) || (rowIndex < blockStarts[blockIndex + 1]))) {
+			return blockIndex;
+		}
+		int low = 0;
+		int high = blockStarts.length - 1;
+		while (low < high) {
+			int mid = (low + high + 1) >>> 1;
+			if (blockStarts[mid] <= rowIndex) {
+				low = mid;
+			} else {
+				high = mid - 1;
+			}
+		}
+		return low;
+	}
+
+	private void readBlock(int index) throws QueryException {
+		if (raf == null) {
+			throw new QueryException("Snapshot is closed");
+		}
+		try {
+			byte[] bytes = new byte[blockLengths[index]];
+			raf.seek(blockOffsets[index]);
+			raf.readFully(bytes);
+			DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+			int blockRows = in.readInt();
+			Object[][] values = new Object[columns][blockRows];
+			for (int col = 0; col < columns; col++) {
+				for (int r = 0; r < blockRows; r++) {
+					values[col][r] = SnapshotFormat.readValue(in);
+				}
+			}
+			blockValues = values;
+			blockIndex = index;
+		} catch (IOException e) {
+			throw new QueryException("Cannot read snapshot " + file, e);
+		}
+	}
+
+}
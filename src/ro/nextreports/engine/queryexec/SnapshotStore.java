@@ -0,0 +1,246 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ro.nextreports.engine.queryexec;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import ro.nextreports.engine.EngineProperties;
+
+/**
+ * Directory of snapshot files. A snapshot keeps the rows of a report run, so the same run can be
+ * exported again (in other formats) without executing the query.
+ * 
+ * Snapshots older than time to live are deleted, and the oldest snapshots are deleted when the
+ * directory is bigger than maximum size.
+ */
+public class SnapshotStore {
+
+	private static Log LOG = LogFactory.getLog(SnapshotStore.class);
+
+	private static final String EXTENSION = ".snap";
+
+	private static SnapshotStore defaultStore;
+
+	private final File directory;
+	private final long maxSize;
+	private final long timeToLive;
+	// snapshots read by open results (file -> number of results)
+	private final Map<File, Integer> openFiles = new HashMap<File, Integer>();
+
+	/**
+	 * Create a snapshot store
+	 * 
+	 * @param directory snapshot directory
+	 * @param maxSize maximum size of all snapshots in bytes (0 means no limit)
+	 * @param timeToLive time to live of a snapshot in milliseconds (0 means forever)
+	 */
+	public SnapshotStore(File directory, long maxSize, long timeToLive) {
+		this.directory = directory;
+		this.maxSize = maxSize;
+		this.timeToLive = timeToLive;
+	}
+
+	/**
+	 * Get the snapshot store configured with system properties (see EngineProperties)
+	 * 
+	 * @return default snapshot store
+	 */
+	public static synchronized SnapshotStore getDefault() {
+		if (defaultStore == null) {
+			defaultStore = new SnapshotStore(new File(EngineProperties.getSnapshotDirectory()),
+					EngineProperties.getSnapshotMaxSize(), EngineProperties.getSnapshotTimeToLive());
+		}
+		return defaultStore;
+	}
+
+	public File getDirectory() {
+		return directory;
+	}
+
+	public long getMaxSize() {
+		return maxSize;
+	}
+
+	public long getTimeToLive() {
+		return timeToLive;
+	}
+
+	/**
+	 * Create a writer for a new snapshot (see QueryResult.recordSnapshot).
+	 * An existing snapshot with the same key is replaced when the new one is finished.
+	 * 
+	 * @param key snapshot key
+	 * @return snapshot writer
+	 * @throws IOException if snapshot directory cannot be created
+	 */
+	public SnapshotWriter create(String key) throws IOException {
+		if (!directory.exists() && !directory.mkdirs()) {
+			throw new IOException("Cannot create snapshot directory " + directory);
+		}
+		return new SnapshotWriter(getFile(key), this);
+	}
+
+	/**
+	 * Open a snapshot
+	 * 
+	 * @param key snapshot key
+	 * @return snapshot query result, or null if there is no valid snapshot for the key
+	 */
+	public synchronized SnapshotQueryResult open(String key) {
+		File file = getFile(key);
+		if (!file.exists()) {
+			return null;
+		}
+		if (isExpired(file, System.currentTimeMillis())) {
+			if (!openFiles.containsKey(file)) {
+				delete(file);
+			}
+			return null;
+		}
+		try {
+			SnapshotQueryResult result = SnapshotQueryResult.open(file);
+			result.setStore(this);
+			Integer count = openFiles.get(file);
+			openFiles.put(file, (count == null) ? 1 : count + 1);
+			return result;
+		} catch (IOException e) {
+			LOG.error("Cannot open snapshot " + file + " : " + e.getMessage(), e);
+			delete(file);
+			return null;
+		}
+	}
+
+	public boolean contains(String key) {
+		File file = getFile(key);
+		return file.exists() && !isExpired(file, System.currentTimeMillis());
+	}
+
+	public void remove(String key) {
+		delete(getFile(key));
+	}
+
+	// called when a result opened by this store is closed
+	synchronized void release(File file) {
+		Integer count = openFiles.get(file);
+		if ((count == null) || (count <= 1)) {
+			openFiles.remove(file);
+		} else {
+			openFiles.put(file, count - 1);
+		}
+	}
+
+	/**
+	 * Delete expired snapshots, then the oldest snapshots until the size is under the limit.
+	 * Snapshots which are read by open results are deleted by a later eviction.
+	 */
+	public synchronized void evict() {
+		File[] files = directory.listFiles();
+		if (files == null) {
+			return;
+		}
+		long now = System.currentTimeMillis();
+		long size = 0;
+		for (int i = 0; i < files.length; i++) {
+			File file = files[i];
+			if (!file.getName().endsWith(EXTENSION)) {
+				files[i] = null;
+			} else if (openFiles.containsKey(file)) {
+				size += file.length();
+				files[i] = null;
+			} else if (isExpired(file, now)) {
+				delete(file);
+				files[i] = null;
+			} else {
+				size += file.length();
+			}
+		}
+		if ((maxSize <= 0) || (size <= maxSize)) {
+			return;
+		}
+		Arrays.sort(files, new Comparator<File>() {
+			public int compare(File f1, File f2) {
+				long m1 = (f1 == null) ? Long.MIN_VALUE : f1.lastModified();
+				long m2 = (f2 == null) ? Long.MIN_VALUE : f2.lastModified();
+				return (m1 < m2) ? -1 : ((m1 == m2) ? 0 : 1);
+			}
+		});
+		for (File file : files) {
+			if (size <= maxSize) {
+				break;
+			}
+			if (file != null) {
+				size -= file.length();
+				delete(file);
+			}
+		}
+	}
+
+	/**
+	 * Delete all snapshots
+	 */
+	public synchronized void clear() {
+		File[] files = directory.listFiles();
+		if (files == null) {
+			return;
+		}
+		for (File file : files) {
+			if (file.getName().endsWith(EXTENSION)) {
+				delete(file);
+			}
+		}
+	}
+
+	private boolean isExpired(File file, long now) {
+		return (timeToLive > 0) && (now - file.lastModified() > timeToLive);
+	}
+
+	private void delete(File file) {
+		if (file.exists() && !file.delete()) {
+			LOG.warn("Cannot delete snapshot " + file);
+		}
+	}
+
+	// keys can contain any character, file name is the key digest
+	private File getFile(String key) {
+		try {
+			MessageDigest md = MessageDigest.getInstance("SHA-1");
+			byte[] digest = md.digest(key.getBytes("UTF-8"));
+			StringBuilder sb = new StringBuilder();
+			for (byte b : digest) {
+				sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+				sb.append(Character.forDigit(b & 0xF, 16));
+			}
+			return new File(directory, sb.toString() + EXTENSION);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+}
@@ -0,0 +1,166 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ro.nextreports.engine.queryexec;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Writes the rows of a query result to a snapshot file (see SnapshotFormat).
+ * Rows are written in a temporary file which becomes the snapshot only after the last row.
+ */
+public class SnapshotWriter {
+
+	private static Log LOG = LogFactory.getLog(SnapshotWriter.class);
+
+	private final File file;
+	private File tmpFile;
+	private final SnapshotStore store;
+	private DataOutputStream out;
+	private long position;
+	private int columns;
+
+	// rows of current block
+	private Object[][] blockRows = new Object[SnapshotFormat.BLOCK_ROWS][];
+	private int blockSize;
+	private final ByteArrayOutputStream blockBytes = new ByteArrayOutputStream();
+
+	// index
+	private final List<long[]> blocks = new ArrayList<long[]>();
+	private long rows;
+
+	SnapshotWriter(File file, SnapshotStore store) {
+		this.file = file;
+		this.store = store;
+	}
+
+	// writer for a temporary file which is not kept in a store
+	static SnapshotWriter createTemporary() throws IOException {
+		return new SnapshotWriter(File.createTempFile("nextreports-spool", ".snapshot"), null);
+	}
+
+	void writeHeader(String[] labels, String[] classNames, int[] types) throws IOException {
+		// every writer has its own temporary file, the same snapshot may be written by more runs at once
+		tmpFile = File.createTempFile(file.getName() + "-", ".tmp", file.getParentFile());
+		out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile), 64 * 1024));
+		columns = labels.length;
+		DataOutputStream header = new DataOutputStream(blockBytes);
+		header.writeInt(SnapshotFormat.MAGIC);
+		header.writeShort(SnapshotFormat.VERSION);
+		header.writeInt(columns);
+		for (int i = 0; i < columns; i++) {
+			SnapshotFormat.writeString(header, labels[i]);
+			SnapshotFormat.writeString(header, classNames[i]);
+			header.writeInt(types[i]);
+		}
+		flushBytes();
+	}
+
+	void writeRow(Object[] row) throws IOException {
+		blockRows[blockSize++] = row;
+		rows++;
+		if (blockSize == SnapshotFormat.BLOCK_ROWS) {
+			writeBlock();
+		}
+	}
+
+	// values are written column by column
+	private void writeBlock() throws IOException {
+		if (blockSize == 0) {
+			return;
+		}
+		DataOutputStream block = new DataOutputStream(blockBytes);
+		block.writeInt(blockSize);
+		for (int col = 0; col < columns; col++) {
+			for (int row = 0; row < blockSize; row++) {
+				SnapshotFormat.writeValue(block, blockRows[row][col]);
+			}
+		}
+		long offset = position;
+		int length = blockBytes.size();
+		flushBytes();
+		blocks.add(new long[] { offset, length, blockSize });
+		for (int row = 0; row < blockSize; row++) {
+			blockRows[row] = null;
+		}
+		blockSize = 0;
+	}
+
+	private void flushBytes() throws IOException {
+		blockBytes.writeTo(out);
+		position += blockBytes.size();
+		blockBytes.reset();
+	}
+
+	void finish() throws IOException {
+		writeBlock();
+		long indexOffset = position;
+		out.writeInt(blocks.size());
+		for (long[] block : blocks) {
+			out.writeLong(block[0]);
+			out.writeInt((int) block[1]);
+			out.writeInt((int) block[2]);
+		}
+		out.writeLong(rows);
+		out.writeLong(indexOffset);
+		out.close();
+		out = null;
+		if (file.exists() && !file.delete()) {
+			tmpFile.delete();
+			throw new IOException("Cannot replace snapshot " + file);
+		}
+		if (!tmpFile.renameTo(file)) {
+			tmpFile.delete();
+			throw new IOException("Cannot create snapshot " + file);
+		}
+		if (store != null) {
+			store.evict();
+		}
+	}
+
+	void abort() {
+		if (out != null) {
+			try {
+				out.close();
+			} catch (IOException e) {
+				LOG.warn(e);
+			}
+			out = null;
+		}
+		if ((tmpFile != null) && tmpFile.exists() && !tmpFile.delete()) {
+			LOG.warn("Cannot delete " + tmpFile);
+		}
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	public long getRowCount() {
+		return rows;
+	}
+
+}
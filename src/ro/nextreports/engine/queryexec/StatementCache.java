@@ -0,0 +1,226 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ro.nextreports.engine.queryexec;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import ro.nextreports.engine.querybuilder.sql.dialect.ConnectionUtil;
+
+/**
+ * Cache of prepared statements for every connection.
+ * 
+ * A statement is taken from the cache by a query executor and it is given back when the
+ * executor is closed, so a statement is never used by two executors at the same time.
+ * Cached statements keep their connection : call close(Connection) before a connection is closed
+ * or given back to a pool, and clear() when the cache is not used anymore. Statements of connections
+ * found closed are also closed and removed when a statement of another connection is given back.
+ */
+public class StatementCache {
+
+	public static final int DEFAULT_SIZE = 32;
+
+	private final int maxStatements;
+	private final Map<Connection, Map<String, PreparedStatement>> statements =
+			new HashMap<Connection, Map<String, PreparedStatement>>();
+
+	private long hits;
+	private long misses;
+
+	public StatementCache() {
+		this(DEFAULT_SIZE);
+	}
+
+	/**
+	 * Create a statement cache
+	 * 
+	 * @param maxStatements maximum number of statements kept for a connection
+	 */
+	public StatementCache(int maxStatements) {
+		if (maxStatements <= 0) {
+			throw new IllegalArgumentException("maxStatements must be positive");
+		}
+		this.maxStatements = maxStatements;
+	}
+
+	/**
+	 * Take a statement from cache
+	 * 
+	 * @param conn connection
+	 * @param key statement key (sql and result set properties)
+	 * @return cached statement or null if no statement is cached for this key
+	 */
+	public synchronized PreparedStatement take(Connection conn, String key) {
+		Map<String, PreparedStatement> map = statements.get(conn);
+		PreparedStatement pstmt = (map == null) ? null : map.remove(key);
+		if ((pstmt != null) && isClosed(pstmt)) {
+			pstmt = null;
+		}
+		if (pstmt == null) {
+			misses++;
+		} else {
+			hits++;
+		}
+		return pstmt;
+	}
+
+	/**
+	 * Give back a statement taken from cache (or created after a miss)
+	 * 
+	 * @param conn connection
+	 * @param key statement key
+	 * @param pstmt statement
+	 */
+	public void release(Connection conn, String key, PreparedStatement pstmt) {
+		if (pstmt == null) {
+			return;
+		}
+		try {
+			pstmt.clearParameters();
+		} catch (SQLException e) {
+			ConnectionUtil.closeStatement(pstmt);
+			return;
+		}
+		PreparedStatement old;
+		List<Map<String, PreparedStatement>> closed = null;
+		synchronized (this) {
+			Map<String, PreparedStatement> map = statements.get(conn);
+			if (map == null) {
+				closed = removeClosedConnections();
+				map = createMap();
+				statements.put(conn, map);
+			}
+			old = map.put(key, pstmt);
+		}
+		if ((old != null) && (old != pstmt)) {
+			ConnectionUtil.closeStatement(old);
+		}
+		if (closed != null) {
+			for (Map<String, PreparedStatement> map : closed) {
+				closeAll(map);
+			}
+		}
+	}
+
+	/**
+	 * Close all cached statements of a connection
+	 * 
+	 * @param conn connection
+	 */
+	public void close(Connection conn) {
+		Map<String, PreparedStatement> map;
+		synchronized (this) {
+			map = statements.remove(conn);
+		}
+		closeAll(map);
+	}
+
+	/**
+	 * Close all cached statements
+	 */
+	public void clear() {
+		List<Map<String, PreparedStatement>> copy;
+		synchronized (this) {
+			copy = new ArrayList<Map<String, PreparedStatement>>(statements.values());
+			statements.clear();
+		}
+		for (Map<String, PreparedStatement> map : copy) {
+			closeAll(map);
+		}
+	}
+
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	public synchronized int getSize() {
+		int size = 0;
+		for (Map<String, PreparedStatement> map : statements.values()) {
+			size += map.size();
+		}
+		return size;
+	}
+
+	private void closeAll(Map<String, PreparedStatement> map) {
+		if (map == null) {
+			return;
+		}
+		for (Iterator<PreparedStatement> it = map.values().iterator(); it.hasNext();) {
+			ConnectionUtil.closeStatement(it.next());
+		}
+	}
+
+	// statements of connections closed without close(Connection)
+	private List<Map<String, PreparedStatement>> removeClosedConnections() {
+		List<Map<String, PreparedStatement>> closed = null;
+		for (Iterator<Map.Entry<Connection, Map<String, PreparedStatement>>> it = statements.entrySet().iterator(); it.hasNext();) {
+			Map.Entry<Connection, Map<String, PreparedStatement>> entry = it.next();
+			if (isClosed(entry.getKey())) {
+				if (closed == null) {
+					closed = new ArrayList<Map<String, PreparedStatement>>();
+				}
+				closed.add(entry.getValue());
+				it.remove();
+			}
+		}
+		return closed;
+	}
+
+	private boolean isClosed(Connection conn) {
+		try {
+			return conn.isClosed();
+		} catch (SQLException e) {
+			return true;
+		}
+	}
+
+	private boolean isClosed(PreparedStatement pstmt) {
+		try {
+			return pstmt.isClosed();
+		} catch (SQLException e) {
+			return true;
+		} catch (AbstractMethodError e) {
+			// old (jdbc 3) driver
+			return false;
+		}
+	}
+
+	@SuppressWarnings("serial")
+	private Map<String, PreparedStatement> createMap() {
+		return new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true) {
+			protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+				if (size() > maxStatements) {
+					ConnectionUtil.closeStatement(eldest.getValue());
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+}
@@ -0,0 +1,65 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ro.nextreports.engine.queryexec;
+
+import java.lang.reflect.Method;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Execution strategy which runs every query on a virtual thread (JDK 21+).
+ * 
+ * Virtual threads are looked up by reflection so the engine still compiles and runs on older JDKs.
+ * On a JDK without virtual threads a new platform thread is used (see {@link #isSupported()}).
+ */
+public class VirtualThreadExecutionStrategy implements QueryExecutionStrategy {
+
+	private static Log LOG = LogFactory.getLog(VirtualThreadExecutionStrategy.class);
+
+	private static final Method START_VIRTUAL_THREAD = findStartMethod();
+
+	public static boolean isSupported() {
+		return START_VIRTUAL_THREAD != null;
+	}
+
+	public void execute(Runnable task, String name) {
+		if (START_VIRTUAL_THREAD != null) {
+			try {
+				Thread thread = (Thread) START_VIRTUAL_THREAD.invoke(null, task);
+				thread.setName(name);
+				return;
+			} catch (Exception e) {
+				LOG.error("Cannot start virtual thread : " + e.getMessage(), e);
+			}
+		}
+		new Thread(task, name).start();
+	}
+
+	public void shutdown() {
+		// nothing to release
+	}
+
+	private static Method findStartMethod() {
+		try {
+			return Thread.class.getMethod("startVirtualThread", Runnable.class);
+		} catch (NoSuchMethodException e) {
+			return null;
+		}
+	}
+
+}
@@ -0,0 +1,162 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ro.nextreports.engine.util;
+
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import ro.nextreports.engine.querybuilder.sql.dialect.Dialect;
+import ro.nextreports.engine.querybuilder.sql.dialect.DialectException;
+import ro.nextreports.engine.querybuilder.sql.dialect.DialectFactory;
+
+/**
+ * What a database (connection url, product name and product version) supports : the dialect
+ * and the result set types and holdability.
+ * 
+ * Values are read once from connection metadata (see DialectUtil.getCapabilities) because on
+ * some drivers every metadata call is a round trip to the server.
+ */
+public class DatabaseCapabilities {
+
+	private static Log LOG = LogFactory.getLog(DatabaseCapabilities.class);
+
+	private final String url;
+	private final String productName;
+	private final String productVersion;
+
+	private final boolean forwardOnly;
+	private final boolean scrollInsensitive;
+	private final boolean scrollSensitive;
+	private final boolean holdCursorsOverCommit;
+	private final boolean closeCursorsAtCommit;
+
+	private volatile Dialect dialect;
+
+	DatabaseCapabilities(DatabaseMetaData dbmd) throws SQLException {
+		this.productName = dbmd.getDatabaseProductName();
+		this.productVersion = dbmd.getDatabaseProductVersion();
+		this.url = getURL(dbmd);
+		this.forwardOnly = supportsResultSetType(dbmd, ResultSet.TYPE_FORWARD_ONLY);
+		this.scrollInsensitive = supportsResultSetType(dbmd, ResultSet.TYPE_SCROLL_INSENSITIVE);
+		this.scrollSensitive = supportsResultSetType(dbmd, ResultSet.TYPE_SCROLL_SENSITIVE);
+		this.holdCursorsOverCommit = supportsResultSetHoldability(dbmd, ResultSet.HOLD_CURSORS_OVER_COMMIT);
+		this.closeCursorsAtCommit = supportsResultSetHoldability(dbmd, ResultSet.CLOSE_CURSORS_AT_COMMIT);
+	}
+
+	static String getKey(DatabaseMetaData dbmd) throws SQLException {
+		return getURL(dbmd) + "|" + dbmd.getDatabaseProductName() + "|" + dbmd.getDatabaseProductVersion();
+	}
+
+	public String getKey() {
+		return url + "|" + productName + "|" + productVersion;
+	}
+
+	public String getUrl() {
+		return url;
+	}
+
+	public String getProductName() {
+		return productName;
+	}
+
+	public String getProductVersion() {
+		return productVersion;
+	}
+
+	/**
+	 * Get the dialect. The dialect instance is created only once.
+	 * 
+	 * @return dialect
+	 * @throws DialectException if no dialect is found for this database
+	 */
+	public Dialect getDialect() throws DialectException {
+		Dialect result = dialect;
+		if (result == null) {
+			// not cached if not found : a dialect may be added later with DialectFactory.addDialect
+			result = DialectFactory.determineDialect(productName, productVersion);
+			dialect = result;
+		}
+		return result;
+	}
+
+	public boolean supportsResultSetType(int resultSetType) {
+		switch (resultSetType) {
+			case ResultSet.TYPE_FORWARD_ONLY:
+				return forwardOnly;
+			case ResultSet.TYPE_SCROLL_INSENSITIVE:
+				return scrollInsensitive;
+			case ResultSet.TYPE_SCROLL_SENSITIVE:
+				return scrollSensitive;
+			default:
+				return false;
+		}
+	}
+
+	public boolean supportsResultSetHoldability(int holdability) {
+		switch (holdability) {
+			case ResultSet.HOLD_CURSORS_OVER_COMMIT:
+				return holdCursorsOverCommit;
+			case ResultSet.CLOSE_CURSORS_AT_COMMIT:
+				return closeCursorsAtCommit;
+			default:
+				return false;
+		}
+	}
+
+	private static String getURL(DatabaseMetaData dbmd) {
+		try {
+			return dbmd.getURL();
+		} catch (SQLException e) {
+			return null;
+		}
+	}
+
+	private static boolean supportsResultSetType(DatabaseMetaData dbmd, int resultSetType) {
+		try {
+			return dbmd.supportsResultSetType(resultSetType);
+		} catch (SQLException e) {
+			LOG.warn(e);
+			return false;
+		}
+	}
+
+	// some drivers do not implement it
+	private static boolean supportsResultSetHoldability(DatabaseMetaData dbmd, int holdability) {
+		try {
+			return dbmd.supportsResultSetHoldability(holdability);
+		} catch (SQLException e) {
+			return false;
+		} catch (AbstractMethodError e) {
+			return false;
+		}
+	}
+
+	public String toString() {
+		return "DatabaseCapabilities{" +
+				"url='" + url + '\'' +
+				", productName='" + productName + '\'' +
+				", productVersion='" + productVersion + '\'' +
+				", scrollInsensitive=" + scrollInsensitive +
+				", holdCursorsOverCommit=" + holdCursorsOverCommit +
+				'}';
+	}
+
+}
@@ -20,10 +20,13 @@ package ro.nextreports.engine.util;
 import java.sql.Connection;
 import java.sql.DatabaseMetaData;
 import java.sql.SQLException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 import ro.nextreports.engine.querybuilder.sql.dialect.Dialect;
 import ro.nextreports.engine.querybuilder.sql.dialect.DialectException;
-import ro.nextreports.engine.querybuilder.sql.dialect.DialectFactory;
 
 /**
  * Created by IntelliJ IDEA.
@@ -33,16 +36,54 @@ import ro.nextreports.engine.querybuilder.sql.dialect.DialectFactory;
  */
 public class DialectUtil {
 
+	// capabilities for every database (url, product name, product version)
+	private static final Map<String, DatabaseCapabilities> databases = new ConcurrentHashMap<String, DatabaseCapabilities>();
+	// capabilities for every connection, so no metadata call is made after the first one
+	private static final Map<Connection, DatabaseCapabilities> connections = 
+			Collections.synchronizedMap(new WeakHashMap<Connection, DatabaseCapabilities>());
+
     public static Dialect getDialect(Connection connection) throws SQLException, DialectException {
-        DatabaseMetaData dbmd = connection.getMetaData();
-        String dbName = dbmd.getDatabaseProductName();
-        String dbVersion = dbmd.getDatabaseProductVersion();
-        return DialectFactory.determineDialect(dbName, dbVersion);
+        return getCapabilities(connection).getDialect();
     }
     
     public static boolean isSupportedResultSetType(Connection connection, int resultSetType) throws SQLException {
+    	return getCapabilities(connection).supportsResultSetType(resultSetType);
+    }
+    
+    public static boolean isSupportedResultSetHoldability(Connection connection, int holdability) throws SQLException {
+    	return getCapabilities(connection).supportsResultSetHoldability(holdability);
+    }
+    
+    /**
+     * Get database capabilities (dialect, supported result set types and holdability) for a connection.
+     * Metadata is read only for the first connection to a database.
+     * 
+     * @param connection connection
+     * @return database capabilities
+     * @throws SQLException if metadata cannot be read
+     */
+    public static DatabaseCapabilities getCapabilities(Connection connection) throws SQLException {
+    	DatabaseCapabilities capabilities = connections.get(connection);
+    	if (capabilities != null) {
+    		return capabilities;
+    	}
     	DatabaseMetaData dbmd = connection.getMetaData();
-    	return dbmd.supportsResultSetType(resultSetType);
+    	String key = DatabaseCapabilities.getKey(dbmd);
+    	capabilities = databases.get(key);
+    	if (capabilities == null) {
+    		capabilities = new DatabaseCapabilities(dbmd);
+    		databases.put(key, capabilities);
+    	}
+    	connections.put(connection, capabilities);
+    	return capabilities;
+    }
+    
+    /**
+     * Forget all database capabilities (for example after a database upgrade)
+     */
+    public static void clearCapabilities() {
+    	connections.clear();
+    	databases.clear();
     }
     
     // CsvJdbc driver className is not a full java class name
@@ -838,6 +838,36 @@ public class ReportUtil {
 		return charts;
 	}
 
+	/**
+	 * Test to see if the export of a report executes other statements on the report connection
+	 * while report rows are read : subreports, charts and parameters dependent on other parameters
+	 * 
+	 * @param report report
+	 * @return true if other statements are executed on the report connection, false otherwise
+	 */
+	public static boolean foundStatementsInExport(Report report) {
+		ReportLayout layout = report.getLayout();
+		if (layout != null) {
+			for (Band band : layout.getBands()) {
+				for (int i = 0, rows = band.getRowCount(); i < rows; i++) {
+					for (BandElement be : band.getRow(i)) {
+						if ((be instanceof ReportBandElement) || (be instanceof ChartBandElement)) {
+							return true;
+						}
+					}
+				}
+			}
+		}
+		if (report.getParameters() != null) {
+			for (QueryParameter qp : report.getParameters()) {
+				if (qp.isDependent()) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
 	public static boolean isGroupBand(String bandName) {
 		if (bandName == null) {
 			return false;
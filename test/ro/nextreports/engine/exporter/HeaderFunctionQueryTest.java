@@ -0,0 +1,121 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ro.nextreports.engine.exporter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import ro.nextreports.engine.ReportLayout;
+import ro.nextreports.engine.band.BandElement;
+import ro.nextreports.engine.band.ColumnBandElement;
+import ro.nextreports.engine.band.ExpressionBandElement;
+import ro.nextreports.engine.band.FunctionBandElement;
+import ro.nextreports.engine.queryexec.QueryParameter;
+
+public class HeaderFunctionQueryTest {
+
+	private static final double DELTA = 1e-9;
+
+	private static Connection con;
+
+	@BeforeClass
+	public static void createTable() throws SQLException {
+		con = DriverManager.getConnection("jdbc:derby:memory:headerfunctions;create=true");
+		Statement st = con.createStatement();
+		st.execute("create table t(id int, v double)");
+		st.execute("insert into t values (1, 2.5), (2, null), (3, 4.5), (4, 10)");
+		st.close();
+	}
+
+	@AfterClass
+	public static void closeConnection() throws SQLException {
+		con.close();
+	}
+
+	@Test
+	public void testHeaderFunctions() {
+		ReportLayout layout = createLayout(new FunctionBandElement("SUM", "V"), new FunctionBandElement("COUNT", "ID"),
+				new ExpressionBandElement("E", "$F_AVERAGE_V * 2"), new FunctionBandElement("MAX", "ID"));
+		Map<String, Object> values = getTemplatesValues(layout, "select id, v from t where id < ${P}", 4);
+		assertEquals(7.0, (Double) values.get("F_SUM_V"), DELTA);
+		assertEquals(3.0, (Double) values.get("F_COUNT_ID"), DELTA);
+		// null is computed as zero, like footer functions
+		assertEquals(7.0 / 3, (Double) values.get("F_AVERAGE_V"), DELTA);
+		assertEquals(3.0, (Double) values.get("F_MAX_ID"), DELTA);
+	}
+
+	@Test
+	public void testUnsupportedFunctions() {
+		// function which is not computed by the database
+		ReportLayout layout = createLayout(new FunctionBandElement("MEDIAN", "V"));
+		assertNull(getTemplatesValues(layout, "select id, v from t", 0));
+
+		// column printed twice in detail band is computed twice by footer function
+		layout = createLayout(new FunctionBandElement("SUM", "V"));
+		List<List<BandElement>> rows = new ArrayList<List<BandElement>>();
+		rows.add(Arrays.<BandElement>asList(new ColumnBandElement("V"), new ColumnBandElement("V")));
+		layout.getDetailBand().setElements(rows);
+		assertNull(getTemplatesValues(layout, "select id, v from t", 0));
+	}
+
+	@Test
+	public void testInvalidQuery() {
+		ReportLayout layout = createLayout(new FunctionBandElement("SUM", "X"));
+		assertNull(getTemplatesValues(layout, "select id, v from t", 0));
+	}
+
+	private ReportLayout createLayout(BandElement... headerElements) {
+		ReportLayout layout = new ReportLayout();
+		List<Integer> widths = new ArrayList<Integer>();
+		for (int i = 0; i < headerElements.length; i++) {
+			widths.add(100);
+		}
+		layout.setColumnsWidth(widths);
+		List<List<BandElement>> header = new ArrayList<List<BandElement>>();
+		header.add(Arrays.asList(headerElements));
+		layout.getHeaderBand().setElements(header);
+		List<List<BandElement>> detail = new ArrayList<List<BandElement>>();
+		detail.add(Arrays.<BandElement>asList(new ColumnBandElement("ID"), new ColumnBandElement("V")));
+		layout.getDetailBand().setElements(detail);
+		return layout;
+	}
+
+	private Map<String, Object> getTemplatesValues(ReportLayout layout, String sql, int p) {
+		Map<String, QueryParameter> parameters = new HashMap<String, QueryParameter>();
+		Map<String, Object> values = new HashMap<String, Object>();
+		if (sql.contains("${P}")) {
+			parameters.put("P", new QueryParameter("P", "java.lang.Integer"));
+			values.put("P", p);
+		}
+		return HeaderFunctionQuery.getTemplatesValues(layout, sql, parameters, values, con, 60);
+	}
+
+}
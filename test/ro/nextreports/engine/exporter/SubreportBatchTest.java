@@ -0,0 +1,149 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ro.nextreports.engine.exporter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import ro.nextreports.engine.queryexec.MemoryQueryResult;
+import ro.nextreports.engine.queryexec.QueryException;
+import ro.nextreports.engine.queryexec.QueryParameter;
+import ro.nextreports.engine.queryexec.QueryResult;
+
+public class SubreportBatchTest {
+
+	private static Connection con;
+
+	@BeforeClass
+	public static void createTable() throws SQLException {
+		con = DriverManager.getConnection("jdbc:derby:memory:subreportbatch;create=true");
+		Statement st = con.createStatement();
+		// order ids are also customer ids : rows must not be partitioned by ID column
+		st.execute("create table orders(id int, customer_id int, v int)");
+		st.execute("insert into orders values (1, 10, 100), (2, 10, 200), (3, 20, 300), (10, 30, 400)");
+		st.execute("create table customers(code char(5), id int)");
+		st.execute("insert into customers values ('a', 10), ('b', 20)");
+		st.execute("create table payments(customer_id decimal(10, 2), v int)");
+		st.execute("insert into payments values (10.00, 1), (20.00, 2)");
+		st.close();
+	}
+
+	@AfterClass
+	public static void closeConnection() throws SQLException {
+		con.close();
+	}
+
+	@Test
+	public void testKeyColumnWithOtherName() throws QueryException {
+		String sql = "select id, v from orders where v > 0 and customer_id = ${ID} order by id";
+		Map<String, QueryParameter> parameters = getParameters();
+		QueryResult master = createMaster(10, 20, 30, 40);
+		SubreportBatch batch = SubreportBatch.create(sql, parameters, master);
+		assertNotNull(batch);
+
+		List<String> ids = new ArrayList<String>();
+		while (master.hasNext()) {
+			QueryResult result = batch.getResult(master, parameters, new HashMap<String, Object>(), con, 60, 10);
+			assertNotNull(result);
+			assertEquals(2, result.getColumnCount());
+			assertEquals("ID", result.getColumnName(0));
+			StringBuilder sb = new StringBuilder();
+			while (result.hasNext()) {
+				sb.append(result.nextValue(0)).append(' ');
+			}
+			ids.add(sb.toString().trim());
+		}
+		assertEquals(Arrays.asList("1 2", "3", "10", ""), ids);
+	}
+
+	@Test
+	public void testStringKeys() {
+		// padded CHAR values are equal to master values only for the database
+		Map<String, QueryParameter> parameters = new HashMap<String, QueryParameter>();
+		parameters.put("CODE", new QueryParameter("CODE", "java.lang.String"));
+		List<Object[]> rows = new ArrayList<Object[]>();
+		rows.add(new Object[] { "a" });
+		QueryResult master = new MemoryQueryResult(new String[] { "CODE" }, new String[] { "java.lang.String" },
+				new int[] { Types.VARCHAR }, rows, 0);
+		assertNull(SubreportBatch.create("select id from customers where code = ${CODE}", parameters, master));
+	}
+
+	@Test
+	public void testDecimalKeys() throws QueryException {
+		// integer master values match decimal values of the subreport column
+		Map<String, QueryParameter> parameters = getParameters();
+		QueryResult master = createMaster(10, 20);
+		SubreportBatch batch = SubreportBatch.create("select v from payments where customer_id = ${ID}", parameters,
+				master);
+		assertNotNull(batch);
+		List<Object> values = new ArrayList<Object>();
+		while (master.hasNext()) {
+			QueryResult result = batch.getResult(master, parameters, new HashMap<String, Object>(), con, 60, 10);
+			assertNotNull(result);
+			while (result.hasNext()) {
+				values.add(result.nextValue(0));
+			}
+		}
+		assertEquals(Arrays.<Object>asList(1, 2), values);
+	}
+
+	@Test
+	public void testUnsupportedQueries() {
+		Map<String, QueryParameter> parameters = getParameters();
+		QueryResult master = createMaster(10);
+		// rows computed from rows of all master values
+		assertNull(SubreportBatch.create("select count(*) from orders where customer_id = ${ID}", parameters, master));
+		// rows which do not have the parameter value
+		assertNull(SubreportBatch.create("select id from orders where v > 250 or customer_id = ${ID}", parameters, master));
+		// parameter is not compared with a column
+		assertNull(SubreportBatch.create("select id from orders where customer_id + 1 = ${ID}", parameters, master));
+		// key column cannot be added
+		assertNull(SubreportBatch.create("select * from orders where customer_id = ${ID}", parameters, master));
+	}
+
+	private Map<String, QueryParameter> getParameters() {
+		Map<String, QueryParameter> parameters = new HashMap<String, QueryParameter>();
+		parameters.put("ID", new QueryParameter("ID", "java.lang.Integer"));
+		return parameters;
+	}
+
+	private QueryResult createMaster(Integer... ids) {
+		List<Object[]> rows = new ArrayList<Object[]>();
+		for (Integer id : ids) {
+			rows.add(new Object[] { id });
+		}
+		return new MemoryQueryResult(new String[] { "ID" }, new String[] { "java.lang.Integer" },
+				new int[] { Types.INTEGER }, rows, 0);
+	}
+
+}
@@ -0,0 +1,215 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ro.nextreports.engine.exporter;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import ro.nextreports.engine.Report;
+import ro.nextreports.engine.ReportGroup;
+import ro.nextreports.engine.ReportLayout;
+import ro.nextreports.engine.ReportRunner;
+import ro.nextreports.engine.band.BandElement;
+import ro.nextreports.engine.band.ColumnBandElement;
+import ro.nextreports.engine.band.ExpressionBandElement;
+import ro.nextreports.engine.band.FunctionBandElement;
+import ro.nextreports.engine.band.ReportBandElement;
+import ro.nextreports.engine.exporter.util.ParametersBean;
+import ro.nextreports.engine.queryexec.Query;
+import ro.nextreports.engine.queryexec.QueryExecutor;
+import ro.nextreports.engine.queryexec.QueryParameter;
+import ro.nextreports.engine.queryexec.QueryResult;
+
+public class TeeExporterTest {
+
+	private static final String SQL = "select g, id, name from m order by g, id";
+
+	private static Connection con;
+
+	@BeforeClass
+	public static void createTables() throws SQLException {
+		con = DriverManager.getConnection("jdbc:derby:memory:tee;create=true");
+		Statement st = con.createStatement();
+		st.execute("create table m(g int, id int, name varchar(20))");
+		st.execute("create table s(mid int, v int)");
+		for (int i = 0; i < 12; i++) {
+			st.execute("insert into m values(" + (i / 5) + ", " + i + ", 'n" + i + "')");
+			for (int j = 0; j < i % 3; j++) {
+				st.execute("insert into s values(" + i + ", " + (i * 10 + j) + ")");
+			}
+		}
+		st.close();
+	}
+
+	@AfterClass
+	public static void closeConnection() throws SQLException {
+		con.close();
+	}
+
+	@Test
+	public void testGroupHeaderFunctions() throws Exception {
+		// group header functions are computed by first crossing, the result is read again by all the formats
+		Report report = createReport(createGroupLayout());
+
+		Map<String, byte[]> tee = run(report, ReportRunner.CSV_FORMAT, ReportRunner.XML_FORMAT);
+		assertEquals(new String(run(report, ReportRunner.CSV_FORMAT).get(ReportRunner.CSV_FORMAT)),
+				new String(tee.get(ReportRunner.CSV_FORMAT)));
+		assertEquals(getXml(run(report, ReportRunner.XML_FORMAT).get(ReportRunner.XML_FORMAT)),
+				getXml(tee.get(ReportRunner.XML_FORMAT)));
+	}
+
+	@Test
+	public void testRawRecords() throws Exception {
+		// raw records are read by the delegates from the result rewound after first crossing
+		ReportLayout layout = createGroupLayout();
+		ByteArrayOutputStream expected = new ByteArrayOutputStream();
+		new XmlExporter(createBean(layout, expected, executeQuery())).export();
+
+		// all the beans share the same result, like the beans created by ReportRunner
+		QueryResult result = executeQuery();
+		ByteArrayOutputStream first = new ByteArrayOutputStream();
+		ByteArrayOutputStream second = new ByteArrayOutputStream();
+		List<ResultExporter> exporters = new ArrayList<ResultExporter>();
+		exporters.add(new XmlExporter(createBean(layout, first, result)));
+		exporters.add(new XmlExporter(createBean(layout, second, result)));
+		new TeeExporter(createBean(layout, new ByteArrayOutputStream(), result), exporters).export();
+
+		assertEquals(getXml(expected.toByteArray()), getXml(first.toByteArray()));
+		assertEquals(getXml(expected.toByteArray()), getXml(second.toByteArray()));
+	}
+
+	@Test
+	public void testSubreportRows() throws Exception {
+		// rows added by subreports move only the rows of the excel sheet
+		Report subreport = new Report();
+		subreport.setName("sub");
+		subreport.setSql("select mid as ID, v from s where mid = ${ID} order by v");
+		subreport.setParameters(new ArrayList<QueryParameter>(Arrays.asList(new QueryParameter("ID",
+				"java.lang.Integer"))));
+		subreport.setLayout(createLayout(new ColumnBandElement("V")));
+		Report report = createReport(createLayout(new ColumnBandElement("ID"), new ColumnBandElement("NAME"),
+				new ReportBandElement(subreport)));
+
+		Map<String, byte[]> tee = run(report, ReportRunner.EXCEL_FORMAT, ReportRunner.CSV_FORMAT);
+		assertEquals(getCells(run(report, ReportRunner.EXCEL_FORMAT).get(ReportRunner.EXCEL_FORMAT)),
+				getCells(tee.get(ReportRunner.EXCEL_FORMAT)));
+		assertEquals(new String(run(report, ReportRunner.CSV_FORMAT).get(ReportRunner.CSV_FORMAT)),
+				new String(tee.get(ReportRunner.CSV_FORMAT)));
+	}
+
+	private ReportLayout createLayout(BandElement... detailElements) {
+		ReportLayout layout = new ReportLayout();
+		List<Integer> widths = new ArrayList<Integer>();
+		for (int i = 0; i < detailElements.length; i++) {
+			widths.add(100);
+		}
+		layout.setColumnsWidth(widths);
+		List<List<BandElement>> detail = new ArrayList<List<BandElement>>();
+		detail.add(Arrays.asList(detailElements));
+		layout.getDetailBand().setElements(detail);
+		return layout;
+	}
+
+	private ReportLayout createGroupLayout() {
+		ReportLayout layout = createLayout(new ColumnBandElement("ID"), new ColumnBandElement("NAME"),
+				new ExpressionBandElement("E", "$C_ID * 10"));
+		layout.addGroup(new ReportGroup("1", "G"), 0);
+		List<List<BandElement>> groupHeader = new ArrayList<List<BandElement>>();
+		groupHeader.add(Arrays.<BandElement>asList(new ColumnBandElement("G"), new FunctionBandElement("SUM", "ID"),
+				new BandElement("")));
+		layout.getBand(ReportLayout.GROUP_HEADER_BAND_NAME_PREFIX + "1").setElements(groupHeader);
+		return layout;
+	}
+
+	private QueryResult executeQuery() throws Exception {
+		return new QueryExecutor(new Query(SQL), con).execute();
+	}
+
+	private ExporterBean createBean(ReportLayout layout, OutputStream out, QueryResult result) {
+		ParametersBean parametersBean = new ParametersBean(new Query(SQL), new HashMap<String, QueryParameter>(),
+				new HashMap<String, Object>());
+		return new ExporterBean(con, 0, result, out, layout, parametersBean, "tee", true, false);
+	}
+
+	private Report createReport(ReportLayout layout) {
+		Report report = new Report();
+		report.setName("tee");
+		report.setSql(SQL);
+		report.setParameters(new ArrayList<QueryParameter>());
+		report.setLayout(layout);
+		return report;
+	}
+
+	private Map<String, byte[]> run(Report report, String... formats) throws Exception {
+		Map<String, OutputStream> streams = new LinkedHashMap<String, OutputStream>();
+		for (String format : formats) {
+			streams.put(format, new ByteArrayOutputStream());
+		}
+		ReportRunner runner = new ReportRunner();
+		runner.setConnection(con);
+		runner.setReport(report);
+		runner.setParameterValues(new HashMap<String, Object>());
+		runner.run(streams);
+		Map<String, byte[]> result = new HashMap<String, byte[]>();
+		for (String format : formats) {
+			result.put(format, ((ByteArrayOutputStream) streams.get(format)).toByteArray());
+		}
+		return result;
+	}
+
+	// export date is not compared
+	private String getXml(byte[] xml) {
+		return new String(xml).replaceAll("<meta name=\"date\" content=\"[^\"]*\"/>", "");
+	}
+
+	private List<String> getCells(byte[] xls) throws IOException {
+		List<String> cells = new ArrayList<String>();
+		HSSFWorkbook wb = new HSSFWorkbook(new ByteArrayInputStream(xls));
+		for (int i = 0; i < wb.getNumberOfSheets(); i++) {
+			Sheet sheet = wb.getSheetAt(i);
+			for (Row row : sheet) {
+				for (Cell cell : row) {
+					cells.add(sheet.getSheetName() + "!" + row.getRowNum() + ":" + cell.getColumnIndex() + "=" + cell);
+				}
+			}
+		}
+		return cells;
+	}
+
+}
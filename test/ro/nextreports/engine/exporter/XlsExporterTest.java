@@ -0,0 +1,131 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ro.nextreports.engine.exporter;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import ro.nextreports.engine.Report;
+import ro.nextreports.engine.ReportLayout;
+import ro.nextreports.engine.ReportRunner;
+import ro.nextreports.engine.band.BandElement;
+import ro.nextreports.engine.band.Border;
+import ro.nextreports.engine.band.ColumnBandElement;
+import ro.nextreports.engine.band.ReportBandElement;
+import ro.nextreports.engine.queryexec.QueryParameter;
+
+public class XlsExporterTest {
+
+	private static Connection con;
+
+	@BeforeClass
+	public static void createTables() throws SQLException {
+		con = DriverManager.getConnection("jdbc:derby:memory:xls;create=true");
+		Statement st = con.createStatement();
+		st.execute("create table m(id int, name varchar(20))");
+		st.execute("create table s(mid int, v int)");
+		st.execute("insert into m values(1, 'a')");
+		st.execute("insert into m values(2, 'b')");
+		for (int j = 0; j < 3; j++) {
+			st.execute("insert into s values(1, " + j + ")");
+		}
+		for (int j = 0; j < 2; j++) {
+			st.execute("insert into s values(2, " + (10 + j) + ")");
+		}
+		st.close();
+	}
+
+	@AfterClass
+	public static void closeConnection() throws SQLException {
+		con.close();
+	}
+
+	@Test
+	public void testSubreportBorders() throws Exception {
+		// the border of the subreport element is drawn around all the subreport cells
+		// (the number of subreport records is not known)
+		Report subreport = new Report();
+		subreport.setName("sub");
+		subreport.setSql("select mid as ID, v from s where mid = ${ID} order by v");
+		subreport.setParameters(new ArrayList<QueryParameter>(Arrays.asList(new QueryParameter("ID",
+				"java.lang.Integer"))));
+		subreport.setLayout(createLayout(new ColumnBandElement("ID"), new ColumnBandElement("V")));
+		ReportBandElement subreportElement = new ReportBandElement(subreport);
+		subreportElement.setBorder(new Border(1, 1, 1, 1));
+		Report report = new Report();
+		report.setName("m");
+		report.setSql("select id, name from m order by id");
+		report.setParameters(new ArrayList<QueryParameter>());
+		report.setLayout(createLayout(new ColumnBandElement("NAME"), subreportElement));
+
+		ReportRunner runner = new ReportRunner();
+		runner.setConnection(con);
+		runner.setReport(report);
+		runner.setFormat(ReportRunner.EXCEL_FORMAT);
+		runner.setParameterValues(new HashMap<String, Object>());
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		runner.run(out);
+
+		Sheet sheet = new HSSFWorkbook(new ByteArrayInputStream(out.toByteArray())).getSheetAt(0);
+		List<String> borders = new ArrayList<String>();
+		for (Row row : sheet) {
+			StringBuilder sb = new StringBuilder();
+			for (Cell cell : row) {
+				if (cell.getColumnIndex() > 0) {
+					CellStyle style = cell.getCellStyle();
+					sb.append(style.getBorderLeft()).append(style.getBorderTop()).append(style.getBorderRight())
+							.append(style.getBorderBottom()).append(" ");
+				}
+			}
+			borders.add(sb.toString().trim());
+		}
+		assertEquals(Arrays.asList("1100 0110", "1000 0010", "1001 0011", "1100 0110", "1001 0011"), borders);
+	}
+
+	private ReportLayout createLayout(BandElement... detailElements) {
+		ReportLayout layout = new ReportLayout();
+		List<Integer> widths = new ArrayList<Integer>();
+		for (int i = 0; i < detailElements.length; i++) {
+			widths.add(100);
+		}
+		layout.setColumnsWidth(widths);
+		List<List<BandElement>> detail = new ArrayList<List<BandElement>>();
+		detail.add(Arrays.asList(detailElements));
+		layout.getDetailBand().setElements(detail);
+		return layout;
+	}
+
+}
@@ -0,0 +1,148 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ro.nextreports.engine.exporter.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import org.junit.Test;
+
+public class CompressedOutputStreamTest {
+
+	// small buffers, so data is handed to the compression thread many times
+	private static final int BUFFER_SIZE = 1024;
+
+	@Test
+	public void testGzip() throws IOException {
+		byte[] data = createData();
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		CompressedOutputStream cos = new CompressedOutputStream(out, CompressedOutputStream.GZIP, null,
+				Deflater.DEFAULT_COMPRESSION, BUFFER_SIZE);
+		write(cos, data);
+		cos.close();
+
+		assertEquals(data.length, cos.getUncompressedBytes());
+		assertEquals(out.size(), cos.getCompressedBytes());
+		assertArrayEquals(data, read(new GZIPInputStream(new ByteArrayInputStream(out.toByteArray()))));
+	}
+
+	@Test
+	public void testZip() throws IOException {
+		byte[] data = createData();
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		CompressedOutputStream cos = new CompressedOutputStream(out, CompressedOutputStream.ZIP, "report.csv",
+				Deflater.BEST_SPEED, BUFFER_SIZE);
+		write(cos, data);
+		cos.close();
+
+		assertEquals(out.size(), cos.getCompressedBytes());
+		ZipInputStream zis = new ZipInputStream(new ByteArrayInputStream(out.toByteArray()));
+		ZipEntry entry = zis.getNextEntry();
+		assertEquals("report.csv", entry.getName());
+		assertArrayEquals(data, read(zis));
+		assertNull(zis.getNextEntry());
+		zis.close();
+	}
+
+	@Test
+	public void testEmpty() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		CompressedOutputStream cos = new CompressedOutputStream(out, CompressedOutputStream.GZIP, null,
+				Deflater.DEFAULT_COMPRESSION, BUFFER_SIZE);
+		cos.close();
+		assertEquals(0, read(new GZIPInputStream(new ByteArrayInputStream(out.toByteArray()))).length);
+	}
+
+	@Test
+	public void testWriteError() throws IOException {
+		// gzip header can be written, compressed data cannot
+		OutputStream failing = new OutputStream() {
+			private int count;
+
+			public void write(int b) throws IOException {
+				if (++count > 100) {
+					throw new IOException("disk full");
+				}
+			}
+		};
+		CompressedOutputStream cos = new CompressedOutputStream(failing, CompressedOutputStream.GZIP, null,
+				Deflater.DEFAULT_COMPRESSION, BUFFER_SIZE);
+		try {
+			write(cos, createData());
+			cos.close();
+			fail("Error of the underlying stream must be thrown");
+		} catch (IOException e) {
+			assertTrue(e.getMessage().contains("disk full"));
+		} finally {
+			cos.abort();
+		}
+	}
+
+	// text like data, compressible
+	private byte[] createData() {
+		Random random = new Random(1);
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 5000; i++) {
+			sb.append(i).append(",name ").append(random.nextInt(100)).append(',').append(random.nextDouble()).append("\r\n");
+		}
+		return sb.toString().getBytes();
+	}
+
+	// bytes are written one by one and in arrays of different sizes
+	private void write(OutputStream out, byte[] data) throws IOException {
+		int off = 0;
+		int len = 1;
+		while (off < data.length) {
+			int n = Math.min(len, data.length - off);
+			if (n == 1) {
+				out.write(data[off]);
+			} else {
+				out.write(data, off, n);
+			}
+			off += n;
+			len = (len * 3) % 5000 + 1;
+			if (len % 7 == 0) {
+				out.flush();
+			}
+		}
+	}
+
+	private byte[] read(InputStream is) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		int n;
+		while ((n = is.read(buffer)) != -1) {
+			bytes.write(buffer, 0, n);
+		}
+		return bytes.toByteArray();
+	}
+
+}
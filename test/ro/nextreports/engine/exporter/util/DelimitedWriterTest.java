@@ -0,0 +1,88 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ro.nextreports.engine.exporter.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.StringWriter;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class DelimitedWriterTest {
+
+	@Test
+	public void testLegacyQuoting() {
+		StringWriter out = new StringWriter();
+		DelimitedWriter writer = new DelimitedWriter(out, ',', '"');
+		for (String field : Arrays.asList("plain", " padded ", "with space", "a,b", "say \"hi\"", null, "")) {
+			writer.writeField(field);
+		}
+		writer.endRecord();
+		writer.writeField("next");
+		writer.endRecord();
+		assertFalse(writer.checkError());
+		assertEquals("plain,padded,\"with space\",\"a,b\",\"say \"\"hi\"\"\",, \r\nnext \r\n", out.toString());
+	}
+
+	@Test
+	public void testRfc4180Quoting() {
+		StringWriter out = new StringWriter();
+		DelimitedWriter writer = new DelimitedWriter(out, ',', '"');
+		writer.setRfc4180(true);
+		writer.setLineEnding(DelimitedWriter.CRLF);
+		for (String field : Arrays.asList(" padded ", "with space", "a,b", "line\nbreak", "x\r\ny", "\"")) {
+			writer.writeField(field);
+		}
+		writer.endRecord();
+		writer.close();
+		assertFalse(writer.checkError());
+		assertEquals(" padded ,with space,\"a,b\",\"line\nbreak\",\"x\r\ny\",\"\"\"\"\r\n", out.toString());
+	}
+
+	@Test
+	public void testTabSeparator() {
+		StringWriter out = new StringWriter();
+		DelimitedWriter writer = new DelimitedWriter(out, '\t', '"');
+		writer.setRfc4180(true);
+		writer.setLineEnding(DelimitedWriter.CRLF);
+		writer.writeField("a,b");
+		writer.writeField("tab\there");
+		writer.endRecord();
+		writer.flush();
+		assertEquals("a,b\t\"tab\there\"\r\n", out.toString());
+	}
+
+	@Test
+	public void testFieldLongerThanBuffer() {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 20000; i++) {
+			sb.append((char) ('a' + (i % 26)));
+		}
+		String field = sb.toString();
+		StringWriter out = new StringWriter();
+		DelimitedWriter writer = new DelimitedWriter(out, ',', '"');
+		writer.writeField("first");
+		writer.writeField(field);
+		writer.writeField(field + "\"");
+		writer.endRecord();
+		writer.flush();
+		assertEquals("first," + field + ",\"" + field + "\"\"\" \r\n", out.toString());
+	}
+
+}
@@ -0,0 +1,94 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ro.nextreports.engine.exporter.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import org.apache.poi.xssf.usermodel.XSSFCell;
+import org.apache.poi.xssf.usermodel.XSSFRow;
+import org.apache.poi.xssf.usermodel.XSSFSheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.Test;
+
+public class XlsxStreamingWriterTest {
+
+	@Test
+	public void testInlineStringsInSmallSheet() throws IOException {
+		XSSFWorkbook wb = new XSSFWorkbook();
+		XSSFSheet sheet = wb.createSheet("small");
+		XSSFRow row = sheet.createRow(0);
+		XSSFCell text = row.createCell(0);
+		XlsxStreamingWriter.setInlineString(text);
+		text.setCellValue("a < b");
+		row.createCell(1).setCellValue(12.5);
+
+		// no rows were flushed before the workbook is written
+		XlsxStreamingWriter writer = new XlsxStreamingWriter(true);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try {
+			writer.write(wb, out);
+		} finally {
+			writer.dispose();
+		}
+
+		String xml = readEntry(out.toByteArray(), "xl/worksheets/sheet1.xml");
+		assertTrue(xml.contains("<c r=\"A1\" t=\"inlineStr\"><is><t xml:space=\"preserve\">a &lt; b</t></is></c>"));
+		assertFalse(xml.contains("t=\"inlineStr\"><v>"));
+		assertTrue(xml.contains("<c r=\"B1\"><v>12.5</v></c>"));
+
+		XSSFWorkbook read = new XSSFWorkbook(new ByteArrayInputStream(out.toByteArray()));
+		assertEquals("a < b", read.getSheetAt(0).getRow(0).getCell(0).getStringCellValue());
+		assertEquals(12.5, read.getSheetAt(0).getRow(0).getCell(1).getNumericCellValue(), 0);
+	}
+
+	private String readEntry(byte[] zip, String name) throws IOException {
+		ZipInputStream zis = new ZipInputStream(new ByteArrayInputStream(zip));
+		try {
+			ZipEntry entry;
+			while ((entry = zis.getNextEntry()) != null) {
+				if (entry.getName().equals(name)) {
+					return read(zis);
+				}
+			}
+		} finally {
+			zis.close();
+		}
+		assertNotNull("Entry " + name + " not found", null);
+		return null;
+	}
+
+	private String read(InputStream is) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		int n;
+		while ((n = is.read(buffer)) != -1) {
+			bytes.write(buffer, 0, n);
+		}
+		return bytes.toString("UTF-8");
+	}
+
+}
@@ -0,0 +1,139 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ro.nextreports.engine.exporter.util.function;
+
+import static org.junit.Assert.assertEquals;
+
+import java.math.BigDecimal;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class StatisticalFunctionTest {
+
+	private static final double DELTA = 1e-9;
+
+	@Test
+	public void testVariance() {
+		GFunction variance = FunctionFactory.getFunction(AbstractGFunction.VARIANCE);
+		GFunction stddev = FunctionFactory.getFunction(AbstractGFunction.STDDEV);
+		assertEquals(0, (Double) variance.getComputedValue(), DELTA);
+		double[] values = { 2, 4, 4, 4, 5, 5, 7, 9 };
+		for (double value : values) {
+			FunctionUtil.compute(variance, value);
+			FunctionUtil.compute(stddev, new BigDecimal(value));
+		}
+		// sample variance : sum of squared differences from mean 5 is 32
+		assertEquals(32.0 / 7, (Double) variance.getComputedValue(), DELTA);
+		assertEquals(Math.sqrt(32.0 / 7), (Double) stddev.getComputedValue(), DELTA);
+
+		variance.reset();
+		FunctionUtil.compute(variance, 3);
+		assertEquals(0, (Double) variance.getComputedValue(), DELTA);
+	}
+
+	@Test
+	public void testVarianceOfLargeValues() {
+		// single pass algorithm must not lose precision when values are far from 0
+		GFunction variance = FunctionFactory.getFunction(AbstractGFunction.VARIANCE);
+		for (int i = 0; i < 1000; i++) {
+			FunctionUtil.compute(variance, 1e9 + (i % 2));
+		}
+		assertEquals(0.25 * 1000 / 999, (Double) variance.getComputedValue(), 1e-6);
+	}
+
+	@Test
+	public void testMedian() {
+		GFunction median = FunctionFactory.getFunction(AbstractGFunction.MEDIAN);
+		assertEquals(0, (Double) median.getComputedValue(), DELTA);
+		for (double value : new double[] { 9, 1, 5 }) {
+			FunctionUtil.compute(median, value);
+		}
+		assertEquals(5, (Double) median.getComputedValue(), DELTA);
+		// value computed before must not be kept after new values
+		FunctionUtil.compute(median, 2);
+		assertEquals(3.5, (Double) median.getComputedValue(), DELTA);
+		assertEquals(3.5, (Double) median.getComputedValue(), DELTA);
+		median.reset();
+		FunctionUtil.compute(median, 7);
+		assertEquals(7, (Double) median.getComputedValue(), DELTA);
+	}
+
+	@Test
+	public void testPercentile() {
+		GFunction p90 = FunctionFactory.getFunction(AbstractGFunction.P90);
+		for (int i = 100; i >= 0; i--) {
+			FunctionUtil.compute(p90, i);
+		}
+		assertEquals(90, (Double) p90.getComputedValue(), DELTA);
+
+		// interpolation between closest ranks
+		GFunction p25 = FunctionFactory.getFunction("p25");
+		for (double value : new double[] { 40, 10, 30, 20 }) {
+			FunctionUtil.compute(p25, value);
+		}
+		assertEquals(17.5, (Double) p25.getComputedValue(), DELTA);
+	}
+
+	@Test
+	public void testPercentileOfManyValues() {
+		// more than EXACT_LIMIT values are summarized in a t-digest
+		int n = PercentileFunction.EXACT_LIMIT * 10;
+		double[] values = new double[n];
+		for (int i = 0; i < n; i++) {
+			values[i] = i;
+		}
+		shuffle(values);
+		GFunction median = FunctionFactory.getFunction(AbstractGFunction.MEDIAN);
+		GFunction p99 = FunctionFactory.getFunction(AbstractGFunction.P99);
+		for (double value : values) {
+			FunctionUtil.compute(median, value);
+			FunctionUtil.compute(p99, value);
+		}
+		assertEquals(n * 0.5, (Double) median.getComputedValue(), n * 0.01);
+		assertEquals(n * 0.99, (Double) p99.getComputedValue(), n * 0.002);
+	}
+
+	@Test
+	public void testPercentileMerge() {
+		PercentileFunction all = new PercentileFunction(AbstractGFunction.MEDIAN, 50);
+		PercentileFunction small = new PercentileFunction(AbstractGFunction.MEDIAN, 50);
+		PercentileFunction big = new PercentileFunction(AbstractGFunction.MEDIAN, 50);
+		for (int i = 0; i < 10; i++) {
+			small.computeDouble(i);
+		}
+		int n = PercentileFunction.EXACT_LIMIT * 2;
+		for (int i = 0; i < n; i++) {
+			big.computeDouble(10 + i);
+		}
+		all.merge(small);
+		assertEquals(4.5, (Double) all.getComputedValue(), DELTA);
+		all.merge(big);
+		assertEquals((n + 10) / 2.0, (Double) all.getComputedValue(), n * 0.01);
+	}
+
+	private static void shuffle(double[] values) {
+		Random random = new Random(1);
+		for (int i = values.length - 1; i > 0; i--) {
+			int j = random.nextInt(i + 1);
+			double value = values[i];
+			values[i] = values[j];
+			values[j] = value;
+		}
+	}
+
+}
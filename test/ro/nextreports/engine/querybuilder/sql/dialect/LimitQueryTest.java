@@ -0,0 +1,116 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ro.nextreports.engine.querybuilder.sql.dialect;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+public class LimitQueryTest {
+
+	@Test
+	public void testLimitOffset() {
+		Dialect dialect = new MySQLDialect();
+		assertEquals("select * from t LIMIT 10", dialect.getLimitQuery("select * from t;", 0, 10));
+		assertEquals("select * from t LIMIT 10 OFFSET 20", dialect.getLimitQuery("select * from t", 20, 10));
+		assertNull(dialect.getLimitQuery("select * from t limit 5", 0, 10));
+		// limit of a sub-select does not limit the query
+		assertEquals("select * from (select * from t limit 5) a LIMIT 10",
+				dialect.getLimitQuery("select * from (select * from t limit 5) a", 0, 10));
+		// limit is applied to the union result
+		assertEquals("select a from t union select a from u LIMIT 10",
+				dialect.getLimitQuery("select a from t union select a from u", 0, 10));
+	}
+
+	@Test
+	public void testOffsetFetch() {
+		Dialect dialect = new DerbyDialect();
+		assertEquals("select * from t OFFSET 0 ROWS FETCH NEXT 10 ROWS ONLY", dialect.getLimitQuery("select * from t", 0, 10));
+		assertNull(dialect.getLimitQuery("select * from t fetch first 5 rows only", 0, 10));
+	}
+
+	@Test
+	public void testTop() {
+		Dialect dialect = new MSSQLDialect();
+		assertEquals("select TOP 10 a, b from t", dialect.getLimitQuery("select a, b from t", 0, 10));
+		assertEquals("SELECT DISTINCT TOP 10 a from t", dialect.getLimitQuery("SELECT DISTINCT a from t", 0, 10));
+		assertNull(dialect.getLimitQuery("select top 5 a from t", 0, 10));
+		assertNull(dialect.getLimitQuery("with x as (select a from t) select a from x", 0, 10));
+		// offset needs an order by
+		assertNull(dialect.getLimitQuery("select a from t", 5, 10));
+		assertEquals("select a from t order by a OFFSET 5 ROWS FETCH NEXT 10 ROWS ONLY",
+				dialect.getLimitQuery("select a from t order by a", 5, 10));
+
+		dialect = new TeradataDialect();
+		assertEquals("select TOP 10 a from t", dialect.getLimitQuery("select a from t", 0, 10));
+		assertNull(dialect.getLimitQuery("select a from t", 5, 10));
+	}
+
+	@Test
+	public void testFirstSkip() {
+		Dialect dialect = new FirebirdDialect();
+		assertEquals("select FIRST 10 SKIP 5 distinct a from t", dialect.getLimitQuery("select distinct a from t", 5, 10));
+		assertEquals("select FIRST 10 a from t", dialect.getLimitQuery("select a from t", 0, 10));
+	}
+
+	@Test
+	public void testSetOperators() {
+		// TOP / FIRST after the first SELECT would limit only the first query
+		String[] queries = {
+				"select a from t union select a from u",
+				"select a from t UNION ALL select a from u",
+				"select a from t intersect select a from u",
+				"select a from t\nexcept\nselect a from u" };
+		Dialect[] dialects = { new MSSQLDialect(), new TeradataDialect(), new FirebirdDialect() };
+		for (Dialect dialect : dialects) {
+			for (String query : queries) {
+				assertNull(dialect.getClass().getSimpleName() + " : " + query, dialect.getLimitQuery(query, 0, 10));
+			}
+		}
+
+		// set operators inside parentheses or literals
+		Dialect dialect = new MSSQLDialect();
+		assertEquals("select TOP 10 a from (select a from t union select a from u) x",
+				dialect.getLimitQuery("select a from (select a from t union select a from u) x", 0, 10));
+		assertEquals("select TOP 10 a from t where b = 'union'", dialect.getLimitQuery("select a from t where b = 'union'", 0, 10));
+		assertEquals("select TOP 10 a from t where b in (select b from u except select b from v)",
+				dialect.getLimitQuery("select a from t where b in (select b from u except select b from v)", 0, 10));
+	}
+
+	@Test
+	public void testRowNum() {
+		// ROWNUM is added to the query, a sub-select fails for duplicate column names
+		Dialect dialect = new OracleDialect();
+		assertEquals("select a.id, b.id from a, b WHERE ROWNUM <= 10",
+				dialect.getLimitQuery("select a.id, b.id from a, b;", 0, 10));
+		assertEquals("select id from a where (x = 1 or y = 'order by') AND ROWNUM <= 10",
+				dialect.getLimitQuery("select id from a where x = 1 or y = 'order by'", 0, 10));
+		// rows are sorted in a sub-select before ROWNUM is assigned
+		assertEquals("select id from (select id from a order by id) x WHERE ROWNUM <= 10",
+				dialect.getLimitQuery("select id from (select id from a order by id) x", 0, 10));
+
+		// ROWNUM is assigned before sort and group, and it cannot skip rows : rows are limited with setMaxRows
+		assertNull(dialect.getLimitQuery("select id from a order by id", 0, 10));
+		assertNull(dialect.getLimitQuery("select distinct id from a", 0, 10));
+		assertNull(dialect.getLimitQuery("select id, count(*) from a group by id", 0, 10));
+		assertNull(dialect.getLimitQuery("select id from a union select id from b", 0, 10));
+		assertNull(dialect.getLimitQuery("with x as (select id from a) select id from x", 0, 10));
+		assertNull(dialect.getLimitQuery("select id from a", 5, 10));
+	}
+
+}
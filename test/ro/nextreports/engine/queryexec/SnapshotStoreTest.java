@@ -0,0 +1,101 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ro.nextreports.engine.queryexec;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Types;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SnapshotStoreTest {
+
+	private File directory;
+
+	@Before
+	public void createDirectory() throws IOException {
+		directory = File.createTempFile("snapshots", "");
+		directory.delete();
+	}
+
+	@After
+	public void deleteDirectory() {
+		File[] files = directory.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				file.delete();
+			}
+		}
+		directory.delete();
+	}
+
+	@Test
+	public void testWritersForSameKey() throws Exception {
+		SnapshotStore store = new SnapshotStore(directory, 0, 0);
+		SnapshotWriter first = store.create("k");
+		SnapshotWriter second = store.create("k");
+		first.writeHeader(new String[] { "ID" }, new String[] { "java.lang.Integer" }, new int[] { Types.INTEGER });
+		second.writeHeader(new String[] { "ID" }, new String[] { "java.lang.Integer" }, new int[] { Types.INTEGER });
+		for (int i = 0; i < 10; i++) {
+			first.writeRow(new Object[] { i });
+			second.writeRow(new Object[] { i * 2 });
+		}
+		first.finish();
+		second.finish();
+
+		// last finished snapshot replaces the other one
+		SnapshotQueryResult result = store.open("k");
+		assertEquals(10, result.getRowCount());
+		assertEquals(18, result.getValueAt(9, 0));
+		result.close();
+		assertEquals(1, directory.listFiles().length);
+	}
+
+	@Test
+	public void testEvictOpenSnapshot() throws Exception {
+		createSnapshot(new SnapshotStore(directory, 0, 0), "k1");
+		// every snapshot is bigger than this store
+		SnapshotStore store = new SnapshotStore(directory, 1, 0);
+		SnapshotQueryResult result = store.open("k1");
+		assertTrue(result != null);
+
+		store.evict();
+		assertTrue(store.contains("k1"));
+		assertTrue(result.hasNext());
+		assertEquals(0, result.nextValue(0));
+
+		result.close();
+		store.evict();
+		assertFalse(store.contains("k1"));
+	}
+
+	private void createSnapshot(SnapshotStore store, String key) throws IOException {
+		SnapshotWriter writer = store.create(key);
+		writer.writeHeader(new String[] { "ID" }, new String[] { "java.lang.Integer" }, new int[] { Types.INTEGER });
+		for (int i = 0; i < 10; i++) {
+			writer.writeRow(new Object[] { i });
+		}
+		writer.finish();
+	}
+
+}